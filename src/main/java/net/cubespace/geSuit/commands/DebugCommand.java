@@ -3,11 +3,15 @@ package net.cubespace.geSuit.commands;
 import java.util.UUID;
 
 import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.database.MigrationRunner;
 import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
 import net.cubespace.geSuit.managers.PlayerManager;
 import net.cubespace.geSuit.objects.GSPlayer;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.CommandSender;
+import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.connection.Server;
 import net.md_5.bungee.api.plugin.Command;
@@ -43,12 +47,14 @@ public class DebugCommand extends Command
     			PlayerManager.sendMessageToTarget(sender, ChatColor.GREEN + "geSuit Debug Commands:");
     			PlayerManager.sendMessageToTarget(sender, ChatColor.YELLOW + "/gsdebug onlineplayers" + ChatColor.WHITE + " - Dump online player list");
     			PlayerManager.sendMessageToTarget(sender, ChatColor.YELLOW + "/gsdebug cachedplayers" + ChatColor.WHITE + " - Dump cached player list");
+    			PlayerManager.sendMessageToTarget(sender, ChatColor.YELLOW + "/gsdebug db" + ChatColor.WHITE + " - Show connection pool and query metrics");
+    			PlayerManager.sendMessageToTarget(sender, ChatColor.YELLOW + "/gsdebug explain" + ChatColor.WHITE + " - Show the query plan of every statement");
     		}
     		else if (action.equals("onlineplayers")) {
     			// Useful for troubleshooting issues with the onlinePlayers map
 				PlayerManager.sendMessageToTarget(sender, "List of entries in onlinePlayers:");
-    			for (String player : PlayerManager.onlinePlayers.keySet()) {
-    				GSPlayer gs = PlayerManager.onlinePlayers.get(player);
+    			for (String player : PlayerManager.registry.getOnlineNames()) {
+    				GSPlayer gs = PlayerManager.registry.getOnline(player);
     				Boolean gsvalid = false;
     				Boolean ppvalid = false;
     				String sname = "";
@@ -72,8 +78,8 @@ public class DebugCommand extends Command
     		} else if (action.equals("cachedplayers")) {
         			// Useful for troubleshooting issues with the onlinePlayers map
     				PlayerManager.sendMessageToTarget(sender, "List of entries in cachedplayers:");
-        			for (UUID uuid : PlayerManager.cachedPlayers.keySet()) {
-        				GSPlayer gs = PlayerManager.cachedPlayers.get(uuid);
+        			for (UUID uuid : PlayerManager.registry.getCachedIds()) {
+        				GSPlayer gs = PlayerManager.registry.getCached(uuid);
         				Boolean gsvalid = false;
         				Boolean ppvalid = false;
         				String sname = "";
@@ -94,6 +100,26 @@ public class DebugCommand extends Command
         						ChatColor.WHITE + " / PP:" + (ppvalid ? ChatColor.GREEN + "yes" : ChatColor.RED + "no") +
         						ChatColor.WHITE + " / SRV:" + (!sname.isEmpty() ? ChatColor.GREEN + sname : ChatColor.RED + "none"));
         			}
+    		} else if (action.equals("db")) {
+    			PlayerManager.sendMessageToTarget(sender, ChatColor.GREEN + "Database metrics (slowest statements by total time):");
+    			for (String line : MetricsManager.getDatabaseReport(10)) {
+    				PlayerManager.sendMessageToTarget(sender, ChatColor.WHITE + line);
+    			}
+    		} else if (action.equals("explain")) {
+    			if (DatabaseManager.connectionPool == null) {
+    				PlayerManager.sendMessageToTarget(sender, ChatColor.RED + "The embedded storage has no query plans");
+    				return;
+    			}
+    			final CommandSender target = sender;
+    			ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+    				@Override
+    				public void run() {
+    					PlayerManager.sendMessageToTarget(target, ChatColor.GREEN + "Query plans of the registered statements:");
+    					for (String line : new MigrationRunner(DatabaseManager.connectionPool).explain()) {
+    						PlayerManager.sendMessageToTarget(target, ChatColor.WHITE + line);
+    					}
+    				}
+    			});
     		} else {
 				PlayerManager.sendMessageToTarget(sender, "ERROR: Invalid debug action");
     		}
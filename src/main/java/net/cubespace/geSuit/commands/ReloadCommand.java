@@ -1,6 +1,7 @@
 package net.cubespace.geSuit.commands;
 
 import net.cubespace.Yamler.Config.InvalidConfigurationException;
+import net.cubespace.geSuit.managers.AdmissionManager;
 import net.cubespace.geSuit.managers.AnnouncementManager;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.PlayerManager;
@@ -34,8 +35,10 @@ public class ReloadCommand extends Command
             ConfigManager.spawn.reload();
             ConfigManager.messages.reload();
             ConfigManager.teleport.reload();
+            ConfigManager.lockdown.reload();
 
             AnnouncementManager.reloadAnnouncements();
+            AdmissionManager.reload();
             PlayerManager.sendMessageToTarget(sender, "All Configs reloaded");
         }
         catch (InvalidConfigurationException e) {
@@ -2,6 +2,7 @@ package net.cubespace.geSuit.configs;
 
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.configs.SubConfig.GeoIPSettings;
+import net.cubespace.Yamler.Config.Comment;
 import net.cubespace.Yamler.Config.Config;
 
 import java.io.File;
@@ -22,6 +23,14 @@ public class BansConfig extends Config {
     public Boolean BroadcastKicks = true;
     public Boolean ShowAltAccounts = true;
     public Boolean ShowBannedAltAccounts = true;
+    @Comment("How many shared IPs may lie between a player and the accounts shown as their alts. 0 follows every shared IP")
+    public int AltMaxHops = 2;
+    @Comment("IPs used by more accounts than this are not followed when looking for alts, they are usually shared connections")
+    public int AltMaxAccountsPerIP = 10;
+    @Comment("Number of alt accounts named in the staff notice when a player joins")
+    public int AltMaxShown = 5;
+    @Comment("How often (in seconds) the alt account graph is reloaded from the tracking table, which picks up joins on other proxies")
+    public int AltGraphReloadInterval = 3600;
     public Boolean TrackOnTime = true;
     public Boolean RecordKicks = false;  //record kicks to the database.
     public int NameChangeNotifyTime = 20;
@@ -35,6 +44,20 @@ public class BansConfig extends Config {
     public List<String> KickReasonIgnoreList = new ArrayList<>(Arrays.asList("AutoKick: Anti-AFK"));
 
     public HashMap<Integer, String> Actions = new HashMap<>();
+
+    @Comment("How often (in seconds) bans and unbans made by other proxies are applied to the in memory ban index")
+    public int BanIndexSyncInterval = 10;
+    @Comment("How often (in seconds) the in memory ban index is reloaded completely, to catch anything the sync missed")
+    public int BanIndexReloadInterval = 60;
+
+    @Comment("Number of threads which run ban commands. Ban and unban requests may run out of order with more than one")
+    public int DispatchThreads = 1;
+    @Comment("How many ban commands can wait for a thread, further ones are refused until the queue has room")
+    public int DispatchQueueSize = 256;
+    @Comment("Number of threads which look up ban, warn and kick histories")
+    public int LookupThreads = 2;
+    @Comment("How many lookups can wait for a thread, further ones are refused until the queue has room")
+    public int LookupQueueSize = 256;
     
     public GeoIPSettings GeoIP = new GeoIPSettings();
 }
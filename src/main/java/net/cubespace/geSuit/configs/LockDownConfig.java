@@ -1,6 +1,7 @@
 package net.cubespace.geSuit.configs;
 
 import net.cubespace.Yamler.Config.Config;
+import net.cubespace.geSuit.configs.SubConfig.Admission;
 import net.cubespace.geSuit.geSuit;
 
 import java.io.File;
@@ -16,4 +17,5 @@ public class LockDownConfig extends Config {
     public String LockdownTime = "5m";
     public boolean LockedDown = false; //if set to true the server will start lockedDown and will release in 5minutes
     public String StartupMsg = ""; //if set and no message is set when the lockdown is started this will be used
+    public Admission Admission = new Admission();
 }
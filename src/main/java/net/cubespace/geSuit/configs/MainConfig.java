@@ -29,9 +29,25 @@ public class MainConfig extends Config {
     public String Table_Tracking = "tracking";
     @Comment("This can be used if you have multiple Proxies to seperate the Ontime in it")
     public String Table_OnTime = "ontime";
+    @Comment("Daily sums of the Ontime, kept up to date as the Ontime is written")
+    public String Table_OnTimeDaily = "ontime_daily";
+    @Comment("Total Ontime per player, used for /ontime top")
+    public String Table_OnTimeTotal = "ontime_total";
+    @Comment("Prefix of the yearly archives of old Tracking rows, the year is appended")
+    public String Table_TrackingArchive = "tracking_archive";
+    @Comment("Applied schema migrations, do not alter this once migrations have run")
+    public String Table_SchemaHistory = "schema_history";
+    @Comment("Progress of the BungeeSuite conversion, so an interrupted conversion resumes where it stopped")
+    public String Table_ConvertProgress = "convert_progress";
 
     public Boolean ConvertFromBungeeSuite = false;
     public Database BungeeSuiteDatabase = new Database();
+    @Comment("Rows read from a BungeeSuite table and written in one batch during the conversion")
+    public Integer ConvertChunkSize = 1000;
+    @Comment("BungeeSuite tables converted at the same time once the players are converted")
+    public Integer ConvertThreads = 3;
+    @Comment("Mojang UUID lookups per minute during the conversion, each resolves up to 100 names")
+    public Integer ConvertUUIDRequestsPerMinute = 60;
 
     @Comment("Turn this to false if you want to use your regular /motd comand (requires restart)")
     public Boolean MOTD_Enabled = true;
@@ -48,6 +64,9 @@ public class MainConfig extends Config {
     @Comment("Enable this if you want to use BungeeChat with geSuit.")
     public Boolean BungeeChatIntegration = false;
 
+    @Comment("How often (in seconds) metrics.txt is written to the plugin folder. 0 disables it")
+    public Integer MetricsInterval = 60;
+
     @Comment("Do not alter this. It will be used automaticly.")
     public Boolean Inited = false;
 
@@ -65,4 +84,6 @@ public class MainConfig extends Config {
     public Integer Version_Database_Warps = 1;
     @Comment("Stored version informations. If you alter this you can damage your Database")
     public Integer Version_Database_Tracking = 1;
+    @Comment("Stored version informations. If you alter this you can damage your Database")
+    public Integer Version_Database_OnTime = 1;
 }
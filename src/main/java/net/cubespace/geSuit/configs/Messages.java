@@ -18,6 +18,7 @@ public class Messages extends Config {
     public String PLAYER_DOES_NOT_EXIST = "&c" + "That player does not exist";
     public String PLAYER_LOAD = "Loaded player &9{player}&7 ({uuid})";
     public String PLAYER_LOAD_CACHED = "Loaded player from cache &9{player}&7 ({uuid})";
+    public String PLAYER_LOAD_FAILED = "&c" + "Could not load your player data, please try again in a moment";
     public String PLAYER_CREATE = "Created player &b{player}&7 ({uuid})";
     public String PLAYER_UNLOAD = "Unloaded player &c{player}";
     public String PLAYER_NOT_ONLINE = "&c" + "That player is not online";
@@ -161,4 +162,8 @@ public class Messages extends Config {
     //Lockdown messages
     public String LOCKDOWN_MESSAGE = "&c" + "Server is in maintenance. {message}  ";
     public String LOCKDOWN_USAGE = "&c" + "Usage: !lockdown end|status|<time> <msg>  (time format like 1h5m10s)";
+    public String LOGIN_THROTTLED = "&c" + "Too many connections, please wait a moment before joining again";
+    public String BANS_BUSY = "&c" + "geSuit is busy, please try again in a moment";
+    public String BAN_NOT_STORED = "&c" + "The database is unreachable, the ban of {player} was not stored. Try again later";
+    public String DATABASE_UNAVAILABLE = "&c" + "The database is unreachable, please try again later";
 }
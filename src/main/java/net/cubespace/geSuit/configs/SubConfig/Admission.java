@@ -0,0 +1,20 @@
+package net.cubespace.geSuit.configs.SubConfig;
+
+import net.cubespace.Yamler.Config.Comment;
+import net.cubespace.Yamler.Config.Config;
+
+public class Admission extends Config {
+    @Comment("Refuse logins which arrive faster than the limits below before anything is loaded for them. Players known from the login snapshot are not limited")
+    public Boolean Enabled = true;
+    @Comment("Logins one IP can make in a row, and how many of them come back per minute")
+    public Integer PerIPBurst = 3;
+    public Integer PerIPPerMinute = 6;
+    @Comment("Logins one subnet (/24 for IPv4, /48 for IPv6) can make in a row, and how many of them come back per minute")
+    public Integer PerSubnetBurst = 10;
+    public Integer PerSubnetPerMinute = 30;
+    @Comment("Logins of unknown players the whole proxy takes in a row, and how many of them come back per minute")
+    public Integer GlobalBurst = 50;
+    public Integer GlobalPerMinute = 300;
+    @Comment("While threads are waiting for a database connection, or the database is unreachable, logins come back this many times slower")
+    public Integer SaturatedSlowdown = 4;
+}
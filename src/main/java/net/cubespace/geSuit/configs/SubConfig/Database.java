@@ -1,15 +1,83 @@
 package net.cubespace.geSuit.configs.SubConfig;
 
+import net.cubespace.Yamler.Config.Comment;
 import net.cubespace.Yamler.Config.Config;
 
+import java.util.HashMap;
+
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
 public class Database extends Config {
+    @Comment("Where data is stored: mysql, or embedded to keep it in local files in the plugin folder (single proxy only)")
+    public String Type = "mysql";
     public String Host = "localhost";
     public String Database = "minecraft";
     public String Port = "3306";
     public String Username = "username";
     public String Password = "password";
+    @Comment("Minimum number of connections the pool keeps open")
     public Integer Threads = 5;
+    @Comment("Maximum number of connections the pool will ever open")
+    public Integer MaxConnections = 10;
+    @Comment("How long (in milliseconds) to wait for a free connection before giving up")
+    public Integer ConnectionTimeout = 5000;
+    @Comment("Connections idle for longer than this (in seconds) are closed, down to the minimum")
+    public Integer IdleTimeout = 60;
+    @Comment("Connections older than this (in seconds) are replaced once they are returned to the pool")
+    public Integer MaxLifetime = 1800;
+    @Comment("Read replicas by name, history and lookup commands read from them. The user needs the REPLICATION CLIENT privilege so the lag can be checked")
+    public HashMap<String, Replica> Replicas = new HashMap<>();
+    @Comment("How often (in seconds) the lag of the read replicas is checked")
+    public Integer ReplicaCheckInterval = 10;
+    @Comment("Failed connection attempts in a row after which database work is refused until the database answers again")
+    public Integer CircuitBreakerFailures = 3;
+    @Comment("How long (in seconds) database work is refused before it is tried again")
+    public Integer CircuitBreakerOpenTime = 10;
+    @Comment("Let players join while the database is unreachable, using the snapshot of active bans and known players")
+    public Boolean DegradedLogins = true;
+    @Comment("How often (in seconds) the snapshot of active bans, known players and locations is written to the plugin folder, it is also written on shutdown")
+    public Integer LoginSnapshotInterval = 3600;
+    @Comment("How often (in seconds) players who were online on other proxies are added to the snapshot")
+    public Integer LoginSnapshotSyncInterval = 60;
+    @Comment("How long (in seconds) a login waits for geSuit to finish loading what logins need on startup before it is refused")
+    public Integer StartupLoginWait = 30;
+    @Comment("Prepared statements kept per connection, statements are prepared when they are first used")
+    public Integer StatementCacheSize = 50;
+    @Comment("Prepare statements on the MySQL server, so a statement is parsed once per connection instead of on every execute")
+    public Boolean ServerPrepareStatements = false;
+    @Comment("How often (in seconds) queued player, tracking and ontime updates are written")
+    public Integer WriteBehindInterval = 5;
+    @Comment("Queued updates are written straight away once this many are waiting")
+    public Integer WriteBehindBatchSize = 500;
+    @Comment("A name, UUID and IP combination written within this many seconds is not written again on every join")
+    public Integer TrackingDedupWindow = 86400;
+    @Comment("How often (in seconds) the last seen time of those combinations is refreshed in one batch")
+    public Integer TrackingRefreshInterval = 3600;
+    @Comment("How often (in hours) old ontime and tracking rows are compacted and archived, 0 turns it off")
+    public Integer RetentionInterval = 24;
+    @Comment("Hourly ontime older than this many days is folded into the daily sums and removed, 0 keeps it")
+    public Integer OnTimeHourlyDays = 90;
+    @Comment("Tracking rows not seen for this many days move to yearly archive tables, 0 keeps them. The last row of every name a UUID used stays")
+    public Integer TrackingArchiveDays = 365;
+    @Comment("Yearly tracking archives kept, older ones are dropped. 0 keeps all of them")
+    public Integer TrackingArchiveYears = 0;
+    @Comment("Rows removed or moved at once by the compaction")
+    public Integer RetentionChunkSize = 1000;
+    @Comment("Pause (in milliseconds) of the compaction between two chunks")
+    public Integer RetentionPause = 250;
+    @Comment("Player names and UUIDs cached for the bulk lookups of the API channel")
+    public Integer NameCacheSize = 10000;
+    @Comment("Profiles of players who left recently or were looked up while offline kept in memory, with their homes")
+    public Integer ProfileCacheSize = 1000;
+    @Comment("How long (in seconds) a cached profile is used, keep it short when players move between proxies")
+    public Integer ProfileCacheTime = 300;
+    @Comment("Number of threads running database work for commands and plugin messages")
+    public Integer AsyncThreads = 4;
+    @Comment("Database work waiting for those threads beyond this is refused")
+    public Integer AsyncQueueSize = 1000;
+    @Comment("Only print the pending schema migrations and the EXPLAIN plan of every statement, without migrating")
+    public Boolean MigrationDryRun = false;
+    @Comment("How often (in seconds) the embedded storage writes changed data to disk")
+    public Integer EmbeddedSaveInterval = 30;
 }
@@ -0,0 +1,23 @@
+package net.cubespace.geSuit.configs.SubConfig;
+
+import net.cubespace.Yamler.Config.Comment;
+import net.cubespace.Yamler.Config.Config;
+
+/**
+ * A MySQL read replica of the main database
+ */
+public class Replica extends Config {
+    public String Host = "localhost";
+    public String Database = "minecraft";
+    public String Port = "3306";
+    public String Username = "username";
+    public String Password = "password";
+    @Comment("Minimum number of connections kept open to this replica")
+    public Integer Threads = 2;
+    @Comment("Maximum number of connections opened to this replica")
+    public Integer MaxConnections = 5;
+    @Comment("How long (in milliseconds) to wait for a replica connection before reading from the main database instead")
+    public Integer ConnectionTimeout = 500;
+    @Comment("Reads go to the main database while this replica is further behind than this (in seconds)")
+    public Integer MaxLag = 30;
+}
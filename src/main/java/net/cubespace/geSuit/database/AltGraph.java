@@ -0,0 +1,391 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.md_5.bungee.api.ProxyServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In memory graph of which UUIDs have been seen on which IPs, loaded from the tracking table. Accounts which share an
+ * IP are joined in a union-find structure, so an account without any alt is answered straight away. Linked accounts
+ * are found by walking the graph from the account over at most {@code AltMaxHops} shared IPs, leaving out IPs used by
+ * more than {@code AltMaxAccountsPerIP} accounts since those are usually shared connections rather than alts.
+ * <p>
+ * Joins on this proxy are added as they happen, joins on other proxies are picked up by a reload every
+ * {@code AltGraphReloadInterval} seconds.
+ */
+public class AltGraph {
+    /**
+     * Linked accounts returned by one lookup at most
+     */
+    private static final int MAX_ALTS = 200;
+
+    /**
+     * An account linked to the one looked up
+     */
+    public static class Alt {
+        private final String name;
+        private final String uuid;
+        private final String ip;
+        private final int hops;
+
+        public Alt(String name, String uuid, String ip, int hops) {
+            this.name = name;
+            this.uuid = uuid;
+            this.ip = ip;
+            this.hops = hops;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        /**
+         * @return The IP this account was reached through
+         */
+        public String getIp() {
+            return ip;
+        }
+
+        /**
+         * @return Number of shared IPs between the account looked up and this one
+         */
+        public int getHops() {
+            return hops;
+        }
+    }
+
+    /**
+     * The graph itself, filled by {@link TrackingStore#loadLinks(Links)}. Not thread safe, {@link AltGraph} guards it.
+     */
+    public static class Links {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final Map<String, Integer> accountIds = new HashMap<>();
+        private final Map<String, Integer> ipIds = new HashMap<>();
+
+        private String[] uuids = new String[INITIAL_CAPACITY];
+        private String[] names = new String[INITIAL_CAPACITY];
+        private long[] nameSeen = new long[INITIAL_CAPACITY];
+        private int[] parent = new int[INITIAL_CAPACITY];
+        private int[] componentSize = new int[INITIAL_CAPACITY];
+        private int[][] accountIps = new int[INITIAL_CAPACITY][];
+        private int[] accountIpCount = new int[INITIAL_CAPACITY];
+        private int accounts = 0;
+
+        private String[] ips = new String[INITIAL_CAPACITY];
+        private int[][] ipAccounts = new int[INITIAL_CAPACITY][];
+        private int[] ipAccountCount = new int[INITIAL_CAPACITY];
+        private int ipCount = 0;
+
+        /**
+         * Records that the account was seen on the IP, the most recently seen name of an account is kept
+         */
+        public void add(String player, String uuid, String ip, long lastSeen) {
+            if (uuid == null || uuid.isEmpty() || ip == null || ip.isEmpty()) {
+                return;
+            }
+
+            int account = account(uuid);
+            if (names[account] == null || lastSeen >= nameSeen[account]) {
+                names[account] = player;
+                nameSeen[account] = lastSeen;
+            }
+
+            int address = ip(ip);
+            int[] known = accountIps[account];
+            for (int i = 0; i < accountIpCount[account]; i++) {
+                if (known[i] == address) {
+                    return;
+                }
+            }
+
+            accountIps[account] = append(accountIps[account], accountIpCount[account]++, address);
+            ipAccounts[address] = append(ipAccounts[address], ipAccountCount[address]++, account);
+
+            if (ipAccountCount[address] > 1) {
+                union(account, ipAccounts[address][0]);
+            }
+        }
+
+        public int getAccountCount() {
+            return accounts;
+        }
+
+        public int getIpCount() {
+            return ipCount;
+        }
+
+        /**
+         * @return Accounts which share an IP with the UUID, directly or through other accounts, nearest first
+         */
+        List<Alt> getAlts(String uuid, int maxHops, int maxAccountsPerIp, int limit) {
+            Integer start = accountIds.get(uuid);
+            if (start == null || componentSize[root(start)] == 1) {
+                return Collections.emptyList();
+            }
+
+            List<Alt> alts = new ArrayList<>();
+            Set<Integer> visited = new HashSet<>();
+            visited.add(start);
+
+            List<Integer> frontier = Collections.singletonList(start);
+            for (int hop = 1; !frontier.isEmpty() && (maxHops <= 0 || hop <= maxHops); hop++) {
+                List<Integer> next = new ArrayList<>();
+
+                for (int account : frontier) {
+                    for (int i = 0; i < accountIpCount[account]; i++) {
+                        int address = accountIps[account][i];
+                        if (maxAccountsPerIp > 0 && ipAccountCount[address] > maxAccountsPerIp) {
+                            continue;
+                        }
+
+                        for (int j = 0; j < ipAccountCount[address]; j++) {
+                            int other = ipAccounts[address][j];
+                            if (!visited.add(other)) {
+                                continue;
+                            }
+
+                            alts.add(new Alt(names[other], uuids[other], ips[address], hop));
+                            if (alts.size() >= limit) {
+                                return alts;
+                            }
+                            next.add(other);
+                        }
+                    }
+                }
+
+                frontier = next;
+            }
+
+            return alts;
+        }
+
+        /**
+         * @return Number of accounts linked to the UUID without any limits, including itself
+         */
+        int getComponentSize(String uuid) {
+            Integer account = accountIds.get(uuid);
+            return account == null ? 0 : componentSize[root(account)];
+        }
+
+        private int account(String uuid) {
+            Integer id = accountIds.get(uuid);
+            if (id != null) {
+                return id;
+            }
+
+            if (accounts == uuids.length) {
+                int capacity = accounts * 2;
+                uuids = Arrays.copyOf(uuids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                nameSeen = Arrays.copyOf(nameSeen, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                componentSize = Arrays.copyOf(componentSize, capacity);
+                accountIps = Arrays.copyOf(accountIps, capacity);
+                accountIpCount = Arrays.copyOf(accountIpCount, capacity);
+            }
+
+            int account = accounts++;
+            uuids[account] = uuid;
+            parent[account] = account;
+            componentSize[account] = 1;
+            accountIds.put(uuid, account);
+            return account;
+        }
+
+        private int ip(String ip) {
+            Integer id = ipIds.get(ip);
+            if (id != null) {
+                return id;
+            }
+
+            if (ipCount == ips.length) {
+                int capacity = ipCount * 2;
+                ips = Arrays.copyOf(ips, capacity);
+                ipAccounts = Arrays.copyOf(ipAccounts, capacity);
+                ipAccountCount = Arrays.copyOf(ipAccountCount, capacity);
+            }
+
+            int address = ipCount++;
+            ips[address] = ip;
+            ipIds.put(ip, address);
+            return address;
+        }
+
+        // Read only, lookups share the read lock. Union by size keeps the paths short without compressing them.
+        private int root(int account) {
+            while (parent[account] != account) {
+                account = parent[account];
+            }
+            return account;
+        }
+
+        // Path halving, only while the graph is written under the write lock
+        private int find(int account) {
+            while (parent[account] != account) {
+                parent[account] = parent[parent[account]];
+                account = parent[account];
+            }
+            return account;
+        }
+
+        private void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+
+            if (componentSize[rootA] < componentSize[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parent[rootB] = rootA;
+            componentSize[rootA] += componentSize[rootB];
+        }
+
+        private static int[] append(int[] list, int size, int value) {
+            if (list == null) {
+                list = new int[2];
+            } else if (size == list.length) {
+                list = Arrays.copyOf(list, size * 2);
+            }
+            list[size] = value;
+            return list;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Links links = new Links();
+    private volatile boolean loaded = false;
+
+    // Links made while a reload is running, replayed onto the reloaded graph
+    private List<String[]> reloadAdded;
+
+    /**
+     * @return True once the graph holds every tracking entry
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Replaces the graph with the one stored in the tracking table
+     */
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            reloadAdded = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.nanoTime();
+        Links fresh = new Links();
+        boolean success = DatabaseManager.tracking.loadLinks(fresh);
+
+        lock.writeLock().lock();
+        try {
+            if (success) {
+                long now = System.currentTimeMillis();
+                for (String[] link : reloadAdded) {
+                    fresh.add(link[0], link[1], link[2], now);
+                }
+                links = fresh;
+                loaded = true;
+            }
+            reloadAdded = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (success) {
+            MetricsManager.getHistogram("altgraph.reload").recordSince(start);
+            geSuit.instance.DebugMsg("Loaded " + fresh.getAccountCount() + " accounts on " + fresh.getIpCount() + " IPs into the alt graph");
+        }
+    }
+
+    /**
+     * Adds the players current name, UUID and IP
+     */
+    public void link(String player, String uuid, String ip) {
+        lock.writeLock().lock();
+        try {
+            links.add(player, uuid, ip, System.currentTimeMillis());
+            if (reloadAdded != null) {
+                reloadAdded.add(new String[]{player, uuid, ip});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Accounts linked to the UUID through shared IPs, nearest first
+     */
+    public List<Alt> getAlts(String uuid) {
+        long start = System.nanoTime();
+
+        lock.readLock().lock();
+        try {
+            return links.getAlts(uuid, ConfigManager.bans.AltMaxHops, ConfigManager.bans.AltMaxAccountsPerIP, MAX_ALTS);
+        } finally {
+            lock.readLock().unlock();
+            MetricsManager.getHistogram("altgraph.lookup").recordSince(start);
+        }
+    }
+
+    /**
+     * @return Number of accounts linked to the UUID when neither hops nor shared IPs are limited, including itself
+     */
+    public int getComponentSize(String uuid) {
+        lock.readLock().lock();
+        try {
+            return links.getComponentSize(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the graph in the background and reloads it every {@code AltGraphReloadInterval} seconds
+     */
+    public void startReload() {
+        int reload = ConfigManager.bans.AltGraphReloadInterval;
+
+        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                reload();
+            }
+        });
+
+        if (reload > 0) {
+            ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+                @Override
+                public void run() {
+                    reload();
+                }
+            }, reload, reload, TimeUnit.SECONDS);
+        }
+    }
+}
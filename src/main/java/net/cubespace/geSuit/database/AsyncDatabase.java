@@ -0,0 +1,676 @@
+package net.cubespace.geSuit.database;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.objects.Ban;
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Home;
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Portal;
+import net.cubespace.geSuit.objects.Spawn;
+import net.cubespace.geSuit.objects.TimeRecord;
+import net.cubespace.geSuit.objects.Track;
+import net.cubespace.geSuit.objects.Warp;
+import net.cubespace.geSuit.tasks.DatabaseExecutor;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Non blocking variants of every store method. Each call is run on the {@link DatabaseExecutor} and returns a future
+ * of its result, which callers can chain with {@link Futures#addCallback} and {@link Futures#transform} instead of
+ * blocking network or event threads. Writes are keyed by what they change (player, home owner, warp, portal or
+ * server), so two writes to the same thing are applied in the order they were submitted. The stores themselves still
+ * log and swallow most database errors, the futures only fail if a store throws or the executor is full.
+ */
+public class AsyncDatabase {
+    private final DatabaseExecutor executor;
+    public final AsyncPlayers players;
+    public final AsyncBans bans;
+    public final AsyncHomes homes;
+    public final AsyncTracking tracking;
+    public final AsyncOnTime ontime;
+    public final AsyncWarps warps;
+    public final AsyncPortals portals;
+    public final AsyncSpawns spawns;
+
+    public AsyncDatabase(DatabaseExecutor executor) {
+        this.executor = executor;
+        this.players = new AsyncPlayers(DatabaseManager.players);
+        this.bans = new AsyncBans(DatabaseManager.bans);
+        this.homes = new AsyncHomes(DatabaseManager.homes);
+        this.tracking = new AsyncTracking(DatabaseManager.tracking);
+        this.ontime = new AsyncOnTime(DatabaseManager.ontime);
+        this.warps = new AsyncWarps(DatabaseManager.warps);
+        this.portals = new AsyncPortals(DatabaseManager.portals);
+        this.spawns = new AsyncSpawns(DatabaseManager.spawns);
+    }
+
+    public DatabaseExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Logs the failure of a write nobody waits for
+     */
+    public static void logFailure(ListenableFuture<?> future, final String action) {
+        Futures.addCallback(future, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                geSuit.instance.getLogger().warning("Could not " + action + ": " + t);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    public class AsyncPlayers {
+        private final PlayerStore store;
+
+        AsyncPlayers(PlayerStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Boolean> playerExists(final String player) {
+            return executor.submit("players.playerExists", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.playerExists(player);
+                }
+            });
+        }
+
+        public ListenableFuture<String> getPlayerIP(final String player) {
+            return executor.submit("players.getPlayerIP", null, new Callable<String>() {
+                @Override
+                public String call() {
+                    return store.getPlayerIP(player);
+                }
+            });
+        }
+
+        public ListenableFuture<Boolean> getPlayerTPS(final String player) {
+            return executor.submit("players.getPlayerTPS", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.getPlayerTPS(player);
+                }
+            });
+        }
+
+        public ListenableFuture<String[]> getAltPlayer(final String uuid, final String ip, final boolean ignoreSelf) {
+            return executor.submit("players.getAltPlayer", null, new Callable<String[]>() {
+                @Override
+                public String[] call() {
+                    return store.getAltPlayer(uuid, ip, ignoreSelf);
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertPlayer(final GSPlayer player, final String ip) {
+            return executor.submit("players.insertPlayer", player.getUuid(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertPlayer(player, ip);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertPlayerConvert(final String player, final String uuid, final Timestamp lastonline, final String ip, final boolean tps) {
+            return executor.submit("players.insertPlayerConvert", uuid, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertPlayerConvert(player, uuid, lastonline, ip, tps);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> updatePlayer(final GSPlayer gsPlayer) {
+            return executor.submit("players.updatePlayer", gsPlayer.getUuid(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.updatePlayer(gsPlayer);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Boolean> updatePlayers(final Collection<GSPlayer> players) {
+            return executor.submit("players.updatePlayers", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.updatePlayers(players);
+                }
+            });
+        }
+
+        public ListenableFuture<GSPlayer> loadPlayer(final String player) {
+            return executor.submit("players.loadPlayer", null, new Callable<GSPlayer>() {
+                @Override
+                public GSPlayer call() {
+                    return store.loadPlayer(player);
+                }
+            });
+        }
+
+        public ListenableFuture<List<String>> matchPlayers(final String player) {
+            return executor.submit("players.matchPlayers", null, new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    return store.matchPlayers(player);
+                }
+            });
+        }
+
+        public ListenableFuture<Map<String, UUID>> resolvePlayerNames(final Collection<String> names) {
+            return executor.submit("players.resolvePlayerNames", null, new Callable<Map<String, UUID>>() {
+                @Override
+                public Map<String, UUID> call() {
+                    return store.resolvePlayerNames(names);
+                }
+            });
+        }
+
+        public ListenableFuture<Map<String, UUID>> resolvePlayerNamesHistoric(final Collection<String> names) {
+            return executor.submit("players.resolvePlayerNamesHistoric", null, new Callable<Map<String, UUID>>() {
+                @Override
+                public Map<String, UUID> call() {
+                    return store.resolvePlayerNamesHistoric(names);
+                }
+            });
+        }
+
+        public ListenableFuture<Map<UUID, String>> resolveUUIDs(final Collection<UUID> ids) {
+            return executor.submit("players.resolveUUIDs", null, new Callable<Map<UUID, String>>() {
+                @Override
+                public Map<UUID, String> call() {
+                    return store.resolveUUIDs(ids);
+                }
+            });
+        }
+    }
+
+    public class AsyncBans {
+        private final BanStore store;
+
+        AsyncBans(BanStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Boolean> isPlayerBanned(final String player) {
+            return executor.submit("bans.isPlayerBanned", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.isPlayerBanned(player);
+                }
+            });
+        }
+
+        public ListenableFuture<Boolean> isPlayerBanned(final String player, final String uuid, final String ip) {
+            return executor.submit("bans.isPlayerBanned", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.isPlayerBanned(player, uuid, ip);
+                }
+            });
+        }
+
+        public ListenableFuture<Integer> banPlayer(final String banned_playername, final String banned_uuid, final String banned_ip, final String bannedBy, final String reason, final String type) {
+            return executor.submit("bans.banPlayer", banned_playername, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return store.banPlayer(banned_playername, banned_uuid, banned_ip, bannedBy, reason, type);
+                }
+            });
+        }
+
+        public ListenableFuture<Integer> warnPlayer(final String banned_playername, final String banned_uuid, final String bannedBy, final String reason) {
+            return executor.submit("bans.warnPlayer", banned_playername, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return store.warnPlayer(banned_playername, banned_uuid, bannedBy, reason);
+                }
+            });
+        }
+
+        public ListenableFuture<Integer> kickPlayer(final String banned_playername, final String banned_uuid, final String bannedBy, final String reason) {
+            return executor.submit("bans.kickPlayer", banned_playername, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return store.kickPlayer(banned_playername, banned_uuid, bannedBy, reason);
+                }
+            });
+        }
+
+        public ListenableFuture<Integer> tempBanPlayer(final String banned_playername, final String banned_uuid, final String banned_by, final String reason, final String till) {
+            return executor.submit("bans.tempBanPlayer", banned_playername, new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return store.tempBanPlayer(banned_playername, banned_uuid, banned_by, reason, till);
+                }
+            });
+        }
+
+        public ListenableFuture<List<Ban>> getBanHistory(final String lookup, final String uuid) {
+            return executor.submit("bans.getBanHistory", null, new Callable<List<Ban>>() {
+                @Override
+                public List<Ban> call() {
+                    return store.getBanHistory(lookup, uuid);
+                }
+            });
+        }
+
+        public ListenableFuture<List<Ban>> getWarnHistory(final String player, final String uuid) {
+            return executor.submit("bans.getWarnHistory", null, new Callable<List<Ban>>() {
+                @Override
+                public List<Ban> call() {
+                    return store.getWarnHistory(player, uuid);
+                }
+            });
+        }
+
+        public ListenableFuture<List<Ban>> getKickHistory(final String player, final String uuid) {
+            return executor.submit("bans.getKickHistory", null, new Callable<List<Ban>>() {
+                @Override
+                public List<Ban> call() {
+                    return store.getKickHistory(player, uuid);
+                }
+            });
+        }
+
+        public ListenableFuture<List<Ban>> getKickWarnHistory(final String player, final String uuid) {
+            return executor.submit("bans.getKickWarnHistory", null, new Callable<List<Ban>>() {
+                @Override
+                public List<Ban> call() {
+                    return store.getKickWarnHistory(player, uuid);
+                }
+            });
+        }
+
+        public ListenableFuture<Ban> getBanInfo(final String player) {
+            return executor.submit("bans.getBanInfo", null, new Callable<Ban>() {
+                @Override
+                public Ban call() {
+                    return store.getBanInfo(player);
+                }
+            });
+        }
+
+        public ListenableFuture<Ban> getBanInfo(final String player, final String uuid, final String ip) {
+            return executor.submit("bans.getBanInfo", null, new Callable<Ban>() {
+                @Override
+                public Ban call() {
+                    return store.getBanInfo(player, uuid, ip);
+                }
+            });
+        }
+
+        public ListenableFuture<List<Ban>> getActiveBans(final int sinceId) {
+            return executor.submit("bans.getActiveBans", null, new Callable<List<Ban>>() {
+                @Override
+                public List<Ban> call() {
+                    return store.getActiveBans(sinceId);
+                }
+            });
+        }
+
+        public ListenableFuture<Void> unbanPlayer(final int id) {
+            return executor.submit("bans.unbanPlayer", id, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.unbanPlayer(id);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> updateBanUUID(final int id, final String uuid) {
+            return executor.submit("bans.updateBanUUID", id, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.updateBanUUID(id, uuid);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertBanConvert(final String bannedBy, final String player, final String uuid, final String ip, final String reason, final String type, final int active, final Date bannedOn, final Date bannedUntil) {
+            return executor.submit("bans.insertBanConvert", null, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertBanConvert(bannedBy, player, uuid, ip, reason, type, active, bannedOn, bannedUntil);
+                    return null;
+                }
+            });
+        }
+    }
+
+    public class AsyncHomes {
+        private final HomeStore store;
+
+        AsyncHomes(HomeStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Void> addHome(final Home home) {
+            return executor.submit("homes.addHome", home.owner.getUuid(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.addHome(home);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> updateHome(final Home home) {
+            return executor.submit("homes.updateHome", home.owner.getUuid(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.updateHome(home);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> deleteHome(final Home home) {
+            return executor.submit("homes.deleteHome", home.owner.getUuid(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.deleteHome(home);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<List<Home>> getHomesForPlayer(final GSPlayer player) {
+            return executor.submit("homes.getHomesForPlayer", player.getUuid(), new Callable<List<Home>>() {
+                @Override
+                public List<Home> call() {
+                    return store.getHomesForPlayer(player);
+                }
+            });
+        }
+    }
+
+    public class AsyncTracking {
+        private final TrackingStore store;
+
+        AsyncTracking(TrackingStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Void> insertTracking(final String player, final String uuid, final String ip) {
+            return executor.submit("tracking.insertTracking", uuid, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertTracking(player, uuid, ip);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertHistoricTracking(final String player, final String uuid, final String ip, final Date changedDate, final Date lastSeen) {
+            return executor.submit("tracking.insertHistoricTracking", uuid, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertHistoricTracking(player, uuid, ip, changedDate, lastSeen);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Boolean> touchTracking(final Collection<Track> tracks) {
+            return executor.submit("tracking.touchTracking", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.touchTracking(tracks);
+                }
+            });
+        }
+
+        public ListenableFuture<List<Track>> getPlayerTracking(final String search, final String type) {
+            return executor.submit("tracking.getPlayerTracking", null, new Callable<List<Track>>() {
+                @Override
+                public List<Track> call() {
+                    return store.getPlayerTracking(search, type);
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertNameHistory(final GSPlayer player) {
+            return executor.submit("tracking.insertNameHistory", player.getUuid(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertNameHistory(player);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<List<Track>> getNameHistory(final UUID id) {
+            return executor.submit("tracking.getNameHistory", null, new Callable<List<Track>>() {
+                @Override
+                public List<Track> call() {
+                    return store.getNameHistory(id);
+                }
+            });
+        }
+
+        public ListenableFuture<Track> checkNameChange(final UUID id, final String playername) {
+            return executor.submit("tracking.checkNameChange", null, new Callable<Track>() {
+                @Override
+                public Track call() {
+                    return store.checkNameChange(id, playername);
+                }
+            });
+        }
+    }
+
+    public class AsyncOnTime {
+        private final OnTimeStore store;
+
+        AsyncOnTime(OnTimeStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Boolean> addOnTime(final OnTimeAccumulator.Batch batch) {
+            return executor.submit("ontime.addOnTime", null, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.addOnTime(batch);
+                }
+            });
+        }
+
+        public ListenableFuture<TimeRecord> getPlayerOnTime(final String uuid) {
+            return executor.submit("ontime.getPlayerOnTime", null, new Callable<TimeRecord>() {
+                @Override
+                public TimeRecord call() {
+                    return store.getPlayerOnTime(uuid);
+                }
+            });
+        }
+
+        public ListenableFuture<Map<String, Long>> getOnTimeTop(final int pagenum) {
+            return executor.submit("ontime.getOnTimeTop", null, new Callable<Map<String, Long>>() {
+                @Override
+                public Map<String, Long> call() {
+                    return store.getOnTimeTop(pagenum);
+                }
+            });
+        }
+
+        public ListenableFuture<Map<Timestamp, Long>> getLastLogins(final String uuid, final int num) {
+            return executor.submit("ontime.getLastLogins", null, new Callable<Map<Timestamp, Long>>() {
+                @Override
+                public Map<Timestamp, Long> call() {
+                    return store.getLastLogins(uuid, num);
+                }
+            });
+        }
+    }
+
+    public class AsyncWarps {
+        private final WarpStore store;
+
+        AsyncWarps(WarpStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<List<Warp>> getWarps() {
+            return executor.submit("warps.getWarps", null, new Callable<List<Warp>>() {
+                @Override
+                public List<Warp> call() {
+                    return store.getWarps();
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertWarp(final Warp warp) {
+            return executor.submit("warps.insertWarp", warp.getName().toLowerCase(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertWarp(warp);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> updateWarp(final Warp warp) {
+            return executor.submit("warps.updateWarp", warp.getName().toLowerCase(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.updateWarp(warp);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> deleteWarp(final String warp) {
+            return executor.submit("warps.deleteWarp", warp.toLowerCase(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.deleteWarp(warp);
+                    return null;
+                }
+            });
+        }
+    }
+
+    public class AsyncPortals {
+        private final PortalStore store;
+
+        AsyncPortals(PortalStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Map<ServerInfo, List<Portal>>> getPortals() {
+            return executor.submit("portals.getPortals", null, new Callable<Map<ServerInfo, List<Portal>>>() {
+                @Override
+                public Map<ServerInfo, List<Portal>> call() {
+                    return store.getPortals();
+                }
+            });
+        }
+
+        public ListenableFuture<Void> deletePortal(final String portalName) {
+            return executor.submit("portals.deletePortal", portalName, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.deletePortal(portalName);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertPortal(final Portal portal) {
+            return executor.submit("portals.insertPortal", portal.getName(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertPortal(portal);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> updatePortal(final Portal portal) {
+            return executor.submit("portals.updatePortal", portal.getName(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.updatePortal(portal);
+                    return null;
+                }
+            });
+        }
+    }
+
+    public class AsyncSpawns {
+        private final SpawnStore store;
+
+        AsyncSpawns(SpawnStore store) {
+            this.store = store;
+        }
+
+        public ListenableFuture<Location> getSpawn(final String spawnName) {
+            return executor.submit("spawns.getSpawn", null, new Callable<Location>() {
+                @Override
+                public Location call() {
+                    return store.getSpawn(spawnName);
+                }
+            });
+        }
+
+        public ListenableFuture<Void> deleteWorldSpawn(final String server, final String world) {
+            return executor.submit("spawns.deleteWorldSpawn", world, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.deleteWorldSpawn(server, world);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<List<Spawn>> getSpawnsForServer(final String server) {
+            return executor.submit("spawns.getSpawnsForServer", null, new Callable<List<Spawn>>() {
+                @Override
+                public List<Spawn> call() {
+                    return store.getSpawnsForServer(server);
+                }
+            });
+        }
+
+        public ListenableFuture<Void> insertSpawn(final Spawn spawn) {
+            return executor.submit("spawns.insertSpawn", spawn.getName(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.insertSpawn(spawn);
+                    return null;
+                }
+            });
+        }
+
+        public ListenableFuture<Void> updateSpawn(final Spawn spawn) {
+            return executor.submit("spawns.updateSpawn", spawn.getName(), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.updateSpawn(spawn);
+                    return null;
+                }
+            });
+        }
+    }
+}
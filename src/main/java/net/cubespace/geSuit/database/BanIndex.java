@@ -0,0 +1,327 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.objects.Ban;
+import net.md_5.bungee.api.ProxyServer;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In memory copy of every active ban, ipban and tempban, indexed by UUID, lower cased player name and IP. Lookups
+ * never touch the database. Bans made through this proxy are added and removed by {@link Bans} as they are written.
+ * Bans and unbans made by other proxies are picked up by a periodic sync of the bans changed since the last one,
+ * whatever their id, and a less frequent full reload catches anything the sync missed.
+ */
+public class BanIndex {
+    /**
+     * Changes are synced again for this long, a transaction which committed after a later one is not missed
+     */
+    private static final long SYNC_OVERLAP = TimeUnit.SECONDS.toMillis(30);
+
+    private volatile Map<Integer, Ban> byId = new ConcurrentHashMap<>();
+    private volatile Map<String, List<Ban>> byUUID = new ConcurrentHashMap<>();
+    private volatile Map<String, List<Ban>> byName = new ConcurrentHashMap<>();
+    private volatile Map<String, List<Ban>> byIP = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+    // Time of the last ban change the index has seen, taken from the database clock
+    private Timestamp lastChange;
+
+    // Changes made while a full reload is running, replayed onto the reloaded maps
+    private List<Ban> reloadAdded;
+    private List<Integer> reloadRemoved;
+
+    /**
+     * @return True once the index holds a complete copy of the active bans
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return Every ban in the index
+     */
+    public List<Ban> getBans() {
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Fills an index which could not be loaded from the database with bans from a {@link LoginSnapshot}. The index
+     * still counts as not loaded, so the next reload replaces them.
+     */
+    public synchronized void restore(List<Ban> bans) {
+        if (loaded) {
+            return;
+        }
+
+        for (Ban ban : bans) {
+            put(byId, byUUID, byName, byIP, ban);
+        }
+    }
+
+    /**
+     * Replaces the whole index with the active bans stored in the database
+     */
+    public void reload() {
+        synchronized (this) {
+            reloadAdded = new ArrayList<>();
+            reloadRemoved = new ArrayList<>();
+        }
+
+        // Read first, changes made during the reload are synced again. Without the change time there is nothing to sync.
+        Timestamp changed = DatabaseManager.bans.tracksChanges() ? DatabaseManager.bans.getLastBanChange() : null;
+        List<Ban> bans = DatabaseManager.bans.getActiveBans(0);
+        if (bans == null) {
+            synchronized (this) {
+                reloadAdded = null;
+                reloadRemoved = null;
+            }
+            return;
+        }
+
+        Map<Integer, Ban> newById = new ConcurrentHashMap<>();
+        Map<String, List<Ban>> newByUUID = new ConcurrentHashMap<>();
+        Map<String, List<Ban>> newByName = new ConcurrentHashMap<>();
+        Map<String, List<Ban>> newByIP = new ConcurrentHashMap<>();
+
+        for (Ban ban : bans) {
+            put(newById, newByUUID, newByName, newByIP, ban);
+        }
+
+        synchronized (this) {
+            for (Ban ban : reloadAdded) {
+                put(newById, newByUUID, newByName, newByIP, ban);
+            }
+
+            for (Integer id : reloadRemoved) {
+                remove(newById, newByUUID, newByName, newByIP, id);
+            }
+
+            reloadAdded = null;
+            reloadRemoved = null;
+
+            byId = newById;
+            byUUID = newByUUID;
+            byName = newByName;
+            byIP = newByIP;
+            if (changed != null) {
+                lastChange = changed;
+            }
+            loaded = true;
+        }
+
+        geSuit.instance.DebugMsg("Loaded " + newById.size() + " active bans into the ban index");
+    }
+
+    /**
+     * Applies the bans and unbans which were written since the last sync, by this proxy or others
+     */
+    public void syncChanges() {
+        Timestamp since;
+        synchronized (this) {
+            since = lastChange;
+        }
+        // Not loaded yet, no other proxy writes the bans or the bans do not record when they change
+        if (since == null) {
+            return;
+        }
+
+        Timestamp changed = DatabaseManager.bans.getLastBanChange();
+        List<Ban> bans = changed == null ? null : DatabaseManager.bans.getChangedBans(new Timestamp(since.getTime() - SYNC_OVERLAP));
+        if (bans == null) {
+            return;
+        }
+
+        for (Ban ban : bans) {
+            if (ban.getActive() == 1) {
+                add(ban);
+            } else {
+                remove(ban.getId());
+            }
+        }
+
+        synchronized (this) {
+            if (lastChange == null || changed.after(lastChange)) {
+                lastChange = changed;
+            }
+        }
+    }
+
+    public synchronized void add(Ban ban) {
+        if (ban.getId() < 0) {
+            return;
+        }
+
+        put(byId, byUUID, byName, byIP, ban);
+
+        if (reloadAdded != null) {
+            reloadAdded.add(ban);
+        }
+    }
+
+    public synchronized void remove(int id) {
+        remove(byId, byUUID, byName, byIP, id);
+
+        if (reloadRemoved != null) {
+            reloadRemoved.add(id);
+        }
+    }
+
+    /**
+     * Finds the active ban which matches any of the given keys. Bans are preferred in the same order the database
+     * returns them: ban, ipban and then tempban. Tempbans which have run out are dropped from the index and
+     * deactivated in the database on the way.
+     *
+     * @return The matching ban or null if the player is allowed to join
+     */
+    public Ban getActiveBan(String player, String uuid, String ip) {
+        List<Ban> candidates = new ArrayList<>(2);
+        collect(candidates, byUUID, uuid);
+        collect(candidates, byName, player == null ? null : player.toLowerCase());
+        collect(candidates, byIP, ip);
+
+        Ban found = null;
+        long now = System.currentTimeMillis();
+        for (Ban ban : candidates) {
+            if (ban.getBannedUntil() != null && ban.getBannedUntil().getTime() <= now) {
+                expire(ban);
+                continue;
+            }
+
+            if (found == null || ban.getType().compareTo(found.getType()) < 0 || (ban.getType().equals(found.getType()) && ban.getId() < found.getId())) {
+                found = ban;
+            }
+        }
+
+        return found;
+    }
+
+    private void expire(final Ban ban) {
+        if (byId.get(ban.getId()) == null) {
+            return;
+        }
+
+        remove(ban.getId());
+        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                DatabaseManager.bans.unbanPlayer(ban.getId());
+            }
+        });
+    }
+
+    /**
+     * Keeps the index in step with the database: changed bans every {@code BanIndexSyncInterval} seconds and a full
+     * reload every {@code BanIndexReloadInterval} seconds
+     */
+    public void startSync() {
+        int sync = ConfigManager.bans.BanIndexSyncInterval;
+        if (sync > 0) {
+            ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+                @Override
+                public void run() {
+                    syncChanges();
+                }
+            }, sync, sync, TimeUnit.SECONDS);
+        }
+
+        int reload = ConfigManager.bans.BanIndexReloadInterval;
+        if (reload > 0) {
+            ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+                @Override
+                public void run() {
+                    reload();
+                }
+            }, reload, reload, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void collect(List<Ban> candidates, Map<String, List<Ban>> index, String key) {
+        if (key == null) {
+            return;
+        }
+
+        List<Ban> bans = index.get(key);
+        if (bans != null) {
+            for (Ban ban : bans) {
+                if (!candidates.contains(ban)) {
+                    candidates.add(ban);
+                }
+            }
+        }
+    }
+
+    private static void put(Map<Integer, Ban> byId, Map<String, List<Ban>> byUUID, Map<String, List<Ban>> byName, Map<String, List<Ban>> byIP, Ban ban) {
+        Ban old = byId.put(ban.getId(), ban);
+        if (old != null) {
+            unlink(byUUID, old.getUuid(), old.getId());
+            unlink(byName, old.getPlayer() == null ? null : old.getPlayer().toLowerCase(), old.getId());
+            unlink(byIP, old.getIp(), old.getId());
+        }
+
+        link(byUUID, ban.getUuid(), ban);
+        link(byName, ban.getPlayer() == null ? null : ban.getPlayer().toLowerCase(), ban);
+        link(byIP, ban.getIp(), ban);
+    }
+
+    private static void remove(Map<Integer, Ban> byId, Map<String, List<Ban>> byUUID, Map<String, List<Ban>> byName, Map<String, List<Ban>> byIP, int id) {
+        Ban old = byId.remove(id);
+        if (old != null) {
+            unlink(byUUID, old.getUuid(), id);
+            unlink(byName, old.getPlayer() == null ? null : old.getPlayer().toLowerCase(), id);
+            unlink(byIP, old.getIp(), id);
+        }
+    }
+
+    // Lists are never modified in place so readers can use them without locking
+    private static void link(Map<String, List<Ban>> index, String key, Ban ban) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+
+        List<Ban> current = index.get(key);
+        List<Ban> updated = new ArrayList<>(current == null ? 1 : current.size() + 1);
+        if (current != null) {
+            updated.addAll(current);
+        }
+        updated.add(ban);
+        index.put(key, Collections.unmodifiableList(updated));
+    }
+
+    private static void unlink(Map<String, List<Ban>> index, String key, int id) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+
+        List<Ban> current = index.get(key);
+        if (current == null) {
+            return;
+        }
+
+        List<Ban> updated = new ArrayList<>(current.size());
+        for (Ban ban : current) {
+            if (ban.getId() != id) {
+                updated.add(ban);
+            }
+        }
+
+        if (updated.isEmpty()) {
+            index.remove(key);
+        } else {
+            index.put(key, Collections.unmodifiableList(updated));
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.Ban;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Bans, tempbans, kicks and warnings. Active bans which are added or removed are passed on to the {@link BanIndex}.
+ */
+public interface BanStore {
+    public boolean isPlayerBanned(String player);
+    public boolean isPlayerBanned(String player, String uuid, String ip);
+    public int banPlayer(String banned_playername, String banned_uuid, String banned_ip, String bannedBy, String reason, String type);
+    public int warnPlayer(String banned_playername, String banned_uuid, String bannedBy, String reason);
+    public int kickPlayer(String banned_playername, String banned_uuid, String bannedBy, String reason);
+    public int tempBanPlayer(String banned_playername, String banned_uuid, String banned_by, String reason, String till);
+    public List<Ban> getBanHistory(String lookup, String uuid);
+    public List<Ban> getWarnHistory(String player, String uuid);
+    public List<Ban> getKickHistory(String player, String uuid);
+    public List<Ban> getKickWarnHistory(String player, String uuid);
+    public Ban getBanInfo(String player);
+    public Ban getBanInfo(String player, String uuid, String ip);
+
+    /**
+     * @param sinceId Only return bans with a higher id than this
+     * @return Every active ban, ipban and tempban or null if the bans could not be read
+     */
+    public List<Ban> getActiveBans(int sinceId);
+
+    /**
+     * @return False if the bans do not record when they change, or that could not be checked yet.
+     * {@link #getLastBanChange()} and {@link #getChangedBans(Timestamp)} must not be used then.
+     */
+    public boolean tracksChanges();
+
+    /**
+     * @return When a ban was last added or changed, null if it could not be read or no other proxy shares the bans
+     */
+    public Timestamp getLastBanChange();
+
+    /**
+     * @param since Only return bans which were added or changed at or after this time
+     * @return The bans, ipbans and tempbans, including the lifted ones, or null if the bans could not be read
+     */
+    public List<Ban> getChangedBans(Timestamp since);
+    public void unbanPlayer(int id);
+    public void updateBanUUID(int id, String uuid);
+    public void insertBanConvert(String bannedBy, String player, String uuid, String ip, String reason, String type, int active, Date bannedOn, Date bannedUntil);
+}
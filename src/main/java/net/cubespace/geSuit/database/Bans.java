@@ -2,6 +2,7 @@ package net.cubespace.geSuit.database;
 
 import net.cubespace.Yamler.Config.InvalidConfigurationException;
 import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
 import net.cubespace.geSuit.objects.Ban;
@@ -10,6 +11,7 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -18,7 +20,9 @@ import java.util.logging.Logger;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Bans implements IRepository {
+public class Bans implements IRepository, BanStore {
+    // Null until the table has been checked for the changed_at column of schema migration 7
+    private volatile Boolean tracksChanges;
 
     public boolean isPlayerBanned(String player) {
         return isPlayerBanned(player, null, null);
@@ -26,6 +30,9 @@ public class Bans implements IRepository {
 
     public boolean isPlayerBanned(String player, String uuid, String ip) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
 
         try {
             PreparedStatement isPlayerBanned = connectionHandler.getPreparedStatement("isPlayerBanned");
@@ -45,6 +52,10 @@ public class Bans implements IRepository {
 
     public int banPlayer(String banned_playername, String banned_uuid, String banned_ip, String bannedBy, String reason, String type) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not store the ban of " + (banned_playername != null ? banned_playername : banned_ip) + ", the database is unreachable");
+            return -1;
+        }
 
         try {
             PreparedStatement banPlayer = connectionHandler.getPreparedStatement("banPlayer");
@@ -58,7 +69,9 @@ public class Bans implements IRepository {
             banPlayer.executeUpdate();
             ResultSet rs = banPlayer.getGeneratedKeys();
             if ( rs != null && rs.next() ) {
-                return rs.getInt( 1 );
+                int id = rs.getInt( 1 );
+                DatabaseManager.banIndex.add(new Ban(id, banned_playername, banned_uuid, banned_ip, bannedBy, reason, type, 1, new Timestamp(System.currentTimeMillis()), null));
+                return id;
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -71,6 +84,9 @@ public class Bans implements IRepository {
 
     public int warnPlayer(String banned_playername, String banned_uuid, String bannedBy, String reason) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return -1;
+        }
 
         try {
             PreparedStatement banPlayer = connectionHandler.getPreparedStatement("warnPlayer");
@@ -95,6 +111,9 @@ public class Bans implements IRepository {
 
     public int kickPlayer(String banned_playername, String banned_uuid, String bannedBy, String reason) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return -1;
+        }
 
         try {
             PreparedStatement banPlayer = connectionHandler.getPreparedStatement("kickPlayer");
@@ -117,8 +136,12 @@ public class Bans implements IRepository {
         return -1;
     }
 
-    public void tempBanPlayer(String banned_playername, String banned_uuid, String banned_by, String reason, String till) {
+    public int tempBanPlayer(String banned_playername, String banned_uuid, String banned_by, String reason, String till) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not store the tempban of " + banned_playername + ", the database is unreachable");
+            return -1;
+        }
 
         try {
             PreparedStatement tempBanPlayer = connectionHandler.getPreparedStatement("tempBanPlayer");
@@ -129,17 +152,29 @@ public class Bans implements IRepository {
             tempBanPlayer.setString(5, till);
 
             tempBanPlayer.executeUpdate();
+            ResultSet rs = tempBanPlayer.getGeneratedKeys();
+            if (rs != null && rs.next()) {
+                int id = rs.getInt(1);
+                DatabaseManager.banIndex.add(new Ban(id, banned_playername, banned_uuid, null, banned_by, reason, "tempban", 1, new Timestamp(System.currentTimeMillis()), Timestamp.valueOf(till)));
+                return id;
+            }
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
             connectionHandler.release();
         }
+
+        return -1;
     }
 
     public List<Ban> getBanHistory(String lookup, String uuid) {
         List<Ban> bans = new ArrayList<>();
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return bans;
+        }
+
         try {
             PreparedStatement banInfo = connectionHandler.getPreparedStatement("banHistory");
             banInfo.setString(1, lookup);
@@ -164,7 +199,11 @@ public class Bans implements IRepository {
     public List<Ban> getWarnHistory(String player, String uuid) {
         List<Ban> bans = new ArrayList<>();
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return bans;
+        }
+
         try {
             PreparedStatement banInfo = connectionHandler.getPreparedStatement("warnHistory");
             banInfo.setString(1, player);
@@ -188,7 +227,11 @@ public class Bans implements IRepository {
     public List<Ban> getKickHistory(String player, String uuid) {
         List<Ban> bans = new ArrayList<>();
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return bans;
+        }
+
         try {
             PreparedStatement banInfo = connectionHandler.getPreparedStatement("kickHistory");
             banInfo.setString(1, player);
@@ -212,7 +255,11 @@ public class Bans implements IRepository {
     public List<Ban> getKickWarnHistory(String player, String uuid) {
         List<Ban> bans = new ArrayList<>();
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return bans;
+        }
+
         try {
             PreparedStatement banInfo = connectionHandler.getPreparedStatement("kickwarnHistory");
             banInfo.setString(1, player);
@@ -239,6 +286,9 @@ public class Bans implements IRepository {
 
     public Ban getBanInfo(String player, String uuid, String ip) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
 
         Ban b = null;
 
@@ -263,13 +313,144 @@ public class Bans implements IRepository {
         return b;
     }
 
+    /**
+     * @param sinceId Only return bans with a higher id than this
+     * @return Every active ban, ipban and tempban or null if the database could not be read
+     */
+    public List<Ban> getActiveBans(int sinceId) {
+        List<Ban> bans = new ArrayList<>();
+
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            // An empty list would replace the whole ban index
+            return null;
+        }
+
+        try {
+            PreparedStatement activeBans = connectionHandler.getPreparedStatement("activeBans");
+            activeBans.setInt(1, sinceId);
+
+            ResultSet res = activeBans.executeQuery();
+            while (res.next()) {
+                bans.add(new Ban(res.getInt("id"), res.getString("banned_playername"), res.getString("banned_uuid"), res.getString("banned_ip"), res.getString("banned_by"), res.getString("reason"), res.getString("type"), res.getInt("active"), res.getTimestamp("banned_on"), res.getTimestamp("banned_until")));
+            }
+
+            res.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            connectionHandler.release();
+        }
+
+        return bans;
+    }
+
+    public boolean tracksChanges() {
+        Boolean tracked = tracksChanges;
+        if (tracked != null) {
+            return tracked;
+        }
+
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
+
+        try (ResultSet res = connectionHandler.getConnection().getMetaData().getColumns(null, null, ConfigManager.main.Table_Bans, "changed_at")) {
+            tracked = res.next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            connectionHandler.release();
+        }
+
+        if (!tracked) {
+            geSuit.instance.getLogger().warning("The bans table has no changed_at column as schema migration 7 has not run, bans made on other proxies are only picked up by the full ban index reload every " + ConfigManager.bans.BanIndexReloadInterval + "s");
+        }
+        tracksChanges = tracked;
+        return tracked;
+    }
+
+    public Timestamp getLastBanChange() {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
+
+        try {
+            ResultSet res = connectionHandler.getPreparedStatement("lastBanChange").executeQuery();
+            Timestamp changed = res.next() ? res.getTimestamp("changed") : null;
+            res.close();
+            return changed;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
+        }
+
+        return null;
+    }
+
+    public List<Ban> getChangedBans(Timestamp since) {
+        List<Ban> bans = new ArrayList<>();
+
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
+
+        try {
+            PreparedStatement changedBans = connectionHandler.getPreparedStatement("changedBans");
+            changedBans.setTimestamp(1, since);
+
+            ResultSet res = changedBans.executeQuery();
+            while (res.next()) {
+                bans.add(new Ban(res.getInt("id"), res.getString("banned_playername"), res.getString("banned_uuid"), res.getString("banned_ip"), res.getString("banned_by"), res.getString("reason"), res.getString("type"), res.getInt("active"), res.getTimestamp("banned_on"), res.getTimestamp("banned_until")));
+            }
+
+            res.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            connectionHandler.release();
+        }
+
+        return bans;
+    }
+
     public void unbanPlayer(int id) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not lift ban " + id + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement unbanPlayer = connectionHandler.getPreparedStatement("unbanPlayer");
             unbanPlayer.setInt(1, id);
             unbanPlayer.executeUpdate();
+            DatabaseManager.banIndex.remove(id);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
+        }
+    }
+
+    public void updateBanUUID(int id, String uuid) {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
+
+        try {
+            PreparedStatement updateRowUUID = connectionHandler.getPreparedStatement("updateRowUUID");
+            updateRowUUID.setString(1, uuid);
+            updateRowUUID.setInt(2, id);
+            updateRowUUID.executeUpdate();
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -279,6 +460,9 @@ public class Bans implements IRepository {
 
     public void insertBanConvert(String bannedBy, String player, String uuid, String ip, String reason, String type, int active, Date bannedOn, Date bannedUntil) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement insertBanConvert = connectionHandler.getPreparedStatement("insertBanConvert");
@@ -288,9 +472,9 @@ public class Bans implements IRepository {
             insertBanConvert.setString(4, bannedBy);
             insertBanConvert.setString(5, reason);
             insertBanConvert.setString(6, type);
-            insertBanConvert.setInt(6, active);
-            insertBanConvert.setDate(7, bannedOn);
-            insertBanConvert.setDate(8, bannedUntil);
+            insertBanConvert.setInt(7, active);
+            insertBanConvert.setDate(8, bannedOn);
+            insertBanConvert.setDate(9, bannedUntil);
 
             insertBanConvert.executeUpdate();
         } catch (Exception e) {
@@ -316,26 +500,29 @@ public class Bans implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("isPlayerBanned", "SELECT id FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? OR banned_ip = ?) AND type in ('ban', 'ipban', 'tempban') AND active = 1");
-        connection.addPreparedStatement("banPlayer", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_ip,banned_by,reason,type,active,banned_on) VALUES (?,?,?,?,?,?,1,NOW());", PreparedStatement.RETURN_GENERATED_KEYS);
-        connection.addPreparedStatement("warnPlayer", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_by,reason,type,active,banned_on) VALUES (?,?,?,?,'warn',0,NOW());", PreparedStatement.RETURN_GENERATED_KEYS);
-        connection.addPreparedStatement("kickPlayer", "INSERT INTO " + ConfigManager.main.Table_Bans + " (banned_playername,banned_uuid,banned_by,reason,type,active,banned_on) VALUES (?,?,?,?,'kick',0,NOW());", PreparedStatement.RETURN_GENERATED_KEYS);
-        connection.addPreparedStatement("unbanPlayer", "UPDATE "+ ConfigManager.main.Table_Bans +" SET active = 0 WHERE id = ?");
-        connection.addPreparedStatement("banInfo", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? OR banned_ip = ?) AND type in ('ban', 'ipban', 'tempban') AND active = 1 ORDER BY type");
-        connection.addPreparedStatement("banHistory", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? OR banned_ip = ?) AND type in ('ban', 'ipban', 'tempban') ORDER BY id ASC");
-        connection.addPreparedStatement("warnHistory", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? ) AND type = 'warn' ORDER BY id ASC");
-        connection.addPreparedStatement("kickHistory", "SELECT * FROM " + ConfigManager.main.Table_Bans + " WHERE (banned_playername = ? OR banned_uuid = ? ) AND type = 'kick' ORDER BY id ASC");
-        connection.addPreparedStatement("kickwarnHistory", "SELECT * FROM " + ConfigManager.main.Table_Bans + " WHERE (banned_playername = ? OR banned_uuid = ? ) AND type in ('kick','warn') ORDER BY id ASC");
-
-        connection.addPreparedStatement("tempBanPlayer", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_by,reason,type,active,banned_on,banned_until) VALUES(?,?,?,?,'tempban',1,NOW(),?)", PreparedStatement.RETURN_GENERATED_KEYS);
-        connection.addPreparedStatement("insertBanConvert", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_ip,banned_by,reason,type,active,banned_on,banned_until) VALUES(?,?,?,?,?,?,?,?,?)", PreparedStatement.RETURN_GENERATED_KEYS);
-        connection.addPreparedStatement("getBans", "SELECT * FROM "+ ConfigManager.main.Table_Bans);
-        connection.addPreparedStatement("updateRowUUID", "UPDATE "+ ConfigManager.main.Table_Bans +" SET banned_uuid = ? WHERE id = ?");
-        connection.addPreparedStatement("updateToUUID", "UPDATE "+ ConfigManager.main.Table_Bans +" SET banned_uuid = ? WHERE id = ?");
-        connection.addPreparedStatement("updateToVersion3-part1", "ALTER TABLE `"+ ConfigManager.main.Table_Bans +"` CHANGE `display` `banned_playername` VARCHAR( 100 );  ");
-        connection.addPreparedStatement("updateToVersion3-part2", "ALTER TABLE `"+ ConfigManager.main.Table_Bans +"` CHANGE `banned_entity` `banned_uuid` VARCHAR( 100 );  ");
-        connection.addPreparedStatement("updateToVersion3-part3", "ALTER TABLE `"+ ConfigManager.main.Table_Bans +"` ADD `banned_ip` VARCHAR( 15 ) NULL AFTER `banned_uuid`  ");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("isPlayerBanned", "SELECT id FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? OR banned_ip = ?) AND type in ('ban', 'ipban', 'tempban') AND active = 1");
+        statements.addPreparedStatement("banPlayer", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_ip,banned_by,reason,type,active,banned_on) VALUES (?,?,?,?,?,?,1,NOW());", PreparedStatement.RETURN_GENERATED_KEYS);
+        statements.addPreparedStatement("warnPlayer", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_by,reason,type,active,banned_on) VALUES (?,?,?,?,'warn',0,NOW());", PreparedStatement.RETURN_GENERATED_KEYS);
+        statements.addPreparedStatement("kickPlayer", "INSERT INTO " + ConfigManager.main.Table_Bans + " (banned_playername,banned_uuid,banned_by,reason,type,active,banned_on) VALUES (?,?,?,?,'kick',0,NOW());", PreparedStatement.RETURN_GENERATED_KEYS);
+        statements.addPreparedStatement("unbanPlayer", "UPDATE "+ ConfigManager.main.Table_Bans +" SET active = 0 WHERE id = ?");
+        statements.addPreparedStatement("banInfo", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? OR banned_ip = ?) AND type in ('ban', 'ipban', 'tempban') AND active = 1 ORDER BY type");
+        statements.addPreparedStatement("activeBans", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE id > ? AND type in ('ban', 'ipban', 'tempban') AND active = 1");
+        statements.addPreparedStatement("lastBanChange", "SELECT MAX(changed_at) AS changed FROM "+ ConfigManager.main.Table_Bans);
+        statements.addPreparedStatement("changedBans", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE changed_at >= ? AND type in ('ban', 'ipban', 'tempban')");
+        statements.addPreparedStatement("banHistory", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? OR banned_ip = ?) AND type in ('ban', 'ipban', 'tempban') ORDER BY id ASC");
+        statements.addPreparedStatement("warnHistory", "SELECT * FROM "+ ConfigManager.main.Table_Bans +" WHERE (banned_playername = ? OR banned_uuid = ? ) AND type = 'warn' ORDER BY id ASC");
+        statements.addPreparedStatement("kickHistory", "SELECT * FROM " + ConfigManager.main.Table_Bans + " WHERE (banned_playername = ? OR banned_uuid = ? ) AND type = 'kick' ORDER BY id ASC");
+        statements.addPreparedStatement("kickwarnHistory", "SELECT * FROM " + ConfigManager.main.Table_Bans + " WHERE (banned_playername = ? OR banned_uuid = ? ) AND type in ('kick','warn') ORDER BY id ASC");
+
+        statements.addPreparedStatement("tempBanPlayer", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_by,reason,type,active,banned_on,banned_until) VALUES(?,?,?,?,'tempban',1,NOW(),?)", PreparedStatement.RETURN_GENERATED_KEYS);
+        statements.addPreparedStatement("insertBanConvert", "INSERT INTO "+ ConfigManager.main.Table_Bans +" (banned_playername,banned_uuid,banned_ip,banned_by,reason,type,active,banned_on,banned_until) VALUES(?,?,?,?,?,?,?,?,?)", PreparedStatement.RETURN_GENERATED_KEYS);
+        statements.addMigrationStatement("getBans", "SELECT * FROM "+ ConfigManager.main.Table_Bans);
+        statements.addPreparedStatement("updateRowUUID", "UPDATE "+ ConfigManager.main.Table_Bans +" SET banned_uuid = ? WHERE id = ?");
+        statements.addMigrationStatement("updateToUUID", "UPDATE "+ ConfigManager.main.Table_Bans +" SET banned_uuid = ? WHERE id = ?");
+        statements.addMigrationStatement("updateToVersion3-part1", "ALTER TABLE `"+ ConfigManager.main.Table_Bans +"` CHANGE `display` `banned_playername` VARCHAR( 100 );  ");
+        statements.addMigrationStatement("updateToVersion3-part2", "ALTER TABLE `"+ ConfigManager.main.Table_Bans +"` CHANGE `banned_entity` `banned_uuid` VARCHAR( 100 );  ");
+        statements.addMigrationStatement("updateToVersion3-part3", "ALTER TABLE `"+ ConfigManager.main.Table_Bans +"` ADD `banned_ip` VARCHAR( 15 ) NULL AFTER `banned_uuid`  ");
     }
 
     @Override
@@ -348,6 +535,9 @@ public class Bans implements IRepository {
         if (installedVersion < 2) {
             // Version 2 adds UUIDs as Field
             ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
 
             // Convert all Names to UUIDs
             PreparedStatement getBans = connectionHandler.getPreparedStatement("getBans");
@@ -361,6 +551,9 @@ public class Bans implements IRepository {
 
                         if (uuid != null) {
                             ConnectionHandler connectionHandler1 = DatabaseManager.connectionPool.getConnection();
+                            if (connectionHandler1 == null) {
+                                return;
+                            }
 
                             try {
                                 PreparedStatement updateToUUID = connectionHandler1.getPreparedStatement("updateToUUID");
@@ -390,6 +583,10 @@ public class Bans implements IRepository {
             boolean updateCompleted = false;
             try {
                 connectionHandler = DatabaseManager.connectionPool.getConnection();
+                if (connectionHandler == null) {
+                    return;
+                }
+
                 PreparedStatement updateToVersion3 = connectionHandler.getPreparedStatement("updateToVersion3-part1");
                 updateToVersion3.executeUpdate();
                 updateToVersion3 = connectionHandler.getPreparedStatement("updateToVersion3-part2");
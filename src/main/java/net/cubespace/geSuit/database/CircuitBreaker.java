@@ -0,0 +1,109 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.md_5.bungee.api.ProxyServer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stops callers from queueing for a database which does not answer. After {@code threshold} borrows in a row failed
+ * the breaker opens and every borrow is refused straight away. Once {@code openTime} milliseconds have passed a
+ * single borrow is let through as a probe: if it succeeds the breaker closes and the recovery listeners run, if it
+ * fails the breaker stays open for another {@code openTime}. A probe which never got as far as the database is given
+ * back, so the next borrow probes instead.
+ */
+public class CircuitBreaker {
+    private final int threshold;
+    private final long openTime;
+    private final List<Runnable> recoveryListeners = new CopyOnWriteArrayList<>();
+
+    private int failures = 0;
+    private volatile boolean open = false;
+    private long openedAt;
+    private boolean probing = false;
+
+    public CircuitBreaker(int threshold, long openTime) {
+        this.threshold = Math.max(1, threshold);
+        this.openTime = openTime;
+    }
+
+    /**
+     * @return False if the caller must not touch the database, true if it may try. A caller which was allowed
+     * through has to report its outcome with {@link #recordSuccess()} or {@link #recordFailure()}, or give it back
+     * with {@link #releaseProbe()} if it did not reach the database.
+     */
+    public synchronized boolean allowRequest() {
+        if (!open) {
+            return true;
+        }
+
+        if (!probing && System.currentTimeMillis() - openedAt >= openTime) {
+            probing = true;
+            return true;
+        }
+
+        MetricsManager.increment("db.breaker.rejected");
+        return false;
+    }
+
+    public void recordSuccess() {
+        synchronized (this) {
+            failures = 0;
+            if (!open) {
+                return;
+            }
+            open = false;
+            probing = false;
+        }
+
+        MetricsManager.increment("db.breaker.closed");
+        geSuit.instance.getLogger().info("The database is reachable again");
+
+        for (final Runnable listener : recoveryListeners) {
+            ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, listener);
+        }
+    }
+
+    /**
+     * Ends a probe without an outcome, the breaker stays open and the next caller is let through as the probe
+     */
+    public synchronized void releaseProbe() {
+        probing = false;
+    }
+
+    public void recordFailure() {
+        synchronized (this) {
+            failures++;
+            if (open) {
+                // The probe failed, wait another round
+                probing = false;
+                openedAt = System.currentTimeMillis();
+                return;
+            }
+            if (failures < threshold) {
+                return;
+            }
+            open = true;
+            openedAt = System.currentTimeMillis();
+        }
+
+        MetricsManager.increment("db.breaker.opened");
+        geSuit.instance.getLogger().severe("The database is not reachable, refusing database work for " + (openTime / 1000) + "s at a time until it answers again");
+    }
+
+    /**
+     * @return True while database work is refused
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Runs the listener asynchronously every time the database becomes reachable again
+     */
+    public void addRecoveryListener(Runnable listener) {
+        recoveryListeners.add(listener);
+    }
+}
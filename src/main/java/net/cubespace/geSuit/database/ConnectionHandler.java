@@ -1,61 +1,181 @@
 package net.cubespace.geSuit.database;
 
+import net.cubespace.geSuit.configs.SubConfig.Database;
+import net.cubespace.geSuit.managers.MetricsManager;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * A pooled connection. Named statements are prepared the first time they are used on this connection and kept in a
+ * least recently used cache of {@link Database#StatementCacheSize} statements. Statements used during the current
+ * borrow are never evicted, the cache is trimmed when the connection is released instead.
+ */
 public class ConnectionHandler {
-    private Connection connection;
-    private boolean used;
-    private long lastUsed;
-    private LinkedHashMap<String, PreparedStatement> preparedStatements = new LinkedHashMap<>();
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final long created;
+    private final AtomicBoolean used = new AtomicBoolean(false);
+    private volatile long lastUsed;
+    private long leasedAt;
+    private final StatementRegistry statements;
+    private final int cacheSize;
+    private final LinkedHashMap<String, PreparedStatement> preparedStatements = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean migrationPrepared = false;
 
-    public ConnectionHandler(Connection connection) {
+    public ConnectionHandler(ConnectionPool pool, Connection connection, StatementRegistry statements, int cacheSize) {
+        this.pool = pool;
         this.connection = connection;
+        this.statements = statements;
+        this.cacheSize = Math.max(1, cacheSize);
+        this.created = System.currentTimeMillis();
+        this.lastUsed = created;
     }
 
     public Connection getConnection() {
         this.lastUsed = System.currentTimeMillis();
-        this.used = true;
         return connection;
     }
 
-    public boolean isOldConnection() {
-        return (System.currentTimeMillis() - lastUsed) > 30000;
+    /**
+     * @return True if this connection has not been handed out for longer than the given time
+     */
+    public boolean isIdleFor(long millis) {
+        return (System.currentTimeMillis() - lastUsed) > millis;
+    }
+
+    /**
+     * @return True if this connection was opened longer ago than the given time
+     */
+    public boolean isOlderThan(long millis) {
+        return (System.currentTimeMillis() - created) > millis;
     }
 
-    public void addPreparedStatement(String name, String query, int mode) {
+    /**
+     * Checks if the underlying connection is still usable. Connections which have been used within the given
+     * window are trusted without a round trip to the server.
+     */
+    public boolean isValid(long trustWindow, int timeoutSeconds) {
         try {
-            preparedStatements.put(name, connection.prepareStatement(query, mode));
+            if (connection.isClosed()) {
+                return false;
+            }
+
+            return !isIdleFor(trustWindow) || connection.isValid(timeoutSeconds);
         } catch (SQLException e) {
-            e.printStackTrace();
+            return false;
         }
     }
 
-    public void addPreparedStatement(String name, String query) {
+    /**
+     * @return The SQL of every named statement used at runtime, in the order they were registered
+     */
+    public Map<String, String> getQueries() {
+        return statements.getQueries();
+    }
+
+    /**
+     * @return The named statement, prepared on first use, or null if it is unknown or could not be prepared
+     */
+    public PreparedStatement getPreparedStatement(String name) {
+        this.lastUsed = System.currentTimeMillis();
+
+        PreparedStatement statement = preparedStatements.get(name);
+        if (statement != null) {
+            return statement;
+        }
+
+        StatementRegistry.Definition definition = statements.get(name);
+        if (definition == null) {
+            return null;
+        }
+
         try {
-            preparedStatements.put(name, connection.prepareStatement(query));
+            PreparedStatement prepared = definition.mode == StatementRegistry.NO_MODE ? connection.prepareStatement(definition.query) : connection.prepareStatement(definition.query, definition.mode);
+            statement = MeteredStatement.wrap(name, prepared);
         } catch (SQLException e) {
             e.printStackTrace();
+            return null;
         }
+
+        MetricsManager.increment("db.statements.prepared");
+        migrationPrepared |= definition.migration;
+        preparedStatements.put(name, statement);
+        return statement;
     }
 
-    public PreparedStatement getPreparedStatement(String name) {
-        this.used = true;
-        return preparedStatements.get(name);
+    // Drops one-off migration statements and the least recently used ones beyond the cache size
+    private void trimStatements() {
+        if (!migrationPrepared && preparedStatements.size() <= cacheSize) {
+            return;
+        }
+        migrationPrepared = false;
+
+        Iterator<Map.Entry<String, PreparedStatement>> it = preparedStatements.entrySet().iterator();
+        int excess = preparedStatements.size() - cacheSize;
+
+        while (it.hasNext()) {
+            Map.Entry<String, PreparedStatement> entry = it.next();
+            boolean migration = statements.get(entry.getKey()).migration;
+            if (!migration && excess <= 0) {
+                continue;
+            }
+
+            closeQuietly(entry.getValue());
+            it.remove();
+            if (!migration) {
+                MetricsManager.increment("db.statements.evicted");
+            }
+            excess--;
+        }
     }
 
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The connection is probably gone, it will be replaced
+        }
+    }
+
+    /**
+     * Marks this handler as borrowed. Only the pool should call this.
+     *
+     * @return False if the handler was already in use
+     */
+    boolean lease() {
+        if (used.compareAndSet(false, true)) {
+            this.lastUsed = System.currentTimeMillis();
+            this.leasedAt = System.nanoTime();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Hands the connection back to the pool. Releasing a handler twice has no effect.
+     */
     public void release() {
-        this.used = false;
+        if (used.compareAndSet(true, false)) {
+            this.lastUsed = System.currentTimeMillis();
+            trimStatements();
+            MetricsManager.getHistogram("db.connection.hold").recordSince(leasedAt);
+            pool.returnConnection(this);
+        }
     }
 
     public boolean isUsed() {
-        return used;
+        return used.get();
     }
 
     public void closeConnection() {
-        this.used = true;
+        this.used.set(true);
         if (connection != null) {
             try {
                 connection.close();
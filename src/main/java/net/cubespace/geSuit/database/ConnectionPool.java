@@ -3,9 +3,12 @@ package net.cubespace.geSuit.database;
 import net.cubespace.Yamler.Config.InvalidConfigurationException;
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.configs.SubConfig.Database;
+import net.cubespace.geSuit.configs.SubConfig.Replica;
 import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.MetricsManager;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -14,13 +17,66 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of MySQL connections. The named statements of all registered repositories are collected once, every
+ * connection prepares them when they are first used. Borrowers queue fairly for one of {@link Database#MaxConnections} permits and
+ * give up after {@link Database#ConnectionTimeout} milliseconds.
+ * <p>
+ * The pool of the main database can hold a pool per {@link Database#Replicas read replica}. Reads which tolerate
+ * some replication lag borrow from {@link #getReadConnection()}, which picks a replica that is reachable and not
+ * further behind than its {@link Replica#MaxLag} and falls back to the main database otherwise. Replica connections
+ * are read only, writes and login checks always use {@link #getConnection()}.
+ * <p>
+ * Borrows from the main database go through a {@link CircuitBreaker}. While it is open {@link #getConnection()}
+ * returns null straight away instead of letting every caller wait for the timeout.
+ * <p>
+ * Every borrower has to handle null. Reads fall back to an empty result, writes of bans, homes and warps are dropped
+ * with a warning in the log and failed bans are reported to whoever issued them.
+ */
 public class ConnectionPool {
+    /**
+     * Connections which were used within this window are not validated again when borrowed
+     */
+    private static final long VALIDATION_WINDOW = 1000;
+    private static final int VALIDATION_TIMEOUT = 2;
+
     private Database dbConfig;
     private ArrayList<IRepository> repositories = new ArrayList<>();
-    private ArrayList<ConnectionHandler> connections = new ArrayList<>();
+    private final StatementRegistry statements = new StatementRegistry();
+    private final LinkedBlockingDeque<ConnectionHandler> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private Semaphore permits;
+    private int minConnections;
+    private int maxConnections;
+    private ScheduledTask reaper;
+    private volatile boolean closed = false;
+
+    private final String replicaName;
+    private final int maxLag;
+    private volatile boolean healthy = true;
+    private volatile long lag = 0;
+    private final List<ConnectionPool> replicas = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private ScheduledTask lagCheck;
+    private CircuitBreaker breaker;
+
+    public ConnectionPool() {
+        this(null, 0);
+    }
+
+    private ConnectionPool(String replicaName, int maxLag) {
+        this.replicaName = replicaName;
+        this.maxLag = maxLag;
+    }
 
     public void addRepository(IRepository repository) {
         repositories.add(repository);
@@ -28,52 +84,71 @@ public class ConnectionPool {
 
     public boolean initialiseConnections(Database database) {
         this.dbConfig = database;
+        this.minConnections = Math.max(1, database.Threads);
+        // Repository upgrades borrow a second connection while holding one, so never go below two
+        this.maxConnections = Math.max(Math.max(2, minConnections), database.MaxConnections);
+        this.permits = new Semaphore(maxConnections, true);
+        if (replicaName == null) {
+            this.breaker = new CircuitBreaker(database.CircuitBreakerFailures, TimeUnit.SECONDS.toMillis(database.CircuitBreakerOpenTime));
+        }
 
-        for (int i = 0; i < database.Threads; i++) {
-            ConnectionHandler ch;
+        for (IRepository repository : repositories) {
+            repository.registerPreparedStatements(statements);
+        }
 
-            try {
-                Class.forName("com.mysql.jdbc.Driver");
-                Connection connection = DriverManager.getConnection("jdbc:mysql://" + database.Host + ":" + database.Port + "/" + database.Database, database.Username, database.Password);
+        try {
+            Class.forName("com.mysql.jdbc.Driver");
+        } catch (ClassNotFoundException ex) {
+            System.out.println(ChatColor.DARK_RED + "SQL is unable to conect");
+            ex.printStackTrace();
+            throw new IllegalStateException("The MySQL driver is missing");
+        }
 
-                ch = new ConnectionHandler(connection);
-                for(IRepository repository : repositories) {
-                    repository.registerPreparedStatements(ch);
+        for (int i = 0; i < minConnections; i++) {
+            totalConnections.incrementAndGet();
+
+            try {
+                idleConnections.offerLast(createConnection());
+            } catch (SQLException ex) {
+                totalConnections.decrementAndGet();
+                if (replicaName != null) {
+                    // Reads use the main database until the reaper manages to connect
+                    geSuit.instance.getLogger().warning("Could not connect to read replica " + replicaName + ": " + ex.getMessage());
+                    healthy = false;
+                    break;
                 }
-            } catch (SQLException | ClassNotFoundException ex) {
                 System.out.println(ChatColor.DARK_RED + "SQL is unable to conect");
                 ex.printStackTrace();
-                throw new IllegalStateException();
+                // The cause tells a database which can not be reached apart from a broken setup
+                throw new IllegalStateException("Could not connect to the database", ex);
             }
-
-            connections.add(ch);
         }
 
-        ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+        reaper = ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
             public void run() {
-                Iterator<ConnectionHandler> cons = connections.iterator();
-                while (cons.hasNext()) {
-                    ConnectionHandler con = cons.next();
-
-                    if (!con.isUsed() && con.isOldConnection()) {
-                        con.closeConnection();
-                        cons.remove();
-                    }
-                }
+                evictConnections();
             }
         }, 10, 10, TimeUnit.SECONDS);
 
+        // The schema is managed through the main database
+        if (replicaName != null) {
+            return true;
+        }
+
         if (!ConfigManager.main.Inited) {
             for(IRepository repository : repositories) {
+                // Name and definition pairs, some repositories keep more than one table
                 String[] tableInformation = repository.getTable();
 
-                if (!doesTableExist(tableInformation[0])) {
-                    try {
-                        standardQuery("CREATE TABLE IF NOT EXISTS `"+ tableInformation[0] +"` (" + tableInformation[1] + ");");
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                        geSuit.instance.getLogger().severe("Could not create Table");
-                        throw new IllegalStateException();
+                for (int i = 0; i + 1 < tableInformation.length; i += 2) {
+                    if (!doesTableExist(tableInformation[i])) {
+                        try {
+                            standardQuery("CREATE TABLE IF NOT EXISTS `"+ tableInformation[i] +"` (" + tableInformation[i + 1] + ");");
+                        } catch (SQLException e) {
+                            e.printStackTrace();
+                            geSuit.instance.getLogger().severe("Could not create Table");
+                            throw new IllegalStateException("Could not create table " + tableInformation[i]);
+                        }
                     }
                 }
             }
@@ -93,49 +168,369 @@ public class ConnectionPool {
         return true;
     }
 
+    private ConnectionHandler createConnection() throws SQLException {
+        // Batches are sent as multi-row inserts, an unreachable server fails within the borrow timeout
+        String url = "jdbc:mysql://" + dbConfig.Host + ":" + dbConfig.Port + "/" + dbConfig.Database + "?rewriteBatchedStatements=true&connectTimeout=" + dbConfig.ConnectionTimeout;
+        if (dbConfig.ServerPrepareStatements) {
+            url += "&useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=" + dbConfig.StatementCacheSize;
+        }
+        Connection connection = DriverManager.getConnection(url, dbConfig.Username, dbConfig.Password);
+
+        if (replicaName != null) {
+            connection.setReadOnly(true);
+        }
+
+        ConnectionHandler ch = new ConnectionHandler(this, connection, statements, dbConfig.StatementCacheSize);
+        MetricsManager.increment("db.connections.created");
+
+        return ch;
+    }
+
+    private void destroyConnection(ConnectionHandler ch) {
+        totalConnections.decrementAndGet();
+        MetricsManager.increment("db.connections.closed");
+        ch.closeConnection();
+    }
+
     /**
-     * @return Returns a free connection from the pool of connections. Creates a new connection if there are none available
+     * @return Returns a free connection from the pool of connections. Creates a new connection if there are none
+     * available and the pool has not reached its maximum size. Returns null if no connection could be obtained
+     * within the configured timeout.
      */
-    public synchronized ConnectionHandler getConnection() {
-        for (ConnectionHandler c : connections) {
-            if (!c.isUsed()) {
-                return c;
-            }
+    public ConnectionHandler getConnection() {
+        if (closed || (breaker != null && !breaker.allowRequest())) {
+            return null;
         }
 
-        // create a new connection as none are free
         ConnectionHandler ch;
+        try {
+            ch = borrow();
+        } catch (SQLException ex) {
+            if (breaker != null) {
+                breaker.recordFailure();
+            }
+            return null;
+        }
+
+        // Running out of permits says nothing about the database, only failed connects count against it
+        if (breaker != null) {
+            if (ch != null) {
+                breaker.recordSuccess();
+            } else {
+                breaker.releaseProbe();
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * @return A leased connection, null if none was free within the timeout or the thread was interrupted
+     * @throws SQLException If a new connection could not be opened
+     */
+    private ConnectionHandler borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + dbConfig.ConnectionTimeout;
 
         try {
-            Class.forName("com.mysql.jdbc.Driver");
-            Connection connection = DriverManager.getConnection("jdbc:mysql://" + dbConfig.Host + ":" + dbConfig.Port + "/" + dbConfig.Database, dbConfig.Username, dbConfig.Password);
+            if (!permits.tryAcquire(dbConfig.ConnectionTimeout, TimeUnit.MILLISECONDS)) {
+                MetricsManager.increment("db.borrow.timeouts");
+                geSuit.instance.getLogger().warning("Timed out waiting for a database connection (" + totalConnections.get() + "/" + maxConnections + " open, " + permits.getQueueLength() + " waiting)");
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
 
-            ch = new ConnectionHandler(connection);
-            for(IRepository repository : repositories) {
-                repository.registerPreparedStatements(ch);
+        try {
+            while (true) {
+                ConnectionHandler ch = idleConnections.pollFirst();
+
+                if (ch == null) {
+                    if (totalConnections.incrementAndGet() <= maxConnections) {
+                        try {
+                            ch = createConnection();
+                        } catch (SQLException ex) {
+                            totalConnections.decrementAndGet();
+                            MetricsManager.increment("db.errors");
+                            System.out.println(ChatColor.DARK_RED + "SQL is unable to conect");
+                            ex.printStackTrace();
+                            permits.release();
+                            throw ex;
+                        }
+                    } else {
+                        // Every connection is out, one is on its way back to the idle queue
+                        totalConnections.decrementAndGet();
+                        ch = idleConnections.pollFirst(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+                        if (ch == null) {
+                            MetricsManager.increment("db.borrow.timeouts");
+                            geSuit.instance.getLogger().warning("Timed out waiting for a database connection to be returned");
+                            permits.release();
+                            return null;
+                        }
+                    }
+                }
+
+                if (!ch.isValid(VALIDATION_WINDOW, VALIDATION_TIMEOUT)) {
+                    MetricsManager.increment("db.connections.invalid");
+                    destroyConnection(ch);
+                    continue;
+                }
+
+                ch.lease();
+                MetricsManager.getHistogram("db.borrow.wait").recordSince(start);
+                return ch;
             }
-        } catch (SQLException | ClassNotFoundException ex) {
-            System.out.println(ChatColor.DARK_RED + "SQL is unable to conect");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permits.release();
             return null;
         }
+    }
 
-        connections.add(ch);
+    /**
+     * @return A connection to a read replica which is not lagging behind, or to the main database if there is none.
+     * Only use it for reads which can do without the latest writes. Returns null if no connection could be obtained.
+     */
+    public ConnectionHandler getReadConnection() {
+        int count = replicas.size();
+        int first = nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            ConnectionPool replica = replicas.get((first + i) % count);
+            if (!replica.healthy) {
+                continue;
+            }
 
-        return ch;
+            ConnectionHandler ch = replica.getConnection();
+            if (ch != null) {
+                MetricsManager.increment("db.replica.reads");
+                return ch;
+            }
+        }
 
+        if (count > 0) {
+            MetricsManager.increment("db.replica.fallbacks");
+        }
+        return getConnection();
     }
 
-    private void standardQuery(String query) throws SQLException {
+    /**
+     * Opens a pool for every configured replica and starts checking their lag
+     */
+    public void initialiseReplicas(Map<String, Replica> configs) {
+        for (Map.Entry<String, Replica> entry : configs.entrySet()) {
+            Replica config = entry.getValue();
+
+            Database database = new Database();
+            database.Host = config.Host;
+            database.Port = config.Port;
+            database.Database = config.Database;
+            database.Username = config.Username;
+            database.Password = config.Password;
+            database.Threads = config.Threads;
+            database.MaxConnections = config.MaxConnections;
+            database.ConnectionTimeout = config.ConnectionTimeout;
+            database.IdleTimeout = dbConfig.IdleTimeout;
+            database.MaxLifetime = dbConfig.MaxLifetime;
+            database.StatementCacheSize = dbConfig.StatementCacheSize;
+            database.ServerPrepareStatements = dbConfig.ServerPrepareStatements;
+
+            ConnectionPool replica = new ConnectionPool(entry.getKey(), config.MaxLag);
+            replica.repositories = repositories;
+            replica.initialiseConnections(database);
+            replicas.add(replica);
+        }
+
+        if (replicas.isEmpty()) {
+            return;
+        }
+
+        checkReplicas();
+
+        int interval = dbConfig.ReplicaCheckInterval;
+        lagCheck = ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+            public void run() {
+                checkReplicas();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void checkReplicas() {
+        for (ConnectionPool replica : replicas) {
+            replica.checkLag();
+        }
+    }
+
+    private void checkLag() {
         ConnectionHandler ch = getConnection();
+        if (ch == null) {
+            setHealthy(false, "unreachable");
+            return;
+        }
 
-        Statement statement = ch.getConnection().createStatement();
-        statement.executeUpdate(query);
-        statement.close();
+        try (Statement statement = ch.getConnection().createStatement(); ResultSet res = statement.executeQuery("SHOW SLAVE STATUS")) {
+            if (!res.next()) {
+                // Not replicating from anywhere, the admin pointed us at a copy they keep up to date themselves
+                lag = 0;
+                setHealthy(true, null);
+                return;
+            }
 
-        ch.release();
+            long behind = res.getLong("Seconds_Behind_Master");
+            if (res.wasNull()) {
+                setHealthy(false, "replication is not running");
+                return;
+            }
+
+            lag = behind;
+            setHealthy(behind <= maxLag, behind + "s behind");
+        } catch (SQLException e) {
+            setHealthy(false, e.getMessage());
+        } finally {
+            ch.release();
+        }
+    }
+
+    private void setHealthy(boolean healthy, String reason) {
+        if (this.healthy == healthy) {
+            return;
+        }
+
+        this.healthy = healthy;
+        if (healthy) {
+            geSuit.instance.getLogger().info("Read replica " + replicaName + " is back in use");
+        } else {
+            MetricsManager.increment("db.replica.unhealthy");
+            geSuit.instance.getLogger().warning("Read replica " + replicaName + " is not used for now: " + reason);
+        }
+    }
+
+    /**
+     * @return The pools of the read replicas
+     */
+    public List<ConnectionPool> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * @return Name of the read replica, null for the main database
+     */
+    public String getReplicaName() {
+        return replicaName;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * @return False while the circuit breaker refuses borrows from the main database
+     */
+    public boolean isAvailable() {
+        return breaker == null || !breaker.isOpen();
+    }
+
+    /**
+     * @return The circuit breaker of the main database, null for a read replica
+     */
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * @return Seconds the replica was behind on its last check
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * Called by {@link ConnectionHandler#release()}
+     */
+    void returnConnection(ConnectionHandler ch) {
+        if (closed || ch.isOlderThan(TimeUnit.SECONDS.toMillis(dbConfig.MaxLifetime))) {
+            destroyConnection(ch);
+        } else {
+            // Most recently used first, so surplus connections stay idle long enough to be evicted
+            idleConnections.offerFirst(ch);
+        }
+
+        permits.release();
+    }
+
+    private void evictConnections() {
+        long idleTimeout = TimeUnit.SECONDS.toMillis(dbConfig.IdleTimeout);
+        long maxLifetime = TimeUnit.SECONDS.toMillis(dbConfig.MaxLifetime);
+
+        for (ConnectionHandler ch : idleConnections) {
+            boolean expired = ch.isOlderThan(maxLifetime);
+            boolean surplus = totalConnections.get() > minConnections && ch.isIdleFor(idleTimeout);
+
+            // Only evict it if no borrower took it in the meantime
+            if ((expired || surplus) && idleConnections.remove(ch)) {
+                destroyConnection(ch);
+            }
+        }
+
+        while (!closed && totalConnections.get() < minConnections) {
+            if (totalConnections.incrementAndGet() > maxConnections) {
+                totalConnections.decrementAndGet();
+                break;
+            }
+
+            try {
+                idleConnections.offerLast(createConnection());
+            } catch (SQLException ex) {
+                totalConnections.decrementAndGet();
+                geSuit.instance.getLogger().warning("Could not refill the connection pool: " + ex.getMessage());
+                break;
+            }
+        }
     }
 
-    private boolean doesTableExist(String table) {
+    /**
+     * @return Number of open connections
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return Number of open connections which are not borrowed
+     */
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    /**
+     * @return Number of threads waiting for a connection
+     */
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    private void standardQuery(String query) throws SQLException {
+        ConnectionHandler ch = getConnection();
+
+        try {
+            Statement statement = ch.getConnection().createStatement();
+            statement.executeUpdate(query);
+            statement.close();
+        } finally {
+            ch.release();
+        }
+    }
+
+    /**
+     * @return True if the table exists in the database of this pool
+     */
+    public boolean doesTableExist(String table) {
         ConnectionHandler ch = getConnection();
         boolean check = checkTable(table, ch.getConnection());
         ch.release();
@@ -172,8 +567,23 @@ public class ConnectionPool {
     }
 
     public void closeConnections() {
-        for (ConnectionHandler c : connections) {
-            c.closeConnection();
+        closed = true;
+
+        if (lagCheck != null) {
+            lagCheck.cancel();
+        }
+        for (ConnectionPool replica : replicas) {
+            replica.closeConnections();
+        }
+
+        if (reaper != null) {
+            reaper.cancel();
+        }
+
+        // Borrowed connections are closed when they get released
+        ConnectionHandler ch;
+        while ((ch = idleConnections.pollFirst()) != null) {
+            destroyConnection(ch);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Home;
+
+import java.util.List;
+
+public interface HomeStore {
+    public void addHome(Home home);
+    public void updateHome(Home home);
+    public void deleteHome(Home home);
+
+    /**
+     * @return The players homes or null if they could not be read
+     */
+    public List<Home> getHomesForPlayer(GSPlayer player);
+}
@@ -2,6 +2,7 @@ package net.cubespace.geSuit.database;
 
 import net.cubespace.Yamler.Config.InvalidConfigurationException;
 import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
 import net.cubespace.geSuit.managers.PlayerManager;
@@ -18,9 +19,13 @@ import java.util.List;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Homes implements IRepository {
+public class Homes implements IRepository, HomeStore {
     public void addHome(Home home) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not store home " + home.name + " of " + home.owner.getName() + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement addHome = connectionHandler.getPreparedStatement("addHome");
@@ -44,6 +49,10 @@ public class Homes implements IRepository {
 
     public void updateHome(Home home) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not update home " + home.name + " of " + home.owner.getName() + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement updateHome = connectionHandler.getPreparedStatement("updateHome");
@@ -67,6 +76,10 @@ public class Homes implements IRepository {
 
     public void deleteHome(Home home) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not delete home " + home.name + " of " + home.owner.getName() + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement deleteHome = connectionHandler.getPreparedStatement("deleteHome");
@@ -83,6 +96,10 @@ public class Homes implements IRepository {
 
     public List<Home> getHomesForPlayer(GSPlayer player) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
+
         List<Home> homes = new ArrayList<>();
 
         try {
@@ -123,13 +140,13 @@ public class Homes implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("addHome", "INSERT INTO "+ ConfigManager.main.Table_Homes +" (player,home_name,server,world,x,y,z,yaw,pitch) VALUES(?,?,?,?,?,?,?,?,?)");
-        connection.addPreparedStatement("updateHome", "UPDATE "+ ConfigManager.main.Table_Homes +" SET server = ?, world = ?, x = ?, y = ?, z = ?, yaw = ?, pitch = ? WHERE player = ? AND home_name = ?");
-        connection.addPreparedStatement("getAllHomesForPlayer", "SELECT * FROM "+ ConfigManager.main.Table_Homes +" WHERE player = ?");
-        connection.addPreparedStatement("deleteHome", "DELETE FROM "+ ConfigManager.main.Table_Homes +" WHERE home_name = ? AND player = ?");
-        connection.addPreparedStatement("getHomes", "SELECT * FROM "+ ConfigManager.main.Table_Homes);
-        connection.addPreparedStatement("updateHomesToUUID", "UPDATE "+ ConfigManager.main.Table_Homes +" SET player = ? WHERE player = ?");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("addHome", "INSERT INTO "+ ConfigManager.main.Table_Homes +" (player,home_name,server,world,x,y,z,yaw,pitch) VALUES(?,?,?,?,?,?,?,?,?)");
+        statements.addPreparedStatement("updateHome", "UPDATE "+ ConfigManager.main.Table_Homes +" SET server = ?, world = ?, x = ?, y = ?, z = ?, yaw = ?, pitch = ? WHERE player = ? AND home_name = ?");
+        statements.addPreparedStatement("getAllHomesForPlayer", "SELECT * FROM "+ ConfigManager.main.Table_Homes +" WHERE player = ?");
+        statements.addPreparedStatement("deleteHome", "DELETE FROM "+ ConfigManager.main.Table_Homes +" WHERE home_name = ? AND player = ?");
+        statements.addMigrationStatement("getHomes", "SELECT * FROM "+ ConfigManager.main.Table_Homes);
+        statements.addMigrationStatement("updateHomesToUUID", "UPDATE "+ ConfigManager.main.Table_Homes +" SET player = ? WHERE player = ?");
     }
 
     @Override
@@ -142,6 +159,10 @@ public class Homes implements IRepository {
         if (installedVersion < 2) {
             // Version 2 adds UUIDs as Field
             ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
+
             try {
                 connectionHandler.getConnection().createStatement().execute("ALTER TABLE `"+ ConfigManager.main.Table_Homes +"` DROP FOREIGN KEY `homes_ibfk_1`;");
             } catch (SQLException e) {
@@ -152,6 +173,10 @@ public class Homes implements IRepository {
             }
 
             connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
+
             // Convert all Names to UUIDs
             PreparedStatement getHomes = connectionHandler.getPreparedStatement("getHomes");
             try {
@@ -162,6 +187,9 @@ public class Homes implements IRepository {
 
                     if (uuid != null) {
                         ConnectionHandler connectionHandler1 = DatabaseManager.connectionPool.getConnection();
+                        if (connectionHandler1 == null) {
+                            return;
+                        }
 
                         try {
                             PreparedStatement updateHomesToUUID = connectionHandler1.getPreparedStatement("updateHomesToUUID");
@@ -185,12 +213,17 @@ public class Homes implements IRepository {
             }
 
             connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
 
             try {
                 connectionHandler.getConnection().createStatement().execute("ALTER TABLE `"+ ConfigManager.main.Table_Homes +"` ADD  CONSTRAINT `homes_ibfk_1` FOREIGN KEY (`player`) REFERENCES `"+ ConfigManager.main.Table_Players +"`(`uuid`) ON DELETE CASCADE ON UPDATE CASCADE;");
             } catch (SQLException e) {
                 e.printStackTrace();
                 return;
+            } finally {
+                connectionHandler.release();
             }
         }
 
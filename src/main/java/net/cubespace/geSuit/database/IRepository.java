@@ -5,6 +5,6 @@ package net.cubespace.geSuit.database;
  */
 public interface IRepository {
     public String[] getTable();
-    public void registerPreparedStatements(ConnectionHandler connection);
+    public void registerPreparedStatements(StatementRegistry statements);
     public void checkUpdate();
 }
@@ -0,0 +1,237 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.HomesManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.managers.StartupManager;
+import net.cubespace.geSuit.objects.Ban;
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Home;
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Track;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Loads everything a login needs with a single borrowed connection: the player row joined with their homes (or only
+ * the row when the homes are cached), the active ban (unless the {@link BanIndex} can answer it) and the most recent
+ * tracking row with a different name.
+ * Without a connection pool the same values are read from the embedded stores, which are local.
+ * <p>
+ * While the database is unreachable a login is decided from memory instead, if {@code DegradedLogins} allows it: the
+ * ban comes from the {@link BanIndex}, which may hold the bans of a {@link LoginSnapshot}, and whether the player is
+ * known from the snapshot. Known players get provisional default settings until the database is back.
+ */
+public class LoginLoader {
+
+    public static class Result {
+        private boolean failed = true;
+        private GSPlayer player;
+        private Ban ban;
+        private Track lastName;
+        private boolean degraded = false;
+        private boolean known = false;
+
+        /**
+         * @return True if the database could not be read, none of the other values can be trusted then
+         */
+        public boolean hasFailed() {
+            return failed;
+        }
+
+        /**
+         * @return The stored player with homes attached unless they were left out, null for new players
+         */
+        public GSPlayer getPlayer() {
+            return player;
+        }
+
+        public Ban getBan() {
+            return ban;
+        }
+
+        public Track getLastName() {
+            return lastName;
+        }
+
+        /**
+         * @return True if the login was decided without the database
+         */
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        /**
+         * @return True if the player has joined before, also when their profile could not be loaded
+         */
+        public boolean isKnown() {
+            return known || player != null;
+        }
+    }
+
+    /**
+     * @param loadPlayer False if the player is still loaded (reconnecting), only the ban and name change are fetched
+     * @param loadHomes False if only the player row is needed, as their homes are taken from the {@link ProfileCache}
+     */
+    public Result load(UUID id, String name, String ip, boolean loadPlayer, boolean loadHomes) {
+        Result result = new Result();
+        String uuid = Utilities.getStringFromUUID(id);
+
+        long start = System.nanoTime();
+
+        if (!StartupManager.isDatabaseReady() || (DatabaseManager.connectionPool != null && !DatabaseManager.connectionPool.isAvailable())) {
+            return loadFromMemory(result, id, uuid, name, ip, loadPlayer, start);
+        }
+
+        // Settings saved on their last disconnect may still be queued
+        if (loadPlayer && !DatabaseManager.writeBehind.flushPlayer(uuid)) {
+            return loadFromMemory(result, id, uuid, name, ip, loadPlayer, start);
+        }
+
+        if (DatabaseManager.connectionPool == null) {
+            return loadFromStores(result, id, uuid, name, ip, loadPlayer, loadHomes, start);
+        }
+
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return loadFromMemory(result, id, uuid, name, ip, loadPlayer, start);
+        }
+
+        long borrowed = System.nanoTime();
+        long playerLoaded = borrowed;
+        long bansLoaded;
+        long finished;
+
+        try {
+            if (loadPlayer) {
+                PreparedStatement loginPlayer = connectionHandler.getPreparedStatement(loadHomes ? "loginPlayer" : "loginProfile");
+                loginPlayer.setString(1, uuid);
+
+                List<Home> homes = new ArrayList<>();
+                ResultSet res = loginPlayer.executeQuery();
+                while (res.next()) {
+                    if (result.player == null) {
+                        result.player = new GSPlayer(res.getString("playername"), res.getString("uuid"), res.getBoolean("tps"), res.getBoolean("newspawn"), res.getString("ipaddress"), res.getTimestamp("lastonline"), res.getTimestamp("firstonline"));
+                    }
+
+                    String home = loadHomes ? res.getString("home_name") : null;
+                    if (home != null) {
+                        Location l = new Location(res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"));
+                        homes.add(new Home(result.player, home, l));
+                    }
+                }
+                res.close();
+
+                if (result.player != null) {
+                    result.player.setName(name);
+                    if (loadHomes) {
+                        HomesManager.attachHomes(result.player, homes);
+                    }
+                }
+
+                playerLoaded = System.nanoTime();
+            }
+
+            if (DatabaseManager.banIndex.isLoaded()) {
+                result.ban = DatabaseManager.banIndex.getActiveBan(name, uuid, ip);
+            } else {
+                PreparedStatement banInfo = connectionHandler.getPreparedStatement("banInfo");
+                banInfo.setString(1, name);
+                banInfo.setString(2, uuid);
+                banInfo.setString(3, ip);
+
+                ResultSet res = banInfo.executeQuery();
+                if (res.next()) {
+                    result.ban = new Ban(res.getInt("id"), res.getString("banned_playername"), res.getString("banned_uuid"), res.getString("banned_ip"), res.getString("banned_by"), res.getString("reason"), res.getString("type"), res.getInt("active"), res.getTimestamp("banned_on"), res.getTimestamp("banned_until"));
+                }
+                res.close();
+            }
+
+            bansLoaded = System.nanoTime();
+
+            PreparedStatement checkNameChange = connectionHandler.getPreparedStatement("checkNameChange");
+            checkNameChange.setString(1, uuid);
+            checkNameChange.setString(2, name);
+
+            ResultSet res = checkNameChange.executeQuery();
+            if (res.next()) {
+                result.lastName = new Track(res.getString("player"), res.getString("uuid"), res.getString("ip"), res.getTimestamp("firstseen"), res.getTimestamp("lastseen"), null, null, null, null);
+            }
+            res.close();
+
+            finished = System.nanoTime();
+            result.failed = false;
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.player = null;
+            result.ban = null;
+            return loadFromMemory(result, id, uuid, name, ip, loadPlayer, start);
+        } finally {
+            connectionHandler.release();
+        }
+
+        MetricsManager.getHistogram("login.load").record(finished - start);
+        if (geSuit.instance.isDebugEnabled()) {
+            geSuit.instance.DebugMsg("Login load for " + name + " took " + micros(finished - start) + "us (borrow " + micros(borrowed - start) + "us, player+homes " + micros(playerLoaded - borrowed) + "us, bans " + micros(bansLoaded - playerLoaded) + "us, name change " + micros(finished - bansLoaded) + "us)");
+        }
+
+        return result;
+    }
+
+    private Result loadFromStores(Result result, UUID id, String uuid, String name, String ip, boolean loadPlayer, boolean loadHomes, long start) {
+        if (loadPlayer) {
+            result.player = DatabaseManager.players.loadPlayer(uuid);
+            if (result.player != null) {
+                result.player.setName(name);
+                if (loadHomes) {
+                    HomesManager.attachHomes(result.player, DatabaseManager.homes.getHomesForPlayer(result.player));
+                }
+            }
+        }
+
+        if (DatabaseManager.banIndex.isLoaded()) {
+            result.ban = DatabaseManager.banIndex.getActiveBan(name, uuid, ip);
+        } else {
+            result.ban = DatabaseManager.bans.getBanInfo(name, uuid, ip);
+        }
+
+        result.lastName = DatabaseManager.tracking.checkNameChange(id, name);
+        result.failed = false;
+
+        MetricsManager.getHistogram("login.load").recordSince(start);
+        return result;
+    }
+
+    private Result loadFromMemory(Result result, UUID id, String uuid, String name, String ip, boolean loadPlayer, long start) {
+        if (!ConfigManager.main.Database.DegradedLogins || !DatabaseManager.loginSnapshot.isAvailable()) {
+            return result;
+        }
+
+        result.known = DatabaseManager.loginSnapshot.isKnown(id);
+        if (loadPlayer && result.known) {
+            // Settings which are still queued are the latest ones, anything else waits for the database
+            GSPlayer queued = DatabaseManager.writeBehind.getQueuedPlayer(uuid);
+            result.player = queued == null ? new GSPlayer(name, uuid, true) : new GSPlayer(name, uuid, queued.acceptingTeleports(), queued.isNewSpawn(), ip, queued.getLastOnline(), queued.getFirstOnline());
+            result.player.setProvisional(true);
+        }
+
+        result.ban = DatabaseManager.banIndex.getActiveBan(name, uuid, ip);
+        result.degraded = true;
+        result.failed = false;
+
+        MetricsManager.increment("login.degraded");
+        MetricsManager.getHistogram("login.load").recordSince(start);
+        return result;
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,703 @@
+package net.cubespace.geSuit.database;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.managers.PortalManager;
+import net.cubespace.geSuit.managers.SpawnManager;
+import net.cubespace.geSuit.managers.WarpsManager;
+import net.cubespace.geSuit.objects.Ban;
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Portal;
+import net.cubespace.geSuit.objects.Warp;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot in {@code login-snapshot.dat} in the plugin folder of what logins and a freshly started proxy need before
+ * the database has answered: the active bans, the name and UUID of every known player, the warps, the portals and the
+ * proxy and new player spawns. The file is memory mapped on startup, so players are looked up in place instead of
+ * being read in, and the bans and locations are handed to their managers until the database has loaded its own.
+ * Logins fall back to it while the database is unreachable.
+ * <p>
+ * Players are stored as a table of fixed size entries sorted by UUID, in the order MySQL sorts the dashless UUIDs,
+ * followed by an index of name hashes into that table. Players who were online since the snapshot was written are
+ * fetched every {@code LoginSnapshotSyncInterval} seconds and kept in memory with the players who join here, and every
+ * {@code LoginSnapshotInterval} seconds and on shutdown both are merged into a new file. Only the first snapshot
+ * reads the whole players table.
+ */
+public class LoginSnapshot {
+    private static final int MAGIC = 0x6753534e;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    /**
+     * Both halves of the UUID, offset and length of the name
+     */
+    private static final int PLAYER_SIZE = 24;
+    private static final long FIRST_SYNC = TimeUnit.MINUTES.toSeconds(1);
+    /**
+     * Players seen shortly before the last sync are fetched again, in case the clocks of the proxies are apart
+     */
+    private static final long SYNC_OVERLAP = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Compares both halves unsigned, which sorts the UUIDs like their dashless hex strings
+     */
+    private static final Comparator<UUID> ORDER = new Comparator<UUID>() {
+        @Override
+        public int compare(UUID a, UUID b) {
+            int high = compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+            return high != 0 ? high : compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+        }
+    };
+
+    /**
+     * Receives the players read by {@link PlayerStore#loadPlayerNames(Timestamp, PlayerNames)}
+     */
+    public interface PlayerNames {
+        public void add(String uuid, String name) throws IOException;
+    }
+
+    /**
+     * A mapped snapshot. Only absolute reads are used, so it can be shared between threads.
+     */
+    private static class Mapped {
+        private final ByteBuffer buffer;
+        private final long written;
+        private final int players;
+        private final int indexAt;
+        private final int namesAt;
+        private final int extraAt;
+        private final int extraLength;
+
+        Mapped(ByteBuffer buffer) {
+            this.buffer = buffer;
+            written = buffer.getLong(8);
+            players = buffer.getInt(16);
+            extraLength = buffer.getInt(20);
+            indexAt = (int) buffer.getLong(24);
+            namesAt = (int) buffer.getLong(32);
+            extraAt = (int) buffer.getLong(40);
+        }
+
+        UUID getUUID(int player) {
+            int at = HEADER_SIZE + player * PLAYER_SIZE;
+            return new UUID(buffer.getLong(at), buffer.getLong(at + 8));
+        }
+
+        String getName(int player) {
+            int at = HEADER_SIZE + player * PLAYER_SIZE;
+            return new String(read(namesAt + buffer.getInt(at + 16), buffer.getInt(at + 20)), Charsets.UTF_8);
+        }
+
+        byte[] getExtra() {
+            return read(extraAt, extraLength);
+        }
+
+        int find(UUID id) {
+            int low = 0;
+            int high = players - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int compared = ORDER.compare(getUUID(middle), id);
+                if (compared < 0) {
+                    low = middle + 1;
+                } else if (compared > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        int findName(String name) {
+            int hash = hash(name);
+
+            // First entry with the hash, the players sharing it follow
+            int low = 0;
+            int high = players;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if ((int) (buffer.getLong(indexAt + middle * 8) >> 32) < hash) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            for (int i = low; i < players; i++) {
+                long entry = buffer.getLong(indexAt + i * 8);
+                if ((int) (entry >> 32) != hash) {
+                    break;
+                }
+                if (getName((int) entry).equalsIgnoreCase(name)) {
+                    return (int) entry;
+                }
+            }
+            return -1;
+        }
+
+        private byte[] read(int offset, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Writes the players as they come in UUID order, the index, names and other data follow once all players are in
+     * and the header goes in last, so a file cut short is never taken for a snapshot
+     */
+    private static class Writer {
+        private final RandomAccessFile file;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream names = new ByteArrayOutputStream();
+        private long[] index = new long[1024];
+        private int players = 0;
+        private UUID last;
+
+        Writer(File target) throws IOException {
+            file = new RandomAccessFile(target, "rw");
+            file.setLength(0);
+            file.seek(HEADER_SIZE);
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file.getChannel())));
+        }
+
+        void add(UUID id, String name) throws IOException {
+            if (last != null) {
+                int compared = ORDER.compare(last, id);
+                if (compared == 0) {
+                    return;
+                }
+                if (compared > 0) {
+                    throw new IOException("players are not sorted by UUID at " + id);
+                }
+            }
+            last = id;
+
+            byte[] bytes = name.getBytes(Charsets.UTF_8);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+            out.writeInt(names.size());
+            out.writeInt(bytes.length);
+            names.write(bytes);
+
+            if (players == index.length) {
+                index = Arrays.copyOf(index, players * 2);
+            }
+            index[players] = ((long) hash(name) << 32) | players;
+            players++;
+        }
+
+        void finish(long written, byte[] extra) throws IOException {
+            long[] sorted = Arrays.copyOf(index, players);
+            Arrays.sort(sorted);
+            for (long entry : sorted) {
+                out.writeLong(entry);
+            }
+            names.writeTo(out);
+            out.write(extra);
+            out.flush();
+
+            long indexAt = HEADER_SIZE + (long) players * PLAYER_SIZE;
+            long namesAt = indexAt + (long) players * 8;
+            if (namesAt + names.size() + extra.length > Integer.MAX_VALUE) {
+                throw new IOException("the snapshot is too large to be mapped");
+            }
+
+            file.seek(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeLong(written);
+            file.writeInt(players);
+            file.writeInt(extra.length);
+            file.writeLong(indexAt);
+            file.writeLong(namesAt);
+            file.writeLong(namesAt + names.size());
+            file.getFD().sync();
+        }
+
+        void close() {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Merges the stored players with the ones seen since, which are newer and replace the stored ones
+     */
+    private static class Merge implements PlayerNames {
+        private final Writer out;
+        private final Iterator<Map.Entry<UUID, String>> pending;
+        private Map.Entry<UUID, String> next;
+
+        Merge(Writer out, Iterator<Map.Entry<UUID, String>> pending) {
+            this.out = out;
+            this.pending = pending;
+            next = pending.hasNext() ? pending.next() : null;
+        }
+
+        @Override
+        public void add(String uuid, String name) throws IOException {
+            add(Utilities.makeUUID(uuid), name);
+        }
+
+        void add(UUID id, String name) throws IOException {
+            while (next != null && ORDER.compare(next.getKey(), id) <= 0) {
+                if (next.getKey().equals(id)) {
+                    name = next.getValue();
+                } else {
+                    out.add(next.getKey(), next.getValue());
+                }
+                next = pending.hasNext() ? pending.next() : null;
+            }
+            out.add(id, name);
+        }
+
+        void finish() throws IOException {
+            while (next != null) {
+                out.add(next.getKey(), next.getValue());
+                next = pending.hasNext() ? pending.next() : null;
+            }
+        }
+    }
+
+    private final File file = new File(geSuit.instance.getDataFolder(), "login-snapshot.dat");
+    private volatile Mapped mapped;
+    // Players seen since the snapshot was written, by UUID and by lower case name
+    private final ConcurrentSkipListMap<UUID, String> added = new ConcurrentSkipListMap<>(ORDER);
+    private final ConcurrentHashMap<String, UUID> addedNames = new ConcurrentHashMap<>();
+    private volatile boolean restored = false;
+    private volatile long lastSync;
+
+    /**
+     * @return True if a login can be decided without the database, the bans come from the ban index or a snapshot
+     */
+    public boolean isAvailable() {
+        return restored || DatabaseManager.banIndex.isLoaded();
+    }
+
+    /**
+     * @return True if a snapshot is mapped, so players who are not known are most likely new
+     */
+    public boolean hasPlayers() {
+        return mapped != null;
+    }
+
+    /**
+     * @return True if the player was stored when the snapshot was taken or has been seen since
+     */
+    public boolean isKnown(UUID id) {
+        Mapped current = mapped;
+        return added.containsKey(id) || (current != null && current.find(id) >= 0);
+    }
+
+    /**
+     * @return The last known name of the player, null if they are not known
+     */
+    public String getName(UUID id) {
+        String name = added.get(id);
+        if (name != null) {
+            return name;
+        }
+
+        Mapped current = mapped;
+        int player = current == null ? -1 : current.find(id);
+        return player < 0 ? null : current.getName(player);
+    }
+
+    /**
+     * @return The UUID of the player who last used the name, null if nobody is known by it
+     */
+    public UUID getUUID(String name) {
+        UUID id = addedNames.get(name.toLowerCase());
+        if (id == null) {
+            Mapped current = mapped;
+            int player = current == null ? -1 : current.findName(name);
+            id = player < 0 ? null : current.getUUID(player);
+        }
+
+        // The name may have been changed since
+        String last = id == null ? null : getName(id);
+        return last != null && last.equalsIgnoreCase(name) ? id : null;
+    }
+
+    /**
+     * Records the current name of a player who joined or was online on another proxy
+     */
+    public void addKnown(UUID id, String name) {
+        if (!name.equals(added.put(id, name))) {
+            addedNames.put(name.toLowerCase(), id);
+        }
+    }
+
+    /**
+     * Maps the snapshot of the last run and hands its bans and locations to the ban index and the managers, which
+     * replace them once they have been loaded from the database
+     *
+     * @return False if there is no usable snapshot
+     */
+    public boolean restore() {
+        // Runs before the database is opened, the connection pool may not be there yet
+        if ("embedded".equalsIgnoreCase(ConfigManager.main.Database.Type) || !file.exists()) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        Mapped restoredMap = map();
+        if (restoredMap == null) {
+            return false;
+        }
+
+        try {
+            readExtra(new DataInputStream(new ByteArrayInputStream(restoredMap.getExtra())));
+        } catch (IOException e) {
+            geSuit.instance.getLogger().warning("Could not read " + file + ": " + e);
+            return false;
+        }
+
+        mapped = restoredMap;
+        lastSync = restoredMap.written - SYNC_OVERLAP;
+        restored = true;
+        MetricsManager.getHistogram("snapshot.restore").recordSince(start);
+        geSuit.instance.getLogger().info("Restored the login snapshot of " + new Date(restoredMap.written) + " with " + restoredMap.players + " players");
+        return true;
+    }
+
+    /**
+     * Fetches the players who were online since the last sync, a proxy without a snapshot writes its first one
+     */
+    public void sync() {
+        if (mapped == null) {
+            write();
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        final Map<UUID, String> online = new HashMap<>();
+        final Timestamp since = new Timestamp(lastSync);
+        boolean read = DatabaseManager.players.loadPlayerNames(since, new PlayerNames() {
+            @Override
+            public void add(String uuid, String name) {
+                online.put(Utilities.makeUUID(uuid), name);
+                // Their cached profile may have been changed by the proxy they were on
+                DatabaseManager.profileCache.invalidateSeenSince(uuid, since);
+            }
+        });
+        if (!read) {
+            return;
+        }
+
+        for (Map.Entry<UUID, String> entry : online.entrySet()) {
+            addKnown(entry.getKey(), entry.getValue());
+        }
+        lastSync = start - SYNC_OVERLAP;
+        MetricsManager.add("snapshot.synced", online.size());
+    }
+
+    /**
+     * Writes a new snapshot merged from the current one and the players seen since and maps it. Without a current
+     * snapshot every player is read from the database.
+     *
+     * @return False if the snapshot could not be written
+     */
+    public synchronized boolean write() {
+        if (DatabaseManager.connectionPool == null || !DatabaseManager.banIndex.isLoaded()) {
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        long timer = System.nanoTime();
+        Mapped current = mapped;
+        // Players added while the file is written stay in memory for the next one
+        TreeMap<UUID, String> merged = new TreeMap<>(ORDER);
+        merged.putAll(added);
+
+        File temp = new File(file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new Writer(temp);
+
+            Merge stored = new Merge(writer, merged.entrySet().iterator());
+            if (current != null) {
+                for (int i = 0; i < current.players; i++) {
+                    stored.add(current.getUUID(i), current.getName(i));
+                }
+            } else if (!DatabaseManager.players.loadPlayerNames(null, stored)) {
+                return false;
+            }
+            stored.finish();
+
+            ByteArrayOutputStream extra = new ByteArrayOutputStream();
+            writeExtra(new DataOutputStream(extra));
+            writer.finish(start, extra.toByteArray());
+            writer.close();
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            geSuit.instance.getLogger().warning("Could not write " + file + ": " + e.getMessage());
+            return false;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+        Mapped written = map();
+        if (written == null) {
+            return false;
+        }
+        mapped = written;
+        if (current == null) {
+            lastSync = start - SYNC_OVERLAP;
+        }
+
+        // The merged players are in the file now, unless their name changed again in the meantime
+        for (Map.Entry<UUID, String> entry : merged.entrySet()) {
+            if (added.remove(entry.getKey(), entry.getValue())) {
+                addedNames.remove(entry.getValue().toLowerCase(), entry.getKey());
+            }
+        }
+
+        MetricsManager.getHistogram("snapshot.write").recordSince(timer);
+        geSuit.instance.DebugMsg("Wrote the login snapshot with " + written.players + " players");
+        return true;
+    }
+
+    /**
+     * Syncs the players every {@code LoginSnapshotSyncInterval} seconds and writes the snapshot every
+     * {@code LoginSnapshotInterval} seconds, the embedded storage does not need one
+     */
+    public void start() {
+        if (DatabaseManager.connectionPool == null) {
+            return;
+        }
+
+        int sync = ConfigManager.main.Database.LoginSnapshotSyncInterval;
+        if (sync > 0) {
+            ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+                @Override
+                public void run() {
+                    if (DatabaseManager.connectionPool.isAvailable()) {
+                        sync();
+                    }
+                }
+            }, FIRST_SYNC, sync, TimeUnit.SECONDS);
+        }
+
+        int interval = ConfigManager.main.Database.LoginSnapshotInterval;
+        if (interval > 0) {
+            ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return The mapped snapshot, null if the file is not a snapshot of this version
+     */
+    private Mapped map() {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            // The mapping stays valid after the file is closed and even after it has been replaced
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                geSuit.instance.getLogger().warning(file + " is not a login snapshot of this version, ignoring it");
+                return null;
+            }
+
+            Mapped read = new Mapped(buffer);
+            if (read.extraAt + (long) read.extraLength != buffer.limit()) {
+                geSuit.instance.getLogger().warning(file + " is incomplete, ignoring it");
+                return null;
+            }
+            return read;
+        } catch (IOException e) {
+            geSuit.instance.getLogger().warning("Could not read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeExtra(DataOutputStream out) throws IOException {
+        List<Ban> bans = DatabaseManager.banIndex.getBans();
+        out.writeInt(bans.size());
+        for (Ban ban : bans) {
+            out.writeInt(ban.getId());
+            writeString(out, ban.getPlayer());
+            writeString(out, ban.getUuid());
+            writeString(out, ban.getIp());
+            writeString(out, ban.getBannedBy());
+            writeString(out, ban.getReason());
+            writeString(out, ban.getType());
+            out.writeInt(ban.getActive());
+            out.writeLong(ban.getBannedOn() == null ? -1 : ban.getBannedOn().getTime());
+            out.writeLong(ban.getBannedUntil() == null ? -1 : ban.getBannedUntil().getTime());
+        }
+
+        List<Warp> warps = WarpsManager.getWarps();
+        out.writeInt(warps.size());
+        for (Warp warp : warps) {
+            writeString(out, warp.getName());
+            out.writeBoolean(warp.isHidden());
+            out.writeBoolean(warp.isGlobal());
+            writeLocation(out, warp.getLocation());
+        }
+
+        writeLocation(out, SpawnManager.ProxySpawn);
+        writeLocation(out, SpawnManager.NewPlayerSpawn);
+
+        List<Portal> portals = PortalManager.getAllPortals();
+        out.writeInt(portals.size());
+        for (Portal portal : portals) {
+            writeString(out, portal.getName());
+            writeString(out, portal.getServer() == null ? null : portal.getServer().getName());
+            writeString(out, portal.getFillType());
+            writeString(out, portal.getType());
+            writeString(out, portal.getDest());
+            writeLocation(out, portal.getMax());
+            writeLocation(out, portal.getMin());
+        }
+        out.flush();
+    }
+
+    private void readExtra(DataInputStream in) throws IOException {
+        List<Ban> bans = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = in.readInt();
+            String player = readString(in);
+            String uuid = readString(in);
+            String ip = readString(in);
+            String bannedBy = readString(in);
+            String reason = readString(in);
+            String type = readString(in);
+            int active = in.readInt();
+            long bannedOn = in.readLong();
+            long bannedUntil = in.readLong();
+            bans.add(new Ban(id, player, uuid, ip, bannedBy, reason, type, active, bannedOn < 0 ? null : new Timestamp(bannedOn), bannedUntil < 0 ? null : new Timestamp(bannedUntil)));
+        }
+
+        List<Warp> warps = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = readString(in);
+            boolean hidden = in.readBoolean();
+            boolean global = in.readBoolean();
+            Location location = readLocation(in);
+            if (location != null) {
+                warps.add(new Warp(name, location, hidden, global));
+            }
+        }
+
+        Location proxySpawn = readLocation(in);
+        Location newPlayerSpawn = readLocation(in);
+
+        Map<ServerInfo, List<Portal>> portals = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = readString(in);
+            String server = readString(in);
+            String fillType = readString(in);
+            String type = readString(in);
+            String dest = readString(in);
+            Location max = readLocation(in);
+            Location min = readLocation(in);
+            if (server == null || max == null || min == null) {
+                continue;
+            }
+
+            Portal portal = new Portal(name, server, fillType, type, dest, max, min);
+            if (portal.getServer() == null) {
+                continue;
+            }
+            if (!portals.containsKey(portal.getServer())) {
+                portals.put(portal.getServer(), new ArrayList<Portal>());
+            }
+            portals.get(portal.getServer()).add(portal);
+        }
+
+        DatabaseManager.banIndex.restore(bans);
+        WarpsManager.restoreWarps(warps);
+        SpawnManager.restoreSpawns(proxySpawn, newPlayerSpawn);
+        PortalManager.restorePortals(portals);
+    }
+
+    // Locations on servers which are no longer configured are left out
+    private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+        boolean present = location != null && location.getServer() != null;
+        out.writeBoolean(present);
+        if (present) {
+            out.writeUTF(location.getServer().getName());
+            writeString(out, location.getWorld());
+            out.writeDouble(location.getX());
+            out.writeDouble(location.getY());
+            out.writeDouble(location.getZ());
+            out.writeFloat(location.getYaw());
+            out.writeFloat(location.getPitch());
+        }
+    }
+
+    private static Location readLocation(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        Location location = new Location(in.readUTF(), readString(in), in.readDouble(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat());
+        return location.getServer() == null ? null : location;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static int hash(String name) {
+        return Hashing.murmur3_32().hashString(name.toLowerCase(), Charsets.UTF_8).asInt();
+    }
+
+    private static int compareUnsigned(long a, long b) {
+        return Long.compare(a ^ Long.MIN_VALUE, b ^ Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,52 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.metrics.Histogram;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Wraps a named {@link PreparedStatement} so every execute call is timed and every {@link SQLException} is
+ * counted, even when the calling repository swallows it.
+ */
+public class MeteredStatement implements InvocationHandler {
+    private final PreparedStatement statement;
+    private final Histogram latency;
+    private final String errorCounter;
+
+    private MeteredStatement(String name, PreparedStatement statement) {
+        this.statement = statement;
+        this.latency = MetricsManager.getHistogram(MetricsManager.STATEMENT_PREFIX + name);
+        this.errorCounter = MetricsManager.STATEMENT_PREFIX + name + ".errors";
+    }
+
+    public static PreparedStatement wrap(String name, PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(MeteredStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, new MeteredStatement(name, statement));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        boolean execute = method.getName().startsWith("execute");
+        long start = execute ? System.nanoTime() : 0;
+
+        try {
+            return method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                MetricsManager.increment("db.errors");
+                MetricsManager.increment(errorCounter);
+            }
+
+            throw e.getCause();
+        } finally {
+            if (execute) {
+                latency.recordSince(start);
+            }
+        }
+    }
+}
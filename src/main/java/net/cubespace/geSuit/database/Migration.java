@@ -0,0 +1,97 @@
+package net.cubespace.geSuit.database;
+
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One versioned schema change, made of plain statements and indexes. MySQL has no CREATE INDEX IF NOT EXISTS, so an
+ * index is only added if the table has no index of that name yet. That keeps a migration safe to run again after it
+ * failed halfway, or on a database where the index was added by hand.
+ */
+public class Migration {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int version;
+    private final String description;
+    private final List<String> steps = new ArrayList<>();
+    private final List<String[]> indexes = new ArrayList<>();
+
+    public Migration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+
+    public Migration addStatement(String sql) {
+        steps.add(sql);
+        indexes.add(null);
+        return this;
+    }
+
+    /**
+     * @param columns Comma separated column list
+     */
+    public Migration addIndex(String table, String name, String columns) {
+        steps.add("ALTER TABLE `" + table + "` ADD INDEX `" + name + "` (" + columns + ")");
+        indexes.add(new String[]{table, name});
+        return this;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return The statements this migration runs
+     */
+    public List<String> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @return CRC32 of the statements, recorded with the migration to notice changes to migrations which already ran
+     */
+    public long getChecksum() {
+        CRC32 crc = new CRC32();
+        for (String step : steps) {
+            crc.update(step.getBytes(UTF8));
+            crc.update('\n');
+        }
+        return crc.getValue();
+    }
+
+    void apply(Connection connection) throws SQLException {
+        for (int i = 0; i < steps.size(); i++) {
+            String[] index = indexes.get(i);
+            if (index != null && hasIndex(connection, index[0], index[1])) {
+                continue;
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(steps.get(i));
+            }
+        }
+    }
+
+    private static boolean hasIndex(Connection connection, String table, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1")) {
+            statement.setString(1, table);
+            statement.setString(2, name);
+
+            try (ResultSet res = statement.executeQuery()) {
+                return res.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Applies the {@link Migrations} which have not run against this database yet and records them in the schema history
+ * table, together with a checksum of their statements. Migrations are applied in version order and the run stops at
+ * the first one which fails, it is tried again on the next start. In dry run mode nothing is changed, not even the
+ * schema history table is created, the pending migrations are only listed together with the EXPLAIN plan of every
+ * registered statement.
+ */
+public class MigrationRunner {
+    private static final Comparator<Migration> BY_VERSION = new Comparator<Migration>() {
+        @Override
+        public int compare(Migration a, Migration b) {
+            return a.getVersion() < b.getVersion() ? -1 : (a.getVersion() == b.getVersion() ? 0 : 1);
+        }
+    };
+
+    private final ConnectionPool pool;
+    private final String table;
+    private final Logger log;
+
+    public MigrationRunner(ConnectionPool pool) {
+        this(pool, ConfigManager.main.Table_SchemaHistory, geSuit.instance.getLogger());
+    }
+
+    MigrationRunner(ConnectionPool pool, String table, Logger log) {
+        this.pool = pool;
+        this.table = table;
+        this.log = log;
+    }
+
+    /**
+     * @return False if a migration failed or the database could not be reached
+     */
+    public boolean migrate(List<Migration> migrations, boolean dryRun) {
+        ConnectionHandler ch = pool.getConnection();
+        if (ch == null) {
+            log.severe("Could not borrow a connection to check the schema migrations");
+            return false;
+        }
+
+        try {
+            if (!migrate(ch.getConnection(), migrations, dryRun)) {
+                return false;
+            }
+
+            if (dryRun) {
+                for (String line : explain(ch)) {
+                    log.info("Migration dry run: " + line);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            ch.release();
+        }
+    }
+
+    /**
+     * Applies the pending migrations through the connection, or only lists them in a dry run
+     *
+     * @return False if a migration failed
+     */
+    boolean migrate(Connection connection, List<Migration> migrations, boolean dryRun) throws SQLException {
+        if (!dryRun) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + table + "` (`version` INT NOT NULL, `description` VARCHAR(200) NOT NULL, `checksum` BIGINT NOT NULL, `installed_on` DATETIME NOT NULL, `execution_time` INT NOT NULL, `success` TINYINT(1) NOT NULL, PRIMARY KEY (`version`));");
+            }
+        }
+
+        List<Migration> pending = getPending(migrations, getApplied(connection));
+
+        if (dryRun) {
+            if (pending.isEmpty()) {
+                log.info("Migration dry run: the schema is up to date");
+            }
+            for (Migration migration : pending) {
+                log.info("Migration dry run: pending " + migration.getVersion() + " - " + migration.getDescription());
+                for (String step : migration.getSteps()) {
+                    log.info("  " + step);
+                }
+            }
+            return true;
+        }
+
+        for (Migration migration : pending) {
+            long start = System.currentTimeMillis();
+            boolean success = false;
+
+            try {
+                migration.apply(connection);
+                success = true;
+                log.info("Applied schema migration " + migration.getVersion() + " - " + migration.getDescription());
+            } catch (SQLException e) {
+                log.severe("Schema migration " + migration.getVersion() + " (" + migration.getDescription() + ") failed: " + e.getMessage());
+            }
+
+            try (PreparedStatement record = connection.prepareStatement("REPLACE INTO `" + table + "` (version, description, checksum, installed_on, execution_time, success) VALUES (?, ?, ?, ?, ?, ?)")) {
+                record.setInt(1, migration.getVersion());
+                record.setString(2, migration.getDescription());
+                record.setLong(3, migration.getChecksum());
+                record.setTimestamp(4, new Timestamp(start));
+                record.setInt(5, (int) (System.currentTimeMillis() - start));
+                record.setBoolean(6, success);
+                record.executeUpdate();
+            }
+
+            if (!success) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Checksums of the migrations which ran successfully by version, empty before the first run
+     */
+    private Map<Integer, Long> getApplied(Connection connection) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+
+        // A dry run on a new database has no history table yet
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+            if (!tables.next()) {
+                return applied;
+            }
+        }
+
+        try (Statement statement = connection.createStatement(); ResultSet res = statement.executeQuery("SELECT version, checksum FROM `" + table + "` WHERE success = 1")) {
+            while (res.next()) {
+                applied.put(res.getInt("version"), res.getLong("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * @return The migrations which have not run yet in version order
+     */
+    private List<Migration> getPending(List<Migration> migrations, Map<Integer, Long> applied) {
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            Long checksum = applied.get(migration.getVersion());
+            if (checksum == null) {
+                pending.add(migration);
+            } else if (checksum != migration.getChecksum()) {
+                log.warning("Schema migration " + migration.getVersion() + " (" + migration.getDescription() + ") has changed since it was applied");
+            }
+        }
+
+        Collections.sort(pending, BY_VERSION);
+        return pending;
+    }
+
+    /**
+     * @return The EXPLAIN plan of every registered statement, one line per table it reads
+     */
+    public List<String> explain() {
+        ConnectionHandler ch = pool.getConnection();
+        if (ch == null) {
+            List<String> lines = new ArrayList<>();
+            lines.add("Could not borrow a database connection");
+            return lines;
+        }
+
+        try {
+            return explain(ch);
+        } finally {
+            ch.release();
+        }
+    }
+
+    private static List<String> explain(ConnectionHandler ch) {
+        List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<String, String> query : ch.getQueries().entrySet()) {
+            String sql = query.getValue().trim();
+            String verb = sql.length() < 7 ? sql.toUpperCase() : sql.substring(0, 7).toUpperCase();
+            if (!(verb.startsWith("SELECT") || verb.startsWith("INSERT") || verb.startsWith("UPDATE") || verb.startsWith("DELETE") || verb.startsWith("REPLACE"))) {
+                continue;
+            }
+            if (sql.endsWith(";")) {
+                sql = sql.substring(0, sql.length() - 1);
+            }
+
+            try (PreparedStatement statement = ch.getConnection().prepareStatement("EXPLAIN " + sql)) {
+                bindDummies(statement, sql);
+
+                try (ResultSet res = statement.executeQuery()) {
+                    while (res.next()) {
+                        lines.add(query.getKey() + ": table=" + res.getString("table") + " type=" + res.getString("type") + " key=" + res.getString("key") + " rows=" + res.getString("rows") + " extra=" + res.getString("Extra"));
+                    }
+                }
+            } catch (SQLException e) {
+                lines.add(query.getKey() + ": " + e.getMessage());
+            }
+        }
+
+        return lines;
+    }
+
+    // The plan only depends on the shape of the query, LIMIT needs a number though
+    private static void bindDummies(PreparedStatement statement, String sql) throws SQLException {
+        int index = 0;
+        char quote = 0;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '?') {
+                index++;
+                if (sql.substring(0, i).trim().toUpperCase().matches("(?s).*\\bLIMIT(\\s*\\?\\s*,)?$")) {
+                    statement.setInt(index, 1);
+                } else {
+                    statement.setString(index, "");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.configs.MainConfig;
+import net.cubespace.geSuit.managers.ConfigManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every schema migration, in the order they are applied. A migration which has been released must never change,
+ * add a new one instead.
+ */
+public class Migrations {
+
+    public static List<Migration> getMigrations() {
+        MainConfig config = ConfigManager.main;
+        List<Migration> migrations = new ArrayList<>();
+
+        // getPlayer, getPlayerIP, playerExists and friends look up "playername = ? OR uuid = ?", the uuid side is the
+        // primary key. getAltPlayer reads the most recent players of an IP.
+        migrations.add(new Migration(1, "Index players by name and IP")
+                .addIndex(config.Table_Players, "idx_players_name", "playername")
+                .addIndex(config.Table_Players, "idx_players_ip", "ipaddress, lastonline"));
+
+        // isPlayerBanned, banInfo and the tracking joins match any of the three identity columns of an active ban,
+        // MySQL merges the three indexes. The histories use the leading column only.
+        migrations.add(new Migration(2, "Index bans by player name, UUID and IP")
+                .addIndex(config.Table_Bans, "idx_bans_name", "banned_playername, active, type")
+                .addIndex(config.Table_Bans, "idx_bans_uuid", "banned_uuid, active, type")
+                .addIndex(config.Table_Bans, "idx_bans_ip", "banned_ip, active, type"));
+
+        // getIPTracking and the IP self join of getPlayerTracking/getUUIDTracking. getUUIDTracking, getNameHistory
+        // and checkNameChange start from the UUID and sort by lastseen. Lookups by name use the unique key.
+        migrations.add(new Migration(3, "Index tracking by IP and UUID")
+                .addIndex(config.Table_Tracking, "idx_tracking_ip", "ip, lastseen")
+                .addIndex(config.Table_Tracking, "idx_tracking_uuid", "uuid, lastseen"));
+
+        // getSpawnsForServer and deleteWorldSpawn, the primary key starts with the spawn name
+        migrations.add(new Migration(4, "Index spawns by server")
+                .addIndex(config.Table_Spawns, "idx_spawns_server", "server, world"));
+
+        // The compaction finds the oldest hourly ontime and walks the tracking rows by their last seen time
+        migrations.add(new Migration(5, "Index ontime and tracking by time")
+                .addIndex(config.Table_OnTime, "idx_ontime_timeslot", "timeslot")
+                .addIndex(config.Table_Tracking, "idx_tracking_lastseen", "lastseen"));
+
+        migrations.add(new Migration(6, "Index players by last online time")
+                .addIndex(config.Table_Players, "idx_players_lastonline", "lastonline"));
+
+        // The ban index syncs bans which were added or lifted since its last sync, whatever their id. One statement,
+        // so the column and its index are added together or not at all.
+        migrations.add(new Migration(7, "Track when bans change")
+                .addStatement("ALTER TABLE `" + config.Table_Bans + "` ADD COLUMN `changed_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, ADD INDEX `idx_bans_changed` (changed_at)"));
+
+        return migrations;
+    }
+}
@@ -0,0 +1,166 @@
+package net.cubespace.geSuit.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Current player names and UUIDs in both directions, so bulk resolutions for the API channel only go to the database
+ * for players who have not been seen lately. It is filled from logins, name changes and the database answers, and
+ * entries expire after an hour in case a name moved to another account while nobody on this proxy saw it happen.
+ * While the database is unreachable the rest is answered from the login snapshot.
+ */
+public class NameCache {
+    private static final long EXPIRY_MINUTES = 60;
+
+    private static class Entry {
+        final String name;
+        final UUID id;
+
+        Entry(String name, UUID id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private final Cache<String, Entry> byName;
+    private final Cache<UUID, Entry> byId;
+
+    public NameCache(int size) {
+        byName = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(EXPIRY_MINUTES, TimeUnit.MINUTES).build();
+        byId = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(EXPIRY_MINUTES, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * Records the current name of a player, replacing their old name
+     */
+    public synchronized void put(String name, UUID id) {
+        Entry entry = new Entry(name, id);
+
+        Entry old = byId.getIfPresent(id);
+        if (old != null && !old.name.equalsIgnoreCase(name)) {
+            byName.invalidate(old.name.toLowerCase());
+        }
+
+        Entry taken = byName.getIfPresent(name.toLowerCase());
+        if (taken != null && !taken.id.equals(id)) {
+            byId.invalidate(taken.id);
+        }
+
+        byName.put(name.toLowerCase(), entry);
+        byId.put(id, entry);
+    }
+
+    /**
+     * Forgets a name which is no longer used by the player it was cached for
+     */
+    public synchronized void invalidateName(String name) {
+        Entry old = byName.getIfPresent(name.toLowerCase());
+        if (old != null) {
+            byName.invalidate(name.toLowerCase());
+            byId.invalidate(old.id);
+        }
+    }
+
+    /**
+     * Resolves names from the cache first and the store for the rest
+     *
+     * @return UUIDs by the stored spelling of the names
+     */
+    public Map<String, UUID> resolveNames(Collection<String> names, PlayerStore store) {
+        Map<String, UUID> resolved = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for (String name : names) {
+            Entry entry = byName.getIfPresent(name.toLowerCase());
+            if (entry != null) {
+                resolved.put(entry.name, entry.id);
+            } else {
+                missing.add(name);
+            }
+        }
+
+        record(names.size() - missing.size(), missing.size());
+        if (!missing.isEmpty()) {
+            Map<String, UUID> loaded = isDatabaseDown() ? resolveNamesFromSnapshot(missing) : store.resolvePlayerNames(missing);
+            for (Map.Entry<String, UUID> entry : loaded.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            resolved.putAll(loaded);
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Resolves UUIDs from the cache first and the store for the rest
+     */
+    public Map<UUID, String> resolveIds(Collection<UUID> ids, PlayerStore store) {
+        Map<UUID, String> resolved = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+
+        for (UUID id : ids) {
+            Entry entry = byId.getIfPresent(id);
+            if (entry != null) {
+                resolved.put(id, entry.name);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        record(ids.size() - missing.size(), missing.size());
+        if (!missing.isEmpty()) {
+            Map<UUID, String> loaded = isDatabaseDown() ? resolveIdsFromSnapshot(missing) : store.resolveUUIDs(missing);
+            for (Map.Entry<UUID, String> entry : loaded.entrySet()) {
+                put(entry.getValue(), entry.getKey());
+            }
+            resolved.putAll(loaded);
+        }
+
+        return resolved;
+    }
+
+    public long size() {
+        return byId.size();
+    }
+
+    private static boolean isDatabaseDown() {
+        return DatabaseManager.connectionPool != null && !DatabaseManager.connectionPool.isAvailable();
+    }
+
+    private static Map<String, UUID> resolveNamesFromSnapshot(Collection<String> names) {
+        Map<String, UUID> resolved = new HashMap<>();
+        for (String name : names) {
+            UUID id = DatabaseManager.loginSnapshot.getUUID(name);
+            if (id != null) {
+                resolved.put(DatabaseManager.loginSnapshot.getName(id), id);
+            }
+        }
+        return resolved;
+    }
+
+    private static Map<UUID, String> resolveIdsFromSnapshot(Collection<UUID> ids) {
+        Map<UUID, String> resolved = new HashMap<>();
+        for (UUID id : ids) {
+            String name = DatabaseManager.loginSnapshot.getName(id);
+            if (name != null) {
+                resolved.put(id, name);
+            }
+        }
+        return resolved;
+    }
+
+    private static void record(int hits, int misses) {
+        MetricsManager.add("namecache.hits", hits);
+        MetricsManager.add("namecache.misses", misses);
+    }
+}
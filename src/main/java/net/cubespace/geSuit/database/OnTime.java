@@ -1,17 +1,14 @@
 package net.cubespace.geSuit.database;
 
-import net.cubespace.geSuit.geSuit;
+import net.cubespace.Yamler.Config.InvalidConfigurationException;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
-import net.cubespace.geSuit.managers.LoggingManager;
 import net.cubespace.geSuit.objects.TimeRecord;
-import net.md_5.bungee.api.ChatColor;
 
 import java.sql.*;
-import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,148 +16,129 @@ import java.util.Map;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class OnTime implements IRepository {
-
-    public void updatePlayerOnTime(String player, String uuid, long tsStart, long tsEnd) {
-        SimpleDateFormat sdf=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        
-        // Get start/end in calendar objects (required to handle day/month/year changes properly)
-        Calendar start = Calendar.getInstance();
-        start.setTimeInMillis(tsStart);
-        Calendar end = Calendar.getInstance();
-        end.setTimeInMillis(tsEnd);
-        
-        if (geSuit.instance.isDebugEnabled())
-        	geSuit.instance.DebugMsg("OnTime (" +player+ "): " + sdf.format(new Date(start.getTimeInMillis())) + " -> " + sdf.format(new Date(end.getTimeInMillis())));
-
-        // Set up the initial slots
-        Calendar slot = Calendar.getInstance();
-        Calendar next   = Calendar.getInstance();
-        slot.setTimeInMillis(tsStart);
-        slot.set(Calendar.MINUTE, 0);
-        slot.set(Calendar.SECOND, 0);
-        slot.set(Calendar.MILLISECOND, 0);
-        next.setTimeInMillis(slot.getTimeInMillis());
-        next.add(Calendar.HOUR, 1);
-
-        int loop = 0;
-        List<String> values = new ArrayList<>();
-
-        // Loop through all the hourly time slots that the player was online
-        while ((loop == 0) || (end.after(next))) {
-        	long time, from, to;
-        	if (loop == 0) {
-        		from = start.getTimeInMillis();  // On the first loop, measure from the start time, not the beginning of the slot
-        	} else {
-        		slot.setTimeInMillis(next.getTimeInMillis());
-                next.add(Calendar.HOUR, 1);
-        		from = slot.getTimeInMillis();  // Every other loop iteration, we measure from the beginning of the slot
-        	}
-
-        	if (end.after(next)) {
-        		to = next.getTimeInMillis();
-        		time = (to - from);  // This is not the last slot, measure time to the end of this slot
-        	} else {
-        		to = end.getTimeInMillis();
-        		time = (to - from);   // This is the last slot, measure time to the "end" time (not the end of the slot)
-        	}
-
-        	// Only record positive online times  
-        	if (time > 0) {
-        		time = (time / 1000);  // Convert from milliseconds to seconds
-
-                if (geSuit.instance.isDebugEnabled())
-                	geSuit.instance.DebugMsg("   " +
-	        			"Row " + loop + ": " +
-	        			"Slot: " + sdf.format(new Date(slot.getTimeInMillis())) + " = " +
-	        			sdf.format(new Date(from)) + " -> " +
-	        			sdf.format(new Date(to)) + ": " +
-	        			time + " secs"
-	        	);
-	
-	        	values.add("('" +uuid+ "', '" +sdf.format(slot.getTimeInMillis())+ "', " +time+ ")");
-        	}
-
-        	loop++;
-
-        	if (loop == 100) {
-        		LoggingManager.log(ChatColor.RED + "WARNING! OnTime slot checking exceeded 100 loops for " +player+ ", this should never hapen!");
-        		break;
-        	}
-        }
-        
-        StringBuilder sqlvalues = new StringBuilder();
-        for (int x = 0; x < values.size(); x++) {
-        	if (x > 0)
-        		sqlvalues.append(", ");
+public class OnTime implements IRepository, OnTimeStore {
+    /**
+     * Number of players kept in the ranking behind /ontime top, 20 pages of 10
+     */
+    public static final int TOP_SIZE = 200;
+    private static final long TOP_CACHE_TIME = 60000;
+
+    private List<Map.Entry<String, Long>> topRanking;
+    private long topRankingLoaded;
 
-        	sqlvalues.append(values.get(x));
+    public boolean addOnTime(OnTimeAccumulator.Batch batch) {
+        if (batch.size() == 0) {
+            return true;
         }
 
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
-        Statement stmt = null;
+        if (connectionHandler == null) {
+            return false;
+        }
+
         try {
-        	// Sadly, we can't use prepared statements here because the statement is dynamic
-            stmt = connectionHandler.getConnection().createStatement();
-        	stmt.executeUpdate("INSERT DELAYED INTO "+ ConfigManager.main.Table_OnTime + " " +
-        			"(uuid,timeslot,time) VALUES " + sqlvalues + " " +
-        			"ON DUPLICATE KEY UPDATE time=time+VALUES(time)"
-        	);
+            // The slots and both rollups are written together or not at all
+            Connection connection = connectionHandler.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                writeOnTime(connectionHandler, batch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-			try {
-				if (stmt != null) { stmt.close(); stmt = null; }
-			} catch (SQLException e) {
-				System.out.println("ERROR: Failed to close SQL Statement!");
-				e.printStackTrace();
-			}
-    		connectionHandler.release();
+            connectionHandler.release();
         }
+
+        return false;
+    }
+
+    /**
+     * Adds the accumulated slots to the ontime table as one batch, slots which already exist are summed up. The daily
+     * and total rollup tables are updated in the same go.
+     */
+    private void writeOnTime(ConnectionHandler connectionHandler, OnTimeAccumulator.Batch batch) throws SQLException {
+        PreparedStatement addOnTime = connectionHandler.getPreparedStatement("addOnTime");
+        for (int i = 0; i < batch.size; i++) {
+            addOnTime.setString(1, batch.uuids[i]);
+            addOnTime.setTimestamp(2, OnTimeAccumulator.toTimestamp(batch.slots[i]));
+            addOnTime.setInt(3, batch.seconds[i]);
+            addOnTime.addBatch();
+        }
+        addOnTime.executeBatch();
+
+        // Slots are local hours since the epoch, so 24 of them make up a day
+        Map<String, Map<Integer, Long>> daily = new LinkedHashMap<>();
+        Map<String, Long> total = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size; i++) {
+            Map<Integer, Long> days = daily.get(batch.uuids[i]);
+            if (days == null) {
+                days = new LinkedHashMap<>();
+                daily.put(batch.uuids[i], days);
+            }
+
+            int day = batch.slots[i] / 24;
+            Long time = days.get(day);
+            days.put(day, (time == null ? 0 : time) + batch.seconds[i]);
+
+            time = total.get(batch.uuids[i]);
+            total.put(batch.uuids[i], (time == null ? 0 : time) + batch.seconds[i]);
+        }
+
+        PreparedStatement addOnTimeDaily = connectionHandler.getPreparedStatement("addOnTimeDaily");
+        for (Map.Entry<String, Map<Integer, Long>> player : daily.entrySet()) {
+            for (Map.Entry<Integer, Long> day : player.getValue().entrySet()) {
+                addOnTimeDaily.setString(1, player.getKey());
+                addOnTimeDaily.setTimestamp(2, OnTimeAccumulator.toTimestamp(day.getKey() * 24));
+                addOnTimeDaily.setLong(3, day.getValue());
+                addOnTimeDaily.addBatch();
+            }
+        }
+        addOnTimeDaily.executeBatch();
+
+        PreparedStatement addOnTimeTotal = connectionHandler.getPreparedStatement("addOnTimeTotal");
+        for (Map.Entry<String, Long> entry : total.entrySet()) {
+            addOnTimeTotal.setString(1, entry.getKey());
+            addOnTimeTotal.setLong(2, entry.getValue());
+            addOnTimeTotal.addBatch();
+        }
+        addOnTimeTotal.executeBatch();
     }
 
     public TimeRecord getPlayerOnTime(String uuid) {
         TimeRecord trec = new TimeRecord(uuid);
 
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return trec;
+        }
+
         try {
             PreparedStatement timeInfo;
             ResultSet res;
 
-            // Time today
-            timeInfo = connectionHandler.getPreparedStatement("getOnTimeToday");
-            timeInfo.setString(1, uuid);
-            res = timeInfo.executeQuery();
-            if (res.next()) trec.setTimeToday(res.getLong(1) * 1000);
-            res.close();
-
-        	// Time this week
-        	timeInfo = connectionHandler.getPreparedStatement("getOnTimeWeek");
-            timeInfo.setString(1, uuid);
-            res = timeInfo.executeQuery();
-            if (res.next()) trec.setTimeWeek(res.getLong(1) * 1000);
-            res.close();
-
-        	// Time this month
-        	timeInfo = connectionHandler.getPreparedStatement("getOnTimeMonth");
+            // All buckets come from the daily rollup in one go
+            timeInfo = connectionHandler.getPreparedStatement("getOnTimeStats");
             timeInfo.setString(1, uuid);
             res = timeInfo.executeQuery();
-            if (res.next()) trec.setTimeMonth(res.getLong(1) * 1000);
-            res.close();
-
-        	// Time this year
-        	timeInfo = connectionHandler.getPreparedStatement("getOnTimeYear");
-            timeInfo.setString(1, uuid);
-            res = timeInfo.executeQuery();
-            if (res.next()) trec.setTimeYear(res.getLong(1) * 1000);
+            if (res.next()) {
+                trec.setTimeToday(res.getLong("today") * 1000);
+                trec.setTimeWeek(res.getLong("week") * 1000);
+                trec.setTimeMonth(res.getLong("month") * 1000);
+                trec.setTimeYear(res.getLong("year") * 1000);
+                trec.setTimeTotal(res.getLong("total") * 1000);
+            }
             res.close();
 
-        	// Total time
-        	timeInfo = connectionHandler.getPreparedStatement("getOnTimeTotal");
-            timeInfo.setString(1, uuid);
-            res = timeInfo.executeQuery();
-            if (res.next()) trec.setTimeTotal(res.getLong(1) * 1000);
-            res.close();
+            // Time which is still waiting to be written
+            DatabaseManager.writeBehind.getOnTime().addPendingTime(uuid, trec);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -170,38 +148,64 @@ public class OnTime implements IRepository {
         return trec;
     }    
 
+    /**
+     * @return One page of ten players with the highest total online time. Pages are served from a ranking of the
+     * top {@link #TOP_SIZE} players which is refreshed every {@link #TOP_CACHE_TIME} milliseconds.
+     */
     public Map<String, Long> getOnTimeTop(int pagenum) {
-        LinkedHashMap<String, Long> results = null;
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
-        try {
-            PreparedStatement top;
-            ResultSet res;
-            top = connectionHandler.getPreparedStatement("getOnTimeTop");
+        List<Map.Entry<String, Long>> top = getTopRanking();
+        if (top == null) {
+            return null;
+        }
 
-            results = new LinkedHashMap<>();
-            int offset = (pagenum < 1) ? 0 : (pagenum - 1) * 10;	// Offset = Page number x 10 (but starts at 0 and no less than 0
-            top.setInt(1, offset);
-            res = top.executeQuery();
+        LinkedHashMap<String, Long> results = new LinkedHashMap<>();
+        int offset = (pagenum < 1) ? 0 : (pagenum - 1) * 10;	// Offset = Page number x 10 (but starts at 0 and no less than 0
+        for (int i = offset; i < offset + 10 && i < top.size(); i++) {
+            results.put(top.get(i).getKey(), top.get(i).getValue());
+        }
+
+        return results;
+    }
 
-            // Build current page of results
+    private synchronized List<Map.Entry<String, Long>> getTopRanking() {
+        if (topRanking != null && System.currentTimeMillis() - topRankingLoaded < TOP_CACHE_TIME) {
+            return topRanking;
+        }
+
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return topRanking;
+        }
+
+        try {
+            PreparedStatement top = connectionHandler.getPreparedStatement("getOnTimeTop");
+            top.setInt(1, TOP_SIZE);
+            ResultSet res = top.executeQuery();
+
+            List<Map.Entry<String, Long>> ranking = new ArrayList<>(TOP_SIZE);
             while (res.next()) {
-                String name = res.getString("pname");
-                Long time = res.getLong("totaltime");
-                results.put(name, time);
+                ranking.add(new AbstractMap.SimpleImmutableEntry<>(res.getString("pname"), res.getLong("totaltime")));
             }
             res.close();
+
+            topRanking = Collections.unmodifiableList(ranking);
+            topRankingLoaded = System.currentTimeMillis();
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
             connectionHandler.release();
         }
 
-        return results;
+        return topRanking;
     }
 
     public Map<Timestamp, Long> getLastLogins(String uuid, int num){
         LinkedHashMap<Timestamp, Long> results = null;
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return results;
+        }
+
         try{
             PreparedStatement lastLogins;
             ResultSet res;
@@ -231,26 +235,81 @@ public class OnTime implements IRepository {
     				"`uuid` varchar(32) NOT NULL, "
     			  + "`timeslot` datetime NOT NULL,"
     			  + "`time` int(11) NOT NULL,"
-    			  + "UNIQUE KEY `pair` (`uuid`,`timeslot`)"};
+    			  + "UNIQUE KEY `pair` (`uuid`,`timeslot`)",
+    			ConfigManager.main.Table_OnTimeDaily, getDailyTable(),
+    			ConfigManager.main.Table_OnTimeTotal, getTotalTable()};
+    }
+
+    private String getDailyTable() {
+        return "`uuid` varchar(32) NOT NULL, "
+             + "`day` date NOT NULL,"
+             + "`time` int(11) NOT NULL,"
+             + "PRIMARY KEY (`uuid`,`day`)";
+    }
+
+    private String getTotalTable() {
+        return "`uuid` varchar(32) NOT NULL, "
+             + "`time` bigint(20) NOT NULL,"
+             + "PRIMARY KEY (`uuid`),"
+             + "KEY `time` (`time`)";
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("getOnTimeToday", "SELECT SUM(time) FROM "+ ConfigManager.main.Table_OnTime +" ontime WHERE uuid=? AND timeslot >= CURRENT_DATE()");
-        connection.addPreparedStatement("getOnTimeWeek",  "SELECT SUM(time) FROM "+ ConfigManager.main.Table_OnTime +" ontime WHERE uuid=? AND timeslot >= STR_TO_DATE(CONCAT(YEARWEEK(NOW()), ' Sunday'), '%X%V %W')");
-        connection.addPreparedStatement("getOnTimeMonth", "SELECT SUM(time) FROM "+ ConfigManager.main.Table_OnTime +" ontime WHERE uuid=? AND timeslot >= DATE_FORMAT(NOW(), '%Y-%m-01')");
-        connection.addPreparedStatement("getOnTimeYear",  "SELECT SUM(time) FROM "+ ConfigManager.main.Table_OnTime +" ontime WHERE uuid=? AND timeslot > DATE_FORMAT(NOW(), '%Y-01-01')");
-        connection.addPreparedStatement("getOnTimeTotal", "SELECT SUM(time) FROM "+ ConfigManager.main.Table_OnTime +" ontime WHERE uuid=?");
-        connection.addPreparedStatement("getOnTimeTop",   "SELECT "+ ConfigManager.main.Table_Players +".playername AS pname, "
-                 + ConfigManager.main.Table_OnTime +".uuid AS puuid, SUM(time) AS totaltime FROM "
-                 + ConfigManager.main.Table_OnTime +" JOIN "+ ConfigManager.main.Table_Players +" ON "
-                 + ConfigManager.main.Table_OnTime +".uuid="+ ConfigManager.main.Table_Players +".uuid GROUP BY "
-                 + ConfigManager.main.Table_OnTime +".uuid ORDER BY totaltime DESC LIMIT 10 OFFSET ?");
-        connection.addPreparedStatement("getLastLogins", "SELECT DATE(timeslot) AS logintime, SUM(time) AS ontime FROM "
-                 + ConfigManager.main.Table_OnTime +" WHERE uuid = ? GROUP BY DATE(`ontime`.timeslot) ORDER BY timeslot DESC LIMIT ?;");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("addOnTime", "INSERT INTO "+ ConfigManager.main.Table_OnTime +" (uuid,timeslot,time) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE time=time+VALUES(time)");
+        statements.addPreparedStatement("addOnTimeDaily", "INSERT INTO "+ ConfigManager.main.Table_OnTimeDaily +" (uuid,day,time) VALUES (?, DATE(?), ?) ON DUPLICATE KEY UPDATE time=time+VALUES(time)");
+        statements.addPreparedStatement("addOnTimeTotal", "INSERT INTO "+ ConfigManager.main.Table_OnTimeTotal +" (uuid,time) VALUES (?, ?) ON DUPLICATE KEY UPDATE time=time+VALUES(time)");
+        statements.addPreparedStatement("getOnTimeStats", "SELECT "
+                 + "SUM(IF(day >= CURRENT_DATE(), time, 0)) AS today, "
+                 + "SUM(IF(day >= STR_TO_DATE(CONCAT(YEARWEEK(NOW()), ' Sunday'), '%X%V %W'), time, 0)) AS week, "
+                 + "SUM(IF(day >= DATE_FORMAT(NOW(), '%Y-%m-01'), time, 0)) AS month, "
+                 + "SUM(IF(day >= DATE_FORMAT(NOW(), '%Y-01-01'), time, 0)) AS year, "
+                 + "SUM(time) AS total FROM "+ ConfigManager.main.Table_OnTimeDaily +" WHERE uuid=?");
+        statements.addPreparedStatement("getOnTimeTop",   "SELECT p.playername AS pname, t.uuid AS puuid, t.time AS totaltime FROM "
+                 + ConfigManager.main.Table_OnTimeTotal +" AS t JOIN "+ ConfigManager.main.Table_Players +" AS p ON t.uuid=p.uuid "
+                 + "ORDER BY t.time DESC LIMIT ?");
+        statements.addPreparedStatement("getLastLogins", "SELECT day AS logintime, time AS ontime FROM "
+                 + ConfigManager.main.Table_OnTimeDaily +" WHERE uuid = ? ORDER BY day DESC LIMIT ?;");
        }
 
 	@Override
 	public void checkUpdate() {
+        int installedVersion = ConfigManager.main.Version_Database_OnTime;
+
+        System.out.println("Current Version of the OnTime Database: " + installedVersion);
+
+        if (installedVersion < 2) {
+            // Version 2 adds the daily and total rollups, filled from the hourly slots
+            System.out.println("Upgrading OnTime Database to version 2...");
+            ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                System.out.println("Could not update the OnTime Database to version 2");
+                return;
+            }
+
+            try {
+                Statement stmt = connectionHandler.getConnection().createStatement();
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS `"+ ConfigManager.main.Table_OnTimeDaily +"` (" + getDailyTable() + ");");
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS `"+ ConfigManager.main.Table_OnTimeTotal +"` (" + getTotalTable() + ");");
+                stmt.executeUpdate("INSERT INTO `"+ ConfigManager.main.Table_OnTimeDaily +"` (uuid,day,time) SELECT uuid, DATE(timeslot), SUM(time) FROM `"
+                        + ConfigManager.main.Table_OnTime +"` GROUP BY uuid, DATE(timeslot) ON DUPLICATE KEY UPDATE time=VALUES(time)");
+                stmt.executeUpdate("INSERT INTO `"+ ConfigManager.main.Table_OnTimeTotal +"` (uuid,time) SELECT uuid, SUM(time) FROM `"
+                        + ConfigManager.main.Table_OnTime +"` GROUP BY uuid ON DUPLICATE KEY UPDATE time=VALUES(time)");
+                stmt.close();
+            } catch (SQLException e) {
+                System.out.println("Could not update the OnTime Database to version 2");
+                e.printStackTrace();
+                return;
+            } finally {
+                connectionHandler.release();
+            }
+        }
+
+        ConfigManager.main.Version_Database_OnTime = 2;
+        try {
+            ConfigManager.main.save();
+        } catch (InvalidConfigurationException e) {
+            e.printStackTrace();
+        }
 	}
 }
@@ -0,0 +1,284 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.TimeRecord;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Sums up online seconds per player and hourly time slot until they are written to the ontime table. Entries live in
+ * an open addressing table of primitive arrays which is keyed by the UUID bits and the slot number, so recording a
+ * session allocates nothing. Slots are counted in local hours since the epoch, matching the datetime values stored
+ * in the timeslot column.
+ */
+public class OnTimeAccumulator {
+    private static final long HOUR = 3600000L;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
+    /**
+     * Detached copy of the accumulated slots, handed to {@link OnTimeStore#addOnTime(Batch)}
+     */
+    public static class Batch {
+        final String[] uuids;
+        final int[] slots;
+        final int[] seconds;
+        final int size;
+
+        Batch(String[] uuids, int[] slots, int[] seconds, int size) {
+            this.uuids = uuids;
+            this.slots = slots;
+            this.seconds = seconds;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String getUuid(int i) {
+            return uuids[i];
+        }
+
+        public int getSlot(int i) {
+            return slots[i];
+        }
+
+        public int getSeconds(int i) {
+            return seconds[i];
+        }
+    }
+
+
+    private String[] uuids;
+    private long[] mostBits;
+    private long[] leastBits;
+    private int[] slots;
+    private int[] seconds;
+    private int size;
+
+    private int lastSlot;
+
+    public OnTimeAccumulator() {
+        allocate(INITIAL_CAPACITY);
+        lastSlot = toSlot(System.currentTimeMillis());
+    }
+
+    /**
+     * Splits the session into the hourly slots it covers and adds the seconds to each of them
+     */
+    public synchronized void add(String uuid, long start, long end) {
+        long most = parseHex(uuid, 0);
+        long least = parseHex(uuid, 16);
+
+        if (size == 0) {
+            lastSlot = toSlot(System.currentTimeMillis());
+        }
+
+        long from = start;
+        while (from < end) {
+            long offset = ZONE.getOffset(from);
+            int slot = (int) floorDiv(from + offset, HOUR);
+
+            long slotEnd = (slot + 1L) * HOUR - offset;
+            if (slotEnd <= from) {
+                // Clocks went back inside this slot
+                slotEnd = from + HOUR;
+            }
+
+            long to = Math.min(end, slotEnd);
+            int secs = (int) ((to - from) / 1000);
+            if (secs > 0) {
+                put(uuid, most, least, slot, secs);
+            }
+
+            from = to;
+        }
+    }
+
+    /**
+     * @return True once the current hour has moved on from the one of the last drain, or too many slots are waiting
+     */
+    public synchronized boolean shouldFlush(long now, int threshold) {
+        return size > 0 && (size >= threshold || toSlot(now) != lastSlot);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Takes every accumulated slot out of the table
+     */
+    public synchronized Batch drain() {
+        String[] outUuids = new String[size];
+        int[] outSlots = new int[size];
+        int[] outSeconds = new int[size];
+
+        int n = 0;
+        for (int i = 0; i < seconds.length; i++) {
+            if (seconds[i] > 0) {
+                outUuids[n] = uuids[i];
+                outSlots[n] = slots[i];
+                outSeconds[n] = seconds[i];
+                n++;
+            }
+        }
+
+        Batch batch = new Batch(outUuids, outSlots, outSeconds, n);
+        allocate(INITIAL_CAPACITY);
+        lastSlot = toSlot(System.currentTimeMillis());
+        return batch;
+    }
+
+    /**
+     * Adds a batch which could not be written back into the table
+     */
+    public synchronized void restore(Batch batch) {
+        for (int i = 0; i < batch.size; i++) {
+            String uuid = batch.uuids[i];
+            put(uuid, parseHex(uuid, 0), parseHex(uuid, 16), batch.slots[i], batch.seconds[i]);
+        }
+    }
+
+    /**
+     * Adds the seconds which are not written yet to the players today, week, month, year and total times
+     */
+    public synchronized void addPendingTime(String uuid, TimeRecord record) {
+        long most = parseHex(uuid, 0);
+        long least = parseHex(uuid, 16);
+
+        int[] periods = getPeriodStarts();
+        int today = periods[0];
+        int week = periods[1];
+        int month = periods[2];
+        int year = periods[3];
+
+        for (int i = 0; i < seconds.length; i++) {
+            if (seconds[i] > 0 && mostBits[i] == most && leastBits[i] == least && uuids[i].equals(uuid)) {
+                long millis = seconds[i] * 1000L;
+                int slot = slots[i];
+
+                if (slot >= today) record.setTimeToday(record.getTimeToday() + millis);
+                if (slot >= week) record.setTimeWeek(record.getTimeWeek() + millis);
+                if (slot >= month) record.setTimeMonth(record.getTimeMonth() + millis);
+                if (slot >= year) record.setTimeYear(record.getTimeYear() + millis);
+                record.setTimeTotal(record.getTimeTotal() + millis);
+            }
+        }
+    }
+
+    /**
+     * @return The first slot of today, this week (starting on Sunday), this month and this year
+     */
+    public static int[] getPeriodStarts() {
+        Calendar cal = Calendar.getInstance(ZONE);
+        cal.setFirstDayOfWeek(Calendar.SUNDAY);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        int today = toSlot(cal.getTimeInMillis());
+        cal.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY);
+        int week = toSlot(cal.getTimeInMillis());
+        cal.setTimeInMillis(System.currentTimeMillis());
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        int month = toSlot(cal.getTimeInMillis());
+        cal.set(Calendar.DAY_OF_YEAR, 1);
+        int year = toSlot(cal.getTimeInMillis());
+
+        return new int[]{today, week, month, year};
+    }
+
+    /**
+     * @return The start of the slot as it is stored in the timeslot column
+     */
+    public static Timestamp toTimestamp(int slot) {
+        long local = slot * HOUR;
+        return new Timestamp(local - ZONE.getOffset(local - ZONE.getOffset(local)));
+    }
+
+    private static int toSlot(long millis) {
+        return (int) floorDiv(millis + ZONE.getOffset(millis), HOUR);
+    }
+
+    private void put(String uuid, long most, long least, int slot, int secs) {
+        if ((size + 1) * 2 > seconds.length) {
+            resize();
+        }
+
+        int mask = seconds.length - 1;
+        int i = hash(most, least, slot) & mask;
+        while (seconds[i] > 0) {
+            if (slots[i] == slot && mostBits[i] == most && leastBits[i] == least && uuids[i].equals(uuid)) {
+                seconds[i] += secs;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        uuids[i] = uuid;
+        mostBits[i] = most;
+        leastBits[i] = least;
+        slots[i] = slot;
+        seconds[i] = secs;
+        size++;
+    }
+
+    private void resize() {
+        String[] oldUuids = uuids;
+        long[] oldMost = mostBits;
+        long[] oldLeast = leastBits;
+        int[] oldSlots = slots;
+        int[] oldSeconds = seconds;
+
+        allocate(oldSeconds.length * 2);
+        for (int i = 0; i < oldSeconds.length; i++) {
+            if (oldSeconds[i] > 0) {
+                put(oldUuids[i], oldMost[i], oldLeast[i], oldSlots[i], oldSeconds[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        uuids = new String[capacity];
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        slots = new int[capacity];
+        seconds = new int[capacity];
+        size = 0;
+    }
+
+    private static int hash(long most, long least, int slot) {
+        long h = most * 31 + least;
+        h = h * 31 + slot;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    // UUIDs are stored without dashes, the bits only speed up the comparison so odd characters do no harm
+    private static long parseHex(String uuid, int from) {
+        long bits = 0;
+        int to = Math.min(uuid.length(), from + 16);
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(uuid.charAt(i), 16);
+            bits = (bits << 4) | (digit < 0 ? uuid.charAt(i) & 0xF : digit);
+        }
+        return bits;
+    }
+}
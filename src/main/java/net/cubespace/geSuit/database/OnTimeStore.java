@@ -0,0 +1,27 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.TimeRecord;
+
+import java.sql.Timestamp;
+import java.util.Map;
+
+public interface OnTimeStore {
+    /**
+     * Adds the accumulated hourly slots to the stored online time
+     *
+     * @return False if the batch could not be written
+     */
+    public boolean addOnTime(OnTimeAccumulator.Batch batch);
+
+    /**
+     * @return The players online time including time which has not been written yet
+     */
+    public TimeRecord getPlayerOnTime(String uuid);
+
+    /**
+     * @return One page of ten player names with their total online time in seconds, null if the ranking could not
+     * be read
+     */
+    public Map<String, Long> getOnTimeTop(int pagenum);
+    public Map<Timestamp, Long> getLastLogins(String uuid, int num);
+}
@@ -0,0 +1,54 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.GSPlayer;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stored player settings, looked up by name or UUID
+ */
+public interface PlayerStore {
+    public boolean playerExists(String player);
+    public String getPlayerIP(String player);
+    public boolean getPlayerTPS(String player);
+
+    /**
+     * @return Name and UUID of the player last seen on the IP, or null if that is the player themselves
+     */
+    public String[] getAltPlayer(String uuid, String ip, boolean ignoreSelf);
+    public void insertPlayer(GSPlayer player, String ip);
+
+    /**
+     * Stores players which joined while the database was unreachable, using their first and last online time.
+     * Players which are stored already are left as they are.
+     *
+     * @return False if the players could not be written
+     */
+    public boolean insertPlayers(Collection<GSPlayer> players);
+    public void insertPlayerConvert(String player, String uuid, Timestamp lastonline, String ip, boolean tps);
+    public void updatePlayer(GSPlayer gsPlayer);
+
+    /**
+     * Writes player snapshots in one go, using their last online time as the time they were seen
+     *
+     * @return False if the updates could not be written
+     */
+    public boolean updatePlayers(Collection<GSPlayer> players);
+    public GSPlayer loadPlayer(String player);
+    public List<String> matchPlayers(String player);
+    public Map<String, UUID> resolvePlayerNames(Collection<String> names);
+    public Map<String, UUID> resolvePlayerNamesHistoric(Collection<String> names);
+    public Map<UUID, String> resolveUUIDs(Collection<UUID> ids);
+
+    /**
+     * Adds the UUID and name of the players online since the given time, every stored player sorted by UUID if it
+     * is null
+     *
+     * @return False if the players could not be read
+     */
+    public boolean loadPlayerNames(Timestamp since, LoginSnapshot.PlayerNames names);
+}
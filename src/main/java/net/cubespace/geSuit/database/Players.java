@@ -13,7 +13,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -23,10 +23,17 @@ import com.google.common.collect.Maps;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Players implements IRepository {
+public class Players implements IRepository, PlayerStore {
+    /**
+     * Prepared IN list lengths for the bulk name and UUID lookups
+     */
+    private static final int[] IN_LIST_SIZES = {1, 8, 32, 128};
 
     public boolean playerExists(String player) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
 
         try {
             PreparedStatement playerExists = connectionHandler.getPreparedStatement("playerExists");
@@ -40,11 +47,14 @@ public class Players implements IRepository {
             connectionHandler.release();
         }
 
-        return true;
+        return false;
     }
 
     public String getPlayerIP(String player) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
 
         try {
             PreparedStatement getPlayerIP = connectionHandler.getPreparedStatement("getPlayerIP");
@@ -70,6 +80,9 @@ public class Players implements IRepository {
 
     public boolean getPlayerTPS(String player) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return true;
+        }
 
         try {
             PreparedStatement getPlayerTPS = connectionHandler.getPreparedStatement("getPlayerTPS");
@@ -95,6 +108,9 @@ public class Players implements IRepository {
 
     public String[] getAltPlayer(String uuid, String ip, boolean ignoreSelf) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
 
         try {
             PreparedStatement getAltPlayer = connectionHandler.getPreparedStatement("getAltPlayer");
@@ -132,6 +148,9 @@ public class Players implements IRepository {
 
     public void insertPlayer(GSPlayer player, String ip) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement insertPlayer = connectionHandler.getPreparedStatement("insertPlayer");
@@ -147,8 +166,40 @@ public class Players implements IRepository {
         }
     }
 
+    public boolean insertPlayers(Collection<GSPlayer> players) {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
+
+        try {
+            PreparedStatement insertPlayerAt = connectionHandler.getPreparedStatement("insertPlayerAt");
+            for (GSPlayer player : players) {
+                insertPlayerAt.setString(1, player.getName());
+                insertPlayerAt.setString(2, player.getUuid());
+                insertPlayerAt.setTimestamp(3, player.getFirstOnline());
+                insertPlayerAt.setTimestamp(4, player.getLastOnline());
+                insertPlayerAt.setString(5, player.getIp());
+                insertPlayerAt.addBatch();
+            }
+            insertPlayerAt.executeBatch();
+
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
+        }
+
+        return false;
+    }
+
     public void insertPlayerConvert(String player, String uuid, Timestamp lastonline, String ip, boolean tps) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
+
         try {
             PreparedStatement insertPlayerConvert = connectionHandler.getPreparedStatement("insertPlayerConvert");
             insertPlayerConvert.setString(1, player);
@@ -168,6 +219,9 @@ public class Players implements IRepository {
 
     public void updatePlayer(GSPlayer gsPlayer) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement updatePlayer = connectionHandler.getPreparedStatement("updatePlayer");
@@ -187,8 +241,42 @@ public class Players implements IRepository {
         }
     }
 
+    public boolean updatePlayers(Collection<GSPlayer> players) {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
+
+        try {
+            PreparedStatement updatePlayer = connectionHandler.getPreparedStatement("updatePlayerAt");
+            for (GSPlayer player : players) {
+                updatePlayer.setString(1, player.getUuid());
+                updatePlayer.setString(2, player.getName());
+                updatePlayer.setTimestamp(3, player.getLastOnline());
+                updatePlayer.setString(4, player.getIp());
+                updatePlayer.setBoolean(5, player.acceptingTeleports());
+                updatePlayer.setBoolean(6, player.isNewSpawn());
+                updatePlayer.setString(7, player.getName());
+                updatePlayer.setString(8, player.getUuid());
+                updatePlayer.addBatch();
+            }
+            updatePlayer.executeBatch();
+
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
+        }
+
+        return false;
+    }
+
     public GSPlayer loadPlayer(String player) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
 
         GSPlayer player1 = null;
         try {
@@ -213,6 +301,9 @@ public class Players implements IRepository {
 
     public List<String> matchPlayers(String player) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return new ArrayList<>();
+        }
 
         List<String> players = new ArrayList<String>();
         try {
@@ -236,54 +327,11 @@ public class Players implements IRepository {
     }
     
     public Map<String, UUID> resolvePlayerNames(Collection<String> names) {
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
-
         Map<String, UUID> resolved = Maps.newHashMapWithExpectedSize(names.size());
-        try {
-            int maxBatch = 40;
-            int count = 0;
-            StringBuilder builder = new StringBuilder();
-            for (String name : names) {
-                ++count;
-                if (builder.length() != 0) {
-                    builder.append(",");
-                }
-                
-                builder.append(name);
-                
-                if (count >= maxBatch) {
-                    PreparedStatement statement = connectionHandler.getPreparedStatement("resolvePlayerName");
-                    statement.setString(1, builder.toString());
-                    
-                    ResultSet results = statement.executeQuery();
-                    while(results.next()) {
-                        resolved.put(results.getString("playername"), Utilities.makeUUID(results.getString("uuid")));
-                    }
-                    results.close();
-                    
-                    builder.setLength(0);
-                    count = 0;
-                }
-            }
-            
-            if (count > 0) {
-                PreparedStatement statement = connectionHandler.getPreparedStatement("resolvePlayerName");
-                statement.setString(1, builder.toString());
-                
-                ResultSet results = statement.executeQuery();
-                while(results.next()) {
-                    resolved.put(results.getString("playername"), Utilities.makeUUID(results.getString("uuid")));
-                }
-                results.close();
-            }
-            
-            return resolved;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Collections.emptyMap();
-        } finally {
-            connectionHandler.release();
+        for (String[] row : resolveInChunks("resolvePlayerName", names)) {
+            resolved.put(row[0], Utilities.makeUUID(row[1]));
         }
+        return resolved;
     }
     
     /**
@@ -292,105 +340,118 @@ public class Players implements IRepository {
      * @return
      */
     public Map<String, UUID> resolvePlayerNamesHistoric(Collection<String> names) {
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
-
+        // Rows come oldest first, so the player who used a name last wins
         Map<String, UUID> resolved = Maps.newHashMapWithExpectedSize(names.size());
+        for (String[] row : resolveInChunks("resolveOldPlayerName", names)) {
+            resolved.put(row[0], Utilities.makeUUID(row[1]));
+        }
+        return resolved;
+    }
+    
+    public Map<UUID, String> resolveUUIDs(Collection<UUID> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            keys.add(Utilities.getStringFromUUID(id));
+        }
+
+        Map<UUID, String> resolved = Maps.newHashMapWithExpectedSize(ids.size());
+        for (String[] row : resolveInChunks("resolveUUID", keys)) {
+            resolved.put(Utilities.makeUUID(row[1]), row[0]);
+        }
+        return resolved;
+    }
+
+    public boolean loadPlayerNames(Timestamp since, LoginSnapshot.PlayerNames names) {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
+
         try {
-            int maxBatch = 40;
-            int count = 0;
-            StringBuilder builder = new StringBuilder();
-            for (String name : names) {
-                ++count;
-                if (builder.length() != 0) {
-                    builder.append(",");
-                }
-                
-                builder.append(name);
-                
-                if (count >= maxBatch) {
-                    PreparedStatement statement = connectionHandler.getPreparedStatement("resolveOldPlayerName");
-                    statement.setString(1, builder.toString());
-                    
-                    ResultSet results = statement.executeQuery();
-                    while(results.next()) {
-                        resolved.put(results.getString("player"), Utilities.makeUUID(results.getString("uuid")));
-                    }
-                    results.close();
-                    
-                    builder.setLength(0);
-                    count = 0;
-                }
+            PreparedStatement getPlayerNames = connectionHandler.getPreparedStatement(since == null ? "getPlayerNames" : "getPlayerNamesSince");
+            if (since != null) {
+                getPlayerNames.setTimestamp(1, since);
             }
-            
-            if (count > 0) {
-                PreparedStatement statement = connectionHandler.getPreparedStatement("resolveOldPlayerName");
-                statement.setString(1, builder.toString());
-                
-                ResultSet results = statement.executeQuery();
-                while(results.next()) {
-                    resolved.put(results.getString("player"), Utilities.makeUUID(results.getString("uuid")));
+            // Streams the rows instead of holding the whole table in memory
+            getPlayerNames.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet res = getPlayerNames.executeQuery()) {
+                while (res.next()) {
+                    String uuid = res.getString("uuid");
+                    String name = res.getString("playername");
+                    if (uuid != null && uuid.length() >= 32 && name != null) {
+                        names.add(uuid, name);
+                    }
                 }
-                results.close();
             }
-            
-            return resolved;
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
-            return Collections.emptyMap();
         } finally {
             connectionHandler.release();
         }
+
+        return false;
     }
-    
-    public Map<UUID, String> resolveUUIDs(Collection<UUID> ids) {
+
+    /**
+     * Looks the keys up with the IN list statements of the given name. Each chunk is padded to the next prepared
+     * list size by repeating its last key, so only a handful of statements are needed for any number of keys.
+     *
+     * @return Name and UUID pairs, empty if the database could not be read
+     */
+    private List<String[]> resolveInChunks(String statementName, Collection<String> keys) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<String[]> rows = new ArrayList<>();
+        if (distinct.isEmpty()) {
+            return rows;
+        }
+
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return rows;
+        }
 
-        Map<UUID, String> resolved = Maps.newHashMapWithExpectedSize(ids.size());
         try {
-            int maxBatch = 40;
-            int count = 0;
-            StringBuilder builder = new StringBuilder();
-            for (UUID id : ids) {
-                ++count;
-                if (builder.length() != 0) {
-                    builder.append(",");
-                }
-                
-                builder.append(id.toString().replace("-", ""));
-                
-                if (count >= maxBatch) {
-                    PreparedStatement statement = connectionHandler.getPreparedStatement("resolveUUID");
-                    statement.setString(1, builder.toString());
-                    
-                    ResultSet results = statement.executeQuery();
-                    while(results.next()) {
-                        resolved.put(Utilities.makeUUID(results.getString("uuid")), results.getString("playername"));
+            int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+            for (int from = 0; from < distinct.size(); from += maxSize) {
+                List<String> chunk = distinct.subList(from, Math.min(distinct.size(), from + maxSize));
+
+                int size = maxSize;
+                for (int candidate : IN_LIST_SIZES) {
+                    if (candidate >= chunk.size()) {
+                        size = candidate;
+                        break;
                     }
-                    results.close();
-                    
-                    builder.setLength(0);
-                    count = 0;
                 }
-            }
-            
-            if (count > 0) {
-                PreparedStatement statement = connectionHandler.getPreparedStatement("resolveUUID");
-                statement.setString(1, builder.toString());
-                
+
+                PreparedStatement statement = connectionHandler.getPreparedStatement(statementName + size);
+                for (int i = 0; i < size; i++) {
+                    statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+
                 ResultSet results = statement.executeQuery();
-                while(results.next()) {
-                    resolved.put(Utilities.makeUUID(results.getString("uuid")), results.getString("playername"));
+                while (results.next()) {
+                    rows.add(new String[]{results.getString(1), results.getString(2)});
                 }
                 results.close();
             }
-            
-            return resolved;
         } catch (Exception e) {
             e.printStackTrace();
-            return Collections.emptyMap();
+            rows.clear();
         } finally {
             connectionHandler.release();
         }
+
+        return rows;
+    }
+
+    private static String inList(int size) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < size; i++) {
+            builder.append(i == 0 ? "?" : ",?");
+        }
+        return builder.append(')').toString();
     }
 
     @Override
@@ -406,21 +467,30 @@ public class Players implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("getPlayerIP", "SELECT ipaddress FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
-        connection.addPreparedStatement("playerExists", "SELECT playername FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
-        connection.addPreparedStatement("getPlayerTPS", "SELECT tps FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
-        connection.addPreparedStatement("getPlayer", "SELECT * FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
-        connection.addPreparedStatement("getAltPlayer", "SELECT playername, uuid FROM "+ ConfigManager.main.Table_Players +" WHERE ipaddress = ? ORDER BY lastonline DESC LIMIT 2");
-        connection.addPreparedStatement("matchPlayers", "SELECT playername,uuid FROM "+ ConfigManager.main.Table_Players +" WHERE playername like ? OR uuid like ? ORDER BY lastonline LIMIT 20");
-        connection.addPreparedStatement("insertPlayer", "INSERT INTO "+ ConfigManager.main.Table_Players +" (playername,uuid,firstonline,lastonline,ipaddress) VALUES (?, ?, NOW(), NOW(), ?)");
-        connection.addPreparedStatement("insertPlayerConvert", "INSERT INTO "+ ConfigManager.main.Table_Players +" (playername,uuid,firstonline,lastonline,ipaddress,tps) VALUES (?, ?, ?, ?, ?, ?)");
-        connection.addPreparedStatement("getPlayers", "SELECT * FROM "+ ConfigManager.main.Table_Players);
-        connection.addPreparedStatement("setUUID", "UPDATE "+ ConfigManager.main.Table_Players +" SET uuid = ? WHERE playername = ?");
-        connection.addPreparedStatement("updatePlayer", "UPDATE "+ ConfigManager.main.Table_Players +" SET uuid = ?, playername = ?, lastonline = NOW(), ipaddress = ?, tps = ?, newspawn = ? WHERE playername = ? OR uuid = ?");
-        connection.addPreparedStatement("resolvePlayerName", "SELECT playername,uuid FROM "+ ConfigManager.main.Table_Players +" WHERE FIND_IN_SET(playername, ?)");
-        connection.addPreparedStatement("resolveOldPlayerName", "SELECT player,uuid FROM "+ ConfigManager.main.Table_Tracking +" WHERE FIND_IN_SET(player, ?) GROUP BY player");
-        connection.addPreparedStatement("resolveUUID", "SELECT playername,uuid FROM "+ ConfigManager.main.Table_Players +" WHERE FIND_IN_SET(uuid, ?)");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("getPlayerIP", "SELECT ipaddress FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
+        statements.addPreparedStatement("playerExists", "SELECT playername FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
+        statements.addPreparedStatement("getPlayerTPS", "SELECT tps FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
+        statements.addPreparedStatement("getPlayer", "SELECT * FROM "+ ConfigManager.main.Table_Players +" WHERE playername = ? OR uuid = ?");
+        statements.addPreparedStatement("loginProfile", "SELECT * FROM "+ ConfigManager.main.Table_Players +" WHERE uuid = ?");
+        statements.addPreparedStatement("loginPlayer", "SELECT p.*, h.home_name, h.server, h.world, h.x, h.y, h.z, h.yaw, h.pitch FROM "+ ConfigManager.main.Table_Players +" AS p LEFT JOIN "+ ConfigManager.main.Table_Homes +" AS h ON h.player = p.uuid WHERE p.uuid = ?");
+        statements.addPreparedStatement("getAltPlayer", "SELECT playername, uuid FROM "+ ConfigManager.main.Table_Players +" WHERE ipaddress = ? ORDER BY lastonline DESC LIMIT 2");
+        statements.addPreparedStatement("matchPlayers", "SELECT playername,uuid FROM "+ ConfigManager.main.Table_Players +" WHERE playername like ? OR uuid like ? ORDER BY lastonline LIMIT 20");
+        statements.addPreparedStatement("insertPlayer", "INSERT INTO "+ ConfigManager.main.Table_Players +" (playername,uuid,firstonline,lastonline,ipaddress) VALUES (?, ?, NOW(), NOW(), ?)");
+        statements.addPreparedStatement("insertPlayerAt", "INSERT IGNORE INTO "+ ConfigManager.main.Table_Players +" (playername,uuid,firstonline,lastonline,ipaddress) VALUES (?, ?, ?, ?, ?)");
+        statements.addPreparedStatement("getPlayerNames", "SELECT uuid,playername FROM "+ ConfigManager.main.Table_Players +" ORDER BY uuid");
+        statements.addPreparedStatement("getPlayerNamesSince", "SELECT uuid,playername FROM "+ ConfigManager.main.Table_Players +" WHERE lastonline >= ?");
+        statements.addPreparedStatement("insertPlayerConvert", "INSERT INTO "+ ConfigManager.main.Table_Players +" (playername,uuid,firstonline,lastonline,ipaddress,tps) VALUES (?, ?, ?, ?, ?, ?)");
+        statements.addMigrationStatement("getPlayers", "SELECT * FROM "+ ConfigManager.main.Table_Players);
+        statements.addMigrationStatement("setUUID", "UPDATE "+ ConfigManager.main.Table_Players +" SET uuid = ? WHERE playername = ?");
+        statements.addPreparedStatement("updatePlayer", "UPDATE "+ ConfigManager.main.Table_Players +" SET uuid = ?, playername = ?, lastonline = NOW(), ipaddress = ?, tps = ?, newspawn = ? WHERE playername = ? OR uuid = ?");
+        statements.addPreparedStatement("updatePlayerAt", "UPDATE "+ ConfigManager.main.Table_Players +" SET uuid = ?, playername = ?, lastonline = ?, ipaddress = ?, tps = ?, newspawn = ? WHERE playername = ? OR uuid = ?");
+
+        for (int size : IN_LIST_SIZES) {
+            statements.addPreparedStatement("resolvePlayerName" + size, "SELECT playername,uuid FROM "+ ConfigManager.main.Table_Players +" WHERE playername IN " + inList(size));
+            statements.addPreparedStatement("resolveOldPlayerName" + size, "SELECT player,uuid FROM "+ ConfigManager.main.Table_Tracking +" WHERE player IN " + inList(size) + " ORDER BY lastseen");
+            statements.addPreparedStatement("resolveUUID" + size, "SELECT playername,uuid FROM "+ ConfigManager.main.Table_Players +" WHERE uuid IN " + inList(size));
+        }
     }
 
     @Override
@@ -432,6 +502,9 @@ public class Players implements IRepository {
         if (installedVersion < 2) {
             // Version 2 adds UUIDs as Field
             ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
 
             try {
                 connectionHandler.getConnection().createStatement().execute("ALTER TABLE `"+ ConfigManager.main.Table_Players +"` ADD `uuid` VARCHAR(100) NULL AFTER `playername`, ADD UNIQUE (`uuid`) ;");
@@ -444,6 +517,9 @@ public class Players implements IRepository {
             }
 
             connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
 
             // Convert all Names to UUIDs
             PreparedStatement getPlayers = connectionHandler.getPreparedStatement("getPlayers");
@@ -455,6 +531,9 @@ public class Players implements IRepository {
 
                     if (uuid != null) {
                         ConnectionHandler connectionHandler1 = DatabaseManager.connectionPool.getConnection();
+                        if (connectionHandler1 == null) {
+                            return;
+                        }
 
                         try {
                             PreparedStatement preparedStatement = connectionHandler1.getPreparedStatement("setUUID");
@@ -480,6 +559,10 @@ public class Players implements IRepository {
         if (installedVersion < 3) {
             // Version 3 adds "firstonline" field
             ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
+
             try {
                 System.out.println("Upgrading Player Database to version 3...");
                 connectionHandler.getConnection().createStatement().execute("ALTER TABLE `"+ ConfigManager.main.Table_Players +"` ADD `firstonline` DATETIME NOT NULL AFTER `uuid`;");
@@ -493,6 +576,10 @@ public class Players implements IRepository {
 
             // Convert any existing "firstonline" values to the current "lastonline" values
             connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                return;
+            }
+
             Statement stmt = null; 
             try {
             	stmt = connectionHandler.getConnection().createStatement();
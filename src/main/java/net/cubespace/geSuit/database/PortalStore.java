@@ -0,0 +1,17 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.Portal;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.util.List;
+import java.util.Map;
+
+public interface PortalStore {
+    /**
+     * @return Portals by server or null if they could not be read
+     */
+    public Map<ServerInfo, List<Portal>> getPortals();
+    public void deletePortal(String portalName);
+    public void insertPortal(Portal portal);
+    public void updatePortal(Portal portal);
+}
@@ -16,9 +16,13 @@ import java.util.Map;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Portals implements IRepository {
+public class Portals implements IRepository, PortalStore {
     public Map<ServerInfo, List<Portal>> getPortals() {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
+
         Map<ServerInfo, List<Portal>> portalMap = new HashMap<>();
 
         try {
@@ -61,6 +65,9 @@ public class Portals implements IRepository {
 
     public void deletePortal(String portalName) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement deletePortal = connectionHandler.getPreparedStatement("deletePortal");
@@ -76,6 +83,9 @@ public class Portals implements IRepository {
 
     public void insertPortal(Portal portal) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement insertPortal = connectionHandler.getPreparedStatement("insertPortal");
@@ -102,6 +112,9 @@ public class Portals implements IRepository {
 
     public void updatePortal(Portal portal) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement updatePortal = connectionHandler.getPreparedStatement("updatePortal");
@@ -144,11 +157,11 @@ public class Portals implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("getPortals", "SELECT * FROM " + ConfigManager.main.Table_Portals);
-        connection.addPreparedStatement("deletePortal", "DELETE FROM "+ ConfigManager.main.Table_Portals +" WHERE portalname = ?");
-        connection.addPreparedStatement("insertPortal", "INSERT INTO "+ ConfigManager.main.Table_Portals +" (portalname,server,type,destination,world,filltype,xmax,xmin,ymax,ymin,zmax,zmin) VALUES(?,?,?,?,?,?,?,?,?,?,?,?)");
-        connection.addPreparedStatement("updatePortal", "UPDATE "+ ConfigManager.main.Table_Portals +" SET server=?, world=?, type =?, filltype = ?, destination = ?, xmax=?, ymax=?, zmax=?, xmin = ?, ymin = ?, zmin = ? WHERE portalname=?");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("getPortals", "SELECT * FROM " + ConfigManager.main.Table_Portals);
+        statements.addPreparedStatement("deletePortal", "DELETE FROM "+ ConfigManager.main.Table_Portals +" WHERE portalname = ?");
+        statements.addPreparedStatement("insertPortal", "INSERT INTO "+ ConfigManager.main.Table_Portals +" (portalname,server,type,destination,world,filltype,xmax,xmin,ymax,ymin,zmax,zmin) VALUES(?,?,?,?,?,?,?,?,?,?,?,?)");
+        statements.addPreparedStatement("updatePortal", "UPDATE "+ ConfigManager.main.Table_Portals +" SET server=?, world=?, type =?, filltype = ?, destination = ?, xmax=?, ymax=?, zmax=?, xmin = ?, ymin = ?, zmin = ? WHERE portalname=?");
     }
 
     @Override
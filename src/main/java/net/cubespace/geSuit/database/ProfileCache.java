@@ -0,0 +1,126 @@
+package net.cubespace.geSuit.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.managers.HomesManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Home;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Profiles of players who left recently or were looked up while offline, with their homes attached, so a player who
+ * reconnects skips loading their row and homes and repeated lookups of offline players skip the database. Profiles are
+ * handed out as copies, so nothing of the last session carries over into the next one.
+ * <p>
+ * A profile is dropped when the player logs in here and when their homes are changed while they are offline. Other
+ * proxies may change the player as well: a reconnect still reads the player row and loads the homes again if the row
+ * shows a later session, the {@link LoginSnapshot} sync drops the profiles of players seen online elsewhere, and
+ * profiles expire after {@code ProfileCacheTime} seconds.
+ */
+public class ProfileCache {
+    private final Cache<String, GSPlayer> byUUID;
+    private final Cache<String, String> byName;
+
+    public ProfileCache(int size, int seconds) {
+        byUUID = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(seconds, TimeUnit.SECONDS).build();
+        byName = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(seconds, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Keeps a copy of the player and their homes, provisional players are left out as their settings are not the
+     * stored ones
+     */
+    public synchronized void put(GSPlayer player) {
+        if (player.isProvisional() || player.getUuid() == null) {
+            return;
+        }
+
+        byUUID.put(player.getUuid(), copy(player));
+        byName.put(player.getName().toLowerCase(), player.getUuid());
+    }
+
+    /**
+     * @param player Name or UUID of the player
+     * @return A copy of the cached profile, null if the player is not cached
+     */
+    public GSPlayer get(String player) {
+        GSPlayer profile = byUUID.getIfPresent(player);
+        if (profile == null) {
+            String uuid = byName.getIfPresent(player.toLowerCase());
+            profile = uuid == null ? null : byUUID.getIfPresent(uuid);
+            // The name may belong to someone else by now
+            if (profile != null && !profile.getName().equalsIgnoreCase(player)) {
+                profile = null;
+            }
+        }
+
+        return record(profile);
+    }
+
+    /**
+     * @return A copy of the cached profile, null if the player is not cached
+     */
+    public GSPlayer get(UUID id) {
+        return record(byUUID.getIfPresent(Utilities.getStringFromUUID(id)));
+    }
+
+    /**
+     * Drops the profile of the player, the next lookup loads them from the database
+     */
+    public synchronized void invalidate(String uuid) {
+        GSPlayer old = byUUID.getIfPresent(uuid);
+        if (old != null) {
+            byUUID.invalidate(uuid);
+            byName.invalidate(old.getName().toLowerCase());
+        }
+    }
+
+    /**
+     * Drops the profile of a player who was online somewhere since the given time, unless it was cached after that
+     * time, which is the case for players who just left here
+     */
+    public synchronized void invalidateSeenSince(String uuid, Timestamp since) {
+        GSPlayer old = byUUID.getIfPresent(uuid);
+        if (old != null && (old.getLastOnline() == null || old.getLastOnline().before(since))) {
+            invalidate(uuid);
+        }
+    }
+
+    public long size() {
+        return byUUID.size();
+    }
+
+    /**
+     * @return Share of the lookups answered from the cache since the start, 0 without lookups
+     */
+    public double getHitRate() {
+        long hits = MetricsManager.getCount("profilecache.hits");
+        long total = hits + MetricsManager.getCount("profilecache.misses");
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static GSPlayer record(GSPlayer profile) {
+        MetricsManager.increment(profile != null ? "profilecache.hits" : "profilecache.misses");
+        return profile == null ? null : copy(profile);
+    }
+
+    private static GSPlayer copy(GSPlayer player) {
+        GSPlayer copy = new GSPlayer(player.getName(), player.getUuid(), player.acceptingTeleports(), player.isNewSpawn(), player.getIp(), player.getLastOnline(), player.getFirstOnline());
+
+        List<Home> homes = new ArrayList<>();
+        for (List<Home> list : player.getHomes().values()) {
+            for (Home home : list) {
+                homes.add(new Home(copy, home.name, home.loc));
+            }
+        }
+        HomesManager.attachHomes(copy, homes);
+        return copy;
+    }
+}
@@ -0,0 +1,343 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.configs.SubConfig.Database;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.md_5.bungee.api.ProxyServer;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the ontime and tracking tables small by moving old rows out of them in the background, every
+ * {@code RetentionInterval} hours:
+ * <ul>
+ * <li>Hourly ontime older than {@code OnTimeHourlyDays} is folded into the daily sums one day at a time and removed.
+ * The daily sums are already written together with the hourly slots, folding only repairs days which are missing or
+ * short there.</li>
+ * <li>Tracking rows not seen for {@code TrackingArchiveDays} move to one archive table per year of their last seen
+ * time. The newest row of every name a UUID used stays, so name histories and name change checks are unchanged, only
+ * old IPs leave the lookups. Archives older than {@code TrackingArchiveYears} are dropped.</li>
+ * </ul>
+ * Rows are moved in chunks of {@code RetentionChunkSize} with a pause in between. Only one proxy runs the jobs at a
+ * time, the others skip their run while the MySQL lock is held. The embedded storage is not compacted.
+ */
+public class Retention {
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final long FIRST_RUN = TimeUnit.MINUTES.toSeconds(5);
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean stopped = false;
+
+    /**
+     * Schedules the jobs, the first run starts a few minutes after the proxy
+     */
+    public void start() {
+        int interval = ConfigManager.main.Database.RetentionInterval;
+        if (DatabaseManager.connectionPool == null || interval <= 0) {
+            return;
+        }
+
+        ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                Retention.this.run();
+            }
+        }, FIRST_RUN, TimeUnit.HOURS.toSeconds(interval), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops a running job after its current chunk
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Runs every job once unless another run is still busy
+     */
+    public void run() {
+        if (stopped || !running.compareAndSet(false, true)) {
+            return;
+        }
+
+        ConnectionHandler ch = DatabaseManager.connectionPool.getConnection();
+        if (ch == null) {
+            running.set(false);
+            return;
+        }
+
+        long start = System.nanoTime();
+        String lock = ConfigManager.main.Database.Database + "." + ConfigManager.main.Table_Tracking + ".retention";
+        boolean locked = false;
+        try {
+            locked = acquireLock(ch.getConnection(), lock);
+            if (!locked) {
+                geSuit.instance.DebugMsg("Another proxy is compacting the database, skipping this run");
+                return;
+            }
+
+            Database config = ConfigManager.main.Database;
+            if (config.OnTimeHourlyDays > 0) {
+                compactOnTime(ch.getConnection(), config);
+            }
+            if (config.TrackingArchiveDays > 0) {
+                archiveTracking(ch.getConnection(), config);
+            }
+            if (config.TrackingArchiveYears > 0) {
+                dropArchives(ch.getConnection(), config.TrackingArchiveYears);
+            }
+
+            MetricsManager.getHistogram("retention.run").recordSince(start);
+        } catch (SQLException e) {
+            geSuit.instance.getLogger().severe("Could not compact the database, it continues with the next run: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (locked) {
+                releaseLock(ch.getConnection(), lock);
+            }
+            ch.release();
+            running.set(false);
+        }
+    }
+
+    private void compactOnTime(Connection connection, Database config) throws SQLException, InterruptedException {
+        String hourly = ConfigManager.main.Table_OnTime;
+        long start = System.nanoTime();
+        long lastReport = start;
+        int days = 0;
+        long deleted = 0;
+
+        try (PreparedStatement oldest = connection.prepareStatement("SELECT DATE(MIN(timeslot)) FROM `" + hourly + "` WHERE timeslot < CURRENT_DATE() - INTERVAL ? DAY");
+             PreparedStatement fold = connection.prepareStatement("INSERT INTO `" + ConfigManager.main.Table_OnTimeDaily + "` (uuid,day,time) SELECT uuid, ?, SUM(time) FROM `"
+                     + hourly + "` WHERE timeslot >= ? AND timeslot < ? + INTERVAL 1 DAY GROUP BY uuid ON DUPLICATE KEY UPDATE time=GREATEST(time, VALUES(time))");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM `" + hourly + "` WHERE timeslot >= ? AND timeslot < ? + INTERVAL 1 DAY LIMIT ?")) {
+            oldest.setInt(1, config.OnTimeHourlyDays);
+
+            while (!stopped) {
+                Date day;
+                try (ResultSet res = oldest.executeQuery()) {
+                    day = res.next() ? res.getDate(1) : null;
+                }
+                if (day == null) {
+                    break;
+                }
+
+                // A day interrupted while deleting is folded again, GREATEST keeps the complete sum of the first fold
+                fold.setDate(1, day);
+                fold.setDate(2, day);
+                fold.setDate(3, day);
+                fold.executeUpdate();
+
+                int removed;
+                do {
+                    delete.setDate(1, day);
+                    delete.setDate(2, day);
+                    delete.setInt(3, config.RetentionChunkSize);
+                    removed = delete.executeUpdate();
+                    deleted += removed;
+                    MetricsManager.add("retention.ontime.deleted", removed);
+                    pause(config);
+                } while (removed >= config.RetentionChunkSize && !stopped);
+
+                days++;
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL) {
+                    lastReport = now;
+                    geSuit.instance.getLogger().info("Compacting ontime: folded " + days + " days up to " + day + ", removed " + deleted + " hourly rows");
+                }
+            }
+        }
+
+        if (days > 0) {
+            geSuit.instance.getLogger().info("Compacted the ontime of " + days + " days, removed " + deleted + " hourly rows in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
+        }
+    }
+
+    private void archiveTracking(Connection connection, Database config) throws SQLException, InterruptedException {
+        String tracking = ConfigManager.main.Table_Tracking;
+        Set<String> archives = new HashSet<>();
+        long start = System.nanoTime();
+        long lastReport = start;
+        long archived = 0;
+
+        // Rows are walked by last seen time, rows which stay are passed over by moving the cursor past them
+        Timestamp cursor = new Timestamp(0);
+        try (PreparedStatement select = connection.prepareStatement("SELECT t.player, t.uuid, t.ip, t.firstseen, t.lastseen FROM `" + tracking + "` AS t "
+                + "WHERE t.lastseen >= ? AND t.lastseen < NOW() - INTERVAL ? DAY "
+                + "AND EXISTS (SELECT 1 FROM `" + tracking + "` AS n WHERE n.uuid=t.uuid AND n.player=t.player AND n.lastseen > t.lastseen) "
+                + "ORDER BY t.lastseen LIMIT ?")) {
+            while (!stopped) {
+                List<Object[]> rows = new ArrayList<>();
+                select.setTimestamp(1, cursor);
+                select.setInt(2, config.TrackingArchiveDays);
+                select.setInt(3, config.RetentionChunkSize);
+                try (ResultSet res = select.executeQuery()) {
+                    while (res.next()) {
+                        rows.add(new Object[]{res.getString("player"), res.getString("uuid"), res.getString("ip"), res.getTimestamp("firstseen"), res.getTimestamp("lastseen")});
+                    }
+                }
+                if (rows.isEmpty()) {
+                    break;
+                }
+
+                Map<String, List<Object[]>> byArchive = new LinkedHashMap<>();
+                for (Object[] row : rows) {
+                    String archive = getArchiveTable(row[4]);
+                    if (!byArchive.containsKey(archive)) {
+                        byArchive.put(archive, new ArrayList<Object[]>());
+                    }
+                    byArchive.get(archive).add(row);
+                }
+                for (String archive : byArchive.keySet()) {
+                    if (archives.add(archive)) {
+                        try (Statement create = connection.createStatement()) {
+                            create.executeUpdate("CREATE TABLE IF NOT EXISTS `" + archive + "` LIKE `" + tracking + "`");
+                        }
+                    }
+                }
+
+                moveRows(connection, byArchive);
+                archived += rows.size();
+                MetricsManager.add("retention.tracking.archived", rows.size());
+                cursor = (Timestamp) rows.get(rows.size() - 1)[4];
+
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL) {
+                    lastReport = now;
+                    geSuit.instance.getLogger().info("Archiving tracking: moved " + archived + " rows, last seen up to " + cursor);
+                }
+
+                if (rows.size() < config.RetentionChunkSize) {
+                    break;
+                }
+                pause(config);
+            }
+        }
+
+        if (archived > 0) {
+            geSuit.instance.getLogger().info("Archived " + archived + " tracking rows in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
+        }
+    }
+
+    // Copies the rows and removes them in one transaction. A row seen again since it was read keeps its newer last
+    // seen time and is not removed, the archived copy of it is harmless.
+    private void moveRows(Connection connection, Map<String, List<Object[]>> byArchive) throws SQLException {
+        try {
+            connection.setAutoCommit(false);
+
+            for (Map.Entry<String, List<Object[]>> entry : byArchive.entrySet()) {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO `" + entry.getKey() + "` (player,uuid,ip,firstseen,lastseen) VALUES (?, ?, ?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE firstseen=LEAST(firstseen, VALUES(firstseen)), lastseen=GREATEST(lastseen, VALUES(lastseen))")) {
+                    for (Object[] row : entry.getValue()) {
+                        for (int i = 0; i < row.length; i++) {
+                            insert.setObject(i + 1, row[i]);
+                        }
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            }
+
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM `" + ConfigManager.main.Table_Tracking + "` WHERE player=? AND uuid=? AND ip=? AND lastseen=?")) {
+                for (List<Object[]> rows : byArchive.values()) {
+                    for (Object[] row : rows) {
+                        delete.setObject(1, row[0]);
+                        delete.setObject(2, row[1]);
+                        delete.setObject(3, row[2]);
+                        delete.setObject(4, row[4]);
+                        delete.addBatch();
+                    }
+                }
+                delete.executeBatch();
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw e;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private void dropArchives(Connection connection, int keepYears) throws SQLException {
+        String prefix = ConfigManager.main.Table_TrackingArchive + "_";
+        int oldestKept = Calendar.getInstance().get(Calendar.YEAR) - keepYears + 1;
+
+        List<String> expired = new ArrayList<>();
+        try (PreparedStatement tables = connection.prepareStatement("SHOW TABLES LIKE ?")) {
+            tables.setString(1, prefix.replace("_", "\\_") + "%");
+            try (ResultSet res = tables.executeQuery()) {
+                while (res.next()) {
+                    String table = res.getString(1);
+                    try {
+                        if (Integer.parseInt(table.substring(prefix.length())) < oldestKept) {
+                            expired.add(table);
+                        }
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+
+        for (String table : expired) {
+            try (Statement drop = connection.createStatement()) {
+                drop.executeUpdate("DROP TABLE `" + table + "`");
+            }
+            geSuit.instance.getLogger().info("Dropped the tracking archive " + table);
+        }
+    }
+
+    private static String getArchiveTable(Object lastSeen) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime((Timestamp) lastSeen);
+        return ConfigManager.main.Table_TrackingArchive + "_" + calendar.get(Calendar.YEAR);
+    }
+
+    private static boolean acquireLock(Connection connection, String lock) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, lock);
+            try (ResultSet res = statement.executeQuery()) {
+                return res.next() && res.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection connection, String lock) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, lock);
+            statement.executeQuery().close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static void pause(Database config) throws InterruptedException {
+        if (config.RetentionPause > 0) {
+            Thread.sleep(config.RetentionPause);
+        }
+    }
+}
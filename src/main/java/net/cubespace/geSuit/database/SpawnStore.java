@@ -0,0 +1,18 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Spawn;
+
+import java.util.List;
+
+public interface SpawnStore {
+    public Location getSpawn(String spawnName);
+    public void deleteWorldSpawn(String server, String world);
+
+    /**
+     * @return The servers world spawns, without the new player and proxy spawn
+     */
+    public List<Spawn> getSpawnsForServer(String server);
+    public void insertSpawn(Spawn spawn);
+    public void updateSpawn(Spawn spawn);
+}
@@ -13,9 +13,13 @@ import java.util.List;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Spawns implements IRepository {
+public class Spawns implements IRepository, SpawnStore {
     public Location getSpawn(String spawnName) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
+
         Location location = null;
 
         try {
@@ -38,6 +42,9 @@ public class Spawns implements IRepository {
 
     public void deleteWorldSpawn(String server, String world) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement deleteSpawn = connectionHandler.getPreparedStatement("deleteWorldSpawn");
@@ -54,6 +61,10 @@ public class Spawns implements IRepository {
 
     public List<Spawn> getSpawnsForServer(String server) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return new ArrayList<>();
+        }
+
         List<Spawn> spawns = new ArrayList<>();
 
         try {
@@ -77,6 +88,9 @@ public class Spawns implements IRepository {
 
     public void insertSpawn(Spawn spawn) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement insertSpawn = connectionHandler.getPreparedStatement("insertSpawn");
@@ -99,6 +113,9 @@ public class Spawns implements IRepository {
 
     public void updateSpawn(Spawn spawn) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement updateSpawn = connectionHandler.getPreparedStatement("updateSpawn");
@@ -133,12 +150,12 @@ public class Spawns implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("getSpawn", "SELECT * FROM "+ ConfigManager.main.Table_Spawns +" WHERE spawnname=?");
-        connection.addPreparedStatement("getSpawnsForServer", "SELECT * FROM "+ ConfigManager.main.Table_Spawns +" WHERE server=? AND NOT (spawnname = 'NewPlayerSpawn' OR spawnname = 'ProxySpawn')");
-        connection.addPreparedStatement("insertSpawn", "INSERT INTO "+ ConfigManager.main.Table_Spawns +" (spawnname, server, world, x, y, z, yaw, pitch) VALUES(?,?,?,?,?,?,?,?)");
-        connection.addPreparedStatement("updateSpawn", "UPDATE "+ ConfigManager.main.Table_Spawns +" SET world = ?, x = ?, y = ?, z = ?, yaw = ?, pitch = ? WHERE spawnname = ? AND server = ?");
-        connection.addPreparedStatement("deleteWorldSpawn", "DELETE FROM " + ConfigManager.main.Table_Spawns + " WHERE server=? AND world=? AND spawnname = world");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("getSpawn", "SELECT * FROM "+ ConfigManager.main.Table_Spawns +" WHERE spawnname=?");
+        statements.addPreparedStatement("getSpawnsForServer", "SELECT * FROM "+ ConfigManager.main.Table_Spawns +" WHERE server=? AND NOT (spawnname = 'NewPlayerSpawn' OR spawnname = 'ProxySpawn')");
+        statements.addPreparedStatement("insertSpawn", "INSERT INTO "+ ConfigManager.main.Table_Spawns +" (spawnname, server, world, x, y, z, yaw, pitch) VALUES(?,?,?,?,?,?,?,?)");
+        statements.addPreparedStatement("updateSpawn", "UPDATE "+ ConfigManager.main.Table_Spawns +" SET world = ?, x = ?, y = ?, z = ?, yaw = ?, pitch = ? WHERE spawnname = ? AND server = ?");
+        statements.addPreparedStatement("deleteWorldSpawn", "DELETE FROM " + ConfigManager.main.Table_Spawns + " WHERE server=? AND world=? AND spawnname = world");
 
 
     }
@@ -0,0 +1,62 @@
+package net.cubespace.geSuit.database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The named statements of every repository in a pool. It is filled once when the pool starts, connections only look
+ * statements up in it and prepare them when they are first used. Statements which are only needed to upgrade old
+ * tables are registered as migration statements, connections close them again when they are released.
+ */
+public class StatementRegistry {
+
+    static class Definition {
+        final String query;
+        final int mode;
+        final boolean migration;
+
+        Definition(String query, int mode, boolean migration) {
+            this.query = query;
+            this.mode = mode;
+            this.migration = migration;
+        }
+    }
+
+    // No generated keys requested
+    static final int NO_MODE = -1;
+
+    private final Map<String, Definition> definitions = new LinkedHashMap<>();
+
+    public void addPreparedStatement(String name, String query, int mode) {
+        definitions.put(name, new Definition(query, mode, false));
+    }
+
+    public void addPreparedStatement(String name, String query) {
+        definitions.put(name, new Definition(query, NO_MODE, false));
+    }
+
+    /**
+     * Registers a statement which is only used by {@link IRepository#checkUpdate()}
+     */
+    public void addMigrationStatement(String name, String query) {
+        definitions.put(name, new Definition(query, NO_MODE, true));
+    }
+
+    Definition get(String name) {
+        return definitions.get(name);
+    }
+
+    /**
+     * @return The SQL of every statement used at runtime, in the order they were registered
+     */
+    public Map<String, String> getQueries() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        for (Map.Entry<String, Definition> entry : definitions.entrySet()) {
+            if (!entry.getValue().migration) {
+                queries.put(entry.getKey(), entry.getValue().query);
+            }
+        }
+        return Collections.unmodifiableMap(queries);
+    }
+}
@@ -12,17 +12,22 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Tracking implements IRepository {
+public class Tracking implements IRepository, TrackingStore {
 
     public void insertTracking(String player, String uuid, String ip) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
 
         try {
             PreparedStatement insertPlayer = connectionHandler.getPreparedStatement("insertTracking");
@@ -41,6 +46,10 @@ public class Tracking implements IRepository {
     public void insertHistoricTracking(String player, String uuid, String ip, Date changedDate, Date lastSeen) {
 
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
+
         try {
             PreparedStatement insertPlayer = connectionHandler.getPreparedStatement("insertHistoricTracking");
             insertPlayer.setString(1, player);
@@ -56,10 +65,69 @@ public class Tracking implements IRepository {
         }
     }
 
+    public boolean touchTracking(Collection<Track> tracks) {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
+
+        try {
+            PreparedStatement touchTracking = connectionHandler.getPreparedStatement("touchTracking");
+            for (Track track : tracks) {
+                Timestamp seen = new Timestamp(track.getLastSeen().getTime());
+                touchTracking.setString(1, track.getPlayer());
+                touchTracking.setString(2, track.getUuid());
+                touchTracking.setString(3, track.getIp());
+                touchTracking.setTimestamp(4, seen);
+                touchTracking.setTimestamp(5, seen);
+                touchTracking.addBatch();
+            }
+            touchTracking.executeBatch();
+
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
+        }
+
+        return false;
+    }
+
+    public boolean loadLinks(AltGraph.Links links) {
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return false;
+        }
+
+        try {
+            PreparedStatement getTrackingLinks = connectionHandler.getPreparedStatement("getTrackingLinks");
+            // Streams the rows instead of holding the whole table in memory
+            getTrackingLinks.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet res = getTrackingLinks.executeQuery()) {
+                while (res.next()) {
+                    links.add(res.getString("player"), res.getString("uuid"), res.getString("ip"), res.getTimestamp("lastseen").getTime());
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
+        }
+
+        return false;
+    }
+
     public List<Track> getPlayerTracking(String search, String type) {
         List<Track> tracking = new ArrayList<>();
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return tracking;
+        }
+
         try {
         	PreparedStatement trackInfo;
         	
@@ -103,23 +171,51 @@ public class Tracking implements IRepository {
         return tracking;
     }
 
+    /**
+     * Writes every earlier name of the player as one batch
+     */
     public void insertNameHistory(GSPlayer player) {
         UUID id = Utilities.makeUUID(player.getUuid());
         String ip = player.getIp();
         Map<Timestamp, String> input = Profile.getMojangNameHistory(id);
-        Date firstSeen = new Date(0);
-        for (Map.Entry<Timestamp, String> e : input.entrySet()) {
-            String oldName = e.getValue();
-            Timestamp time = e.getKey();
-            Date changedAt = new Date(time.getTime());
-            insertHistoricTracking(oldName, player.getUuid(), ip, firstSeen, changedAt);
-            firstSeen = changedAt;
+        if (input.isEmpty()) {
+            return;
+        }
+
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return;
+        }
+
+        try {
+            PreparedStatement insertHistoricTracking = connectionHandler.getPreparedStatement("insertHistoricTracking");
+            Date firstSeen = new Date(0);
+            // Oldest name first, each one was used until the next change
+            for (Map.Entry<Timestamp, String> e : new TreeMap<>(input).entrySet()) {
+                Date changedAt = new Date(e.getKey().getTime());
+                insertHistoricTracking.setString(1, e.getValue());
+                insertHistoricTracking.setString(2, player.getUuid());
+                insertHistoricTracking.setString(3, ip);
+                insertHistoricTracking.setDate(4, firstSeen);
+                insertHistoricTracking.setDate(5, changedAt);
+                insertHistoricTracking.addBatch();
+                firstSeen = changedAt;
+            }
+            insertHistoricTracking.executeBatch();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connectionHandler.release();
         }
     }
     public List<Track> getNameHistory(UUID id) {
         List<Track> tracking = new ArrayList<>();
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getReadConnection();
+        if (connectionHandler == null) {
+            return tracking;
+        }
+
         try {
             PreparedStatement statement = connectionHandler.getPreparedStatement("getNameHistory");
             String uuid = id.toString().replace("-", "");
@@ -155,6 +251,10 @@ public class Tracking implements IRepository {
         Track tracking = null;
 
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return tracking;
+        }
+
         try {
             PreparedStatement statement = connectionHandler.getPreparedStatement("checkNameChange");
             String uuid = id.toString().replace("-", "");
@@ -197,14 +297,16 @@ public class Tracking implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("insertHistoricTracking", "INSERT INTO " + ConfigManager.main.Table_Tracking + " (player,uuid,ip,firstseen,lastseen) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE player=player");
-        connection.addPreparedStatement("insertTracking", "INSERT INTO "+ ConfigManager.main.Table_Tracking +" (player,uuid,ip,firstseen,lastseen) VALUES (?, ?, ?, NOW(), NOW()) ON DUPLICATE KEY UPDATE lastseen=NOW()");
-        connection.addPreparedStatement("getPlayerTracking", "SELECT t2.ip, t2.player, t2.uuid, t2.firstseen, t2.lastseen, b.type, b.banned_playername, b.banned_uuid, b.banned_ip FROM "+ ConfigManager.main.Table_Tracking +" AS t1 JOIN "+ ConfigManager.main.Table_Tracking +" AS t2 ON t1.ip=t2.ip LEFT JOIN " + ConfigManager.main.Table_Bans + " AS b ON (t2.ip=b.banned_ip OR t2.player=b.banned_playername OR t2.uuid=b.banned_uuid) AND b.type != 'warn' AND b.active=1 WHERE t1.player=? GROUP BY t2.player,t2.uuid,t2.ip ORDER BY t2.lastseen;");
-        connection.addPreparedStatement("getUUIDTracking", "SELECT t2.ip, t2.player, t2.uuid, t2.firstseen, t2.lastseen, b.type, b.banned_playername, b.banned_uuid, b.banned_ip FROM "+ ConfigManager.main.Table_Tracking +" AS t1 JOIN "+ ConfigManager.main.Table_Tracking +" AS t2 ON t1.ip=t2.ip LEFT JOIN " + ConfigManager.main.Table_Bans + " AS b ON (t2.ip=b.banned_ip OR t2.player=b.banned_playername OR t2.uuid=b.banned_uuid) AND b.type != 'warn' AND b.active=1 WHERE t1.uuid=? GROUP BY t2.player,t2.uuid,t2.ip ORDER BY t2.lastseen;");
-        connection.addPreparedStatement("getIPTracking", "SELECT t.ip, t.player, t.uuid, t.firstseen, t.lastseen, b.type, b.banned_playername, b.banned_uuid, b.banned_ip FROM "+ ConfigManager.main.Table_Tracking +" AS t LEFT JOIN "+ ConfigManager.main.Table_Bans +" AS b ON (t.ip=b.banned_ip OR t.player=b.banned_playername OR t.uuid=b.banned_uuid) AND b.type != 'warn' AND b.active=1 WHERE t.ip=? GROUP BY t.player,t.uuid,t.ip ORDER BY t.lastseen;");
-        connection.addPreparedStatement("getNameHistory", "SELECT p1.* FROM " + ConfigManager.main.Table_Tracking + " p1 INNER JOIN ( SELECT max(lastseen) LastSeen, player FROM " + ConfigManager.main.Table_Tracking + " WHERE uuid=? GROUP BY player) p2 ON p1.player = p2.player AND p1.lastseen = p2.LastSeen WHERE p1.uuid=? order by p1.lastseen desc;");
-        connection.addPreparedStatement("checkNameChange", "SELECT * FROM " + ConfigManager.main.Table_Tracking + " WHERE uuid=? AND player!=? ORDER BY lastseen DESC;");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("insertHistoricTracking", "INSERT INTO " + ConfigManager.main.Table_Tracking + " (player,uuid,ip,firstseen,lastseen) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE player=player");
+        statements.addPreparedStatement("getTrackingLinks", "SELECT player, uuid, ip, lastseen FROM "+ ConfigManager.main.Table_Tracking);
+        statements.addPreparedStatement("insertTracking", "INSERT INTO "+ ConfigManager.main.Table_Tracking +" (player,uuid,ip,firstseen,lastseen) VALUES (?, ?, ?, NOW(), NOW()) ON DUPLICATE KEY UPDATE lastseen=NOW()");
+        statements.addPreparedStatement("touchTracking", "INSERT INTO "+ ConfigManager.main.Table_Tracking +" (player,uuid,ip,firstseen,lastseen) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE lastseen=GREATEST(lastseen, VALUES(lastseen))");
+        statements.addPreparedStatement("getPlayerTracking", "SELECT t2.ip, t2.player, t2.uuid, t2.firstseen, t2.lastseen, b.type, b.banned_playername, b.banned_uuid, b.banned_ip FROM "+ ConfigManager.main.Table_Tracking +" AS t1 JOIN "+ ConfigManager.main.Table_Tracking +" AS t2 ON t1.ip=t2.ip LEFT JOIN " + ConfigManager.main.Table_Bans + " AS b ON (t2.ip=b.banned_ip OR t2.player=b.banned_playername OR t2.uuid=b.banned_uuid) AND b.type != 'warn' AND b.active=1 WHERE t1.player=? GROUP BY t2.player,t2.uuid,t2.ip ORDER BY t2.lastseen;");
+        statements.addPreparedStatement("getUUIDTracking", "SELECT t2.ip, t2.player, t2.uuid, t2.firstseen, t2.lastseen, b.type, b.banned_playername, b.banned_uuid, b.banned_ip FROM "+ ConfigManager.main.Table_Tracking +" AS t1 JOIN "+ ConfigManager.main.Table_Tracking +" AS t2 ON t1.ip=t2.ip LEFT JOIN " + ConfigManager.main.Table_Bans + " AS b ON (t2.ip=b.banned_ip OR t2.player=b.banned_playername OR t2.uuid=b.banned_uuid) AND b.type != 'warn' AND b.active=1 WHERE t1.uuid=? GROUP BY t2.player,t2.uuid,t2.ip ORDER BY t2.lastseen;");
+        statements.addPreparedStatement("getIPTracking", "SELECT t.ip, t.player, t.uuid, t.firstseen, t.lastseen, b.type, b.banned_playername, b.banned_uuid, b.banned_ip FROM "+ ConfigManager.main.Table_Tracking +" AS t LEFT JOIN "+ ConfigManager.main.Table_Bans +" AS b ON (t.ip=b.banned_ip OR t.player=b.banned_playername OR t.uuid=b.banned_uuid) AND b.type != 'warn' AND b.active=1 WHERE t.ip=? GROUP BY t.player,t.uuid,t.ip ORDER BY t.lastseen;");
+        statements.addPreparedStatement("getNameHistory", "SELECT p1.* FROM " + ConfigManager.main.Table_Tracking + " p1 INNER JOIN ( SELECT max(lastseen) LastSeen, player FROM " + ConfigManager.main.Table_Tracking + " WHERE uuid=? GROUP BY player) p2 ON p1.player = p2.player AND p1.lastseen = p2.LastSeen WHERE p1.uuid=? order by p1.lastseen desc;");
+        statements.addPreparedStatement("checkNameChange", "SELECT * FROM " + ConfigManager.main.Table_Tracking + " WHERE uuid=? AND player!=? ORDER BY lastseen DESC;");
     }
 
 	@Override
@@ -0,0 +1,108 @@
+package net.cubespace.geSuit.database;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Remembers which name, UUID and IP combinations this proxy has written to the tracking table recently, so a player
+ * who joins again only moves their last seen time forward with the next lazy refresh instead of another write.
+ * Combinations are kept as 64 bit fingerprints in two generations of half the window each: lookups check both,
+ * new entries go into the current one and the older one is dropped once the current one has been filled for half a
+ * window. A fingerprint collision only delays the write of a combination until that refresh, which writes it anyway.
+ */
+public class TrackingFilter {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Open addressing set of fingerprints, 0 marks a free slot
+     */
+    private static class FingerprintSet {
+        private long[] slots = new long[INITIAL_CAPACITY];
+        private int size = 0;
+
+        boolean contains(long fingerprint) {
+            int mask = slots.length - 1;
+            for (int i = (int) (fingerprint ^ (fingerprint >>> 32)) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long fingerprint) {
+            if ((size + 1) * 2 > slots.length) {
+                long[] old = slots;
+                slots = new long[old.length * 2];
+                size = 0;
+                for (long f : old) {
+                    if (f != 0) {
+                        add(f);
+                    }
+                }
+            }
+
+            int mask = slots.length - 1;
+            int i = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+            while (slots[i] != 0) {
+                if (slots[i] == fingerprint) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            slots[i] = fingerprint;
+            size++;
+        }
+    }
+
+    private final long generationLength;
+    private FingerprintSet current = new FingerprintSet();
+    private FingerprintSet previous = new FingerprintSet();
+    private long generationStart = System.currentTimeMillis();
+
+    /**
+     * @param window Milliseconds a combination is remembered for at least, 0 remembers nothing
+     */
+    public TrackingFilter(long window) {
+        this.generationLength = window / 2;
+    }
+
+    /**
+     * Records the combination as written
+     *
+     * @return False if it was written within the window already
+     */
+    public synchronized boolean markWritten(String player, String uuid, String ip) {
+        if (generationLength <= 0) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - generationStart >= generationLength) {
+            // A proxy which was idle for a whole window forgets both generations
+            previous = now - generationStart >= generationLength * 2 ? new FingerprintSet() : current;
+            current = new FingerprintSet();
+            generationStart = now;
+        }
+
+        long fingerprint = fingerprint(player, uuid, ip);
+        if (current.contains(fingerprint) || previous.contains(fingerprint)) {
+            return false;
+        }
+
+        current.add(fingerprint);
+        return true;
+    }
+
+    /**
+     * @return Number of combinations remembered
+     */
+    public synchronized int size() {
+        return current.size + previous.size;
+    }
+
+    private static long fingerprint(String player, String uuid, String ip) {
+        long fingerprint = Hashing.murmur3_128().hashString(player.toLowerCase() + "|" + uuid + "|" + ip, Charsets.UTF_8).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+}
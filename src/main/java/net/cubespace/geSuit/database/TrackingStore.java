@@ -0,0 +1,44 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Track;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Every name, UUID and IP combination a player has been seen with
+ */
+public interface TrackingStore {
+    public void insertTracking(String player, String uuid, String ip);
+    public void insertHistoricTracking(String player, String uuid, String ip, Date changedDate, Date lastSeen);
+
+    /**
+     * Appends the combinations or moves their last seen time forward
+     *
+     * @return False if the updates could not be written
+     */
+    public boolean touchTracking(Collection<Track> tracks);
+
+    /**
+     * @param type "ip", "uuid" or anything else for a player name
+     * @return Everyone who shares an IP with the search, with their active bans
+     */
+    public List<Track> getPlayerTracking(String search, String type);
+    public void insertNameHistory(GSPlayer player);
+    public List<Track> getNameHistory(UUID id);
+
+    /**
+     * @return The most recent entry of the UUID under a different name, or null
+     */
+    public Track checkNameChange(UUID id, String playername);
+
+    /**
+     * Adds every name, UUID and IP combination to the alt graph
+     *
+     * @return False if the tracking entries could not be read
+     */
+    public boolean loadLinks(AltGraph.Links links);
+}
@@ -0,0 +1,12 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.objects.Warp;
+
+import java.util.List;
+
+public interface WarpStore {
+    public List<Warp> getWarps();
+    public void insertWarp(Warp warp);
+    public void updateWarp(Warp warp);
+    public void deleteWarp(String warp);
+}
@@ -1,5 +1,6 @@
 package net.cubespace.geSuit.database;
 
+import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
 import net.cubespace.geSuit.objects.Location;
@@ -13,9 +14,13 @@ import java.util.List;
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
-public class Warps implements IRepository {
+public class Warps implements IRepository, WarpStore {
     public List<Warp> getWarps() {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            return null;
+        }
+
         List<Warp> warps = new ArrayList<>();
 
         try {
@@ -38,6 +43,10 @@ public class Warps implements IRepository {
 
     public void insertWarp(Warp warp) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not store warp " + warp.getName() + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement insertWarp = connectionHandler.getPreparedStatement("insertWarp");
@@ -62,6 +71,10 @@ public class Warps implements IRepository {
 
     public void updateWarp(Warp warp) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not update warp " + warp.getName() + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement updateWarp = connectionHandler.getPreparedStatement("updateWarp");
@@ -86,6 +99,10 @@ public class Warps implements IRepository {
 
     public void deleteWarp(String warp) {
         ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+        if (connectionHandler == null) {
+            geSuit.instance.getLogger().warning("Could not delete warp " + warp + ", the database is unreachable");
+            return;
+        }
 
         try {
             PreparedStatement deleteWarp = connectionHandler.getPreparedStatement("deleteWarp");
@@ -115,11 +132,11 @@ public class Warps implements IRepository {
     }
 
     @Override
-    public void registerPreparedStatements(ConnectionHandler connection) {
-        connection.addPreparedStatement("getWarps", "SELECT * FROM "+ ConfigManager.main.Table_Warps + " ORDER BY warpname");
-        connection.addPreparedStatement("insertWarp", "INSERT INTO "+ ConfigManager.main.Table_Warps +" (warpname, server, world, x, y, z, yaw, pitch, hidden, global) VALUES (?,?,?,?,?,?,?,?,?,?)");
-        connection.addPreparedStatement("updateWarp", "UPDATE "+ ConfigManager.main.Table_Warps +" SET server=?, world=?, x=?, y=?, z=?, yaw=?, pitch=?, hidden=?, global=? WHERE warpname=?");
-        connection.addPreparedStatement("deleteWarp", "DELETE FROM "+ ConfigManager.main.Table_Warps +" WHERE warpname=?");
+    public void registerPreparedStatements(StatementRegistry statements) {
+        statements.addPreparedStatement("getWarps", "SELECT * FROM "+ ConfigManager.main.Table_Warps + " ORDER BY warpname");
+        statements.addPreparedStatement("insertWarp", "INSERT INTO "+ ConfigManager.main.Table_Warps +" (warpname, server, world, x, y, z, yaw, pitch, hidden, global) VALUES (?,?,?,?,?,?,?,?,?,?)");
+        statements.addPreparedStatement("updateWarp", "UPDATE "+ ConfigManager.main.Table_Warps +" SET server=?, world=?, x=?, y=?, z=?, yaw=?, pitch=?, hidden=?, global=? WHERE warpname=?");
+        statements.addPreparedStatement("deleteWarp", "DELETE FROM "+ ConfigManager.main.Table_Warps +" WHERE warpname=?");
     }
 
     @Override
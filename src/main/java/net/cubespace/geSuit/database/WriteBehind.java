@@ -0,0 +1,313 @@
+package net.cubespace.geSuit.database;
+
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Track;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects player, tracking and ontime updates from joins, server switches and disconnects and writes them in
+ * batches. Repeated updates for the same player replace each other, so a mass disconnect costs one batch instead of
+ * thousands of single row writes. Queued updates are written every {@code WriteBehindInterval} seconds, as soon as
+ * {@code WriteBehindBatchSize} of them are waiting, and on shutdown. Online time is summed up per hourly slot in an
+ * {@link OnTimeAccumulator} and only written when the hour rolls over, so players who reconnect a lot cost one row
+ * per hour. Each kind of update is written through its store and only the kinds which failed are queued again.
+ * <p>
+ * A name, UUID and IP combination which this proxy has written within the last {@code TrackingDedupWindow} seconds
+ * is not written again on every join. Its last seen time is kept back and refreshed in one batch every
+ * {@code TrackingRefreshInterval} seconds, see {@link TrackingFilter}.
+ * <p>
+ * Players who joined for the first time while the database was unreachable are queued as well and stored before the
+ * other updates. Settings of provisional players are not queued, they would overwrite the stored ones with defaults.
+ */
+public class WriteBehind {
+    private static final int DRAIN_ATTEMPTS = 3;
+
+    private Map<String, GSPlayer> newPlayers = new LinkedHashMap<>();
+    private Map<String, GSPlayer> players = new LinkedHashMap<>();
+    private Map<String, Track> tracking = new LinkedHashMap<>();
+    private Map<String, Track> deferredTracking = new LinkedHashMap<>();
+    private final TrackingFilter trackingFilter = new TrackingFilter(TimeUnit.SECONDS.toMillis(ConfigManager.main.Database.TrackingDedupWindow));
+    private long nextTrackingRefresh = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ConfigManager.main.Database.TrackingRefreshInterval);
+    private final OnTimeAccumulator ontime = new OnTimeAccumulator();
+    private int queued = 0;
+
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private ScheduledTask task;
+
+    /**
+     * Queues a write of the players current settings and ip, replacing any update still waiting for them
+     */
+    public void queuePlayer(GSPlayer player) {
+        if (player.isProvisional()) {
+            return;
+        }
+
+        // A snapshot, the player may change their settings again before it is written
+        GSPlayer update = new GSPlayer(player.getName(), player.getUuid(), player.acceptingTeleports(), player.isNewSpawn(), player.getIp(), new Timestamp(System.currentTimeMillis()), player.getFirstOnline());
+
+        synchronized (this) {
+            if (players.put(update.getUuid(), update) == null) {
+                queued++;
+            }
+        }
+
+        checkThreshold();
+    }
+
+    /**
+     * Queues a player who could not be stored when they first joined
+     */
+    public void queueNewPlayer(GSPlayer player) {
+        GSPlayer update = new GSPlayer(player.getName(), player.getUuid(), player.acceptingTeleports(), player.isNewSpawn(), player.getIp(), new Timestamp(System.currentTimeMillis()), player.getFirstOnline());
+
+        synchronized (this) {
+            if (newPlayers.put(update.getUuid(), update) == null) {
+                queued++;
+            }
+        }
+    }
+
+    /**
+     * @return The settings still waiting to be written for the player, null if there are none
+     */
+    public synchronized GSPlayer getQueuedPlayer(String uuid) {
+        GSPlayer update = players.get(uuid);
+        return update == null ? newPlayers.get(uuid) : update;
+    }
+
+    public void queueTracking(GSPlayer player) {
+        Timestamp seen = new Timestamp(System.currentTimeMillis());
+        Track update = new Track(player.getName(), player.getUuid(), player.getIp(), seen, seen, null, null, null, null);
+        String key = update.getPlayer() + "|" + update.getUuid() + "|" + update.getIp();
+
+        if (!trackingFilter.markWritten(update.getPlayer(), update.getUuid(), update.getIp())) {
+            MetricsManager.increment("db.writebehind.tracking.deferred");
+            synchronized (this) {
+                if (tracking.containsKey(key)) {
+                    tracking.put(key, update);
+                } else {
+                    deferredTracking.put(key, update);
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            deferredTracking.remove(key);
+            if (tracking.put(key, update) == null) {
+                queued++;
+            }
+        }
+
+        checkThreshold();
+    }
+
+    /**
+     * Adds the online time from the players login until the given time
+     */
+    public void queueOnTime(GSPlayer player, long end) {
+        ontime.add(player.getUuid(), player.getLoginTime(), end);
+
+        checkThreshold();
+    }
+
+    /**
+     * @return Online time which has not been written yet
+     */
+    public OnTimeAccumulator getOnTime() {
+        return ontime;
+    }
+
+    /**
+     * @return Number of updates, deferred last seen refreshes and online time slots waiting to be written
+     */
+    public int size() {
+        synchronized (this) {
+            return queued + deferredTracking.size() + ontime.size();
+        }
+    }
+
+    public void start() {
+        int interval = ConfigManager.main.Database.WriteBehindInterval;
+
+        task = ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void checkThreshold() {
+        int threshold = ConfigManager.main.Database.WriteBehindBatchSize;
+        if ((queuedUpdates() < threshold && ontime.size() < threshold) || !flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled.set(false);
+                flush();
+            }
+        });
+    }
+
+    private synchronized int queuedUpdates() {
+        return queued;
+    }
+
+    public boolean flush() {
+        return flush(false);
+    }
+
+    /**
+     * Writes everything queued so far. Updates are put back into the queue if their write fails.
+     *
+     * @param all True to write the online time even if its hour is not over yet, and the deferred last seen
+     *            refreshes even if they are not due yet
+     * @return False if any of the updates could not be written
+     */
+    public boolean flush(boolean all) {
+        synchronized (flushLock) {
+            Map<String, GSPlayer> flushNewPlayers;
+            Map<String, GSPlayer> flushPlayers;
+            Map<String, Track> flushTracking;
+            OnTimeAccumulator.Batch flushOnTime = null;
+
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (all ? ontime.size() > 0 : ontime.shouldFlush(now, ConfigManager.main.Database.WriteBehindBatchSize)) {
+                    flushOnTime = ontime.drain();
+                }
+
+                boolean refresh = !deferredTracking.isEmpty() && (all || now >= nextTrackingRefresh);
+                if (queued == 0 && flushOnTime == null && !refresh) {
+                    return true;
+                }
+
+                flushNewPlayers = newPlayers;
+                flushPlayers = players;
+                flushTracking = tracking;
+                newPlayers = new LinkedHashMap<>();
+                players = new LinkedHashMap<>();
+                tracking = new LinkedHashMap<>();
+                queued = 0;
+
+                if (refresh) {
+                    MetricsManager.add("db.writebehind.tracking.refreshed", deferredTracking.size());
+                    deferredTracking.putAll(flushTracking);
+                    flushTracking = deferredTracking;
+                    deferredTracking = new LinkedHashMap<>();
+                    nextTrackingRefresh = now + TimeUnit.SECONDS.toMillis(ConfigManager.main.Database.TrackingRefreshInterval);
+                }
+            }
+
+            long start = System.nanoTime();
+            // Updates of a new player only find their row once it is inserted
+            boolean newPlayersWritten = flushNewPlayers.isEmpty() || DatabaseManager.players.insertPlayers(flushNewPlayers.values());
+            boolean playersWritten = newPlayersWritten && (flushPlayers.isEmpty() || DatabaseManager.players.updatePlayers(flushPlayers.values()));
+            boolean trackingWritten = flushTracking.isEmpty() || DatabaseManager.tracking.touchTracking(flushTracking.values());
+            boolean onTimeWritten = flushOnTime == null || DatabaseManager.ontime.addOnTime(flushOnTime);
+
+            if (playersWritten && trackingWritten && onTimeWritten) {
+                MetricsManager.getHistogram("db.writebehind.flush").recordSince(start);
+                geSuit.instance.DebugMsg("Wrote " + flushNewPlayers.size() + " new player, " + flushPlayers.size() + " player, " + flushTracking.size() + " tracking and " + (flushOnTime == null ? 0 : flushOnTime.size()) + " ontime updates");
+                return true;
+            }
+
+            MetricsManager.increment("db.writebehind.failed");
+            requeue(newPlayersWritten ? null : flushNewPlayers, playersWritten ? null : flushPlayers, trackingWritten ? null : flushTracking, onTimeWritten ? null : flushOnTime);
+            return false;
+        }
+    }
+
+    /**
+     * Writes a queued player update straight away, so a player who reconnects before the next flush reads their
+     * latest settings
+     *
+     * @return False if the update could not be written, it stays queued then
+     */
+    public boolean flushPlayer(String uuid) {
+        GSPlayer update;
+        synchronized (this) {
+            update = players.remove(uuid);
+            if (update == null) {
+                return true;
+            }
+            queued--;
+        }
+
+        if (DatabaseManager.players.updatePlayers(Collections.singletonList(update))) {
+            return true;
+        }
+
+        requeue(null, Collections.singletonMap(uuid, update), null, null);
+        return false;
+    }
+
+    /**
+     * Stops the flush timer and writes everything which is still queued
+     */
+    public void drain() {
+        if (task != null) {
+            task.cancel();
+        }
+
+        for (int i = 0; i < DRAIN_ATTEMPTS; i++) {
+            if (flush(true) && size() == 0) {
+                return;
+            }
+        }
+
+        geSuit.instance.getLogger().severe("Could not write " + size() + " queued player updates before shutdown");
+    }
+
+    // Anything queued since the failed flush is newer and wins over the failed updates
+    private synchronized void requeue(Map<String, GSPlayer> flushNewPlayers, Map<String, GSPlayer> flushPlayers, Map<String, Track> flushTracking, OnTimeAccumulator.Batch flushOnTime) {
+        if (flushNewPlayers != null) {
+            for (Map.Entry<String, GSPlayer> entry : flushNewPlayers.entrySet()) {
+                if (!newPlayers.containsKey(entry.getKey())) {
+                    newPlayers.put(entry.getKey(), entry.getValue());
+                    queued++;
+                }
+            }
+        }
+
+        if (flushPlayers != null) {
+            for (Map.Entry<String, GSPlayer> entry : flushPlayers.entrySet()) {
+                if (!players.containsKey(entry.getKey())) {
+                    players.put(entry.getKey(), entry.getValue());
+                    queued++;
+                }
+            }
+        }
+
+        if (flushTracking != null) {
+            for (Map.Entry<String, Track> entry : flushTracking.entrySet()) {
+                if (!tracking.containsKey(entry.getKey())) {
+                    tracking.put(entry.getKey(), entry.getValue());
+                    queued++;
+                }
+            }
+        }
+
+        // Online time adds up, so the failed slots are summed into the new ones
+        if (flushOnTime != null) {
+            ontime.restore(flushOnTime);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.cubespace.geSuit.database.convert;
+
+import net.cubespace.geSuit.database.ConnectionHandler;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.cubespace.geSuit.managers.DatabaseManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checkpoints of the BungeeSuite conversion, one per legacy table: the key of the last converted row, the number of
+ * rows converted so far and whether the table is finished. With MySQL the checkpoint is written in the same
+ * transaction as the chunk it describes, so a resumed conversion neither skips nor repeats rows. The embedded storage
+ * keeps them in {@code convert-progress.properties} in the plugin folder, written after every chunk.
+ */
+public class ConvertProgress {
+    private static final String KEY_SEPARATOR = "\u001f";
+
+    public static class State {
+        private String[] lastKey;
+        private long converted;
+        private boolean done;
+
+        /**
+         * @return Key column values of the last converted row, null before the first chunk
+         */
+        public String[] getLastKey() {
+            return lastKey;
+        }
+
+        public long getConverted() {
+            return converted;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return The state after another chunk, this one is left as it is in case the chunk is rolled back
+         */
+        State next(String[] lastKey, int rows, boolean done) {
+            State next = new State();
+            next.lastKey = lastKey;
+            next.converted = converted + rows;
+            next.done = done;
+            return next;
+        }
+    }
+
+    private final Map<String, State> states = new HashMap<>();
+    private final File file = new File(geSuit.instance.getDataFolder(), "convert-progress.properties");
+
+    /**
+     * Reads the checkpoints of an earlier run, creating the checkpoint table if needed
+     *
+     * @return False if the checkpoints could not be read
+     */
+    public synchronized boolean load() {
+        if (DatabaseManager.connectionPool == null) {
+            return loadFile();
+        }
+
+        String table = ConfigManager.main.Table_ConvertProgress;
+        ConnectionHandler ch = DatabaseManager.connectionPool.getConnection();
+        if (ch == null) {
+            return false;
+        }
+
+        try (Statement statement = ch.getConnection().createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + table + "` (`tablename` VARCHAR(100) NOT NULL, `lastkey` TEXT, `converted` BIGINT NOT NULL, `done` TINYINT(1) NOT NULL, `updated` DATETIME NOT NULL, PRIMARY KEY (`tablename`));");
+
+            try (ResultSet res = statement.executeQuery("SELECT tablename, lastkey, converted, done FROM `" + table + "`")) {
+                while (res.next()) {
+                    State state = new State();
+                    state.lastKey = decodeKey(res.getString("lastkey"));
+                    state.converted = res.getLong("converted");
+                    state.done = res.getBoolean("done");
+                    states.put(res.getString("tablename"), state);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            ch.release();
+        }
+    }
+
+    /**
+     * @return The checkpoint of the table, a fresh one if it has not been started
+     */
+    public synchronized State get(String table) {
+        State state = states.get(table);
+        return state == null ? new State() : state;
+    }
+
+    /**
+     * Records the checkpoint inside the transaction of the given connection, it only counts once that is committed
+     */
+    public void save(ConnectionHandler ch, String table, State state) throws SQLException {
+        try (PreparedStatement record = ch.getConnection().prepareStatement("REPLACE INTO `" + ConfigManager.main.Table_ConvertProgress + "` (tablename, lastkey, converted, done, updated) VALUES (?, ?, ?, ?, ?)")) {
+            record.setString(1, table);
+            record.setString(2, encodeKey(state.lastKey));
+            record.setLong(3, state.converted);
+            record.setBoolean(4, state.done);
+            record.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+            record.executeUpdate();
+        }
+    }
+
+    /**
+     * Makes a checkpoint the current one, after it was committed or written to the embedded storage
+     */
+    public synchronized void commit(String table, State state) {
+        states.put(table, state);
+
+        if (DatabaseManager.connectionPool == null) {
+            saveFile();
+        }
+    }
+
+    private boolean loadFile() {
+        if (!file.exists()) {
+            return true;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            geSuit.instance.getLogger().severe("Could not read " + file + ": " + e.getMessage());
+            return false;
+        }
+
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.endsWith(".converted")) {
+                continue;
+            }
+
+            String table = name.substring(0, name.length() - ".converted".length());
+            State state = new State();
+            state.lastKey = decodeKey(properties.getProperty(table + ".lastkey"));
+            state.converted = Long.parseLong(properties.getProperty(name));
+            state.done = Boolean.parseBoolean(properties.getProperty(table + ".done"));
+            states.put(table, state);
+        }
+        return true;
+    }
+
+    private void saveFile() {
+        Properties properties = new Properties();
+        for (Map.Entry<String, State> entry : states.entrySet()) {
+            State state = entry.getValue();
+            if (state.lastKey != null) {
+                properties.setProperty(entry.getKey() + ".lastkey", encodeKey(state.lastKey));
+            }
+            properties.setProperty(entry.getKey() + ".converted", String.valueOf(state.converted));
+            properties.setProperty(entry.getKey() + ".done", String.valueOf(state.done));
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "BungeeSuite conversion progress, delete this file to convert again from the start");
+        } catch (IOException e) {
+            geSuit.instance.getLogger().severe("Could not write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String encodeKey(String[] key) {
+        if (key == null) {
+            return null;
+        }
+
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            if (i > 0) {
+                encoded.append(KEY_SEPARATOR);
+            }
+            encoded.append(key[i]);
+        }
+        return encoded.toString();
+    }
+
+    private static String[] decodeKey(String encoded) {
+        return encoded == null ? null : encoded.split(KEY_SEPARATOR, -1);
+    }
+}
@@ -1,12 +1,16 @@
 package net.cubespace.geSuit.database.convert;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.cubespace.Yamler.Config.InvalidConfigurationException;
 import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.database.ConnectionHandler;
+import net.cubespace.geSuit.database.StatementRegistry;
 import net.cubespace.geSuit.database.ConnectionPool;
 import net.cubespace.geSuit.database.IRepository;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.managers.MetricsManager;
 import net.cubespace.geSuit.objects.GSPlayer;
 import net.cubespace.geSuit.objects.Home;
 import net.cubespace.geSuit.objects.Location;
@@ -14,103 +18,322 @@ import net.cubespace.geSuit.objects.Portal;
 import net.cubespace.geSuit.objects.Spawn;
 import net.cubespace.geSuit.objects.Warp;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Converts the tables of a BungeeSuite database. Every legacy table is read in chunks of
+ * {@code ConvertChunkSize} rows, ordered by its key columns and continuing after the key of the last row, so no chunk
+ * has to skip over the rows before it. Player names of a chunk are resolved together, from the players which are
+ * already converted where possible and through the {@link UUIDResolver} otherwise. Each chunk is written as one JDBC
+ * batch in one transaction together with its {@link ConvertProgress checkpoint}, rows which already exist in geSuit
+ * are left alone.
+ * <p>
+ * Players are converted first since homes reference them and bans are resolved through them, the other tables are
+ * converted in parallel afterwards. An interrupted conversion resumes from the checkpoints on the next start, it is
+ * only switched off once every table is finished.
+ *
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
 public class Converter {
+    private static final int CHUNK_ATTEMPTS = 3;
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
     private ConnectionPool connectionPool = new ConnectionPool();
+    private final ConvertProgress progress = new ConvertProgress();
+    private final UUIDResolver resolver = new UUIDResolver(ConfigManager.main.ConvertUUIDRequestsPerMinute);
+    private final int chunkSize = Math.max(1, ConfigManager.main.ConvertChunkSize);
+
+    /**
+     * A legacy row as parameters of the geSuit insert, together with the player name which still has to be resolved
+     */
+    private static class Row {
+        final String name;
+        final Object[] values;
+
+        Row(String name, Object... values) {
+            this.name = name;
+            this.values = values;
+        }
+    }
+
+    private static class Chunk {
+        final List<Row> rows = new ArrayList<>();
+        String[] lastKey;
+        boolean last;
+    }
+
+    private abstract class LegacyTable implements IRepository {
+        private final String table;
+        private final int uuidColumn;
+        private final String[] keys;
+        private long skipped = 0;
+
+        /**
+         * @param uuidColumn Insert parameter which receives the UUID of {@link Row#name}, -1 if there is none
+         * @param keys Columns which identify a row, in the order the table is read, together they must be unique or
+         *             rows sharing a key at the end of a chunk are skipped
+         */
+        LegacyTable(String table, int uuidColumn, String... keys) {
+            this.table = table;
+            this.uuidColumn = uuidColumn;
+            this.keys = keys;
+        }
+
+        abstract Row read(ResultSet res) throws SQLException;
+
+        /**
+         * @return Insert into the geSuit table, with a parameter for every value of a {@link Row}
+         */
+        abstract String getInsert();
+
+        /**
+         * Writes a row through the stores, for the embedded storage
+         */
+        abstract void store(Row row);
+
+        /**
+         * @return UUIDs by lower cased name
+         */
+        Map<String, String> lookup(Set<String> names) throws IOException, InterruptedException {
+            return Collections.emptyMap();
+        }
+
+        /**
+         * @return True once the table is fully converted
+         */
+        boolean convert() {
+            ConvertProgress.State state = progress.get(table);
+            if (state.isDone()) {
+                geSuit.instance.getLogger().info(table + " was converted already (" + state.getConverted() + " rows)");
+                return true;
+            }
+
+            if (!connectionPool.doesTableExist(table)) {
+                geSuit.instance.getLogger().info(table + " does not exist, nothing to convert");
+                return true;
+            }
+
+            if (state.getLastKey() != null) {
+                geSuit.instance.getLogger().info("Resuming the conversion of " + table + " after " + state.getConverted() + " rows");
+            }
+
+            long start = System.nanoTime();
+            long lastReport = start;
+            long startRows = state.getConverted();
+
+            while (!state.isDone()) {
+                Chunk chunk = null;
+                ConvertProgress.State next = null;
 
-    private class Players implements IRepository {
-        public void convert() {
+                for (int attempt = 1; next == null; attempt++) {
+                    try {
+                        if (chunk == null) {
+                            chunk = readChunk(state.getLastKey());
+                        }
+                        next = writeChunk(chunk, state);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    } catch (Exception e) {
+                        MetricsManager.increment("convert.failures");
+                        if (attempt >= CHUNK_ATTEMPTS) {
+                            geSuit.instance.getLogger().severe("Could not convert " + table + " after " + state.getConverted() + " rows: " + e);
+                            e.printStackTrace();
+                            return false;
+                        }
+                        geSuit.instance.getLogger().warning("Could not convert a chunk of " + table + ", retrying: " + e);
+                    }
+                }
+
+                MetricsManager.add("convert.rows", next.getConverted() - state.getConverted());
+                state = next;
+
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL || state.isDone()) {
+                    lastReport = now;
+                    long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(now - start));
+                    geSuit.instance.getLogger().info((state.isDone() ? "Finished " : "Converting ") + table + ": " + state.getConverted() + " rows, " + ((state.getConverted() - startRows) / seconds) + " rows/s, " + skipped + " skipped");
+                }
+            }
+
+            return true;
+        }
+
+        private Chunk readChunk(String[] lastKey) throws SQLException, IOException, InterruptedException {
             ConnectionHandler connectionHandler = connectionPool.getConnection();
+            if (connectionHandler == null) {
+                throw new SQLException("No connection to the BungeeSuite database");
+            }
+
+            long start = System.nanoTime();
+            Chunk chunk = new Chunk();
 
             try {
-                Map<String,String> playerUuids;
-                List<String> names = new ArrayList<>();
-                PreparedStatement selectPlayerNames = connectionHandler.getPreparedStatement("selectPlayerNames");
-                try (ResultSet resultSet = selectPlayerNames.executeQuery()) {
-                    while (resultSet.next()) {
-                        names.add(resultSet.getString("playername"));
+                PreparedStatement select;
+                int limit = 1;
+                if (lastKey == null) {
+                    select = connectionHandler.getPreparedStatement(table + ".first");
+                } else {
+                    select = connectionHandler.getPreparedStatement(table + ".next");
+                    // Every level of the keyset condition repeats the columns before it
+                    for (int level = 0; level < keys.length; level++) {
+                        for (int i = 0; i <= level; i++) {
+                            select.setString(limit++, lastKey[i]);
+                        }
                     }
                 }
-                
-                playerUuids = Utilities.getUUID(names);
+                select.setInt(limit, chunkSize);
 
-                PreparedStatement selectPlayers = connectionHandler.getPreparedStatement("selectPlayers");
+                try (ResultSet res = select.executeQuery()) {
+                    while (res.next()) {
+                        chunk.rows.add(read(res));
 
-                try (ResultSet resultSet = selectPlayers.executeQuery()) {
-                    while(resultSet.next()) {
-                        String playerName = resultSet.getString("playername");
-                        String uuid = playerUuids.get(playerName);
-                        if (uuid == null) {
-                            continue;
+                        chunk.lastKey = new String[keys.length];
+                        for (int i = 0; i < keys.length; i++) {
+                            chunk.lastKey[i] = res.getString(keys[i]);
                         }
-                        DatabaseManager.players.insertPlayerConvert(playerName, uuid, resultSet.getTimestamp("lastonline"), resultSet.getString("ipaddress"), resultSet.getBoolean("tps"));
                     }
                 }
-            } catch (SQLException e) {
-                e.printStackTrace();
             } finally {
                 connectionHandler.release();
             }
-        }
 
-        @Override
-        public String[] getTable() {
-            return new String[]{"BungeePlayers"};
-        }
+            MetricsManager.getHistogram("convert.read").recordSince(start);
+            chunk.last = chunk.rows.size() < chunkSize;
+            if (chunk.lastKey == null) {
+                chunk.lastKey = lastKey;
+            }
 
-        @Override
-        public void registerPreparedStatements(ConnectionHandler connection) {
-            connection.addPreparedStatement("selectPlayers", "SELECT * FROM BungeePlayers");
-            connection.addPreparedStatement("selectPlayerNames", "SELECT playername FROM BungeePlayers");
+            resolve(chunk.rows);
+            return chunk;
         }
 
-        @Override
-        public void checkUpdate() {
+        // Rows whose player can not be resolved are dropped, as the old converter did
+        private void resolve(List<Row> rows) throws IOException, InterruptedException {
+            if (uuidColumn < 0) {
+                return;
+            }
 
+            Set<String> names = new HashSet<>();
+            for (Row row : rows) {
+                if (row.name != null) {
+                    names.add(row.name);
+                }
+            }
+
+            Map<String, String> uuids = names.isEmpty() ? Collections.<String, String>emptyMap() : lookup(names);
+            Iterator<Row> it = rows.iterator();
+            while (it.hasNext()) {
+                Row row = it.next();
+                String uuid = row.name == null ? null : uuids.get(row.name.toLowerCase());
+                if (uuid == null) {
+                    it.remove();
+                    skipped++;
+                    MetricsManager.increment("convert.skipped");
+                } else {
+                    row.values[uuidColumn] = uuid;
+                }
+            }
         }
-    }
 
-    private class Homes implements IRepository {
-        public void convert() {
-            ConnectionHandler connectionHandler = connectionPool.getConnection();
+        private ConvertProgress.State writeChunk(Chunk chunk, ConvertProgress.State state) throws SQLException {
+            ConvertProgress.State next = state.next(chunk.lastKey, chunk.rows.size(), chunk.last);
+            long start = System.nanoTime();
 
-            try {
-                PreparedStatement selectHomes = connectionHandler.getPreparedStatement("selectHomes");
+            if (DatabaseManager.connectionPool == null) {
+                for (Row row : chunk.rows) {
+                    store(row);
+                }
+                progress.commit(table, next);
+                MetricsManager.getHistogram("convert.write").recordSince(start);
+                return next;
+            }
 
-                ResultSet res = selectHomes.executeQuery();
-                while (res.next()) {
-                    GSPlayer player = DatabaseManager.players.loadPlayer(res.getString("player"));
-                    if ( player == null ) continue;
+            ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
+            if (connectionHandler == null) {
+                throw new SQLException("No connection to the geSuit database");
+            }
 
-                    Location l = new Location(res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"));
-                    DatabaseManager.homes.addHome(new Home(player, res.getString("home_name"), l));
+            Connection connection = connectionHandler.getConnection();
+            try {
+                connection.setAutoCommit(false);
+
+                if (!chunk.rows.isEmpty()) {
+                    try (PreparedStatement insert = connection.prepareStatement(getInsert())) {
+                        for (Row row : chunk.rows) {
+                            for (int i = 0; i < row.values.length; i++) {
+                                insert.setObject(i + 1, row.values[i]);
+                            }
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    }
                 }
 
-                res.close();
+                progress.save(connectionHandler, table, next);
+                connection.commit();
             } catch (SQLException e) {
-                e.printStackTrace();
+                try {
+                    connection.rollback();
+                } catch (SQLException ignored) {
+                }
+                throw e;
             } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException ignored) {
+                }
                 connectionHandler.release();
             }
+
+            progress.commit(table, next);
+            MetricsManager.getHistogram("convert.write").recordSince(start);
+            return next;
         }
 
         @Override
         public String[] getTable() {
-            return new String[]{"BungeeHomes"};
+            return new String[]{table};
         }
 
         @Override
-        public void registerPreparedStatements(ConnectionHandler connection) {
-            connection.addPreparedStatement("selectHomes", "SELECT * FROM BungeeHomes");
+        public void registerPreparedStatements(StatementRegistry statements) {
+            StringBuilder order = new StringBuilder();
+            StringBuilder after = new StringBuilder();
+            for (int level = 0; level < keys.length; level++) {
+                order.append(level > 0 ? ", " : "").append(keys[level]);
+
+                after.append(level > 0 ? " OR (" : "(");
+                for (int i = 0; i < level; i++) {
+                    after.append(keys[i]).append(" = ? AND ");
+                }
+                after.append(keys[level]).append(" > ?)");
+            }
+
+            statements.addPreparedStatement(table + ".first", "SELECT * FROM " + table + " ORDER BY " + order + " LIMIT ?");
+            statements.addPreparedStatement(table + ".next", "SELECT * FROM " + table + " WHERE " + after + " ORDER BY " + order + " LIMIT ?");
         }
 
         @Override
@@ -119,217 +342,266 @@ public class Converter {
         }
     }
 
-    private class Portals implements IRepository {
-        public void convert() {
-            ConnectionHandler connectionHandler = connectionPool.getConnection();
-
-            try {
-                PreparedStatement selectPortals = connectionHandler.getPreparedStatement("selectPortals");
-
-                ResultSet res = selectPortals.executeQuery();
-                while (res.next()) {
-                    String name = res.getString("portalname");
-                    String server = res.getString("server");
-                    String type = res.getString("type");
-                    String dest = res.getString("destination");
-                    String world = res.getString("world");
-                    String fill = res.getString("filltype");
-                    double xmax = res.getDouble("xmax");
-                    double xmin = res.getDouble("xmin");
-                    double ymax = res.getDouble("ymax");
-                    double ymin = res.getDouble("ymin");
-                    double zmax = res.getDouble("zmax");
-                    double zmin = res.getDouble("zmin");
-
-                    Portal p = new Portal(name, server, fill, type, dest, new Location(server, world, xmax, ymax, zmax), new Location(server, world, xmin, ymin, zmin));
-                    DatabaseManager.portals.insertPortal(p);
-                }
-
-                res.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }  finally {
-                connectionHandler.release();
-            }
+    private class Players extends LegacyTable {
+        Players() {
+            super("BungeePlayers", 1, "playername");
         }
 
         @Override
-        public String[] getTable() {
-            return new String[]{"BungeePortals"};
+        Row read(ResultSet res) throws SQLException {
+            Timestamp lastOnline = res.getTimestamp("lastonline");
+            return new Row(res.getString("playername"), res.getString("playername"), null, lastOnline, lastOnline, res.getString("ipaddress"), res.getBoolean("tps"));
         }
 
         @Override
-        public void registerPreparedStatements(ConnectionHandler connection) {
-            connection.addPreparedStatement("selectPortals", "SELECT * FROM BungeePortals");
+        Map<String, String> lookup(Set<String> names) throws IOException, InterruptedException {
+            return resolver.resolve(names);
         }
 
         @Override
-        public void checkUpdate() {
+        String getInsert() {
+            return "INSERT IGNORE INTO " + ConfigManager.main.Table_Players + " (playername,uuid,firstonline,lastonline,ipaddress,tps) VALUES (?, ?, ?, ?, ?, ?)";
+        }
 
+        @Override
+        void store(Row row) {
+            Object[] v = row.values;
+            DatabaseManager.players.insertPlayerConvert((String) v[0], (String) v[1], (Timestamp) v[3], (String) v[4], (Boolean) v[5]);
         }
     }
 
-    private class Bans implements IRepository {
-        public void convert() {
-            ConnectionHandler connectionHandler = connectionPool.getConnection();
-
-            try {
-                Map<String, String> playerUuid;
-                List<String> players = new ArrayList<>();
-                PreparedStatement selectBanPlayers = connectionHandler.getPreparedStatement("selectBanPlayers");
-                try (ResultSet res = selectBanPlayers.executeQuery()) {
-                    while (res.next()) {
-                        players.add(res.getString("player"));
-                    }
-                }
-                playerUuid = Utilities.getUUID(players);
+    private class Homes extends LegacyTable {
+        Homes() {
+            super("BungeeHomes", 0, "player", "home_name", "server");
+        }
 
-                PreparedStatement selectBans = connectionHandler.getPreparedStatement("selectBans");
+        @Override
+        Row read(ResultSet res) throws SQLException {
+            return new Row(res.getString("player"), null, res.getString("home_name"), res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"));
+        }
 
-                ResultSet res = selectBans.executeQuery();
-                while (res.next()) {
-                    String player = res.getString("player");
-                    String uuid = playerUuid.get(player);
+        @Override
+        Map<String, String> lookup(Set<String> names) {
+            return resolveConverted(names);
+        }
 
-                    if (uuid == null) {
-                        continue;
-                    }
+        @Override
+        String getInsert() {
+            return "INSERT IGNORE INTO " + ConfigManager.main.Table_Homes + " (player,home_name,server,world,x,y,z,yaw,pitch) VALUES (?,?,?,?,?,?,?,?,?)";
+        }
 
-                    DatabaseManager.bans.insertBanConvert(res.getString("banned_by"), player, uuid, null, res.getString("reason"), res.getString("type"), res.getInt("active"), res.getDate("banned_on"), res.getDate("banned_until"));
-                }
+        @Override
+        void store(Row row) {
+            Object[] v = row.values;
+            Location l = new Location((String) v[2], (String) v[3], (Double) v[4], (Double) v[5], (Double) v[6], (Float) v[7], (Float) v[8]);
+            DatabaseManager.homes.addHome(new Home(new GSPlayer(row.name, (String) v[0], true), (String) v[1], l));
+        }
+    }
 
-                res.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }  finally {
-                connectionHandler.release();
-            }
+    private class Portals extends LegacyTable {
+        Portals() {
+            super("BungeePortals", -1, "portalname");
         }
 
         @Override
-        public String[] getTable() {
-            return new String[]{"BungeeBans"};
+        Row read(ResultSet res) throws SQLException {
+            return new Row(null, res.getString("portalname"), res.getString("server"), res.getString("type"), res.getString("destination"), res.getString("world"), res.getString("filltype"), res.getInt("xmax"), res.getInt("xmin"), res.getInt("ymax"), res.getInt("ymin"), res.getInt("zmax"), res.getInt("zmin"));
         }
 
         @Override
-        public void registerPreparedStatements(ConnectionHandler connection) {
-            connection.addPreparedStatement("selectBanPlayers", "SELECT player FROM BungeeBans");
-            connection.addPreparedStatement("selectBans", "SELECT * FROM BungeeBans");
+        String getInsert() {
+            return "INSERT IGNORE INTO " + ConfigManager.main.Table_Portals + " (portalname,server,type,destination,world,filltype,xmax,xmin,ymax,ymin,zmax,zmin) VALUES(?,?,?,?,?,?,?,?,?,?,?,?)";
         }
 
         @Override
-        public void checkUpdate() {
-
+        void store(Row row) {
+            Object[] v = row.values;
+            String server = (String) v[1];
+            String world = (String) v[4];
+            Location max = new Location(server, world, (Integer) v[6], (Integer) v[8], (Integer) v[10]);
+            Location min = new Location(server, world, (Integer) v[7], (Integer) v[9], (Integer) v[11]);
+            DatabaseManager.portals.insertPortal(new Portal((String) v[0], server, (String) v[5], (String) v[2], (String) v[3], max, min));
         }
     }
 
-    private class Spawns implements IRepository {
-        public void convert() {
-            ConnectionHandler connectionHandler = connectionPool.getConnection();
+    private class Bans extends LegacyTable {
+        Bans() {
+            // A player can be banned twice within a second, the id keeps the key unique
+            super("BungeeBans", 1, "player", "banned_on", "id");
+        }
 
-            try {
-                PreparedStatement selectSpawns = connectionHandler.getPreparedStatement("selectSpawns");
+        @Override
+        Row read(ResultSet res) throws SQLException {
+            return new Row(res.getString("player"), res.getString("player"), null, null, res.getString("banned_by"), res.getString("reason"), res.getString("type"), res.getInt("active"), res.getTimestamp("banned_on"), res.getTimestamp("banned_until"));
+        }
+
+        // Banned players who ever joined are converted already, only the others are asked from Mojang
+        @Override
+        Map<String, String> lookup(Set<String> names) throws IOException, InterruptedException {
+            Map<String, String> uuids = resolveConverted(names);
 
-                ResultSet res = selectSpawns.executeQuery();
-                while (res.next()) {
-                    Location location = new Location(res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"));
-                    DatabaseManager.spawns.insertSpawn(new Spawn(res.getString("spawnname"), location));
+            List<String> missing = new ArrayList<>();
+            for (String name : names) {
+                if (!uuids.containsKey(name.toLowerCase())) {
+                    missing.add(name);
                 }
+            }
 
-                res.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            } finally {
-                connectionHandler.release();
+            if (!missing.isEmpty()) {
+                uuids.putAll(resolver.resolve(missing));
             }
+            return uuids;
         }
 
         @Override
-        public String[] getTable() {
-            return new String[]{"BungeeSpawns"};
+        String getInsert() {
+            return "INSERT IGNORE INTO " + ConfigManager.main.Table_Bans + " (banned_playername,banned_uuid,banned_ip,banned_by,reason,type,active,banned_on,banned_until) VALUES(?,?,?,?,?,?,?,?,?)";
         }
 
         @Override
-        public void registerPreparedStatements(ConnectionHandler connection) {
-            connection.addPreparedStatement("selectSpawns", "SELECT * FROM BungeeSpawns");
+        void store(Row row) {
+            Object[] v = row.values;
+            Timestamp bannedUntil = (Timestamp) v[8];
+            DatabaseManager.bans.insertBanConvert((String) v[3], (String) v[0], (String) v[1], null, (String) v[4], (String) v[5], (Integer) v[6], new Date(((Timestamp) v[7]).getTime()), bannedUntil == null ? null : new Date(bannedUntil.getTime()));
         }
+    }
 
-        @Override
-        public void checkUpdate() {
-
+    private class Spawns extends LegacyTable {
+        Spawns() {
+            super("BungeeSpawns", -1, "spawnname", "server");
         }
-    }
 
-    private class Warps implements IRepository {
-        public void convert() {
-            ConnectionHandler connectionHandler = connectionPool.getConnection();
+        @Override
+        Row read(ResultSet res) throws SQLException {
+            return new Row(null, res.getString("spawnname"), res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"));
+        }
 
-            try {
-                PreparedStatement selectWarps = connectionHandler.getPreparedStatement("selectWarps");
+        @Override
+        String getInsert() {
+            return "INSERT IGNORE INTO " + ConfigManager.main.Table_Spawns + " (spawnname, server, world, x, y, z, yaw, pitch) VALUES(?,?,?,?,?,?,?,?)";
+        }
 
-                ResultSet res = selectWarps.executeQuery();
-                while (res.next()) {
-                    Location location = new Location(res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"));
-                    DatabaseManager.warps.insertWarp(new Warp(res.getString("warpname"), location, res.getBoolean("hidden"), res.getBoolean("global")));
-                }
+        @Override
+        void store(Row row) {
+            Object[] v = row.values;
+            Location location = new Location((String) v[1], (String) v[2], (Double) v[3], (Double) v[4], (Double) v[5], (Float) v[6], (Float) v[7]);
+            DatabaseManager.spawns.insertSpawn(new Spawn((String) v[0], location));
+        }
+    }
 
-                res.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            } finally {
-                connectionHandler.release();
-            }
+    private class Warps extends LegacyTable {
+        Warps() {
+            super("BungeeWarps", -1, "warpname");
         }
 
         @Override
-        public String[] getTable() {
-            return new String[]{"BungeeWarps"};
+        Row read(ResultSet res) throws SQLException {
+            return new Row(null, res.getString("warpname"), res.getString("server"), res.getString("world"), res.getDouble("x"), res.getDouble("y"), res.getDouble("z"), res.getFloat("yaw"), res.getFloat("pitch"), res.getBoolean("hidden"), res.getBoolean("global"));
         }
 
         @Override
-        public void registerPreparedStatements(ConnectionHandler connection) {
-            connection.addPreparedStatement("selectWarps", "SELECT * FROM BungeeWarps");
+        String getInsert() {
+            return "INSERT IGNORE INTO " + ConfigManager.main.Table_Warps + " (warpname, server, world, x, y, z, yaw, pitch, hidden, global) VALUES (?,?,?,?,?,?,?,?,?,?)";
         }
 
         @Override
-        public void checkUpdate() {
+        void store(Row row) {
+            Object[] v = row.values;
+            Location location = new Location((String) v[1], (String) v[2], (Double) v[3], (Double) v[4], (Double) v[5], (Float) v[6], (Float) v[7]);
+            DatabaseManager.warps.insertWarp(new Warp((String) v[0], location, (Boolean) v[8], (Boolean) v[9]));
+        }
+    }
 
+    /**
+     * @return UUIDs of players which are converted already, by lower cased name
+     */
+    private static Map<String, String> resolveConverted(Set<String> names) {
+        Map<String, String> uuids = new HashMap<>();
+        for (Map.Entry<String, UUID> entry : DatabaseManager.nameCache.resolveNames(names, DatabaseManager.players).entrySet()) {
+            uuids.put(entry.getKey().toLowerCase(), Utilities.getStringFromUUID(entry.getValue()));
         }
+        return uuids;
     }
 
+    /**
+     * Runs the conversion on its own thread
+     */
     public void convert() {
-        new Thread(){
+        new Thread("geSuit BungeeSuite Converter") {
             public void run() {
-                Players players = new Players();
-                Homes homes = new Homes();
-                Portals portals = new Portals();
-                Bans bans = new Bans();
-                Spawns spawns = new Spawns();
-                Warps warps = new Warps();
-
-                connectionPool.addRepository(players);
-                connectionPool.addRepository(homes);
-                connectionPool.addRepository(portals);
-                connectionPool.addRepository(bans);
-                connectionPool.addRepository(spawns);
-                connectionPool.addRepository(warps);
-
-                connectionPool.initialiseConnections(ConfigManager.main.BungeeSuiteDatabase);
-
-                players.convert();
-                homes.convert();
-                portals.convert();
-                bans.convert();
-                spawns.convert();
-                warps.convert();
-
-                ConfigManager.main.ConvertFromBungeeSuite = false;
-                try {
-                    ConfigManager.main.save();
-                } catch (InvalidConfigurationException e) {
+                Converter.this.run();
+            }
+        }.start();
+    }
+
+    /**
+     * Runs the conversion on the calling thread and returns once it is done or stopped
+     *
+     * @return True if everything has been converted
+     */
+    public boolean run() {
+        Players players = new Players();
+        List<LegacyTable> dependent = Arrays.asList(new Homes(), new Portals(), new Bans(), new Spawns(), new Warps());
+
+        connectionPool.addRepository(players);
+        for (LegacyTable table : dependent) {
+            connectionPool.addRepository(table);
+        }
+
+        connectionPool.initialiseConnections(ConfigManager.main.BungeeSuiteDatabase);
+
+        long start = System.nanoTime();
+        boolean done;
+        try {
+            done = progress.load() && players.convert() && convertAll(dependent);
+        } finally {
+            connectionPool.closeConnections();
+        }
+
+        if (!done) {
+            geSuit.instance.getLogger().severe("The BungeeSuite conversion stopped, it resumes from the last checkpoint on the next start");
+            return false;
+        }
+
+        geSuit.instance.getLogger().info("Finished the BungeeSuite conversion in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
+        ConfigManager.main.ConvertFromBungeeSuite = false;
+        try {
+            ConfigManager.main.save();
+        } catch (InvalidConfigurationException e) {
 
+        }
+        return true;
+    }
+
+    private boolean convertAll(List<LegacyTable> tables) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, ConfigManager.main.ConvertThreads), new ThreadFactoryBuilder().setNameFormat("geSuit Converter #%d").setDaemon(true).build());
+
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (final LegacyTable table : tables) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return table.convert();
+                    }
+                }));
+            }
+
+            boolean done = true;
+            for (Future<Boolean> result : results) {
+                try {
+                    done &= result.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    done = false;
                 }
             }
-        }.start();
+            return done;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdown();
+        }
     }
 }
@@ -0,0 +1,103 @@
+package net.cubespace.geSuit.database.convert;
+
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.profile.Profile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves player names to UUIDs through the Mojang profile API in batches of {@link #BATCH} names. Requests are
+ * spaced out so the converter never sends more than the configured number per minute, shared by every table which
+ * is converted at the same time. A failed request is retried with a growing pause, since Mojang answers a burst
+ * with HTTP 429 for a while.
+ */
+public class UUIDResolver {
+    /**
+     * Mojang accepts at most this many names per request
+     */
+    private static final int BATCH = 100;
+    private static final int ATTEMPTS = 5;
+    private static final long RETRY_PAUSE = TimeUnit.SECONDS.toMillis(10);
+
+    private final long interval;
+    private long nextRequest;
+
+    public UUIDResolver(int requestsPerMinute) {
+        this.interval = TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+        this.nextRequest = System.nanoTime();
+    }
+
+    /**
+     * @return UUIDs without dashes by lower cased name, names Mojang does not know are left out
+     * @throws IOException If a batch could not be resolved after several attempts
+     */
+    public Map<String, String> resolve(Collection<String> names) throws IOException, InterruptedException {
+        Map<String, String> resolved = new HashMap<>();
+        List<String> distinct = distinctNames(names);
+
+        for (int offset = 0; offset < distinct.size(); offset += BATCH) {
+            List<String> batch = distinct.subList(offset, Math.min(offset + BATCH, distinct.size()));
+
+            for (Map.Entry<String, UUID> entry : request(batch).entrySet()) {
+                resolved.put(entry.getKey().toLowerCase(), Utilities.getStringFromUUID(entry.getValue()));
+            }
+        }
+
+        MetricsManager.add("convert.uuid.unresolved", distinct.size() - resolved.size());
+        return resolved;
+    }
+
+    private Map<String, UUID> request(List<String> batch) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            awaitTurn();
+            MetricsManager.increment("convert.uuid.requests");
+
+            try {
+                return Profile.getOnlineUUIDs(batch);
+            } catch (IOException e) {
+                MetricsManager.increment("convert.uuid.failures");
+                if (attempt >= ATTEMPTS) {
+                    throw e;
+                }
+
+                long pause = RETRY_PAUSE << (attempt - 1);
+                geSuit.instance.getLogger().warning("Could not resolve UUIDs (" + e.getMessage() + "), retrying in " + (pause / 1000) + "s");
+                Thread.sleep(pause);
+            }
+        }
+    }
+
+    // Callers take the next free slot and sleep until it comes up
+    private void awaitTurn() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = now - nextRequest > 0 ? now : nextRequest;
+            nextRequest = slot + interval;
+            wait = slot - now;
+        }
+
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private static List<String> distinctNames(Collection<String> names) {
+        Map<String, String> byLower = new HashMap<>();
+        for (String name : names) {
+            if (name != null && !byLower.containsKey(name.toLowerCase())) {
+                byLower.put(name.toLowerCase(), name);
+            }
+        }
+        return new ArrayList<>(byLower.values());
+    }
+}
@@ -0,0 +1,254 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.BanIndex;
+import net.cubespace.geSuit.database.BanStore;
+import net.cubespace.geSuit.objects.Ban;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bans, kicks and warnings in id order, stored in bans.json
+ */
+class EmbeddedBans extends EmbeddedStore<EmbeddedBans.Data> implements BanStore {
+
+    static class Row {
+        int id;
+        String name;
+        String uuid;
+        String ip;
+        String bannedBy;
+        String reason;
+        String type;
+        int active;
+        long bannedOn;
+        Long bannedUntil;
+    }
+
+    static class Data {
+        int lastId;
+        List<Row> bans = new ArrayList<>();
+    }
+
+    private final List<Row> bans = new ArrayList<>();
+    private final Map<Integer, Row> byId = new HashMap<>();
+    private int lastId = 0;
+    private final BanIndex banIndex;
+
+    EmbeddedBans(BanIndex banIndex) {
+        super("bans.json", Data.class);
+        this.banIndex = banIndex;
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.lastId = lastId;
+        data.bans = bans;
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        bans.clear();
+        byId.clear();
+        lastId = data.lastId;
+
+        for (Row row : data.bans) {
+            bans.add(row);
+            byId.put(row.id, row);
+            lastId = Math.max(lastId, row.id);
+        }
+    }
+
+    public boolean isPlayerBanned(String player) {
+        return isPlayerBanned(player, null, null);
+    }
+
+    public synchronized boolean isPlayerBanned(String player, String uuid, String ip) {
+        for (Row row : bans) {
+            if (row.active == 1 && isBan(row) && matches(row, player, uuid, ip)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int banPlayer(String banned_playername, String banned_uuid, String banned_ip, String bannedBy, String reason, String type) {
+        Row row = insert(banned_playername, banned_uuid, banned_ip, bannedBy, reason, type, 1, System.currentTimeMillis(), null);
+        banIndex.add(toBan(row));
+        return row.id;
+    }
+
+    public int warnPlayer(String banned_playername, String banned_uuid, String bannedBy, String reason) {
+        return insert(banned_playername, banned_uuid, null, bannedBy, reason, "warn", 0, System.currentTimeMillis(), null).id;
+    }
+
+    public int kickPlayer(String banned_playername, String banned_uuid, String bannedBy, String reason) {
+        return insert(banned_playername, banned_uuid, null, bannedBy, reason, "kick", 0, System.currentTimeMillis(), null).id;
+    }
+
+    public int tempBanPlayer(String banned_playername, String banned_uuid, String banned_by, String reason, String till) {
+        long until;
+        try {
+            until = Timestamp.valueOf(till).getTime();
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        Row row = insert(banned_playername, banned_uuid, null, banned_by, reason, "tempban", 1, System.currentTimeMillis(), until);
+        banIndex.add(toBan(row));
+        return row.id;
+    }
+
+    public synchronized List<Ban> getBanHistory(String lookup, String uuid) {
+        List<Ban> history = new ArrayList<>();
+        for (Row row : bans) {
+            if (isBan(row) && matches(row, lookup, uuid, lookup)) {
+                history.add(toBan(row));
+            }
+        }
+
+        return history;
+    }
+
+    public List<Ban> getWarnHistory(String player, String uuid) {
+        return getHistory(player, uuid, true, false);
+    }
+
+    public List<Ban> getKickHistory(String player, String uuid) {
+        return getHistory(player, uuid, false, true);
+    }
+
+    public List<Ban> getKickWarnHistory(String player, String uuid) {
+        return getHistory(player, uuid, true, true);
+    }
+
+    private synchronized List<Ban> getHistory(String player, String uuid, boolean warns, boolean kicks) {
+        List<Ban> history = new ArrayList<>();
+        for (Row row : bans) {
+            if (((warns && "warn".equals(row.type)) || (kicks && "kick".equals(row.type))) && matches(row, player, uuid, null)) {
+                history.add(toBan(row));
+            }
+        }
+
+        return history;
+    }
+
+    public Ban getBanInfo(String player) {
+        return getBanInfo(player, player, player);
+    }
+
+    public synchronized Ban getBanInfo(String player, String uuid, String ip) {
+        // Same order as the MySQL store: by type, so a ban wins over an ipban and a tempban
+        Row found = null;
+        for (Row row : bans) {
+            if (row.active == 1 && isBan(row) && matches(row, player, uuid, ip) && (found == null || row.type.compareTo(found.type) < 0)) {
+                found = row;
+            }
+        }
+
+        return found == null ? null : toBan(found);
+    }
+
+    public synchronized List<Ban> getActiveBans(int sinceId) {
+        List<Ban> active = new ArrayList<>();
+        for (Row row : bans) {
+            if (row.id > sinceId && row.active == 1 && isBan(row)) {
+                active.add(toBan(row));
+            }
+        }
+
+        return active;
+    }
+
+    // Only this proxy writes the embedded storage, the ban index sees every change as it is made
+    public boolean tracksChanges() {
+        return false;
+    }
+
+    public Timestamp getLastBanChange() {
+        return null;
+    }
+
+    public List<Ban> getChangedBans(Timestamp since) {
+        return new ArrayList<>();
+    }
+
+    public void unbanPlayer(int id) {
+        synchronized (this) {
+            Row row = byId.get(id);
+            if (row == null) {
+                return;
+            }
+
+            row.active = 0;
+            changed();
+        }
+
+        banIndex.remove(id);
+    }
+
+    public synchronized void updateBanUUID(int id, String uuid) {
+        Row row = byId.get(id);
+        if (row != null) {
+            row.uuid = uuid;
+            changed();
+        }
+    }
+
+    public void insertBanConvert(String bannedBy, String player, String uuid, String ip, String reason, String type, int active, Date bannedOn, Date bannedUntil) {
+        insert(player, uuid, ip, bannedBy, reason, type, active, bannedOn.getTime(), bannedUntil == null ? null : bannedUntil.getTime());
+    }
+
+    /**
+     * @return The first active ban, ipban or tempban matching the tracking entry, or null
+     */
+    synchronized Ban getTrackingBan(String player, String uuid, String ip) {
+        for (Row row : bans) {
+            if (row.active == 1 && !"warn".equals(row.type) && matches(row, player, uuid, ip)) {
+                return toBan(row);
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized Row insert(String player, String uuid, String ip, String bannedBy, String reason, String type, int active, long bannedOn, Long bannedUntil) {
+        Row row = new Row();
+        row.id = ++lastId;
+        row.name = player;
+        row.uuid = uuid;
+        row.ip = ip;
+        row.bannedBy = bannedBy;
+        row.reason = reason;
+        row.type = type;
+        row.active = active;
+        row.bannedOn = bannedOn;
+        row.bannedUntil = bannedUntil;
+
+        bans.add(row);
+        byId.put(row.id, row);
+        changed();
+        return row;
+    }
+
+    private static boolean isBan(Row row) {
+        return "ban".equals(row.type) || "ipban".equals(row.type) || "tempban".equals(row.type);
+    }
+
+    // Names compare like the case insensitive MySQL columns
+    private static boolean matches(Row row, String player, String uuid, String ip) {
+        return (player != null && player.equalsIgnoreCase(row.name)) || (uuid != null && uuid.equals(row.uuid)) || (ip != null && ip.equals(row.ip));
+    }
+
+    private static Ban toBan(Row row) {
+        return new Ban(row.id, row.name, row.uuid, row.ip, row.bannedBy, row.reason, row.type, row.active, new Timestamp(row.bannedOn), row.bannedUntil == null ? null : new Timestamp(row.bannedUntil));
+    }
+}
@@ -0,0 +1,147 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.HomeStore;
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Home;
+import net.cubespace.geSuit.objects.Location;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Homes by owner, stored in homes.json
+ */
+class EmbeddedHomes extends EmbeddedStore<EmbeddedHomes.Data> implements HomeStore {
+
+    static class Row {
+        String player;
+        String name;
+        String server;
+        String world;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+    }
+
+    static class Data {
+        List<Row> homes = new ArrayList<>();
+    }
+
+    private final Map<String, List<Row>> byPlayer = new HashMap<>();
+
+    EmbeddedHomes() {
+        super("homes.json", Data.class);
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        for (List<Row> rows : byPlayer.values()) {
+            data.homes.addAll(rows);
+        }
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        byPlayer.clear();
+        for (Row row : data.homes) {
+            getRows(row.player).add(row);
+        }
+    }
+
+    public synchronized void addHome(Home home) {
+        String owner = getOwner(home.owner);
+        String server = home.loc.getServer().getName();
+
+        List<Row> rows = getRows(owner);
+        for (Row row : rows) {
+            if (row.name.equalsIgnoreCase(home.name) && row.server.equalsIgnoreCase(server)) {
+                return;
+            }
+        }
+
+        Row row = new Row();
+        row.player = owner;
+        row.name = home.name;
+        row.server = server;
+        setLocation(row, home.loc);
+        rows.add(row);
+        changed();
+    }
+
+    public synchronized void updateHome(Home home) {
+        List<Row> rows = byPlayer.get(getOwner(home.owner));
+        if (rows == null) {
+            return;
+        }
+
+        for (Row row : rows) {
+            if (row.name.equalsIgnoreCase(home.name)) {
+                row.server = home.loc.getServer().getName();
+                setLocation(row, home.loc);
+                changed();
+            }
+        }
+    }
+
+    public synchronized void deleteHome(Home home) {
+        String owner = getOwner(home.owner);
+        List<Row> rows = byPlayer.get(owner);
+        if (rows == null) {
+            return;
+        }
+
+        Iterator<Row> it = rows.iterator();
+        while (it.hasNext()) {
+            if (it.next().name.equalsIgnoreCase(home.name)) {
+                it.remove();
+                changed();
+            }
+        }
+
+        if (rows.isEmpty()) {
+            byPlayer.remove(owner);
+        }
+    }
+
+    public synchronized List<Home> getHomesForPlayer(GSPlayer player) {
+        List<Home> homes = new ArrayList<>();
+
+        List<Row> rows = byPlayer.get(getOwner(player));
+        if (rows != null) {
+            for (Row row : rows) {
+                homes.add(new Home(player, row.name, new Location(row.server, row.world, row.x, row.y, row.z, row.yaw, row.pitch)));
+            }
+        }
+
+        return homes;
+    }
+
+    private List<Row> getRows(String owner) {
+        List<Row> rows = byPlayer.get(owner);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            byPlayer.put(owner, rows);
+        }
+        return rows;
+    }
+
+    private static String getOwner(GSPlayer player) {
+        return (player.getUuid() != null) ? player.getUuid() : player.getName();
+    }
+
+    private static void setLocation(Row row, Location loc) {
+        row.world = loc.getWorld();
+        row.x = loc.getX();
+        row.y = loc.getY();
+        row.z = loc.getZ();
+        row.yaw = loc.getYaw();
+        row.pitch = loc.getPitch();
+    }
+}
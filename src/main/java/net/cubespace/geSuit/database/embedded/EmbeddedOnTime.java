@@ -0,0 +1,160 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.OnTimeAccumulator;
+import net.cubespace.geSuit.database.OnTimeStore;
+import net.cubespace.geSuit.managers.DatabaseManager;
+import net.cubespace.geSuit.objects.TimeRecord;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Online time per player, kept as daily and total sums only, stored in ontime.json. Hourly slots are folded into
+ * their day as they are written, nothing reads them back.
+ */
+class EmbeddedOnTime extends EmbeddedStore<EmbeddedOnTime.Data> implements OnTimeStore {
+
+    static class Row {
+        String uuid;
+        long total;
+        // Local days since the epoch to seconds online
+        TreeMap<Integer, Long> days = new TreeMap<>();
+    }
+
+    static class Data {
+        List<Row> ontime = new ArrayList<>();
+    }
+
+    private static final Comparator<Row> TOTAL = new Comparator<Row>() {
+        @Override
+        public int compare(Row a, Row b) {
+            return a.total < b.total ? -1 : (a.total == b.total ? 0 : 1);
+        }
+    };
+
+    private final EmbeddedPlayers players;
+    private final Map<String, Row> byUUID = new HashMap<>();
+
+    EmbeddedOnTime(EmbeddedPlayers players) {
+        super("ontime.json", Data.class);
+        this.players = players;
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.ontime = new ArrayList<>(byUUID.values());
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        byUUID.clear();
+        for (Row row : data.ontime) {
+            byUUID.put(row.uuid, row);
+        }
+    }
+
+    public synchronized boolean addOnTime(OnTimeAccumulator.Batch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Row row = byUUID.get(batch.getUuid(i));
+            if (row == null) {
+                row = new Row();
+                row.uuid = batch.getUuid(i);
+                byUUID.put(row.uuid, row);
+            }
+
+            // Slots are local hours since the epoch, so 24 of them make up a day
+            int day = batch.getSlot(i) / 24;
+            Long time = row.days.get(day);
+            row.days.put(day, (time == null ? 0 : time) + batch.getSeconds(i));
+            row.total += batch.getSeconds(i);
+        }
+
+        if (batch.size() > 0) {
+            changed();
+        }
+        return true;
+    }
+
+    public TimeRecord getPlayerOnTime(String uuid) {
+        TimeRecord trec = new TimeRecord(uuid);
+        int[] periods = OnTimeAccumulator.getPeriodStarts();
+
+        synchronized (this) {
+            Row row = byUUID.get(uuid);
+            if (row != null) {
+                long today = 0, week = 0, month = 0, year = 0;
+                for (Map.Entry<Integer, Long> day : row.days.tailMap(periods[3] / 24).entrySet()) {
+                    int slot = day.getKey() * 24;
+                    if (slot >= periods[0]) today += day.getValue();
+                    if (slot >= periods[1]) week += day.getValue();
+                    if (slot >= periods[2]) month += day.getValue();
+                    year += day.getValue();
+                }
+
+                trec.setTimeToday(today * 1000);
+                trec.setTimeWeek(week * 1000);
+                trec.setTimeMonth(month * 1000);
+                trec.setTimeYear(year * 1000);
+                trec.setTimeTotal(row.total * 1000);
+            }
+        }
+
+        // Time which is still waiting to be written
+        DatabaseManager.writeBehind.getOnTime().addPendingTime(uuid, trec);
+        return trec;
+    }
+
+    public Map<String, Long> getOnTimeTop(int pagenum) {
+        List<Row> ranking;
+        synchronized (this) {
+            ranking = new ArrayList<>(byUUID.values());
+            Collections.sort(ranking, Collections.reverseOrder(TOTAL));
+        }
+
+        // Players without a stored name are left out, like the join of the MySQL store
+        LinkedHashMap<String, Long> results = new LinkedHashMap<>();
+        int offset = (pagenum < 1) ? 0 : (pagenum - 1) * 10;
+        int skipped = 0;
+        for (Row row : ranking) {
+            String name = players.getName(row.uuid);
+            if (name == null) {
+                continue;
+            }
+            if (skipped++ < offset) {
+                continue;
+            }
+
+            results.put(name, row.total);
+            if (results.size() == 10) {
+                break;
+            }
+        }
+
+        return results;
+    }
+
+    public synchronized Map<Timestamp, Long> getLastLogins(String uuid, int num) {
+        LinkedHashMap<Timestamp, Long> results = new LinkedHashMap<>();
+
+        Row row = byUUID.get(uuid);
+        if (row != null) {
+            for (Map.Entry<Integer, Long> day : row.days.descendingMap().entrySet()) {
+                if (results.size() >= num) {
+                    break;
+                }
+                results.put(OnTimeAccumulator.toTimestamp(day.getKey() * 24), day.getValue());
+            }
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,287 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.database.LoginSnapshot;
+import net.cubespace.geSuit.database.PlayerStore;
+import net.cubespace.geSuit.objects.GSPlayer;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Players by UUID, lower cased name and IP, stored in players.json
+ */
+class EmbeddedPlayers extends EmbeddedStore<EmbeddedPlayers.Data> implements PlayerStore {
+    private static final int MATCH_LIMIT = 20;
+
+    static class Row {
+        String name;
+        String uuid;
+        long firstOnline;
+        long lastOnline;
+        String ip;
+        boolean tps = true;
+        boolean newspawn = false;
+    }
+
+    static class Data {
+        List<Row> players = new ArrayList<>();
+    }
+
+    private static final Comparator<Row> LAST_ONLINE = new Comparator<Row>() {
+        @Override
+        public int compare(Row a, Row b) {
+            return a.lastOnline < b.lastOnline ? -1 : (a.lastOnline == b.lastOnline ? 0 : 1);
+        }
+    };
+
+    private final EmbeddedTracking tracking;
+    private final Map<String, Row> byUUID = new HashMap<>();
+    private final Map<String, Row> byName = new HashMap<>();
+    private final Map<String, Set<Row>> byIP = new HashMap<>();
+
+    EmbeddedPlayers(EmbeddedTracking tracking) {
+        super("players.json", Data.class);
+        this.tracking = tracking;
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.players = new ArrayList<>(byUUID.values());
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        byUUID.clear();
+        byName.clear();
+        byIP.clear();
+
+        for (Row row : data.players) {
+            index(row);
+        }
+    }
+
+    public synchronized boolean playerExists(String player) {
+        return find(player) != null;
+    }
+
+    public synchronized String getPlayerIP(String player) {
+        Row row = find(player);
+        return row == null ? null : row.ip;
+    }
+
+    public synchronized boolean getPlayerTPS(String player) {
+        Row row = find(player);
+        return row == null || row.tps;
+    }
+
+    public synchronized String[] getAltPlayer(String uuid, String ip, boolean ignoreSelf) {
+        Set<Row> found = byIP.get(ip);
+        if (found == null) {
+            return null;
+        }
+
+        List<Row> sorted = new ArrayList<>(found);
+        Collections.sort(sorted, Collections.reverseOrder(LAST_ONLINE));
+
+        // The first one is the joining player themselves
+        int i = ignoreSelf ? 1 : 0;
+        if (i < sorted.size() && !uuid.equals(sorted.get(i).uuid)) {
+            return new String[]{sorted.get(i).name, sorted.get(i).uuid};
+        }
+
+        return null;
+    }
+
+    public void insertPlayer(GSPlayer player, String ip) {
+        long now = System.currentTimeMillis();
+        insert(player.getName(), player.getUuid(), now, ip, true);
+    }
+
+    public boolean insertPlayers(Collection<GSPlayer> players) {
+        for (GSPlayer player : players) {
+            insert(player.getName(), player.getUuid(), player.getFirstOnline().getTime(), player.getIp(), true);
+        }
+
+        return true;
+    }
+
+    public void insertPlayerConvert(String player, String uuid, Timestamp lastonline, String ip, boolean tps) {
+        insert(player, uuid, lastonline.getTime(), ip, tps);
+    }
+
+    private synchronized void insert(String name, String uuid, long online, String ip, boolean tps) {
+        if (byUUID.containsKey(uuid)) {
+            return;
+        }
+
+        Row row = new Row();
+        row.name = name;
+        row.uuid = uuid;
+        row.firstOnline = online;
+        row.lastOnline = online;
+        row.ip = ip;
+        row.tps = tps;
+        index(row);
+        changed();
+    }
+
+    public void updatePlayer(GSPlayer gsPlayer) {
+        update(gsPlayer, System.currentTimeMillis());
+    }
+
+    public synchronized boolean updatePlayers(Collection<GSPlayer> players) {
+        for (GSPlayer player : players) {
+            update(player, player.getLastOnline().getTime());
+        }
+
+        return true;
+    }
+
+    private synchronized void update(GSPlayer player, long seen) {
+        Row row = byUUID.get(player.getUuid());
+        if (row == null) {
+            row = byName.get(player.getName().toLowerCase());
+        }
+        if (row == null) {
+            return;
+        }
+
+        unindex(row);
+        row.uuid = player.getUuid();
+        row.name = player.getName();
+        row.lastOnline = seen;
+        row.ip = player.getIp();
+        row.tps = player.acceptingTeleports();
+        row.newspawn = player.isNewSpawn();
+        index(row);
+        changed();
+    }
+
+    public synchronized GSPlayer loadPlayer(String player) {
+        Row row = find(player);
+        if (row == null) {
+            return null;
+        }
+
+        return new GSPlayer(row.name, row.uuid, row.tps, row.newspawn, row.ip, new Timestamp(row.lastOnline), new Timestamp(row.firstOnline));
+    }
+
+    public synchronized List<String> matchPlayers(String player) {
+        String search = player.toLowerCase();
+
+        List<Row> found = new ArrayList<>();
+        for (Row row : byUUID.values()) {
+            if (row.name.toLowerCase().contains(search) || row.uuid.equals(player)) {
+                found.add(row);
+            }
+        }
+        Collections.sort(found, LAST_ONLINE);
+
+        List<String> players = new ArrayList<>();
+        for (int i = 0; i < found.size() && i < MATCH_LIMIT; i++) {
+            players.add(found.get(i).name);
+        }
+
+        return players;
+    }
+
+    public synchronized Map<String, UUID> resolvePlayerNames(Collection<String> names) {
+        Map<String, UUID> resolved = new HashMap<>();
+        for (String name : names) {
+            Row row = byName.get(name.toLowerCase());
+            if (row != null) {
+                resolved.put(row.name, Utilities.makeUUID(row.uuid));
+            }
+        }
+
+        return resolved;
+    }
+
+    public Map<String, UUID> resolvePlayerNamesHistoric(Collection<String> names) {
+        return tracking.resolveNames(names);
+    }
+
+    public synchronized Map<UUID, String> resolveUUIDs(Collection<UUID> ids) {
+        Map<UUID, String> resolved = new HashMap<>();
+        for (UUID id : ids) {
+            Row row = byUUID.get(Utilities.getStringFromUUID(id));
+            if (row != null) {
+                resolved.put(id, row.name);
+            }
+        }
+
+        return resolved;
+    }
+
+    public synchronized boolean loadPlayerNames(Timestamp since, LoginSnapshot.PlayerNames names) {
+        try {
+            for (Row row : new TreeMap<>(byUUID).values()) {
+                if (since == null || row.lastOnline >= since.getTime()) {
+                    names.add(row.uuid, row.name);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The players current name or null if the UUID is unknown
+     */
+    synchronized String getName(String uuid) {
+        Row row = byUUID.get(uuid);
+        return row == null ? null : row.name;
+    }
+
+    // Matches a name or a UUID, like the "playername = ? OR uuid = ?" lookups of the MySQL store
+    private Row find(String player) {
+        Row row = byUUID.get(player);
+        return row != null ? row : byName.get(player.toLowerCase());
+    }
+
+    private void index(Row row) {
+        byUUID.put(row.uuid, row);
+        byName.put(row.name.toLowerCase(), row);
+        if (row.ip != null) {
+            Set<Row> rows = byIP.get(row.ip);
+            if (rows == null) {
+                rows = new LinkedHashSet<>();
+                byIP.put(row.ip, rows);
+            }
+            rows.add(row);
+        }
+    }
+
+    private void unindex(Row row) {
+        byUUID.remove(row.uuid);
+        if (byName.get(row.name.toLowerCase()) == row) {
+            byName.remove(row.name.toLowerCase());
+        }
+        if (row.ip != null) {
+            Set<Row> rows = byIP.get(row.ip);
+            if (rows != null) {
+                rows.remove(row);
+                if (rows.isEmpty()) {
+                    byIP.remove(row.ip);
+                }
+            }
+        }
+    }
+}
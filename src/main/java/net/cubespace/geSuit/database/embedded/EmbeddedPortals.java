@@ -0,0 +1,114 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.PortalStore;
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Portal;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Portals by lower cased name, stored in portals.json
+ */
+class EmbeddedPortals extends EmbeddedStore<EmbeddedPortals.Data> implements PortalStore {
+
+    static class Row {
+        String name;
+        String server;
+        String type;
+        String destination;
+        String world;
+        String fillType = "AIR";
+        int xmax;
+        int xmin;
+        int ymax;
+        int ymin;
+        int zmax;
+        int zmin;
+    }
+
+    static class Data {
+        List<Row> portals = new ArrayList<>();
+    }
+
+    private final Map<String, Row> portals = new LinkedHashMap<>();
+
+    EmbeddedPortals() {
+        super("portals.json", Data.class);
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.portals = new ArrayList<>(portals.values());
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        portals.clear();
+        for (Row row : data.portals) {
+            portals.put(row.name.toLowerCase(), row);
+        }
+    }
+
+    public synchronized Map<ServerInfo, List<Portal>> getPortals() {
+        Map<ServerInfo, List<Portal>> portalMap = new HashMap<>();
+        for (Row row : portals.values()) {
+            Portal p = new Portal(row.name, row.server, row.fillType, row.type, row.destination, new Location(row.server, row.world, row.xmax, row.ymax, row.zmax), new Location(row.server, row.world, row.xmin, row.ymin, row.zmin));
+            List<Portal> list = portalMap.get(p.getServer());
+            if (list == null) {
+                list = new ArrayList<>();
+                portalMap.put(p.getServer(), list);
+            }
+
+            list.add(p);
+        }
+
+        return portalMap;
+    }
+
+    public synchronized void deletePortal(String portalName) {
+        if (portals.remove(portalName.toLowerCase()) != null) {
+            changed();
+        }
+    }
+
+    public synchronized void insertPortal(Portal portal) {
+        if (portals.containsKey(portal.getName().toLowerCase())) {
+            return;
+        }
+
+        Row row = new Row();
+        row.name = portal.getName();
+        set(row, portal);
+        portals.put(row.name.toLowerCase(), row);
+        changed();
+    }
+
+    public synchronized void updatePortal(Portal portal) {
+        Row row = portals.get(portal.getName().toLowerCase());
+        if (row != null) {
+            set(row, portal);
+            changed();
+        }
+    }
+
+    private static void set(Row row, Portal portal) {
+        row.server = portal.getServer().getName();
+        row.type = portal.getType();
+        row.destination = portal.getDest();
+        row.world = portal.getMax().getWorld();
+        row.fillType = portal.getFillType();
+        row.xmax = (int) portal.getMax().getX();
+        row.xmin = (int) portal.getMin().getX();
+        row.ymax = (int) portal.getMax().getY();
+        row.ymin = (int) portal.getMin().getY();
+        row.zmax = (int) portal.getMax().getZ();
+        row.zmin = (int) portal.getMin().getZ();
+    }
+}
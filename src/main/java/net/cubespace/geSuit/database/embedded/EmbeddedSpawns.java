@@ -0,0 +1,126 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.SpawnStore;
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Spawn;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Spawns, unique by name and server, stored in spawns.json
+ */
+class EmbeddedSpawns extends EmbeddedStore<EmbeddedSpawns.Data> implements SpawnStore {
+
+    static class Row {
+        String name;
+        String server;
+        String world;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+    }
+
+    static class Data {
+        List<Row> spawns = new ArrayList<>();
+    }
+
+    private final List<Row> spawns = new ArrayList<>();
+
+    EmbeddedSpawns() {
+        super("spawns.json", Data.class);
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.spawns = spawns;
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        spawns.clear();
+        spawns.addAll(data.spawns);
+    }
+
+    public synchronized Location getSpawn(String spawnName) {
+        Location location = null;
+        for (Row row : spawns) {
+            if (row.name.equalsIgnoreCase(spawnName)) {
+                location = toLocation(row);
+            }
+        }
+
+        return location;
+    }
+
+    public synchronized void deleteWorldSpawn(String server, String world) {
+        Iterator<Row> it = spawns.iterator();
+        while (it.hasNext()) {
+            Row row = it.next();
+            if (row.server.equalsIgnoreCase(server) && row.world.equalsIgnoreCase(world) && row.name.equalsIgnoreCase(row.world)) {
+                it.remove();
+                changed();
+            }
+        }
+    }
+
+    public synchronized List<Spawn> getSpawnsForServer(String server) {
+        List<Spawn> list = new ArrayList<>();
+        for (Row row : spawns) {
+            if (row.server.equalsIgnoreCase(server) && !row.name.equalsIgnoreCase("NewPlayerSpawn") && !row.name.equalsIgnoreCase("ProxySpawn")) {
+                list.add(new Spawn(row.name, toLocation(row)));
+            }
+        }
+
+        return list;
+    }
+
+    public synchronized void insertSpawn(Spawn spawn) {
+        String server = spawn.getLocation().getServer().getName();
+        if (find(spawn.getName(), server) != null) {
+            return;
+        }
+
+        Row row = new Row();
+        row.name = spawn.getName();
+        row.server = server;
+        set(row, spawn.getLocation());
+        spawns.add(row);
+        changed();
+    }
+
+    public synchronized void updateSpawn(Spawn spawn) {
+        Row row = find(spawn.getName(), spawn.getLocation().getServer().getName());
+        if (row != null) {
+            set(row, spawn.getLocation());
+            changed();
+        }
+    }
+
+    private Row find(String name, String server) {
+        for (Row row : spawns) {
+            if (row.name.equalsIgnoreCase(name) && row.server.equalsIgnoreCase(server)) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private static void set(Row row, Location loc) {
+        row.world = loc.getWorld();
+        row.x = loc.getX();
+        row.y = loc.getY();
+        row.z = loc.getZ();
+        row.yaw = loc.getYaw();
+        row.pitch = loc.getPitch();
+    }
+
+    private static Location toLocation(Row row) {
+        return new Location(row.server, row.world, row.x, row.y, row.z, row.yaw, row.pitch);
+    }
+}
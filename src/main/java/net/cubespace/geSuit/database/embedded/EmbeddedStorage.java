@@ -0,0 +1,184 @@
+package net.cubespace.geSuit.database.embedded;
+
+import com.google.gson.Gson;
+import net.cubespace.geSuit.database.BanIndex;
+import net.cubespace.geSuit.database.BanStore;
+import net.cubespace.geSuit.database.HomeStore;
+import net.cubespace.geSuit.database.OnTimeStore;
+import net.cubespace.geSuit.database.PlayerStore;
+import net.cubespace.geSuit.database.PortalStore;
+import net.cubespace.geSuit.database.SpawnStore;
+import net.cubespace.geSuit.database.TrackingStore;
+import net.cubespace.geSuit.database.WarpStore;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.ConfigManager;
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage which keeps every table in memory and in JSON files in a local folder, for single proxy setups and for
+ * running the plugin without a MySQL server. Reads never leave the process. Changed stores are written to disk every
+ * {@code EmbeddedSaveInterval} seconds and on shutdown, each file is replaced as a whole so a crash leaves the last
+ * complete copy behind.
+ */
+public class EmbeddedStorage {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File folder;
+    private final Gson gson = new Gson();
+    private final List<EmbeddedStore<?>> stores = new ArrayList<>();
+    private ScheduledTask task;
+
+    private final EmbeddedPlayers players;
+    private final EmbeddedBans bans;
+    private final EmbeddedHomes homes;
+    private final EmbeddedTracking tracking;
+    private final EmbeddedOnTime ontime;
+    private final EmbeddedWarps warps;
+    private final EmbeddedPortals portals;
+    private final EmbeddedSpawns spawns;
+
+    /**
+     * @param banIndex Index the bans are added to and removed from as they are written
+     */
+    public EmbeddedStorage(File folder, BanIndex banIndex) {
+        this.folder = folder;
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            geSuit.instance.getLogger().severe("Could not create the storage folder " + folder);
+        }
+
+        bans = register(new EmbeddedBans(banIndex));
+        tracking = register(new EmbeddedTracking(bans));
+        players = register(new EmbeddedPlayers(tracking));
+        homes = register(new EmbeddedHomes());
+        ontime = register(new EmbeddedOnTime(players));
+        warps = register(new EmbeddedWarps());
+        portals = register(new EmbeddedPortals());
+        spawns = register(new EmbeddedSpawns());
+    }
+
+    private <S extends EmbeddedStore<T>, T> S register(S store) {
+        stores.add(store);
+
+        File file = new File(folder, store.getFile());
+        if (!file.exists()) {
+            return store;
+        }
+
+        try (Reader in = new InputStreamReader(new FileInputStream(file), UTF8)) {
+            T data = gson.fromJson(in, store.getType());
+            if (data != null) {
+                store.deserialise(data);
+            }
+        } catch (Exception e) {
+            // Keep the broken file around instead of overwriting it with the empty store
+            File broken = new File(folder, store.getFile() + ".broken");
+            geSuit.instance.getLogger().severe("Could not read " + file + ", moved it to " + broken + ": " + e.getMessage());
+            if (!file.renameTo(broken)) {
+                geSuit.instance.getLogger().severe("Could not move " + file + " out of the way");
+            }
+        }
+
+        return store;
+    }
+
+    public void start() {
+        int interval = ConfigManager.main.Database.EmbeddedSaveInterval;
+
+        task = ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes every store which has changed since the last save
+     *
+     * @return False if a store could not be written, it is written again with the next save
+     */
+    public synchronized boolean save() {
+        boolean saved = true;
+
+        for (EmbeddedStore<?> store : stores) {
+            String json = store.serialise(gson);
+            if (json == null) {
+                continue;
+            }
+
+            File file = new File(folder, store.getFile());
+            File temp = new File(folder, store.getFile() + ".tmp");
+            try {
+                try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), UTF8)) {
+                    out.write(json);
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                geSuit.instance.getLogger().severe("Could not write " + file + ": " + e.getMessage());
+                store.saveFailed();
+                saved = false;
+            }
+        }
+
+        return saved;
+    }
+
+    /**
+     * Stops the save timer and writes everything which has changed
+     */
+    public void close() {
+        if (task != null) {
+            task.cancel();
+        }
+
+        save();
+    }
+
+    public PlayerStore getPlayers() {
+        return players;
+    }
+
+    public BanStore getBans() {
+        return bans;
+    }
+
+    public HomeStore getHomes() {
+        return homes;
+    }
+
+    public TrackingStore getTracking() {
+        return tracking;
+    }
+
+    public OnTimeStore getOnTime() {
+        return ontime;
+    }
+
+    public WarpStore getWarps() {
+        return warps;
+    }
+
+    public PortalStore getPortals() {
+        return portals;
+    }
+
+    public SpawnStore getSpawns() {
+        return spawns;
+    }
+}
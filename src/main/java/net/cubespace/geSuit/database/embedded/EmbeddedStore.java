@@ -0,0 +1,69 @@
+package net.cubespace.geSuit.database.embedded;
+
+import com.google.gson.Gson;
+
+/**
+ * Base of the embedded stores. A store keeps all of its rows in memory, guarded by its own monitor, and is written to
+ * its file as a whole once it has changed.
+ *
+ * @param <T> The Gson serialisable form of the rows
+ */
+abstract class EmbeddedStore<T> {
+    private final String file;
+    private final Class<T> type;
+    private boolean dirty = false;
+
+    EmbeddedStore(String file, Class<T> type) {
+        this.file = file;
+        this.type = type;
+    }
+
+    String getFile() {
+        return file;
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return The rows as they are written to the file, only called while holding the stores monitor
+     */
+    protected abstract T save();
+
+    /**
+     * Replaces the rows with the ones read from the file
+     */
+    protected abstract void load(T data);
+
+    /**
+     * Marks the store to be written with the next save, call it while holding the stores monitor
+     */
+    protected void changed() {
+        dirty = true;
+    }
+
+    /**
+     * @return The rows as JSON or null if nothing has changed since the last call
+     */
+    synchronized String serialise(Gson gson) {
+        if (!dirty) {
+            return null;
+        }
+
+        dirty = false;
+        return gson.toJson(save());
+    }
+
+    /**
+     * The serialised rows could not be written, they are written again with the next save
+     */
+    synchronized void saveFailed() {
+        dirty = true;
+    }
+
+    synchronized void deserialise(T data) {
+        load(data);
+        dirty = false;
+    }
+}
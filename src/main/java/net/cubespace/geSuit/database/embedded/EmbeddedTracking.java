@@ -0,0 +1,250 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.database.AltGraph;
+import net.cubespace.geSuit.database.TrackingStore;
+import net.cubespace.geSuit.objects.Ban;
+import net.cubespace.geSuit.objects.GSPlayer;
+import net.cubespace.geSuit.objects.Track;
+import net.cubespace.geSuit.profile.Profile;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Name, UUID and IP combinations indexed by each of them, stored in tracking.json
+ */
+class EmbeddedTracking extends EmbeddedStore<EmbeddedTracking.Data> implements TrackingStore {
+
+    static class Row {
+        String player;
+        String uuid;
+        String ip;
+        long firstSeen;
+        long lastSeen;
+    }
+
+    static class Data {
+        List<Row> tracking = new ArrayList<>();
+    }
+
+    private static final Comparator<Row> LAST_SEEN = new Comparator<Row>() {
+        @Override
+        public int compare(Row a, Row b) {
+            return a.lastSeen < b.lastSeen ? -1 : (a.lastSeen == b.lastSeen ? 0 : 1);
+        }
+    };
+
+    private final EmbeddedBans bans;
+    private final Map<String, Row> rows = new LinkedHashMap<>();
+    private final Map<String, List<Row>> byName = new HashMap<>();
+    private final Map<String, List<Row>> byUUID = new HashMap<>();
+    private final Map<String, List<Row>> byIP = new HashMap<>();
+
+    EmbeddedTracking(EmbeddedBans bans) {
+        super("tracking.json", Data.class);
+        this.bans = bans;
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.tracking = new ArrayList<>(rows.values());
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        rows.clear();
+        byName.clear();
+        byUUID.clear();
+        byIP.clear();
+
+        for (Row row : data.tracking) {
+            if (!rows.containsKey(key(row.player, row.uuid, row.ip))) {
+                add(row);
+            }
+        }
+    }
+
+    public void insertTracking(String player, String uuid, String ip) {
+        long now = System.currentTimeMillis();
+        touch(player, uuid, ip, now, now);
+    }
+
+    public synchronized void insertHistoricTracking(String player, String uuid, String ip, Date changedDate, Date lastSeen) {
+        if (rows.containsKey(key(player, uuid, ip))) {
+            return;
+        }
+
+        Row row = new Row();
+        row.player = player;
+        row.uuid = uuid;
+        row.ip = ip;
+        row.firstSeen = changedDate.getTime();
+        row.lastSeen = lastSeen.getTime();
+        add(row);
+        changed();
+    }
+
+    public synchronized boolean touchTracking(Collection<Track> tracks) {
+        for (Track track : tracks) {
+            touch(track.getPlayer(), track.getUuid(), track.getIp(), track.getFirstSeen().getTime(), track.getLastSeen().getTime());
+        }
+
+        return true;
+    }
+
+    private synchronized void touch(String player, String uuid, String ip, long firstSeen, long lastSeen) {
+        Row row = rows.get(key(player, uuid, ip));
+        if (row == null) {
+            row = new Row();
+            row.player = player;
+            row.uuid = uuid;
+            row.ip = ip;
+            row.firstSeen = firstSeen;
+            row.lastSeen = lastSeen;
+            add(row);
+        } else {
+            row.lastSeen = Math.max(row.lastSeen, lastSeen);
+        }
+
+        changed();
+    }
+
+    public synchronized List<Track> getPlayerTracking(String search, String type) {
+        Set<Row> found = new LinkedHashSet<>();
+        if (type.equals("ip")) {
+            found.addAll(get(byIP, search));
+        } else {
+            // Everyone who has used one of the IPs of the UUID or name
+            List<Row> matches = type.equals("uuid") ? get(byUUID, search) : get(byName, search.toLowerCase());
+            for (Row row : matches) {
+                found.addAll(get(byIP, row.ip));
+            }
+        }
+
+        List<Row> sorted = new ArrayList<>(found);
+        Collections.sort(sorted, LAST_SEEN);
+
+        List<Track> tracking = new ArrayList<>(sorted.size());
+        for (Row row : sorted) {
+            Ban ban = bans.getTrackingBan(row.player, row.uuid, row.ip);
+            if (ban == null) {
+                tracking.add(toTrack(row));
+            } else {
+                tracking.add(new Track(row.player, row.uuid, row.ip, new Timestamp(row.firstSeen), new Timestamp(row.lastSeen), ban.getType(), ban.getPlayer(), ban.getUuid(), ban.getIp()));
+            }
+        }
+
+        return tracking;
+    }
+
+    public void insertNameHistory(GSPlayer player) {
+        UUID id = Utilities.makeUUID(player.getUuid());
+        String ip = player.getIp();
+        Map<Timestamp, String> input = Profile.getMojangNameHistory(id);
+        Date firstSeen = new Date(0);
+        for (Map.Entry<Timestamp, String> e : input.entrySet()) {
+            Date changedAt = new Date(e.getKey().getTime());
+            insertHistoricTracking(e.getValue(), player.getUuid(), ip, firstSeen, changedAt);
+            firstSeen = changedAt;
+        }
+    }
+
+    public synchronized List<Track> getNameHistory(UUID id) {
+        // The latest entry of every name the UUID has used, newest first
+        Map<String, Row> latest = new HashMap<>();
+        for (Row row : get(byUUID, Utilities.getStringFromUUID(id))) {
+            Row current = latest.get(row.player.toLowerCase());
+            if (current == null || row.lastSeen > current.lastSeen) {
+                latest.put(row.player.toLowerCase(), row);
+            }
+        }
+
+        List<Row> sorted = new ArrayList<>(latest.values());
+        Collections.sort(sorted, Collections.reverseOrder(LAST_SEEN));
+
+        List<Track> tracking = new ArrayList<>(sorted.size());
+        for (Row row : sorted) {
+            tracking.add(toTrack(row));
+        }
+
+        return tracking;
+    }
+
+    public synchronized Track checkNameChange(UUID id, String playername) {
+        Row found = null;
+        for (Row row : get(byUUID, Utilities.getStringFromUUID(id))) {
+            if (!row.player.equalsIgnoreCase(playername) && (found == null || row.lastSeen > found.lastSeen)) {
+                found = row;
+            }
+        }
+
+        return found == null ? null : toTrack(found);
+    }
+
+    public synchronized boolean loadLinks(AltGraph.Links links) {
+        for (Row row : rows.values()) {
+            links.add(row.player, row.uuid, row.ip, row.lastSeen);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return UUIDs of every tracked name, including names which are no longer used
+     */
+    synchronized Map<String, UUID> resolveNames(Collection<String> names) {
+        Map<String, UUID> resolved = new HashMap<>();
+        for (String name : names) {
+            List<Row> found = get(byName, name.toLowerCase());
+            if (!found.isEmpty()) {
+                resolved.put(found.get(0).player, Utilities.makeUUID(found.get(0).uuid));
+            }
+        }
+
+        return resolved;
+    }
+
+    private void add(Row row) {
+        rows.put(key(row.player, row.uuid, row.ip), row);
+        put(byName, row.player.toLowerCase(), row);
+        put(byUUID, row.uuid, row);
+        put(byIP, row.ip, row);
+    }
+
+    private static void put(Map<String, List<Row>> index, String key, Row row) {
+        List<Row> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            index.put(key, list);
+        }
+        list.add(row);
+    }
+
+    private static List<Row> get(Map<String, List<Row>> index, String key) {
+        List<Row> list = index.get(key);
+        return list == null ? Collections.<Row>emptyList() : list;
+    }
+
+    // The unique key of the MySQL table, the name part compares case insensitive
+    private static String key(String player, String uuid, String ip) {
+        return player.toLowerCase() + "|" + uuid + "|" + ip;
+    }
+
+    private static Track toTrack(Row row) {
+        return new Track(row.player, row.uuid, row.ip, new Timestamp(row.firstSeen), new Timestamp(row.lastSeen), null, null, null, null);
+    }
+}
@@ -0,0 +1,103 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.WarpStore;
+import net.cubespace.geSuit.objects.Location;
+import net.cubespace.geSuit.objects.Warp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Warps by lower cased name, stored in warps.json
+ */
+class EmbeddedWarps extends EmbeddedStore<EmbeddedWarps.Data> implements WarpStore {
+
+    static class Row {
+        String name;
+        String server;
+        String world;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+        boolean hidden;
+        boolean global = true;
+    }
+
+    static class Data {
+        List<Row> warps = new ArrayList<>();
+    }
+
+    // Sorted, warps are listed by name
+    private final Map<String, Row> warps = new TreeMap<>();
+
+    EmbeddedWarps() {
+        super("warps.json", Data.class);
+    }
+
+    @Override
+    protected Data save() {
+        Data data = new Data();
+        data.warps = new ArrayList<>(warps.values());
+        return data;
+    }
+
+    @Override
+    protected void load(Data data) {
+        warps.clear();
+        for (Row row : data.warps) {
+            warps.put(row.name.toLowerCase(), row);
+        }
+    }
+
+    public synchronized List<Warp> getWarps() {
+        List<Warp> list = new ArrayList<>(warps.size());
+        for (Row row : warps.values()) {
+            list.add(new Warp(row.name, new Location(row.server, row.world, row.x, row.y, row.z, row.yaw, row.pitch), row.hidden, row.global));
+        }
+
+        return list;
+    }
+
+    public synchronized void insertWarp(Warp warp) {
+        if (warps.containsKey(warp.getName().toLowerCase())) {
+            return;
+        }
+
+        Row row = new Row();
+        row.name = warp.getName();
+        set(row, warp);
+        warps.put(row.name.toLowerCase(), row);
+        changed();
+    }
+
+    public synchronized void updateWarp(Warp warp) {
+        Row row = warps.get(warp.getName().toLowerCase());
+        if (row != null) {
+            set(row, warp);
+            changed();
+        }
+    }
+
+    public synchronized void deleteWarp(String warp) {
+        if (warps.remove(warp.toLowerCase()) != null) {
+            changed();
+        }
+    }
+
+    private static void set(Row row, Warp warp) {
+        Location loc = warp.getLocation();
+        row.server = loc.getServer().getName();
+        row.world = loc.getWorld();
+        row.x = loc.getX();
+        row.y = loc.getY();
+        row.z = loc.getZ();
+        row.yaw = loc.getYaw();
+        row.pitch = loc.getPitch();
+        row.hidden = warp.isHidden();
+        row.global = warp.isGlobal();
+    }
+}
@@ -1,18 +1,21 @@
 package net.cubespace.geSuit;
 
 import net.cubespace.geSuit.commands.*;
-import net.cubespace.geSuit.database.ConnectionHandler;
-import net.cubespace.geSuit.database.convert.Converter;
 import net.cubespace.geSuit.listeners.*;
+import net.cubespace.geSuit.managers.BansManager;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
-import net.cubespace.geSuit.managers.GeoIPManager;
 import net.cubespace.geSuit.managers.LockDownManager;
 import net.cubespace.geSuit.managers.LoggingManager;
+import net.cubespace.geSuit.managers.MetricsManager;
+import net.cubespace.geSuit.managers.PlayerManager;
+import net.cubespace.geSuit.managers.StartupManager;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.plugin.Plugin;
 
+import java.util.concurrent.TimeUnit;
+
 public class geSuit extends Plugin
 {
 
@@ -27,18 +30,20 @@ public class geSuit extends Plugin
         proxy = ProxyServer.getInstance();
         LoggingManager.log(ChatColor.GREEN + "Initialising Managers");
 
-        ConnectionHandler connectionHandler = DatabaseManager.connectionPool.getConnection();
-        connectionHandler.release();
-
-        if (ConfigManager.main.ConvertFromBungeeSuite) {
-            Converter converter = new Converter();
-            converter.convert();
-        }
+        // Logins wait for the parts they need, the rest keeps loading in the background
+        StartupManager.start();
 
-        registerListeners();
-        registerCommands();
-        GeoIPManager.initialize();
+        // Logins are decided from the login snapshot until the database is open, everything else needs the stores
+        proxy.getPluginManager().registerListener(this, new PlayerListener());
+        StartupManager.afterDatabase(new Runnable() {
+            @Override
+            public void run() {
+                registerListeners();
+                registerCommands();
+            }
+        });
         LockDownManager.initialize();
+        MetricsManager.startReporting();
     }
 
     private void registerCommands()
@@ -79,7 +84,6 @@ public class geSuit extends Plugin
         getProxy().registerChannel("geSuitHomes");          // Homes in
         getProxy().registerChannel("geSuitAPI");            // API messages in
 
-        proxy.getPluginManager().registerListener(this, new PlayerListener());
         proxy.getPluginManager().registerListener(this, new BansMessageListener());
         proxy.getPluginManager().registerListener(this, new TeleportsListener());
         proxy.getPluginManager().registerListener(this, new TeleportsMessageListener());
@@ -96,7 +100,18 @@ public class geSuit extends Plugin
 
     public void onDisable()
     {
-        DatabaseManager.connectionPool.closeConnections();
+        BansManager.executor.shutdown(10, TimeUnit.SECONDS);
+        BansManager.lookups.shutdown(10, TimeUnit.SECONDS);
+        if (StartupManager.isDatabaseReady()) {
+            DatabaseManager.async.getExecutor().shutdown(10, TimeUnit.SECONDS);
+            DatabaseManager.retention.stop();
+            DatabaseManager.writeBehind.drain();
+            DatabaseManager.loginSnapshot.write();
+            DatabaseManager.close();
+        }
+        if (ConfigManager.main.MetricsInterval > 0) {
+            MetricsManager.writeReport();
+        }
     }
 
 	public boolean isDebugEnabled() {
@@ -39,35 +39,95 @@ public class BansMessageListener implements Listener {
         event.setCancelled(true);
         DataInputStream in = new DataInputStream(new ByteArrayInputStream(event.getData()));
 
+        // Everything is decoded here, the blocking work runs on the bans or the lookup executor
         String task = in.readUTF();
         switch (task) {
-            case "KickPlayer":
-                BansManager.kickPlayer(in.readUTF(), in.readUTF(), in.readUTF());
-                break;
-            case "BanPlayer":
-                BansManager.banPlayer(in.readUTF(), in.readUTF(), in.readUTF());
-                break;
-            case "WarnPlayer":
-                BansManager.warnPlayer(in.readUTF(), in.readUTF(), in.readUTF());
-                break;
-            case "TempBanPlayer":
-                BansManager.tempBanPlayer(in.readUTF(), in.readUTF(), in.readInt(), in.readUTF());
-                break;
+            case "KickPlayer": {
+                final String sender = in.readUTF(), player = in.readUTF(), reason = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.kickPlayer(sender, player, reason);
+                    }
+                });
+                break;
+            }
+            case "BanPlayer": {
+                final String sender = in.readUTF(), player = in.readUTF(), reason = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.banPlayer(sender, player, reason);
+                    }
+                });
+                break;
+            }
+            case "WarnPlayer": {
+                final String sender = in.readUTF(), player = in.readUTF(), reason = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.warnPlayer(sender, player, reason);
+                    }
+                });
+                break;
+            }
+            case "TempBanPlayer": {
+                final String sender = in.readUTF(), player = in.readUTF();
+                final int seconds = in.readInt();
+                final String reason = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.tempBanPlayer(sender, player, seconds, reason);
+                    }
+                });
+                break;
+            }
             case "KickAll":
                 BansManager.kickAll(in.readUTF(), in.readUTF());
                 break;
-            case "UnbanPlayer":
-                BansManager.unbanPlayer(in.readUTF(), in.readUTF());
-                break;
-            case "IPBanPlayer":
-                BansManager.banIP(in.readUTF(), in.readUTF(), in.readUTF());
-                break;
-            case "CheckPlayerBans":
-                BansManager.checkPlayersBan(in.readUTF(), in.readUTF());
-                break;
-            case "DisplayPlayerBanHistory":
-                BansManager.displayPlayerBanHistory(in.readUTF(), in.readUTF());
-                break;
+            case "UnbanPlayer": {
+                final String sender = in.readUTF(), player = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.unbanPlayer(sender, player);
+                    }
+                });
+                break;
+            }
+            case "IPBanPlayer": {
+                final String sender = in.readUTF(), target = in.readUTF(), reason = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.banIP(sender, target, reason);
+                    }
+                });
+                break;
+            }
+            case "CheckPlayerBans": {
+                final String sender = in.readUTF(), player = in.readUTF();
+                BansManager.dispatch(BansManager.lookups, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.checkPlayersBan(sender, player);
+                    }
+                });
+                break;
+            }
+            case "DisplayPlayerBanHistory": {
+                final String sender = in.readUTF(), player = in.readUTF();
+                BansManager.dispatch(BansManager.lookups, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.displayPlayerBanHistory(sender, player);
+                    }
+                });
+                break;
+            }
+            // The remaining display methods queue themselves on the lookup executor
             case "DisplayPlayerWarnBanHistory":
                 BansManager.displayPlayerWarnBanHistory(in.readUTF(), in.readUTF());
                 break;
@@ -86,21 +146,44 @@ public class BansMessageListener implements Listener {
             case "DisplayLastLogins":
                 BansManager.displayLastLogins(in.readUTF(), in.readUTF(), in.readInt());
                 break;
-            case "ReloadBans":
-                BansManager.reloadBans(in.readUTF());
+            case "ReloadBans": {
+                final String sender = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        BansManager.reloadBans(sender);
+                    }
+                });
                 break;
+            }
             case "SendVersion":
                 LoggingManager.log(in.readUTF());
                 break;
             case "DisplayNameHistory":
                 BansManager.displayNameHistory(in.readUTF(), in.readUTF());
                 break;
-            case "LockDown":
-                LockDownManager.startLockDown(in.readUTF(), in.readLong(), in.readUTF());
-                break;
-            case "EndLockDown":
-                LockDownManager.endLockDown(in.readUTF());
-                break;
+            case "LockDown": {
+                final String sender = in.readUTF();
+                final long expiry = in.readLong();
+                final String message = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        LockDownManager.startLockDown(sender, expiry, message);
+                    }
+                });
+                break;
+            }
+            case "EndLockDown": {
+                final String sender = in.readUTF();
+                BansManager.dispatch(BansManager.executor, task, sender, new Runnable() {
+                    @Override
+                    public void run() {
+                        LockDownManager.endLockDown(sender);
+                    }
+                });
+                break;
+            }
             case "LockDownStatus":
                 LockDownManager.checkExpiry(in.readUTF());
             default:
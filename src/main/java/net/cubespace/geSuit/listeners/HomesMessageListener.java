@@ -1,5 +1,8 @@
 package net.cubespace.geSuit.listeners;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 import net.cubespace.geSuit.Utilities;
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.managers.DatabaseManager;
@@ -52,22 +55,37 @@ public class HomesMessageListener implements Listener {
         } else if ( task.equals( "SendOtherPlayerHome" ) ) {
             HomesManager.sendPlayerToOtherHome( PlayerManager.getPlayer(in.readUTF(), true), in.readUTF(), in.readUTF() );
         } else if ( task.equals( "SetPlayersHome" ) ) {
-            String player = in.readUTF();
+            final String player = in.readUTF();
+            final String server = ((Server) event.getSender()).getInfo().getName();
+            final int serverLimit = in.readInt();
+            final int globalLimit = in.readInt();
+            final String home = in.readUTF();
+            final Location location = new Location(server, in.readUTF(), in.readDouble(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat());
+
             GSPlayer gsPlayer = PlayerManager.getPlayer(player, true);
+            if (gsPlayer != null) {
+                HomesManager.createNewHome(gsPlayer, serverLimit, globalLimit, home, location);
+            } else {
+                // Offline players are loaded, or created, without holding up the network thread
+                Futures.addCallback(DatabaseManager.async.players.loadPlayer(player), new FutureCallback<GSPlayer>() {
+                    @Override
+                    public void onSuccess(GSPlayer gsPlayer) {
+                        // Already on a database thread
+                        if (gsPlayer == null) {
+                            DatabaseManager.players.insertPlayer(new GSPlayer(player, Utilities.getUUID(player), true), "0.0.0.0");
+                            gsPlayer = DatabaseManager.players.loadPlayer(player);
+                        }
 
-            if (gsPlayer == null) {
-                gsPlayer = DatabaseManager.players.loadPlayer(player);
+                        gsPlayer.setServer(server);
+                        HomesManager.createNewHome(gsPlayer, serverLimit, globalLimit, home, location);
+                    }
 
-                if (gsPlayer == null) {
-                    DatabaseManager.players.insertPlayer(new GSPlayer(player, Utilities.getUUID(player), true), "0.0.0.0");
-                    gsPlayer = DatabaseManager.players.loadPlayer(player);
-                    gsPlayer.setServer(((Server) event.getSender()).getInfo().getName());
-                } else {
-                    gsPlayer.setServer(((Server) event.getSender()).getInfo().getName());
-                }
+                    @Override
+                    public void onFailure(Throwable t) {
+                        geSuit.instance.getLogger().warning("Could not load " + player + " to set their home: " + t);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
             }
-
-            HomesManager.createNewHome(gsPlayer, in.readInt(), in.readInt(), in.readUTF(), new Location(((Server) event.getSender()).getInfo().getName(), in.readUTF(), in.readDouble(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat()));
         } else if ( task.equals( "GetHomesList" ) ) {
             HomesManager.listPlayersHomes( PlayerManager.getPlayer(in.readUTF(), true), in.readInt() );
         } else if ( task.equals( "GetOtherHomesList" ) ) {
@@ -1,7 +1,9 @@
 package net.cubespace.geSuit.listeners;
 
 import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.database.AltGraph;
 import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.AdmissionManager;
 import net.cubespace.geSuit.managers.ConfigManager;
 import net.cubespace.geSuit.managers.DatabaseManager;
 import net.cubespace.geSuit.managers.GeoIPManager;
@@ -20,13 +22,24 @@ import net.md_5.bungee.event.EventHandler;
 import net.md_5.bungee.event.EventPriority;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 public class PlayerListener implements Listener {
 
     @EventHandler(priority = EventPriority.LOW)
     public void playerLogin(LoginEvent event) {
+        // Floods are refused here, before the login takes a thread or touches the database
+        String refused = AdmissionManager.admit(event.getConnection());
+        if (refused != null) {
+            event.setCancelled(true);
+            event.setCancelReason(refused);
+            return;
+        }
+
         event.registerIntent(geSuit.instance);
         PlayerManager.initPlayer(event.getConnection(), event);
     }
@@ -64,12 +77,12 @@ public class PlayerListener implements Listener {
     		}
 
     		// Check for alt accounts and notify staff (used later)
-    		String[] alt = null;
+    		List<AltGraph.Alt> alts = null;
     		if (ConfigManager.bans.ShowAltAccounts) {
-    			alt = DatabaseManager.players.getAltPlayer(p.getUuid(), p.getIp(), p.isFirstJoin());
+    			alts = PlayerManager.findAlts(p);
     		}
     		
-            DatabaseManager.players.updatePlayer(p);
+            DatabaseManager.writeBehind.queuePlayer(p);
     		
     		// Launch the MOTD message scheduler
     		if (ConfigManager.main.MOTD_Enabled && (p.firstConnect() || newspawn)) {
@@ -89,30 +102,29 @@ public class PlayerListener implements Listener {
 
     		p.connected();
 
-    		final String[] fAlt = alt;
+    		final List<AltGraph.Alt> fAlts = alts;
         	geSuit.proxy.getScheduler().schedule(geSuit.instance, new Runnable() {
         		@Override
     			public void run() {
         			// Show alt account logins for this player (if enabled)
-        			if ((ConfigManager.bans.ShowAltAccounts) && (fAlt != null)) {
-        				boolean bannedAlt = false;
+        			if ((ConfigManager.bans.ShowAltAccounts) && (fAlts != null) && (!fAlts.isEmpty())) {
+        				List<AltGraph.Alt> bannedAlts = new ArrayList<>();
         				if (ConfigManager.bans.ShowBannedAltAccounts) {
-        					if (DatabaseManager.bans.isPlayerBanned(fAlt[0], fAlt[1], null))	// Check if alt is banned (by name or UUID)
-        						bannedAlt = true;
+        					bannedAlts = PlayerManager.getBannedAlts(fAlts);	// Check if any alt is banned (by name or UUID)
         				}
 
-        				if (bannedAlt) {
+        				if (!bannedAlts.isEmpty()) {
         					// Alt player is banned
         					String msg = ConfigManager.messages.PLAYER_BANNED_ALT_JOIN.
 	    	    					replace("{player}", p.getName()).
-	    	    					replace("{alt}", fAlt[0]).
+	    	    					replace("{alt}", PlayerManager.listAlts(bannedAlts)).
 	    	    					replace("{ip}", p.getIp());
         					Utilities.doBungeeChatMirror("StaffNotice", msg);
         				} else {
         					// Alt player is NOT banned
 	        				String msg = ConfigManager.messages.PLAYER_ALT_JOIN.
 	    	    					replace("{player}", p.getName()).
-	    	    					replace("{alt}", fAlt[0]).
+	    	    					replace("{alt}", PlayerManager.listAlts(fAlts)).
 	    	    					replace("{ip}", p.getIp());
 	    	    			Utilities.doBungeeChatMirror("StaffNotice", msg);
         				}
@@ -133,6 +145,12 @@ public class PlayerListener implements Listener {
     				PlayerManager.updateTracking(p);
     			}
         	}, 100, TimeUnit.MILLISECONDS); 
+    	} else {
+    		// Switching servers, pick up a display name changed by another plugin since the player joined
+    		GSPlayer p = PlayerManager.getPlayer(e.getPlayer().getName());
+    		if (p != null) {
+    			PlayerManager.registry.updateDisplayName(p, e.getPlayer().getDisplayName());
+    		}
     	}
     }
 
@@ -140,54 +158,46 @@ public class PlayerListener implements Listener {
     public void playerLogout(final PlayerDisconnectEvent e) {
         int dcTime = ConfigManager.main.PlayerDisconnectDelay;
         
-        final GSPlayer p = PlayerManager.cachedPlayers.remove(e.getPlayer().getUniqueId());
+        final UUID id = e.getPlayer().getUniqueId();
+        final GSPlayer p = PlayerManager.registry.logout(id);
+        if (p == null) {
+            // Their login was never completed, so there is nothing to save or unload
+            PlayerManager.registry.clearKicked(id);
+            return;
+        }
+
+        // Always update the player record when they disconnect, queued straight away so shutdown can not lose it
+        DatabaseManager.writeBehind.queuePlayer(p);
+
+        // Update time tracking (if enabled)
+        if (ConfigManager.bans.TrackOnTime) {
+            DatabaseManager.writeBehind.queueOnTime(p, new Date().getTime());
+        }
+
         if (dcTime > 0) {
             geSuit.proxy.getScheduler().schedule(geSuit.instance, new Runnable() {
                 @Override
                 public void run() {
-                    if (!PlayerManager.kickedPlayers.contains(e.getPlayer())) {
+                    if (!PlayerManager.registry.clearKicked(id)) {
                         if (ConfigManager.main.BroadcastProxyConnectionMessages) {
                             PlayerManager.sendBroadcast(ConfigManager.messages.PLAYER_DISCONNECT_PROXY.replace("{player}", p.getName()));
                         }
-                    } else {
-                        PlayerManager.kickedPlayers.remove(e.getPlayer());
                     }
 
-                    PlayerManager.unloadPlayer(e.getPlayer().getName());
-                    DatabaseManager.players.updatePlayer(p);
-
-                    // Update time tracking (if enabled)
-                	if (ConfigManager.bans.TrackOnTime) {
-                		DatabaseManager.ontime.updatePlayerOnTime(p.getName(), p.getUuid(), p.getLoginTime(), new Date().getTime());
-                	}
+                    PlayerManager.unloadPlayer(id, p);
                 }
 
             }, dcTime, TimeUnit.SECONDS);
         } else {
-            if (!PlayerManager.kickedPlayers.contains(e.getPlayer())) {
+            if (!PlayerManager.registry.clearKicked(id)) {
                 if (ConfigManager.main.BroadcastProxyConnectionMessages) {
                     // Only show disconnect message if player was already successfully connected
                     if (PlayerManager.getPlayer(e.getPlayer().getName()) != null) {
                         PlayerManager.sendBroadcast(ConfigManager.messages.PLAYER_DISCONNECT_PROXY.replace("{player}", p.getName()));
                     }
                 }
-            } else {
-                PlayerManager.kickedPlayers.remove(e.getPlayer());
             }
-            PlayerManager.unloadPlayer(e.getPlayer().getName());
-
-            geSuit.proxy.getScheduler().schedule(geSuit.instance, new Runnable() {
-                @Override
-                public void run() {
-                	// Always update the player record when they disconnect
-                	DatabaseManager.players.updatePlayer(p);
-
-                	// Update time tracking (if enabled)
-                	if (ConfigManager.bans.TrackOnTime) {
-                		DatabaseManager.ontime.updatePlayerOnTime(p.getName(), p.getUuid(), p.getLoginTime(), new Date().getTime());
-                	}
-                }
-            }, 1, TimeUnit.MILLISECONDS);
+            PlayerManager.unloadPlayer(id, p);
         }
     }
 }
@@ -56,7 +56,7 @@ public class APIManager {
     }
     
     public static Map<String, UUID> resolveNames(List<String> names) {
-        return DatabaseManager.players.resolvePlayerNames(names);
+        return DatabaseManager.nameCache.resolveNames(names, DatabaseManager.players);
     }
     
     public static void doResolveIDs(final ServerInfo server, final int id, String strList) {
@@ -100,7 +100,7 @@ public class APIManager {
     }
     
     public static Map<UUID, String> resolveIds(List<UUID> ids) {
-        return DatabaseManager.players.resolveUUIDs(ids);
+        return DatabaseManager.nameCache.resolveIds(ids, DatabaseManager.players);
     }
     
     public static void doNameHistory(final ServerInfo server, final int id, String raw) {
@@ -0,0 +1,160 @@
+package net.cubespace.geSuit.managers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.configs.SubConfig.Admission;
+import net.cubespace.geSuit.database.ConnectionPool;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.connection.PendingConnection;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refuses logins during a join flood before they take a thread or touch the database. Logins of players who are not
+ * known from the login snapshot take a token from the bucket of their IP, of their subnet and of the whole proxy, and
+ * are refused as soon as one of them is empty. The tokens already taken for a refused login are given back, so it only
+ * counts against the limit which refused it. The buckets refill slower while the database is saturated. A lockdown
+ * refuses unknown players here as well, once there is a snapshot to tell them apart.
+ */
+public class AdmissionManager {
+    private static final int MAX_BUCKETS = 100000;
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private static class TokenBucket {
+        private double tokens;
+        private long updated;
+
+        TokenBucket(int burst, long now) {
+            tokens = burst;
+            updated = now;
+        }
+
+        synchronized boolean take(int burst, double perNano, long now) {
+            tokens = Math.min(burst, tokens + (now - updated) * perNano);
+            updated = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized void refund(int burst) {
+            tokens = Math.min(burst, tokens + 1);
+        }
+    }
+
+    // Buckets which have not been used for an hour are full again and can be forgotten
+    private static final Cache<String, TokenBucket> buckets = CacheBuilder.newBuilder().maximumSize(MAX_BUCKETS).expireAfterAccess(1, TimeUnit.HOURS).build();
+    private static volatile TokenBucket global = new TokenBucket(ConfigManager.lockdown.Admission.GlobalBurst, System.nanoTime());
+    private static final AtomicLong refused = new AtomicLong();
+    private static volatile long lastReport = System.nanoTime();
+
+    /**
+     * @return The reason the login is refused with, null if it may go ahead
+     */
+    public static String admit(PendingConnection connection) {
+        UUID id = connection.getUniqueId();
+        boolean known = PlayerManager.registry.getCached(id) != null || DatabaseManager.loginSnapshot.isKnown(id);
+        if (known) {
+            return null;
+        }
+
+        if (DatabaseManager.loginSnapshot.hasPlayers() && !LockDownManager.checkExpiry()) {
+            return refuse(connection, "lockdown", ConfigManager.messages.LOCKDOWN_MESSAGE.replace("{message}", LockDownManager.getOptionalMessage()));
+        }
+
+        Admission config = ConfigManager.lockdown.Admission;
+        if (!config.Enabled) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        int slowdown = isSaturated() ? Math.max(1, config.SaturatedSlowdown) : 1;
+        InetAddress address = connection.getAddress().getAddress();
+
+        TokenBucket ip = getBucket("ip:" + address.getHostAddress(), config.PerIPBurst, now);
+        if (!ip.take(config.PerIPBurst, perNano(config.PerIPPerMinute, slowdown), now)) {
+            return refuse(connection, "ip", ConfigManager.messages.LOGIN_THROTTLED);
+        }
+        TokenBucket subnet = getBucket("subnet:" + getSubnet(address), config.PerSubnetBurst, now);
+        if (!subnet.take(config.PerSubnetBurst, perNano(config.PerSubnetPerMinute, slowdown), now)) {
+            ip.refund(config.PerIPBurst);
+            return refuse(connection, "subnet", ConfigManager.messages.LOGIN_THROTTLED);
+        }
+        // Without a snapshot every player counts as unknown, a proxy which was just restarted would lock them all out
+        if (DatabaseManager.loginSnapshot.hasPlayers() && !global.take(config.GlobalBurst, perNano(config.GlobalPerMinute, slowdown), now)) {
+            ip.refund(config.PerIPBurst);
+            subnet.refund(config.PerSubnetBurst);
+            return refuse(connection, "global", ConfigManager.messages.LOGIN_THROTTLED);
+        }
+
+        MetricsManager.increment("admission.admitted");
+        return null;
+    }
+
+    /**
+     * @return The /24 of an IPv4 address or the /48 of an IPv6 address
+     */
+    private static String getSubnet(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        StringBuilder subnet = new StringBuilder();
+        if (address instanceof Inet4Address) {
+            subnet.append(bytes[0] & 0xff).append('.').append(bytes[1] & 0xff).append('.').append(bytes[2] & 0xff).append(".0/24");
+        } else {
+            for (int i = 0; i < 6; i += 2) {
+                subnet.append(Integer.toHexString(((bytes[i] & 0xff) << 8) | (bytes[i + 1] & 0xff))).append(':');
+            }
+            subnet.append(":/48");
+        }
+        return subnet.toString();
+    }
+
+    /**
+     * Starts the proxy wide bucket again with the reloaded burst, the other buckets take the new limits as they are used
+     */
+    public static void reload() {
+        global = new TokenBucket(ConfigManager.lockdown.Admission.GlobalBurst, System.nanoTime());
+    }
+
+    private static TokenBucket getBucket(String key, int burst, long now) {
+        TokenBucket bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            bucket = new TokenBucket(burst, now);
+            TokenBucket raced = buckets.asMap().putIfAbsent(key, bucket);
+            if (raced != null) {
+                bucket = raced;
+            }
+        }
+        return bucket;
+    }
+
+    private static double perNano(int perMinute, int slowdown) {
+        return (double) perMinute / slowdown / TimeUnit.MINUTES.toNanos(1);
+    }
+
+    // The database is short of connections or not reachable at all
+    private static boolean isSaturated() {
+        ConnectionPool pool = DatabaseManager.connectionPool;
+        return pool != null && (pool.getWaitingThreads() > 0 || !pool.isAvailable());
+    }
+
+    private static String refuse(PendingConnection connection, String policy, String message) {
+        MetricsManager.increment("admission.refused." + policy);
+        refused.incrementAndGet();
+
+        // A flood is summed up every few seconds instead of logging every connection
+        long now = System.nanoTime();
+        long since = now - lastReport;
+        if (since >= REPORT_INTERVAL) {
+            lastReport = now;
+            LoggingManager.log(ChatColor.RED + "Refused " + refused.getAndSet(0) + " logins in the last " + TimeUnit.NANOSECONDS.toSeconds(since) + "s, the last one was " + connection.getName() + " (" + connection.getAddress().toString() + ") by the " + policy + " limit");
+        }
+        return Utilities.colorize(message);
+    }
+}
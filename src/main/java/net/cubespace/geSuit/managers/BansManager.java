@@ -10,6 +10,7 @@ import net.cubespace.geSuit.events.WarnPlayerEvent;
 import net.cubespace.geSuit.events.WarnPlayerEvent.ActionType;
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.objects.*;
+import net.cubespace.geSuit.tasks.TimedExecutor;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.ProxyServer;
@@ -21,12 +22,33 @@ import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public class BansManager {
 
     private static List<Kick> kicks = new ArrayList<>();
 
+    /**
+     * Runs ban commands off the proxy's network threads
+     */
+    public static final TimedExecutor executor = new TimedExecutor("Bans", "Bans #%d", ConfigManager.bans.DispatchThreads, ConfigManager.bans.DispatchQueueSize, false);
+    /**
+     * Runs history and info lookups, so a burst of them does not hold up bans
+     */
+    public static final TimedExecutor lookups = new TimedExecutor("BanLookups", "Ban Lookups #%d", ConfigManager.bans.LookupThreads, ConfigManager.bans.LookupQueueSize, false);
+
+    /**
+     * Queues the task on one of the pools, the sender is asked to try again when its queue is full
+     */
+    public static void dispatch(TimedExecutor pool, String task, String sentBy, Runnable runnable) {
+        try {
+            pool.execute(task, runnable);
+        } catch (RejectedExecutionException e) {
+            PlayerManager.sendMessageToTarget(sentBy, ConfigManager.messages.BANS_BUSY);
+        }
+    }
+
     public static void banPlayer(String bannedBy, String player, String reason) {
     	banPlayer(bannedBy, player, reason, false);
     }
@@ -54,7 +76,10 @@ public class BansManager {
             reason = ConfigManager.messages.DEFAULT_BAN_REASON;
         }
 
-        DatabaseManager.bans.banPlayer(t.name, t.uuid, null, bannedBy, reason, "ban");
+        if (DatabaseManager.bans.banPlayer(t.name, t.uuid, null, bannedBy, reason, "ban") == -1) {
+            PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.BAN_NOT_STORED.replace("{player}", t.dispname));
+            return;
+        }
         
         callEvent(new BanPlayerEvent(new Ban(-1, t.name, t.uuid, null, bannedBy, reason, "ban", 1, null, null), auto));
 
@@ -86,6 +111,10 @@ public class BansManager {
         }
 
         Ban b = DatabaseManager.bans.getBanInfo(t.name, t.uuid, player);
+        if (b == null) {
+            PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.PLAYER_NOT_BANNED);
+            return;
+        }
 
         DatabaseManager.bans.unbanPlayer(b.getId());
         callEvent(new UnbanPlayerEvent(b, sentBy));
@@ -113,7 +142,7 @@ public class BansManager {
             ip = target;
         } else {
         	// Target is a player name or uuid.. grab the player details and record it all
-            GSPlayer gs = DatabaseManager.players.loadPlayer(target);
+            GSPlayer gs = PlayerManager.loadOfflineProfile(target);
             if (gs != null) {
 	            ip = gs.getIp();
 	            uuid = gs.getUuid();
@@ -127,7 +156,10 @@ public class BansManager {
         }
 
         if (!DatabaseManager.bans.isPlayerBanned(ip)) {
-            DatabaseManager.bans.banPlayer(player, uuid, ip, bannedBy, reason, "ipban");
+            if (DatabaseManager.bans.banPlayer(player, uuid, ip, bannedBy, reason, "ipban") == -1) {
+                PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.BAN_NOT_STORED.replace("{player}", player != null ? player : ip));
+                return;
+            }
             callEvent(new BanPlayerEvent(new Ban(-1, player, uuid, ip, bannedBy, reason, "ipban", 1, null, null), false));
         }
 
@@ -268,13 +300,14 @@ public class BansManager {
     }
 
     public static void reloadBans(String sender) {
-        PlayerManager.sendMessageToTarget(sender, "Bans Reloaded");
-
         try {
             ConfigManager.bans.reload();
         } catch (InvalidConfigurationException e) {
             e.printStackTrace();
         }
+
+        DatabaseManager.banIndex.reload();
+        PlayerManager.sendMessageToTarget(sender, "Bans Reloaded");
     }
 
     public static void tempBanPlayer(String bannedBy, String player, int seconds, String message) {
@@ -315,7 +348,10 @@ public class BansManager {
         String timeDiff = Utilities.buildTimeDiffString(seconds * 1000L, 2);
         String shortTimeDiff = Utilities.buildShortTimeDiffString(seconds * 1000L, 10);
 
-        DatabaseManager.bans.tempBanPlayer(t.name, t.uuid, bannedBy, message, sdf.format(sqlToday));
+        if (DatabaseManager.bans.tempBanPlayer(t.name, t.uuid, bannedBy, message, sdf.format(sqlToday)) == -1) {
+            PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.BAN_NOT_STORED.replace("{player}", t.dispname));
+            return;
+        }
         callEvent(new BanPlayerEvent(new Ban(-1, t.name, t.uuid, null, bannedBy, message, "tempban", 1, null, new Timestamp(System.currentTimeMillis() + (seconds * 1000L))), auto));
 
         if ((t.gsp != null) && (t.gsp.getProxiedPlayer() != null)) {
@@ -414,7 +450,7 @@ public class BansManager {
     }
 
     public static void displayPlayerWarnHistory(final String sentBy, final String player, final boolean showStaffNames) {
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayPlayerWarnHistory", sentBy, new Runnable() {
             @Override
             public void run() {
                 GSPlayer s = PlayerManager.getPlayer(sentBy);
@@ -479,7 +515,7 @@ public class BansManager {
     }
 
     public static void displayPlayerWarnBanHistory(final String sentBy, final String player) {
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayPlayerWarnBanHistory", sentBy, new Runnable() {
             @Override
             public void run() {
                 GSPlayer s = PlayerManager.getPlayer(sentBy);
@@ -600,7 +636,7 @@ public class BansManager {
     }
 
     public static void displayPlayerKickHistory(final String sentBy, final String player, final boolean showStaffNames) {
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayPlayerKickHistory", sentBy, new Runnable() {
             @Override
             public void run() {
                 GSPlayer s = PlayerManager.getPlayer(sentBy);
@@ -665,7 +701,7 @@ public class BansManager {
     }
 
     public static void displayWhereHistory(final String sentBy, final String options, final String search) {
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayWhereHistory", sentBy, new Runnable() {
             @Override
             public void run() {
                 GSPlayer s = PlayerManager.getPlayer(sentBy);
@@ -788,7 +824,7 @@ public class BansManager {
         final GSPlayer s = PlayerManager.getPlayer(sentBy);
         final CommandSender sender = (s == null ? ProxyServer.getInstance().getConsole() : s.getProxiedPlayer());
 
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayPlayerOnTime", sentBy, new Runnable() {
             @Override
             public void run() {
             	BanTarget bt = getBanTarget(player);
@@ -834,7 +870,7 @@ public class BansManager {
         final GSPlayer s = PlayerManager.getPlayer(sentBy);
         final CommandSender sender = (s == null ? ProxyServer.getInstance().getConsole() : s.getProxiedPlayer());
 
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayOnTimeTop", sentBy, new Runnable() {
             @Override
             public void run() {
                 int pagenum;
@@ -845,6 +881,10 @@ public class BansManager {
                     }
                 // Get time records and set online time (if player is online)
                 Map<String, Long> results = DatabaseManager.ontime.getOnTimeTop(pagenum);
+                if (results == null) {
+                    PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.DATABASE_UNAVAILABLE);
+                    return;
+                }
                 PlayerManager.sendMessageToTarget(sender, ChatColor.DARK_AQUA + "-------- " + ChatColor.YELLOW + "OnTime Top Statistics" + ChatColor.DARK_AQUA + " (page " + page + ") --------");
                 int offset = (pagenum < 1) ? 0 : (pagenum - 1) * 10;	// Offset = Page number x 10 (but starts at 0 and no less than 0
                 for (String name : results.keySet()) {
@@ -862,7 +902,7 @@ public class BansManager {
         final GSPlayer s = PlayerManager.getPlayer(sentBy);
         final CommandSender sender = (s == null ? ProxyServer.getInstance().getConsole() : s.getProxiedPlayer());
 
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayLastLogins", sentBy, new Runnable() {
             @Override
             public void run() {
                 BanTarget bt = getBanTarget(player);
@@ -884,7 +924,7 @@ public class BansManager {
 
     
     public static void displayNameHistory(final String sentBy, final String nameOrId) {
-        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+        dispatch(lookups, "DisplayNameHistory", sentBy, new Runnable() {
             @Override
             public void run() {
                 GSPlayer s = PlayerManager.getPlayer(sentBy);
@@ -936,7 +976,7 @@ public class BansManager {
         });
     }
 
-    private static void checkKickTempBan(int kickLimit, BanTarget t, String kickedBy, String reason) {
+    private static synchronized void checkKickTempBan(int kickLimit, BanTarget t, String kickedBy, String reason) {
 
 
         long kickBanTime = TimeUnit.MILLISECONDS.toSeconds(ConfigManager.bans.TempBanTime);
@@ -981,7 +1021,7 @@ public class BansManager {
 
     }
 
-    public static void clearKicks() {
+    public static synchronized void clearKicks() {
         long kickTimeOut = ConfigManager.bans.KicksTimeOut;
         Iterator<Kick> iter = kicks.iterator();
         while (iter.hasNext()) { //remove kicks that would have expired first
@@ -994,8 +1034,8 @@ public class BansManager {
     }
 
 
-    public static List<Kick> getKicks() {
-        return kicks;
+    public static synchronized List<Kick> getKicks() {
+        return new ArrayList<>(kicks);
     }
 
 
@@ -1014,7 +1054,7 @@ public class BansManager {
         
         // If they are not online, try to find them as an offline player
         if (t == null) {
-        	t = DatabaseManager.players.loadPlayer(player);
+        	t = PlayerManager.loadOfflineProfile(player);
         }
 
         // Set up the target + display name we should use
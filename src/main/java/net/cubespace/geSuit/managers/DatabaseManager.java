@@ -1,38 +1,100 @@
 package net.cubespace.geSuit.managers;
 
+import net.cubespace.geSuit.database.AltGraph;
+import net.cubespace.geSuit.database.AsyncDatabase;
+import net.cubespace.geSuit.database.BanIndex;
+import net.cubespace.geSuit.database.BanStore;
 import net.cubespace.geSuit.database.Bans;
 import net.cubespace.geSuit.database.ConnectionPool;
+import net.cubespace.geSuit.database.HomeStore;
 import net.cubespace.geSuit.database.Homes;
+import net.cubespace.geSuit.database.LoginLoader;
+import net.cubespace.geSuit.database.LoginSnapshot;
+import net.cubespace.geSuit.database.MigrationRunner;
+import net.cubespace.geSuit.database.Migrations;
+import net.cubespace.geSuit.database.NameCache;
 import net.cubespace.geSuit.database.OnTime;
+import net.cubespace.geSuit.database.OnTimeStore;
+import net.cubespace.geSuit.database.PlayerStore;
 import net.cubespace.geSuit.database.Players;
+import net.cubespace.geSuit.database.PortalStore;
 import net.cubespace.geSuit.database.Portals;
+import net.cubespace.geSuit.database.ProfileCache;
+import net.cubespace.geSuit.database.Retention;
+import net.cubespace.geSuit.database.SpawnStore;
 import net.cubespace.geSuit.database.Spawns;
 import net.cubespace.geSuit.database.Tracking;
+import net.cubespace.geSuit.database.TrackingStore;
+import net.cubespace.geSuit.database.WarpStore;
 import net.cubespace.geSuit.database.Warps;
+import net.cubespace.geSuit.database.WriteBehind;
+import net.cubespace.geSuit.database.embedded.EmbeddedStorage;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.tasks.DatabaseExecutor;
+
+import java.io.File;
 
 /**
  * @author geNAZt (fabian.fassbender42@googlemail.com)
  */
 public class DatabaseManager {
+    /**
+     * Null when the embedded storage is used
+     */
     public static ConnectionPool connectionPool;
-    public static Homes homes;
-    public static Bans bans;
-    public static Players players;
-    public static Portals portals;
-    public static Spawns spawns;
-    public static Warps warps;
-    public static Tracking tracking;
-    public static OnTime ontime;
-
-    static {
-        players = new Players();
-        homes = new Homes();
-        bans = new Bans();
-        portals = new Portals();
-        spawns = new Spawns();
-        warps = new Warps();
-        tracking = new Tracking();
-        ontime = new OnTime();
+    /**
+     * Null when MySQL is used
+     */
+    public static EmbeddedStorage embeddedStorage;
+    public static HomeStore homes;
+    public static BanStore bans;
+    public static PlayerStore players;
+    public static PortalStore portals;
+    public static SpawnStore spawns;
+    public static WarpStore warps;
+    public static TrackingStore tracking;
+    public static OnTimeStore ontime;
+    public static BanIndex banIndex = new BanIndex();
+    public static AltGraph altGraph = new AltGraph();
+    public static LoginLoader loginLoader = new LoginLoader();
+    public static WriteBehind writeBehind = new WriteBehind();
+    public static LoginSnapshot loginSnapshot = new LoginSnapshot();
+    public static Retention retention = new Retention();
+    public static AsyncDatabase async;
+    public static NameCache nameCache = new NameCache(ConfigManager.main.Database.NameCacheSize);
+    public static ProfileCache profileCache = new ProfileCache(ConfigManager.main.Database.ProfileCacheSize, ConfigManager.main.Database.ProfileCacheTime);
+
+    /**
+     * Opens the storage, the rest of the startup is run by the {@link StartupManager}
+     */
+    public static void initialise() {
+        if ("embedded".equalsIgnoreCase(ConfigManager.main.Database.Type)) {
+            initialiseEmbedded();
+        } else {
+            initialiseMySQL();
+        }
+
+        async = new AsyncDatabase(new DatabaseExecutor(ConfigManager.main.Database.AsyncThreads, ConfigManager.main.Database.AsyncQueueSize));
+    }
+
+    private static void initialiseMySQL() {
+        Players players = new Players();
+        Homes homes = new Homes();
+        Bans bans = new Bans();
+        Portals portals = new Portals();
+        Spawns spawns = new Spawns();
+        Warps warps = new Warps();
+        Tracking tracking = new Tracking();
+        OnTime ontime = new OnTime();
+
+        DatabaseManager.players = players;
+        DatabaseManager.homes = homes;
+        DatabaseManager.bans = bans;
+        DatabaseManager.portals = portals;
+        DatabaseManager.spawns = spawns;
+        DatabaseManager.warps = warps;
+        DatabaseManager.tracking = tracking;
+        DatabaseManager.ontime = ontime;
 
         connectionPool = new ConnectionPool();
         connectionPool.addRepository(players);
@@ -45,9 +107,49 @@ public class DatabaseManager {
         connectionPool.addRepository(ontime);
         connectionPool.initialiseConnections(ConfigManager.main.Database);
 
-        AnnouncementManager.loadAnnouncements();
-        WarpsManager.loadWarpLocations();
-        PortalManager.loadPortals();
-        SpawnManager.loadSpawns();
+        // Catch up on everything which waited for the database during an outage
+        connectionPool.getBreaker().addRecoveryListener(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind.flush();
+                PlayerManager.loadProvisionalPlayers();
+                if (!banIndex.isLoaded()) {
+                    banIndex.reload();
+                }
+            }
+        });
+
+        // Runs after the legacy table upgrades, which still take care of databases from before the schema history
+        if (!new MigrationRunner(connectionPool).migrate(Migrations.getMigrations(), ConfigManager.main.Database.MigrationDryRun)) {
+            throw new IllegalStateException("The schema migrations failed");
+        }
+        connectionPool.initialiseReplicas(ConfigManager.main.Database.Replicas);
+    }
+
+    private static void initialiseEmbedded() {
+        geSuit.instance.getLogger().info("Using the embedded storage, data is kept in the plugin folder");
+
+        embeddedStorage = new EmbeddedStorage(new File(geSuit.instance.getDataFolder(), "storage"), banIndex);
+        players = embeddedStorage.getPlayers();
+        homes = embeddedStorage.getHomes();
+        bans = embeddedStorage.getBans();
+        portals = embeddedStorage.getPortals();
+        spawns = embeddedStorage.getSpawns();
+        warps = embeddedStorage.getWarps();
+        tracking = embeddedStorage.getTracking();
+        ontime = embeddedStorage.getOnTime();
+        embeddedStorage.start();
+    }
+
+    /**
+     * Closes the connection pool or saves the embedded storage, queued writes have to be drained before
+     */
+    public static void close() {
+        if (connectionPool != null) {
+            connectionPool.closeConnections();
+        }
+        if (embeddedStorage != null) {
+            embeddedStorage.close();
+        }
     }
 }
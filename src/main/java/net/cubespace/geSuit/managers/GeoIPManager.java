@@ -16,7 +16,7 @@ import com.maxmind.geoip.LookupService;
 import com.maxmind.geoip.regionName;
 
 public class GeoIPManager {
-    private static LookupService mLookup;
+    private static volatile LookupService mLookup;
     private static File mDatabaseFile;
     
     public static void initialize() {
@@ -1,5 +1,6 @@
 package net.cubespace.geSuit.managers;
 
+import net.cubespace.geSuit.database.AsyncDatabase;
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.objects.GSPlayer;
 import net.cubespace.geSuit.objects.Home;
@@ -32,14 +33,16 @@ public class HomesManager {
 
             Home homeObject = new Home(player, home, loc);
             player.getHomes().get(player.getServer()).add(homeObject);
-            DatabaseManager.homes.addHome(homeObject);
+            AsyncDatabase.logFailure(DatabaseManager.async.homes.addHome(homeObject), "add home " + home + " of " + player.getName());
+            DatabaseManager.profileCache.invalidate(player.getUuid());
 
             PlayerManager.sendMessageToTarget(player, ConfigManager.messages.HOME_SET.replace("{home}", home));
         } else {
             Home home1 = getHome(player, home);
             if (home1.loc.getServer().getName().equals(loc.getServer().getName())) {
                 home1.setLoc(loc);
-                DatabaseManager.homes.updateHome(home1);
+                AsyncDatabase.logFailure(DatabaseManager.async.homes.updateHome(home1), "update home " + home + " of " + player.getName());
+                DatabaseManager.profileCache.invalidate(player.getUuid());
                 PlayerManager.sendMessageToTarget(player, ConfigManager.messages.HOME_UPDATED.replace("{home}", home));
             } else {
                 PlayerManager.sendMessageToTarget(player, ConfigManager.messages.HOME_EXISTS_OTHER_SERVER.replace("{home}", home));
@@ -111,15 +114,13 @@ public class HomesManager {
     }
 
     public static void listOtherPlayersHomes(GSPlayer sender, String playername) {
-        GSPlayer player = DatabaseManager.players.loadPlayer(playername);
+        GSPlayer player = PlayerManager.loadOfflinePlayer(playername);
 
         if (player == null) {
             PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.PLAYER_DOES_NOT_EXIST.replace("{player}", playername));
             return;
         }
 
-        loadPlayersHomes(player);
-
         if (player.getHomes().isEmpty()) {
             PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.NO_OTHER_HOMES.replace("{player}", player.getName()));
             return;
@@ -164,7 +165,16 @@ public class HomesManager {
     }
 
     public static void loadPlayersHomes(GSPlayer player) {
-        List<Home> homes = DatabaseManager.homes.getHomesForPlayer(player);
+        attachHomes(player, DatabaseManager.homes.getHomesForPlayer(player));
+    }
+
+    /**
+     * Sorts already loaded homes into the players per server home lists
+     */
+    public static void attachHomes(GSPlayer player, List<Home> homes) {
+        if (homes == null) {
+            return;
+        }
 
         for (Home home : homes) {
             if (home.loc.getServer() == null) {
@@ -218,14 +228,12 @@ public class HomesManager {
     }
 
     public static void sendPlayerToOtherHome(GSPlayer sender, String playername, String home) {
-        GSPlayer player = DatabaseManager.players.loadPlayer(playername);
+        GSPlayer player = PlayerManager.loadOfflinePlayer(playername);
 
         if (player == null) {
             PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.PLAYER_DOES_NOT_EXIST);
             return;
         }
-
-        loadPlayersHomes(player);
         Home h = getHome(player, home);
         if (h == null) {
             PlayerManager.sendMessageToTarget(sender, ConfigManager.messages.HOME_DOES_NOT_EXIST.replace("{home}", home));
@@ -253,7 +261,8 @@ public class HomesManager {
             }
         }
 
-        DatabaseManager.homes.deleteHome(h);
+        AsyncDatabase.logFailure(DatabaseManager.async.homes.deleteHome(h), "delete home " + home + " of " + p.getName());
+        DatabaseManager.profileCache.invalidate(p.getUuid());
 
         PlayerManager.sendMessageToTarget(p, ConfigManager.messages.HOME_DELETED.replace("{home}", home));
     }
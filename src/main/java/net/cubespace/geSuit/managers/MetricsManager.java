@@ -0,0 +1,179 @@
+package net.cubespace.geSuit.managers;
+
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.database.ConnectionPool;
+import net.cubespace.geSuit.metrics.Histogram;
+import net.md_5.bungee.api.ProxyServer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MetricsManager {
+    public static final String STATEMENT_PREFIX = "db.statement.";
+
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public static Histogram getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+
+        return histogram;
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long amount) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+
+        counter.addAndGet(amount);
+    }
+
+    public static long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Builds a report of the connection pool state and every database metric
+     *
+     * @param statementLimit Only list this many statements, ordered by total time spent in them
+     */
+    public static List<String> getDatabaseReport(int statementLimit) {
+        List<String> lines = new ArrayList<>();
+
+        ConnectionPool pool = DatabaseManager.connectionPool;
+        if (pool != null) {
+            lines.add("Pool: " + pool.getTotalConnections() + "/" + pool.getMaxConnections() + " open, " + pool.getIdleConnections() + " idle, " + pool.getWaitingThreads() + " waiting");
+            for (ConnectionPool replica : pool.getReplicas()) {
+                lines.add("Replica " + replica.getReplicaName() + ": " + replica.getTotalConnections() + "/" + replica.getMaxConnections() + " open, " + replica.getIdleConnections() + " idle, lag " + replica.getLag() + "s, " + (replica.isHealthy() ? "in use" : "not in use"));
+            }
+        }
+
+        if (DatabaseManager.async != null) {
+            lines.add("Async: " + DatabaseManager.async.getExecutor().getActiveCount() + " running, " + DatabaseManager.async.getExecutor().getQueueSize() + " queued");
+        }
+        lines.add("Profile cache: " + DatabaseManager.profileCache.size() + " profiles, " + Math.round(DatabaseManager.profileCache.getHitRate() * 100) + "% hits");
+        lines.add("Borrow wait: " + getHistogram("db.borrow.wait").summary());
+        lines.add("Hold time: " + getHistogram("db.connection.hold").summary());
+
+        for (Map.Entry<String, AtomicLong> counter : new TreeMap<>(counters).entrySet()) {
+            if (counter.getKey().startsWith("db.") && !counter.getKey().startsWith(STATEMENT_PREFIX)) {
+                lines.add(counter.getKey() + ": " + counter.getValue().get());
+            }
+        }
+
+        List<Map.Entry<String, Histogram>> statements = new ArrayList<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            if (entry.getKey().startsWith(STATEMENT_PREFIX)) {
+                statements.add(entry);
+            }
+        }
+
+        Collections.sort(statements, new Comparator<Map.Entry<String, Histogram>>() {
+            @Override
+            public int compare(Map.Entry<String, Histogram> o1, Map.Entry<String, Histogram> o2) {
+                return Long.compare(o2.getValue().getTotal(), o1.getValue().getTotal());
+            }
+        });
+
+        for (Map.Entry<String, Histogram> statement : statements.subList(0, Math.min(statementLimit, statements.size()))) {
+            String name = statement.getKey().substring(STATEMENT_PREFIX.length());
+            long errors = getCount(statement.getKey() + ".errors");
+            lines.add("  " + name + ": " + statement.getValue().summary() + (errors > 0 ? " errors=" + errors : ""));
+        }
+
+        return lines;
+    }
+
+    /**
+     * @return Every counter and histogram, sorted by name
+     */
+    public static List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<String, AtomicLong> counter : new TreeMap<>(counters).entrySet()) {
+            lines.add(counter.getKey() + " " + counter.getValue().get());
+        }
+
+        for (Map.Entry<String, Histogram> histogram : new TreeMap<>(histograms).entrySet()) {
+            lines.add(histogram.getKey() + " " + histogram.getValue().summary());
+        }
+
+        return lines;
+    }
+
+    /**
+     * Periodically writes all metrics to metrics.txt in the plugin folder
+     */
+    public static void startReporting() {
+        int interval = ConfigManager.main.MetricsInterval;
+        if (interval <= 0) {
+            return;
+        }
+
+        ProxyServer.getInstance().getScheduler().schedule(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                writeReport();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public static void writeReport() {
+        File file = new File(geSuit.instance.getDataFolder(), "metrics.txt");
+        File temp = new File(geSuit.instance.getDataFolder(), "metrics.txt.tmp");
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(temp))) {
+            writer.println("# geSuit metrics " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+
+            ConnectionPool pool = DatabaseManager.connectionPool;
+            if (pool != null) {
+                writer.println("db.pool.open " + pool.getTotalConnections());
+                writer.println("db.pool.idle " + pool.getIdleConnections());
+                writer.println("db.pool.waiting " + pool.getWaitingThreads());
+                writer.println("db.pool.max " + pool.getMaxConnections());
+            }
+
+            for (String line : getReport()) {
+                writer.println(line);
+            }
+        } catch (IOException e) {
+            geSuit.instance.getLogger().warning("Could not write metrics file: " + e.getMessage());
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            file.delete();
+            temp.renameTo(file);
+        }
+    }
+}
@@ -2,11 +2,13 @@ package net.cubespace.geSuit.managers;
 
 import au.com.addstar.bc.BungeeChat;
 import net.cubespace.geSuit.Utilities;
+import net.cubespace.geSuit.database.AltGraph;
+import net.cubespace.geSuit.database.LoginLoader;
 import net.cubespace.geSuit.events.NewPlayerJoinEvent;
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.objects.Ban;
 import net.cubespace.geSuit.objects.GSPlayer;
-import net.cubespace.geSuit.objects.Track;
+import net.cubespace.geSuit.objects.Home;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.ProxyServer;
@@ -16,6 +18,7 @@ import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.event.LoginEvent;
 
 import java.net.InetAddress;
+import java.sql.Timestamp;
 import java.net.UnknownHostException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -26,9 +29,7 @@ import java.util.concurrent.TimeUnit;
 public class PlayerManager {
     private static SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy HH:mm:ss z");
     
-    public static HashMap<UUID, GSPlayer> cachedPlayers = new HashMap<>();
-    public static HashMap<String, GSPlayer> onlinePlayers = new HashMap<>();
-    public static ArrayList<ProxiedPlayer> kickedPlayers = new ArrayList<>();
+    public static final PlayerRegistry registry = new PlayerRegistry();
 
     public static boolean playerExists(ProxiedPlayer player) {
         return getPlayer(player.getName()) != null || playerExists(player.getUniqueId());
@@ -42,8 +43,32 @@ public class PlayerManager {
         ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
             @Override
             public void run() {
+                if (!StartupManager.awaitLogins()) {
+                    event.setCancelled(true);
+                    event.setCancelReason(Utilities.colorize(ConfigManager.messages.PLAYER_LOAD_FAILED));
+                    LoggingManager.log(ChatColor.RED + connection.getName() + "'s connection refused as geSuit has not finished starting" + " (" + connection.getAddress().toString() + ")");
+                    event.completeIntent(geSuit.instance);
+                    return;
+                }
+
+                // Everything the login needs comes from one database round, reconnecting players keep their loaded data
+                // and players with a cached profile only have their row read again
+                GSPlayer cached = getPlayer(connection.getName());
+                GSPlayer profile = cached == null ? DatabaseManager.profileCache.get(connection.getUniqueId()) : null;
+                LoginLoader.Result loaded = DatabaseManager.loginLoader.load(connection.getUniqueId(), connection.getName(), connection.getAddress().getHostString(), cached == null, profile == null);
+                if (loaded.hasFailed()) {
+                    event.setCancelled(true);
+                    event.setCancelReason(Utilities.colorize(ConfigManager.messages.PLAYER_LOAD_FAILED));
+                    LoggingManager.log(ChatColor.RED + connection.getName() + "'s connection refused as their data could not be loaded!" + " (" + connection.getAddress().toString() + ")");
+                    event.completeIntent(geSuit.instance);
+                    return;
+                }
+
+                if (loaded.isDegraded()) {
+                    LoggingManager.log(ChatColor.YELLOW + connection.getName() + " is joining while the database is unreachable, using the login snapshot" + " (" + connection.getAddress().toString() + ")");
+                }
 
-                Boolean playerExists = playerExists(connection.getUniqueId());
+                boolean playerExists = cached != null || profile != null || loaded.isKnown();
                 //lockdown check
                 if (!playerExists) {//check player is new first
                     if (!LockDownManager.checkExpiry()) {//returns true if expired and false if persisting
@@ -58,65 +83,70 @@ public class PlayerManager {
                     }
                 }
                 // Do ban check
-                if (DatabaseManager.bans.isPlayerBanned(connection.getName(), Utilities.getStringFromUUID(connection.getUniqueId()), connection.getAddress().getHostString())) {
-                    Ban b = DatabaseManager.bans.getBanInfo(connection.getName(), Utilities.getStringFromUUID(connection.getUniqueId()), connection.getAddress().getHostString());
+                Ban b = loaded.getBan();
 
+                if (b != null) {
                     boolean banned = true;
-                    if (b != null) {
-                        if (b.getType().equals("tempban")) {
-                            if (BansManager.checkTempBan(b)) {
-                                event.setCancelled(true);
-    
-                                Date then = b.getBannedUntil();
-                                Date now = new Date();
-                                long timeDiff = then.getTime() - now.getTime();
-                                
-                                event.setCancelReason(Utilities.colorize(ConfigManager.messages.TEMP_BAN_MESSAGE.replace("{sender}", b.getBannedBy()).replace("{time}", sdf.format(then)).replace("{left}", Utilities.buildTimeDiffString(timeDiff, 2)).replace("{shortleft}", Utilities.buildShortTimeDiffString(timeDiff, 10)).replace("{message}", b.getReason())));
-                                LoggingManager.log(ChatColor.RED + connection.getName() + "'s connection refused due to being temp banned!" + " (" + connection.getAddress().toString() + ")");
-                            } else {
-                                banned = false;
-                            }
-                        } else {
+                    if (b.getType().equals("tempban")) {
+                        if (BansManager.checkTempBan(b)) {
                             event.setCancelled(true);
-    
-                            event.setCancelReason(Utilities.colorize(ConfigManager.messages.BAN_PLAYER_MESSAGE.replace("{sender}", b.getBannedBy()).replace("{message}", b.getReason())));
-                            LoggingManager.log(ChatColor.RED + connection.getName() + "'s connection refused due to being banned!" + " (" + connection.getAddress().toString() + ")");
-                        }
-                        
-                        if (banned) {
-                            // Dont load this player as they wont be joining
-                            event.completeIntent(geSuit.instance);
-                            return;
+
+                            Date then = b.getBannedUntil();
+                            Date now = new Date();
+                            long timeDiff = then.getTime() - now.getTime();
+                            
+                            event.setCancelReason(Utilities.colorize(ConfigManager.messages.TEMP_BAN_MESSAGE.replace("{sender}", b.getBannedBy()).replace("{time}", sdf.format(then)).replace("{left}", Utilities.buildTimeDiffString(timeDiff, 2)).replace("{shortleft}", Utilities.buildShortTimeDiffString(timeDiff, 10)).replace("{message}", b.getReason())));
+                            LoggingManager.log(ChatColor.RED + connection.getName() + "'s connection refused due to being temp banned!" + " (" + connection.getAddress().toString() + ")");
+                        } else {
+                            banned = false;
                         }
+                    } else {
+                        event.setCancelled(true);
+
+                        event.setCancelReason(Utilities.colorize(ConfigManager.messages.BAN_PLAYER_MESSAGE.replace("{sender}", b.getBannedBy()).replace("{message}", b.getReason())));
+                        LoggingManager.log(ChatColor.RED + connection.getName() + "'s connection refused due to being banned!" + " (" + connection.getAddress().toString() + ")");
+                    }
+                    
+                    if (banned) {
+                        // Dont load this player as they wont be joining
+                        event.completeIntent(geSuit.instance);
+                        return;
                     }
                 }
                 // Load the GSPlayer object for use
                 GSPlayer gsPlayer;
-                if (playerExists) {
-                    gsPlayer = getPlayer(connection.getName());
-                    if (gsPlayer == null) {
-                        gsPlayer = DatabaseManager.players.loadPlayer(Utilities.getStringFromUUID(connection.getUniqueId()));
-                        gsPlayer.setName(connection.getName());
-                        HomesManager.loadPlayersHomes(gsPlayer);
-                        LoggingManager.log(ConfigManager.messages.PLAYER_LOAD.replace("{player}", gsPlayer.getName()).replace("{uuid}", connection.getUniqueId().toString()));
-                    } else {
-                        LoggingManager.log(ConfigManager.messages.PLAYER_LOAD_CACHED.replace("{player}", gsPlayer.getName()).replace("{uuid}", connection.getUniqueId().toString()));
+                if (cached != null) {
+                    gsPlayer = cached;
+                    LoggingManager.log(ConfigManager.messages.PLAYER_LOAD_CACHED.replace("{player}", gsPlayer.getName()).replace("{uuid}", connection.getUniqueId().toString()));
+                } else if (profile != null) {
+                    gsPlayer = profile;
+                    gsPlayer.setName(connection.getName());
+                    if (!loaded.isDegraded() && loaded.getPlayer() != null) {
+                        refreshProfile(gsPlayer, loaded.getPlayer());
                     }
+                    LoggingManager.log(ConfigManager.messages.PLAYER_LOAD_CACHED.replace("{player}", gsPlayer.getName()).replace("{uuid}", connection.getUniqueId().toString()));
+                } else if (loaded.getPlayer() != null) {
+                    gsPlayer = loaded.getPlayer();
+                    LoggingManager.log(ConfigManager.messages.PLAYER_LOAD.replace("{player}", gsPlayer.getName()).replace("{uuid}", connection.getUniqueId().toString()));
                 } else {
                     gsPlayer = new GSPlayer(connection.getName(), Utilities.getStringFromUUID(connection.getUniqueId()), true);
                     gsPlayer.setFirstJoin(true);
+                    gsPlayer.setProvisional(loaded.isDegraded());
                 }
                 
                 gsPlayer.setIp(connection.getAddress().getHostString());
                 
-                Track history = DatabaseManager.tracking.checkNameChange(connection.getUniqueId(), connection.getName());
-                if (history != null) {
-                    gsPlayer.setLastName(history);
+                if (loaded.getLastName() != null) {
+                    gsPlayer.setLastName(loaded.getLastName());
+                    DatabaseManager.nameCache.invalidateName(loaded.getLastName().getPlayer());
                 }
+                DatabaseManager.nameCache.put(connection.getName(), connection.getUniqueId());
+                DatabaseManager.loginSnapshot.addKnown(connection.getUniqueId(), connection.getName());
+                // The online player is the current profile until they leave again
+                DatabaseManager.profileCache.invalidate(gsPlayer.getUuid());
                 
-                cachedPlayers.put(connection.getUniqueId(), gsPlayer);
+                registry.login(connection.getUniqueId(), gsPlayer);
                 
-                // TODO: All database retrieval must be done here for this player
                 event.completeIntent(geSuit.instance);
             }
 
@@ -130,12 +160,17 @@ public class PlayerManager {
      * @return The GSPlayer instance for efficiency
      */
     public static GSPlayer confirmJoin(final ProxiedPlayer player) {
-    	final GSPlayer gsPlayer = cachedPlayers.get(player.getUniqueId());
+    	final GSPlayer gsPlayer = registry.getCached(player.getUniqueId());
         if (gsPlayer.firstConnect()) {
             // Do new player stuff
             if (gsPlayer.isFirstJoin()) {
-                DatabaseManager.players.insertPlayer(gsPlayer, player.getAddress().getHostString());
-                DatabaseManager.tracking.insertNameHistory(gsPlayer);
+                if (gsPlayer.isProvisional()) {
+                    // Stored once the database is back
+                    DatabaseManager.writeBehind.queueNewPlayer(gsPlayer);
+                } else {
+                    DatabaseManager.players.insertPlayer(gsPlayer, player.getAddress().getHostString());
+                    DatabaseManager.tracking.insertNameHistory(gsPlayer);
+                }
                 LoggingManager.log(ConfigManager.messages.PLAYER_CREATE.replace("{player}", player.getName()).replace("{uuid}", player.getUniqueId().toString()));
 
                 if (ConfigManager.main.NewPlayerBroadcast) {
@@ -160,20 +195,99 @@ public class PlayerManager {
                 }
             }
             
-            onlinePlayers.put(player.getName().toLowerCase(), gsPlayer);
+            registry.confirm(player.getUniqueId(), gsPlayer, player.getDisplayName());
         }
         
         return gsPlayer;
     }
 
-    public static void unloadPlayer(String player) {
-    	if (onlinePlayers.containsKey(player.toLowerCase())) {
-            onlinePlayers.remove(player.toLowerCase());
+    /**
+     * Loads the stored settings and homes of players who joined while the database was unreachable
+     */
+    public static void loadProvisionalPlayers() {
+        for (GSPlayer player : registry.getCachedPlayers()) {
+            if (!player.isProvisional()) {
+                continue;
+            }
+
+            GSPlayer stored = DatabaseManager.players.loadPlayer(player.getUuid());
+            if (stored == null) {
+                // A new player whose row is still queued, the next run picks them up
+                continue;
+            }
 
-            LoggingManager.log(ConfigManager.messages.PLAYER_UNLOAD.replace("{player}", player));
+            player.setAcceptingTeleports(stored.acceptingTeleports());
+            player.setNewSpawn(stored.isNewSpawn());
+            player.setFirstOnline(stored.getFirstOnline());
+            player.setLastOnline(stored.getLastOnline());
+            player.getHomes().clear();
+            HomesManager.attachHomes(player, DatabaseManager.homes.getHomesForPlayer(player));
+            player.setProvisional(false);
+            LoggingManager.log(ConfigManager.messages.PLAYER_LOAD.replace("{player}", player.getName()).replace("{uuid}", Utilities.makeUUID(player.getUuid()).toString()));
         }
     }
 
+    /**
+     * Takes the stored settings over into a cached profile, which may have been changed by another proxy since the
+     * player left here. If the player has been online elsewhere since, their homes are loaded again as well.
+     */
+    private static void refreshProfile(GSPlayer profile, GSPlayer stored) {
+        if (stored.getLastOnline() != null && (profile.getLastOnline() == null || stored.getLastOnline().after(profile.getLastOnline()))) {
+            List<Home> homes = DatabaseManager.homes.getHomesForPlayer(profile);
+            if (homes != null) {
+                profile.getHomes().clear();
+                HomesManager.attachHomes(profile, homes);
+            }
+            MetricsManager.increment("profilecache.stale");
+        }
+
+        profile.setAcceptingTeleports(stored.acceptingTeleports());
+        profile.setNewSpawn(stored.isNewSpawn());
+        profile.setFirstOnline(stored.getFirstOnline());
+        profile.setLastOnline(stored.getLastOnline());
+    }
+
+    /**
+     * Removes a logged out player from the online players, unless they have logged in again in the meantime
+     */
+    public static void unloadPlayer(UUID id, GSPlayer player) {
+    	if (registry.unload(id, player)) {
+            player.setLastOnline(new Timestamp(System.currentTimeMillis()));
+            DatabaseManager.profileCache.put(player);
+            LoggingManager.log(ConfigManager.messages.PLAYER_UNLOAD.replace("{player}", player.getName()));
+        }
+    }
+
+    /**
+     * Loads a player who may be offline with their homes attached, from the profile cache if they were seen lately
+     *
+     * @param player Name or UUID of the player
+     * @return Null if the player is not known
+     */
+    public static GSPlayer loadOfflinePlayer(String player) {
+        GSPlayer p = DatabaseManager.profileCache.get(player);
+        if (p == null) {
+            p = DatabaseManager.players.loadPlayer(player);
+            if (p != null) {
+                HomesManager.loadPlayersHomes(p);
+                DatabaseManager.profileCache.put(p);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Loads a player who may be offline without their homes, for lookups which only need the profile. Profiles loaded
+     * here are not cached, as the cache keeps players with their homes.
+     *
+     * @param player Name or UUID of the player
+     * @return Null if the player is not known
+     */
+    public static GSPlayer loadOfflineProfile(String player) {
+        GSPlayer p = DatabaseManager.profileCache.get(player);
+        return p != null ? p : DatabaseManager.players.loadPlayer(player);
+    }
+
     public static void sendMessageToTarget(CommandSender target, String message) {
         // Shouldnt need it. But let's be cautious.
         if (target == null) {
@@ -226,7 +340,7 @@ public class PlayerManager {
         
         if (p == null) {
             // Player is offline, load data
-            p = DatabaseManager.players.loadPlayer(player);
+            p = loadOfflineProfile(player);
         }
         
         if (p == null) { // Unknown player
@@ -321,37 +435,9 @@ public class PlayerManager {
     	if (match != null)
     		return match;
 
-    	// Try fuzzy match (including display name)
-    	GSPlayer fuzzymatch = null;
-    	for (GSPlayer p : onlinePlayers.values()) {
-        	ProxiedPlayer pp = p.getProxiedPlayer();
-        	// Match exact display name (full match)
-        	if ((pp != null) && (pp.getDisplayName() != null) && pp.getDisplayName().equalsIgnoreCase(player))
-        		return p;
-        	
-        	// Match exact UUID if one was given
-        	if ((p.getUuid() != null) && (p.getUuid().equals(player)))
-        		return p;
-
-        	// Remember this "beginning" match in case we don't find a full match
-        	// (it's important to check displayname + name, incase their name was changed during this session)
-        	if ((p.getName().toLowerCase().startsWith(player)) ||
-        			((pp != null) && (pp.getDisplayName() != null) && (pp.getDisplayName().toLowerCase().startsWith(player))))
-        		match = p;
-        	
-        	// Remember this "fuzzy" match in case we don't find a full match or a "beginning" match)
-        	// (it's important to check displayname + name, incase their name was changed during this session)
-        	if ((p.getName().toLowerCase().contains(player)) ||
-        			((pp != null) && (pp.getDisplayName() != null) && (pp.getDisplayName().toLowerCase().contains(player))))
-        		fuzzymatch = p;
-    	}
-
-		// Always return a "beginning" match first if we have one
-    	if (match != null) {
-    		return match;
-    	} else {
-    		return fuzzymatch;
-    	}
+    	// Then exact display name or UUID, a name or display name starting with it and finally one containing it
+    	// (it's important to check displayname + name, incase their name was changed during this session)
+    	return registry.matchOnline(player);
     }
 
     public static List<GSPlayer> getPlayersByIP(String ip) {
@@ -363,7 +449,7 @@ public class PlayerManager {
             return null;
         }
 
-        for (GSPlayer p : onlinePlayers.values()) {
+        for (GSPlayer p : registry.getOnlinePlayers()) {
             if (p.getProxiedPlayer().getAddress().getHostString().equalsIgnoreCase(ip)) {
                 matchingPlayers.add(p);
             }
@@ -373,15 +459,15 @@ public class PlayerManager {
     }
 
     public static Collection<GSPlayer> getPlayers() {
-        return onlinePlayers.values();
+        return registry.getOnlinePlayers();
     }
 
     public static Collection<GSPlayer> cachedPlayers() {
-        return cachedPlayers.values();
+        return registry.getCachedPlayers();
     }
 
     public static GSPlayer getPlayer(String player) {
-        return onlinePlayers.get(player.toLowerCase());
+        return registry.getOnline(player);
     }
     
     public static GSPlayer getPlayer(String player, boolean ExpectOnline) {
@@ -393,15 +479,73 @@ public class PlayerManager {
     }
 
     public static GSPlayer getPlayer(UUID id) {
-        return cachedPlayers.get(id);
+        return registry.getCached(id);
     }
     
     public static GSPlayer getPlayer(ProxiedPlayer player) {
-        return cachedPlayers.get(player.getUniqueId());
+        return registry.getCached(player.getUniqueId());
     }
     
+    /**
+     * @return Accounts linked to the player through shared IPs, nearest first. Until the alt graph is loaded only
+     * the most recent other player of their IP is found.
+     */
+    public static List<AltGraph.Alt> findAlts(GSPlayer player) {
+        if (DatabaseManager.altGraph.isLoaded()) {
+            DatabaseManager.altGraph.link(player.getName(), player.getUuid(), player.getIp());
+            return DatabaseManager.altGraph.getAlts(player.getUuid());
+        }
+        if (!StartupManager.isDatabaseReady()) {
+            return Collections.emptyList();
+        }
+
+        String[] alt = DatabaseManager.players.getAltPlayer(player.getUuid(), player.getIp(), player.isFirstJoin());
+        if (alt == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new AltGraph.Alt(alt[0], alt[1], player.getIp(), 1));
+    }
+
+    /**
+     * @return The alts with an active ban on their name or UUID. Without the ban index only the alts which are
+     * shown are checked, one query each.
+     */
+    public static List<AltGraph.Alt> getBannedAlts(List<AltGraph.Alt> alts) {
+        List<AltGraph.Alt> banned = new ArrayList<>();
+        boolean indexed = DatabaseManager.banIndex.isLoaded();
+
+        for (int i = 0; i < alts.size() && (indexed || i < ConfigManager.bans.AltMaxShown); i++) {
+            AltGraph.Alt alt = alts.get(i);
+            if (indexed ? DatabaseManager.banIndex.getActiveBan(alt.getName(), alt.getUuid(), null) != null : DatabaseManager.bans.isPlayerBanned(alt.getName(), alt.getUuid(), null)) {
+                banned.add(alt);
+            }
+        }
+
+        return banned;
+    }
+
+    /**
+     * @return The names of the first {@code AltMaxShown} alts, followed by how many more there are
+     */
+    public static String listAlts(List<AltGraph.Alt> alts) {
+        StringBuilder names = new StringBuilder();
+        int shown = Math.min(alts.size(), Math.max(1, ConfigManager.bans.AltMaxShown));
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) {
+                names.append(", ");
+            }
+            names.append(alts.get(i).getName());
+        }
+
+        if (alts.size() > shown) {
+            names.append(" (+").append(alts.size() - shown).append(" more)");
+        }
+        return names.toString();
+    }
+
     public static void updateTracking(GSPlayer player) {
-    	DatabaseManager.tracking.insertTracking(player.getName(), player.getUuid(), player.getIp());
+    	DatabaseManager.altGraph.link(player.getName(), player.getUuid(), player.getIp());
+    	DatabaseManager.writeBehind.queueTracking(player);
     }
 
     public static String retrieveOldNames(CommandSender sender, String playername) {
@@ -0,0 +1,276 @@
+package net.cubespace.geSuit.managers;
+
+import net.cubespace.geSuit.objects.GSPlayer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of the online players real names, display names and UUIDs for partial name lookups. Prefixes are answered
+ * by a trie and substrings by a trigram index, so a lookup only looks at players which can actually match. All keys
+ * are stored lower cased.
+ */
+public class PlayerNameIndex {
+    private static final int GRAM = 3;
+
+    private static class Keys {
+        final String name;
+        final String displayName;
+        final String uuid;
+
+        Keys(String name, String displayName, String uuid) {
+            this.name = name;
+            this.displayName = displayName;
+            this.uuid = uuid;
+        }
+    }
+
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        final Set<GSPlayer> players = new HashSet<>();
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<GSPlayer, Keys> indexed = new IdentityHashMap<>();
+    private final Map<String, GSPlayer> displayNames = new HashMap<>();
+    private final Map<String, GSPlayer> uuids = new HashMap<>();
+    private final Map<String, Set<GSPlayer>> grams = new HashMap<>();
+    private final Node root = new Node();
+
+    public void add(GSPlayer player, String displayName) {
+        Keys keys = new Keys(player.getName().toLowerCase(), displayName == null ? null : displayName.toLowerCase(), player.getUuid());
+
+        lock.writeLock().lock();
+        try {
+            Keys old = indexed.remove(player);
+            if (old != null) {
+                unindex(player, old);
+            }
+
+            indexed.put(player, keys);
+            index(player, keys);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(GSPlayer player) {
+        lock.writeLock().lock();
+        try {
+            Keys old = indexed.remove(player);
+            if (old != null) {
+                unindex(player, old);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reindexes the player under their current name, keeping their display name
+     */
+    public void rename(GSPlayer player) {
+        lock.writeLock().lock();
+        try {
+            Keys old = indexed.remove(player);
+            if (old == null) {
+                return;
+            }
+            unindex(player, old);
+
+            Keys keys = new Keys(player.getName().toLowerCase(), old.displayName, player.getUuid());
+            indexed.put(player, keys);
+            index(player, keys);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reindexes the player if their name or display name has changed since they were indexed
+     */
+    public void refresh(GSPlayer player, String displayName) {
+        lock.readLock().lock();
+        try {
+            Keys keys = indexed.get(player);
+            if (keys == null) {
+                return;
+            }
+
+            String lowerDisplayName = displayName == null ? null : displayName.toLowerCase();
+            if (keys.name.equalsIgnoreCase(player.getName()) && (lowerDisplayName == null ? keys.displayName == null : lowerDisplayName.equals(keys.displayName))) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        add(player, displayName);
+    }
+
+    /**
+     * Finds a player by exact display name or UUID, then by a name or display name starting with the given text and
+     * finally by a name or display name containing it. Exact real names are not handled here, look them up by name
+     * first.
+     *
+     * @return The best match or null
+     */
+    public GSPlayer match(String search) {
+        String query = search.toLowerCase();
+
+        lock.readLock().lock();
+        try {
+            GSPlayer match = displayNames.get(query);
+            if (match == null) {
+                match = uuids.get(search);
+            }
+            if (match == null) {
+                match = matchPrefix(query);
+            }
+            if (match == null) {
+                match = matchSubstring(query);
+            }
+            return match;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private GSPlayer matchPrefix(String query) {
+        Node node = root;
+        for (int i = 0; i < query.length() && node != null; i++) {
+            node = node.children.get(query.charAt(i));
+        }
+
+        return node == null ? null : shortest(node.players);
+    }
+
+    private GSPlayer matchSubstring(String query) {
+        Iterable<GSPlayer> candidates;
+        if (query.length() < GRAM) {
+            candidates = indexed.keySet();
+        } else {
+            // Every trigram of the query has to be present, start with the rarest one
+            Set<GSPlayer> rarest = null;
+            for (int i = 0; i + GRAM <= query.length(); i++) {
+                Set<GSPlayer> players = grams.get(query.substring(i, i + GRAM));
+                if (players == null) {
+                    return null;
+                }
+                if (rarest == null || players.size() < rarest.size()) {
+                    rarest = players;
+                }
+            }
+            candidates = rarest;
+        }
+
+        Set<GSPlayer> found = new HashSet<>();
+        for (GSPlayer player : candidates) {
+            Keys keys = indexed.get(player);
+            if (keys.name.contains(query) || (keys.displayName != null && keys.displayName.contains(query))) {
+                found.add(player);
+            }
+        }
+
+        return shortest(found);
+    }
+
+    // Several players can match, prefer the one whose name is the closest fit
+    private GSPlayer shortest(Set<GSPlayer> players) {
+        GSPlayer best = null;
+        for (GSPlayer player : players) {
+            if (best == null || indexed.get(player).name.length() < indexed.get(best).name.length()) {
+                best = player;
+            }
+        }
+        return best;
+    }
+
+    private void index(GSPlayer player, Keys keys) {
+        if (keys.displayName != null) {
+            displayNames.put(keys.displayName, player);
+        }
+        if (keys.uuid != null) {
+            uuids.put(keys.uuid, player);
+        }
+
+        for (String key : distinctKeys(keys)) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                Node child = node.children.get(key.charAt(i));
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(key.charAt(i), child);
+                }
+                node = child;
+                node.players.add(player);
+            }
+
+            for (int i = 0; i + GRAM <= key.length(); i++) {
+                String gram = key.substring(i, i + GRAM);
+                Set<GSPlayer> players = grams.get(gram);
+                if (players == null) {
+                    players = new HashSet<>();
+                    grams.put(gram, players);
+                }
+                players.add(player);
+            }
+        }
+    }
+
+    private void unindex(GSPlayer player, Keys keys) {
+        if (keys.displayName != null && displayNames.get(keys.displayName) == player) {
+            displayNames.remove(keys.displayName);
+        }
+        if (keys.uuid != null && uuids.get(keys.uuid) == player) {
+            uuids.remove(keys.uuid);
+        }
+
+        for (String key : distinctKeys(keys)) {
+            unindexPath(root, key, 0, player);
+
+            for (int i = 0; i + GRAM <= key.length(); i++) {
+                String gram = key.substring(i, i + GRAM);
+                Set<GSPlayer> players = grams.get(gram);
+                if (players != null) {
+                    players.remove(player);
+                    if (players.isEmpty()) {
+                        grams.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    // Removes the player along the path and prunes nodes nobody passes through any more
+    private void unindexPath(Node node, String key, int depth, GSPlayer player) {
+        if (depth == key.length()) {
+            return;
+        }
+
+        Node child = node.children.get(key.charAt(depth));
+        if (child == null) {
+            return;
+        }
+
+        child.players.remove(player);
+        unindexPath(child, key, depth + 1, player);
+        if (child.players.isEmpty()) {
+            node.children.remove(key.charAt(depth));
+        }
+    }
+
+    private static Set<String> distinctKeys(Keys keys) {
+        Set<String> distinct = new HashSet<>(2);
+        distinct.add(keys.name);
+        if (keys.displayName != null) {
+            distinct.add(keys.displayName);
+        }
+        return distinct;
+    }
+}
@@ -0,0 +1,152 @@
+package net.cubespace.geSuit.managers;
+
+import net.cubespace.geSuit.objects.GSPlayer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Players known to this proxy. A player is cached by UUID once their login has been processed and becomes online,
+ * indexed by lower cased name, once they connect to their first server. Lookups and iteration never lock and never
+ * throw a ConcurrentModificationException. Changes between the states are synchronized, so a player who reconnects
+ * while their old session is still being unloaded keeps the new one. Online players are also kept in a
+ * {@link PlayerNameIndex} for partial name lookups, which is updated as they join, switch servers, are renamed and
+ * leave.
+ */
+public class PlayerRegistry {
+    private final ConcurrentHashMap<UUID, GSPlayer> cached = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, GSPlayer> online = new ConcurrentHashMap<>();
+    private final Set<UUID> kicked = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    private final PlayerNameIndex names = new PlayerNameIndex();
+
+    /**
+     * A login was accepted, the player will be confirmed once they reach a server
+     */
+    public synchronized void login(UUID id, GSPlayer player) {
+        cached.put(id, player);
+    }
+
+    /**
+     * Makes a cached player visible to name lookups
+     *
+     * @return False if the player has logged out in the meantime
+     */
+    public synchronized boolean confirm(UUID id, GSPlayer player, String displayName) {
+        if (cached.get(id) != player) {
+            return false;
+        }
+
+        GSPlayer old = online.put(player.getName().toLowerCase(), player);
+        if (old != null && old != player) {
+            names.remove(old);
+        }
+        names.add(player, displayName);
+        return true;
+    }
+
+    /**
+     * The player has left the proxy, they stay online by name until they are unloaded
+     *
+     * @return The player which was cached for this UUID, or null if their login never completed
+     */
+    public synchronized GSPlayer logout(UUID id) {
+        return cached.remove(id);
+    }
+
+    /**
+     * Removes a logged out player from the name index
+     *
+     * @return False if the player has logged in again since, or was not online
+     */
+    public synchronized boolean unload(UUID id, GSPlayer player) {
+        if (player == null || cached.get(id) == player) {
+            return false;
+        }
+
+        if (!online.remove(player.getName().toLowerCase(), player)) {
+            return false;
+        }
+
+        names.remove(player);
+        return true;
+    }
+
+    /**
+     * Picks up a display name which was changed by another plugin, called as the player switches servers
+     */
+    public void updateDisplayName(GSPlayer player, String displayName) {
+        names.refresh(player, displayName);
+    }
+
+    /**
+     * Changes the name of a player, an online player stays online and indexed under the new name
+     */
+    public synchronized void rename(GSPlayer player, String name) {
+        String old = player.getName();
+        player.setName(name);
+        if (online.remove(old.toLowerCase(), player)) {
+            online.put(name.toLowerCase(), player);
+            names.rename(player);
+        }
+    }
+
+    /**
+     * @see PlayerNameIndex#match(String)
+     */
+    public GSPlayer matchOnline(String search) {
+        return names.match(search);
+    }
+
+    public GSPlayer getCached(UUID id) {
+        return cached.get(id);
+    }
+
+    public GSPlayer getOnline(String name) {
+        return online.get(name.toLowerCase());
+    }
+
+    /**
+     * @return Live view of the online players, safe to iterate while players join and leave
+     */
+    public Collection<GSPlayer> getOnlinePlayers() {
+        return Collections.unmodifiableCollection(online.values());
+    }
+
+    /**
+     * @return Live view of the cached players, safe to iterate while players join and leave
+     */
+    public Collection<GSPlayer> getCachedPlayers() {
+        return Collections.unmodifiableCollection(cached.values());
+    }
+
+    /**
+     * @return Online players by lower cased name, for debugging
+     */
+    public Set<String> getOnlineNames() {
+        return Collections.unmodifiableSet(online.keySet());
+    }
+
+    /**
+     * @return Cached UUIDs, for debugging
+     */
+    public Set<UUID> getCachedIds() {
+        return Collections.unmodifiableSet(cached.keySet());
+    }
+
+    /**
+     * Marks the player as kicked, so their disconnect is not broadcast
+     */
+    public void markKicked(UUID id) {
+        kicked.add(id);
+    }
+
+    /**
+     * @return True if the player was kicked, clearing the mark
+     */
+    public boolean clearKicked(UUID id) {
+        return kicked.remove(id);
+    }
+}
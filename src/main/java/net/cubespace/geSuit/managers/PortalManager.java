@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import net.cubespace.geSuit.database.AsyncDatabase;
 import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.objects.GSPlayer;
 import net.cubespace.geSuit.objects.Location;
@@ -20,7 +21,25 @@ public class PortalManager {
     private static Map<ServerInfo, List<Portal>> portals = new HashMap<>();
 
     public static void loadPortals() {
-        portals = DatabaseManager.portals.getPortals();
+        Map<ServerInfo, List<Portal>> loaded = DatabaseManager.portals.getPortals();
+        if (loaded != null) {
+            portals = loaded;
+        }
+    }
+
+    /**
+     * Uses the portals of the login snapshot until they are loaded from the database
+     */
+    public static void restorePortals(Map<ServerInfo, List<Portal>> restored) {
+        portals = restored;
+    }
+
+    public static List<Portal> getAllPortals() {
+        List<Portal> all = new ArrayList<>();
+        for (List<Portal> list : portals.values()) {
+            all.addAll(list);
+        }
+        return all;
     }
 
     public static void getPortals(ServerInfo s) {
@@ -71,11 +90,11 @@ public class PortalManager {
             Portal old = getPortal(name);
             removePortal(old);
 
-            DatabaseManager.portals.updatePortal(p);
+            AsyncDatabase.logFailure(DatabaseManager.async.portals.updatePortal(p), "update portal " + name);
 
             sender.sendMessage(ConfigManager.messages.PORTAL_UPDATED);
         } else {
-            DatabaseManager.portals.insertPortal(p);
+            AsyncDatabase.logFailure(DatabaseManager.async.portals.insertPortal(p), "create portal " + name);
             sender.sendMessage(ConfigManager.messages.PORTAL_CREATED);
         }
 
@@ -87,7 +106,7 @@ public class PortalManager {
     public static void removePortal(Portal p) {
         portals.get(p.getServer()).remove(p);
 
-        DatabaseManager.portals.deletePortal(p.getName());
+        AsyncDatabase.logFailure(DatabaseManager.async.portals.deletePortal(p.getName()), "delete portal " + p.getName());
 
         DeletePortal.execute(p);
     }
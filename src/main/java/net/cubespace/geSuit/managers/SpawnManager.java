@@ -2,6 +2,12 @@ package net.cubespace.geSuit.managers;
 
 import java.util.ArrayList;
 import java.util.List;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import net.cubespace.geSuit.database.AsyncDatabase;
+import net.cubespace.geSuit.geSuit;
 import net.cubespace.geSuit.objects.GSPlayer;
 import net.cubespace.geSuit.objects.Location;
 import net.cubespace.geSuit.objects.Spawn;
@@ -23,8 +29,16 @@ public class SpawnManager {
         NewPlayerSpawn = DatabaseManager.spawns.getSpawn("NewPlayerSpawn");
     }
 
+    /**
+     * Uses the spawns of the login snapshot until they are loaded from the database
+     */
+    public static void restoreSpawns(Location proxySpawn, Location newPlayerSpawn) {
+        ProxySpawn = proxySpawn;
+        NewPlayerSpawn = newPlayerSpawn;
+    }
+
     public static void delWorldSpawn(GSPlayer p, ServerInfo server, String world) {
-        DatabaseManager.spawns.deleteWorldSpawn(server.getName(), world);
+        AsyncDatabase.logFailure(DatabaseManager.async.spawns.deleteWorldSpawn(server.getName(), world), "delete the spawn of " + world);
         PlayerManager.sendMessageToTarget(p, ConfigManager.messages.SPAWN_DELETED);
         DelWorldSpawn.execute(server, world);
     }
@@ -57,20 +71,28 @@ public class SpawnManager {
     }
 
 
-    public static void sendSpawns(Server s) {
-        List<Spawn> spawnList = DatabaseManager.spawns.getSpawnsForServer(s.getInfo().getName());
-
-        for (Spawn spawn : spawnList) {
-            SendSpawn.execute(spawn);
-        }
+    public static void sendSpawns(final Server s) {
+        Futures.addCallback(DatabaseManager.async.spawns.getSpawnsForServer(s.getInfo().getName()), new FutureCallback<List<Spawn>>() {
+            @Override
+            public void onSuccess(List<Spawn> spawnList) {
+                for (Spawn spawn : spawnList) {
+                    SendSpawn.execute(spawn);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                geSuit.instance.getLogger().warning("Could not load the spawns of " + s.getInfo().getName() + ": " + t);
+            }
+        }, MoreExecutors.sameThreadExecutor());
     }
 
     private static void setSpawn(GSPlayer player, Spawn spawn, boolean exists) {
         if (exists) {
-            DatabaseManager.spawns.updateSpawn(spawn);
+            AsyncDatabase.logFailure(DatabaseManager.async.spawns.updateSpawn(spawn), "update spawn " + spawn.getName());
             PlayerManager.sendMessageToTarget(player, ConfigManager.messages.SPAWN_UPDATED);
         } else {
-            DatabaseManager.spawns.insertSpawn(spawn);
+            AsyncDatabase.logFailure(DatabaseManager.async.spawns.insertSpawn(spawn), "set spawn " + spawn.getName());
             PlayerManager.sendMessageToTarget(player, ConfigManager.messages.SPAWN_SET);
         }
 
@@ -94,10 +116,10 @@ public class SpawnManager {
         Spawn spawn = new Spawn("NewPlayerSpawn", l);
 
         if (NewPlayerSpawn != null) {
-            DatabaseManager.spawns.updateSpawn(spawn);
+            AsyncDatabase.logFailure(DatabaseManager.async.spawns.updateSpawn(spawn), "update spawn " + spawn.getName());
             p.sendMessage(ConfigManager.messages.SPAWN_UPDATED);
         } else {
-            DatabaseManager.spawns.insertSpawn(spawn);
+            AsyncDatabase.logFailure(DatabaseManager.async.spawns.insertSpawn(spawn), "set spawn " + spawn.getName());
             p.sendMessage(ConfigManager.messages.SPAWN_SET);
         }
 
@@ -108,10 +130,10 @@ public class SpawnManager {
         Spawn spawn = new Spawn("ProxySpawn", l);
 
         if (ProxySpawn != null) {
-            DatabaseManager.spawns.updateSpawn(spawn);
+            AsyncDatabase.logFailure(DatabaseManager.async.spawns.updateSpawn(spawn), "update spawn " + spawn.getName());
             p.sendMessage(ConfigManager.messages.SPAWN_UPDATED);
         } else {
-            DatabaseManager.spawns.insertSpawn(spawn);
+            AsyncDatabase.logFailure(DatabaseManager.async.spawns.insertSpawn(spawn), "set spawn " + spawn.getName());
             p.sendMessage(ConfigManager.messages.SPAWN_SET);
         }
 
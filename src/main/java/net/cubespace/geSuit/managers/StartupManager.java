@@ -0,0 +1,317 @@
+package net.cubespace.geSuit.managers;
+
+import net.cubespace.geSuit.database.convert.Converter;
+import net.cubespace.geSuit.geSuit;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.ProxyServer;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads everything geSuit needs on startup off the enable thread. The loads are phases which run in parallel as soon
+ * as the phases they depend on are done, a phase whose dependency failed is skipped. Logins only wait for the phases
+ * which decide them: a running conversion and the bans, which come from the login snapshot when there is one. Warps,
+ * portals and spawns are taken from the snapshot as well until they are loaded.
+ * <p>
+ * A MySQL server which is not reachable on startup is retried with a growing delay. Logins are decided from the
+ * snapshot until it is open, without a snapshot they wait for the database. Any other error opening the storage, like
+ * a missing driver or a failed migration, fails the database phase straight away.
+ */
+public class StartupManager {
+    private static class Phase {
+        final String name;
+        final boolean gatesLogins;
+        final Runnable task;
+        final List<Phase> after = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean failed = false;
+        volatile long time;
+
+        Phase(String name, boolean gatesLogins, Runnable task) {
+            this.name = name;
+            this.gatesLogins = gatesLogins;
+            this.task = task;
+        }
+    }
+
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Map<String, Phase> phases = new LinkedHashMap<>();
+    private static CountDownLatch loginGate = new CountDownLatch(1);
+    private static volatile boolean loginsFailed = false;
+    private static long started;
+
+    public static void start() {
+        started = System.nanoTime();
+
+        add("database", false, new Runnable() {
+            @Override
+            public void run() {
+                openDatabase();
+            }
+        });
+        if (ConfigManager.main.ConvertFromBungeeSuite) {
+            add("convert", true, new Runnable() {
+                @Override
+                public void run() {
+                    // Logins wait for the players to be converted, not just for the conversion to start
+                    new Converter().run();
+                }
+            }, "database");
+        }
+        // Logins are decided from the snapshot if there is one, otherwise they wait for the ban index
+        add("snapshot", true, new Runnable() {
+            @Override
+            public void run() {
+                if (!DatabaseManager.loginSnapshot.restore()) {
+                    awaitPhase("database");
+                    DatabaseManager.banIndex.reload();
+                }
+            }
+        });
+        add("bans", false, new Runnable() {
+            @Override
+            public void run() {
+                if (!DatabaseManager.banIndex.isLoaded()) {
+                    DatabaseManager.banIndex.reload();
+                }
+                DatabaseManager.banIndex.startSync();
+            }
+        }, "database", "snapshot");
+        add("warps", false, new Runnable() {
+            @Override
+            public void run() {
+                WarpsManager.loadWarpLocations();
+            }
+        }, "database", "snapshot");
+        add("portals", false, new Runnable() {
+            @Override
+            public void run() {
+                PortalManager.loadPortals();
+            }
+        }, "database", "snapshot");
+        add("spawns", false, new Runnable() {
+            @Override
+            public void run() {
+                SpawnManager.loadSpawns();
+            }
+        }, "database", "snapshot");
+        add("tasks", false, new Runnable() {
+            @Override
+            public void run() {
+                DatabaseManager.altGraph.startReload();
+                DatabaseManager.writeBehind.start();
+                DatabaseManager.retention.start();
+                DatabaseManager.loginSnapshot.start();
+            }
+        }, "database", "snapshot");
+        add("announcements", false, new Runnable() {
+            @Override
+            public void run() {
+                AnnouncementManager.loadAnnouncements();
+            }
+        });
+        add("geoip", false, new Runnable() {
+            @Override
+            public void run() {
+                GeoIPManager.initialize();
+            }
+        });
+
+        int gating = 0;
+        for (Phase phase : phases.values()) {
+            if (phase.gatesLogins) {
+                gating++;
+            }
+        }
+        loginGate = new CountDownLatch(gating);
+
+        for (final Phase phase : phases.values()) {
+            ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+                @Override
+                public void run() {
+                    StartupManager.run(phase);
+                }
+            });
+        }
+
+        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        });
+    }
+
+    /**
+     * Waits up to {@code StartupLoginWait} seconds for the phases logins depend on
+     *
+     * @return False if they are not done in time or failed, the login has to be refused
+     */
+    public static boolean awaitLogins() {
+        if (loginGate.getCount() > 0) {
+            MetricsManager.increment("startup.login.waited");
+            try {
+                if (!loginGate.await(ConfigManager.main.Database.StartupLoginWait, TimeUnit.SECONDS)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return !loginsFailed;
+    }
+
+    /**
+     * Runs the task on its own thread once the storage is open, it is dropped if the storage could not be opened
+     */
+    public static void afterDatabase(final Runnable task) {
+        ProxyServer.getInstance().getScheduler().runAsync(geSuit.instance, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    awaitPhase("database");
+                } catch (IllegalStateException e) {
+                    return;
+                }
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * @return True once the storage has been opened
+     */
+    public static boolean isDatabaseReady() {
+        Phase database = phases.get("database");
+        return database != null && database.done.getCount() == 0 && !database.failed;
+    }
+
+    /**
+     * Opens the storage, MySQL is retried until it can be reached. Only failed connects are retried.
+     */
+    private static void openDatabase() {
+        long delay = RETRY_DELAY;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                DatabaseManager.initialise();
+                break;
+            } catch (RuntimeException e) {
+                if (!(e.getCause() instanceof SQLException)) {
+                    throw e;
+                }
+
+                DatabaseManager.close();
+                geSuit.instance.getLogger().warning("Could not open the database (attempt " + attempt + "), retrying in " + TimeUnit.MILLISECONDS.toSeconds(delay) + "s: " + e.getCause());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the database");
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+            }
+        }
+
+        // Players who joined from the snapshot in the meantime
+        PlayerManager.loadProvisionalPlayers();
+    }
+
+    /**
+     * Blocks a phase until another one is done, for dependencies which not every run of the phase has
+     */
+    private static void awaitPhase(String name) {
+        Phase phase = phases.get(name);
+        try {
+            phase.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + name);
+        }
+        if (phase.failed) {
+            throw new IllegalStateException(name + " failed");
+        }
+    }
+
+    private static void add(String name, boolean gatesLogins, Runnable task, String... after) {
+        Phase phase = new Phase(name, gatesLogins, task);
+        for (String dependency : after) {
+            phase.after.add(phases.get(dependency));
+        }
+        phases.put(name, phase);
+    }
+
+    private static void run(Phase phase) {
+        try {
+            for (Phase dependency : phase.after) {
+                dependency.done.await();
+                if (dependency.failed) {
+                    phase.failed = true;
+                    geSuit.instance.getLogger().warning("Skipped starting " + phase.name + " as " + dependency.name + " failed");
+                    return;
+                }
+            }
+
+            long start = System.nanoTime();
+            try {
+                phase.task.run();
+            } catch (Exception e) {
+                phase.failed = true;
+                geSuit.instance.getLogger().severe("Could not start " + phase.name + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+            phase.time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            MetricsManager.getHistogram("startup." + phase.name).recordSince(start);
+        } catch (InterruptedException e) {
+            phase.failed = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            phase.done.countDown();
+            if (phase.gatesLogins) {
+                if (phase.failed) {
+                    loginsFailed = true;
+                }
+                loginGate.countDown();
+                if (loginGate.getCount() == 0) {
+                    openLogins();
+                }
+            }
+        }
+    }
+
+    private static void openLogins() {
+        long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        if (loginsFailed) {
+            LoggingManager.log(ChatColor.RED + "geSuit could not load what logins need, all logins are refused until the proxy is restarted");
+        } else {
+            LoggingManager.log(ChatColor.GREEN + "Admitting logins after " + time + "ms");
+        }
+    }
+
+    private static void report() {
+        StringBuilder timings = new StringBuilder();
+        for (Phase phase : phases.values()) {
+            try {
+                phase.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            timings.append(timings.length() == 0 ? "" : ", ").append(phase.name).append(' ');
+            timings.append(phase.failed ? "failed" : phase.time + "ms");
+        }
+
+        long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        LoggingManager.log(ChatColor.GREEN + "Started in " + time + "ms (" + timings + ")");
+    }
+}
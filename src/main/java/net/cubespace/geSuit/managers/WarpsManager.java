@@ -1,10 +1,12 @@
 package net.cubespace.geSuit.managers;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import net.cubespace.geSuit.database.AsyncDatabase;
 import net.cubespace.geSuit.objects.GSPlayer;
 import net.cubespace.geSuit.objects.Location;
 import net.cubespace.geSuit.objects.Warp;
@@ -16,12 +18,32 @@ public class WarpsManager {
 
     public static void loadWarpLocations() {
         List<Warp> warps1 = DatabaseManager.warps.getWarps();
+        if (warps1 == null) {
+            // Keeps the warps of the login snapshot while the database is unreachable
+            return;
+        }
 
+        // Replaces the warps restored from the login snapshot, including the ones deleted since
+        HashMap<String, Warp> loaded = new HashMap<>();
         for(Warp warp : warps1) {
+            loaded.put(warp.getName().toLowerCase(), warp);
+        }
+        warps = loaded;
+    }
+
+    /**
+     * Uses the warps of the login snapshot until they are loaded from the database
+     */
+    public static void restoreWarps(List<Warp> restored) {
+        for(Warp warp : restored) {
             warps.put(warp.getName().toLowerCase(), warp);
         }
     }
 
+    public static List<Warp> getWarps() {
+        return new ArrayList<>(warps.values());
+    }
+
     public static void setWarp(GSPlayer sender, String name, Location loc, boolean hidden, boolean global) {
         Warp w;
         if (doesWarpExist(name)) {
@@ -29,12 +51,12 @@ public class WarpsManager {
             w.setLocation(loc);
             w.setGlobal(global);
             w.setHidden(hidden);
-            DatabaseManager.warps.updateWarp(w);
+            AsyncDatabase.logFailure(DatabaseManager.async.warps.updateWarp(w), "update warp " + name);
             sender.sendMessage(ConfigManager.messages.WARP_UPDATED.replace("{warp}", name));
         } else {
             w = new Warp(name, loc, hidden, global);
             warps.put(name.toLowerCase(), w);
-            DatabaseManager.warps.insertWarp(w);
+            AsyncDatabase.logFailure(DatabaseManager.async.warps.insertWarp(w), "create warp " + name);
             sender.sendMessage(ConfigManager.messages.WARP_CREATED.replace("{warp}", name));
         }
     }
@@ -42,7 +64,7 @@ public class WarpsManager {
     public static void deleteWarp(GSPlayer sender, String warp) {
         Warp w = getWarp(warp);
         warps.remove(w.getName().toLowerCase());
-        DatabaseManager.warps.deleteWarp(w.getName());
+        AsyncDatabase.logFailure(DatabaseManager.async.warps.deleteWarp(w.getName()), "delete warp " + w.getName());
         sender.sendMessage(ConfigManager.messages.WARP_DELETED.replace("{warp}", warp));
     }
 
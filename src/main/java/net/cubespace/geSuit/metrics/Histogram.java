@@ -0,0 +1,125 @@
+package net.cubespace.geSuit.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with microsecond resolution. Values are sorted into buckets which split every
+ * power of two into four, so percentiles are accurate to within 25%.
+ */
+public class Histogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        buckets.incrementAndGet(bucketFor(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+
+        long current;
+        while (micros > (current = max.get())) {
+            if (max.compareAndSet(current, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} value
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    private static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (exponent - 2)) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Sum of all recorded values in microseconds
+     */
+    public long getTotal() {
+        return sum.get();
+    }
+
+    /**
+     * @return Mean of all recorded values in microseconds
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * @return Largest recorded value in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return Upper bound (in microseconds) of the bucket the percentile falls into
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * @return One line summary of this histogram with all times in milliseconds
+     */
+    public String summary() {
+        return "n=" + getCount() +
+                " avg=" + format(getMean()) +
+                " p50=" + format(getPercentile(50)) +
+                " p95=" + format(getPercentile(95)) +
+                " p99=" + format(getPercentile(99)) +
+                " max=" + format(getMax());
+    }
+
+    private static String format(long micros) {
+        return String.format("%.2fms", micros / 1000.0);
+    }
+}
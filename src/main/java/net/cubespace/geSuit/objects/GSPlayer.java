@@ -31,6 +31,7 @@ public class GSPlayer
     private boolean isFirstJoin = false;
     private boolean newSpawn = false;
     private long loginTime;
+    private boolean provisional = false;
 
     public GSPlayer(String name, String uuid, boolean tps)
     {
@@ -60,6 +61,10 @@ public class GSPlayer
         return playername;
     }
 
+    /**
+     * Only for players which are not online yet, online players are renamed through {@link net.cubespace.geSuit.managers.PlayerRegistry#rename}
+     * so the name index follows
+     */
     public void setName(String newPlayerName)
     {
         playername = newPlayerName;
@@ -256,4 +261,16 @@ public class GSPlayer
 	public Track getLastName() {
 	    return previousName;
 	}
+
+	/**
+	 * Signifies that this player joined while the database was unreachable, their settings and homes are defaults
+	 * until they are loaded once it is back
+	 */
+	public boolean isProvisional() {
+		return provisional;
+	}
+
+	public void setProvisional(boolean provisional) {
+		this.provisional = provisional;
+	}
 }
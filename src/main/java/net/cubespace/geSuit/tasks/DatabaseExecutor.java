@@ -0,0 +1,63 @@
+package net.cubespace.geSuit.tasks;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs database work off the network and event threads. The work is spread over a fixed number of single threaded
+ * lanes with a bounded queue each. Tasks with the same key always run in the same lane, so writes to one home, warp
+ * or player happen in the order they were submitted. Tasks without a key take the lanes in turn. A full lane rejects
+ * the task, it is never run on the calling thread.
+ */
+public class DatabaseExecutor {
+    private final TimedExecutor[] lanes;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public DatabaseExecutor(int threads, int queueSize) {
+        lanes = new TimedExecutor[Math.max(1, threads)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new TimedExecutor("Database", "Database #" + (i + 1), 1, Math.max(1, queueSize / lanes.length), false);
+        }
+    }
+
+    /**
+     * @param key Tasks with equal keys run in submission order, null if the order does not matter
+     */
+    public <T> ListenableFuture<T> submit(String task, Object key, Callable<T> callable) {
+        return getLane(key).submit(task, callable);
+    }
+
+    private TimedExecutor getLane(Object key) {
+        int hash = key == null ? next.getAndIncrement() : key.hashCode();
+        return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (TimedExecutor lane : lanes) {
+            size += lane.getQueueSize();
+        }
+        return size;
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (TimedExecutor lane : lanes) {
+            active += lane.getActiveCount();
+        }
+        return active;
+    }
+
+    /**
+     * Stops accepting tasks and waits for the queued ones to finish
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (TimedExecutor lane : lanes) {
+            lane.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+}
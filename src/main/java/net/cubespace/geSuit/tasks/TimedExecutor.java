@@ -0,0 +1,156 @@
+package net.cubespace.geSuit.tasks;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.cubespace.geSuit.geSuit;
+import net.cubespace.geSuit.managers.MetricsManager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker pool with a bounded queue which records how long every task waited in the queue and how long it ran.
+ * When the queue is full new tasks are rejected (AbortPolicy) so the proxy threads submitting them are never held up:
+ * {@link #execute(String, Runnable)} counts them in task.&lt;name&gt;.rejected and throws a RejectedExecutionException,
+ * {@link #submit(String, Callable)} returns a failed future. Callers have to handle that, command handlers go through
+ * {@link net.cubespace.geSuit.managers.BansManager#dispatch} which tells the sender that bans are busy.
+ */
+public class TimedExecutor {
+    private static final long SLOW_TASK_MILLIS = 1000;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    public TimedExecutor(String name, int threads, int queueSize) {
+        this(name, name + " #%d", threads, queueSize, false);
+    }
+
+    /**
+     * @param threadName Name format of the worker threads, %d is replaced by the thread number
+     * @param callerRuns True to run tasks on the submitting thread while the queue is full instead of rejecting them
+     */
+    public TimedExecutor(String name, String threadName, int threads, int queueSize, boolean callerRuns) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new ThreadFactoryBuilder().setNameFormat("geSuit " + threadName).setDaemon(true).build(),
+                callerRuns ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @throws RejectedExecutionException If the queue is full, unless the pool runs tasks on the submitting thread
+     */
+    public void execute(final String task, final Runnable runnable) {
+        final long queued = System.nanoTime();
+
+        try {
+            executeTimed(task, runnable, queued);
+        } catch (RejectedExecutionException e) {
+            MetricsManager.increment("task." + name + ".rejected");
+            throw e;
+        }
+    }
+
+    private void executeTimed(final String task, final Runnable runnable, final long queued) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                MetricsManager.getHistogram("task." + name + ".queued").record(start - queued);
+
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    MetricsManager.increment("task." + name + ".errors");
+                    geSuit.instance.getLogger().severe("Task " + task + " failed: " + t);
+                    t.printStackTrace();
+                } finally {
+                    long took = System.nanoTime() - start;
+                    MetricsManager.getHistogram("task." + name + "." + task).record(took);
+
+                    if (TimeUnit.NANOSECONDS.toMillis(took) > SLOW_TASK_MILLIS) {
+                        geSuit.instance.getLogger().warning("Task " + task + " took " + TimeUnit.NANOSECONDS.toMillis(took) + "ms");
+                    } else {
+                        geSuit.instance.DebugMsg("Task " + task + " took " + TimeUnit.NANOSECONDS.toMicros(took) + "us");
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the task like {@link #execute(String, Runnable)} and hands out its result
+     *
+     * @return Future of the result, failed if the task threw or was rejected
+     */
+    public <T> ListenableFuture<T> submit(final String task, Callable<T> callable) {
+        final ListenableFutureTask<T> future = ListenableFutureTask.create(callable);
+
+        try {
+            execute(task, new Runnable() {
+                @Override
+                public void run() {
+                    future.run();
+
+                    Throwable failure = getFailure(future);
+                    if (failure != null) {
+                        MetricsManager.increment("task." + name + ".errors");
+                        geSuit.instance.getLogger().warning("Task " + task + " failed: " + failure);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        return future;
+    }
+
+    // The future has completed, get() does not block
+    private static Throwable getFailure(Future<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting tasks and waits for the queued ones to finish
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                geSuit.instance.getLogger().warning(executor.getQueue().size() + " " + name + " tasks did not finish before shutdown");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
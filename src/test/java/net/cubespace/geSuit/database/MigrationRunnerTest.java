@@ -0,0 +1,226 @@
+package net.cubespace.geSuit.database;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MigrationRunnerTest {
+    private static final String HISTORY = "schema_history";
+
+    /**
+     * Just enough of a JDBC connection for the runner: the schema history table and a log of every write
+     */
+    private static class FakeDatabase {
+        boolean hasHistory = false;
+        final Map<Integer, Long> history = new HashMap<>();
+        final Set<String> failing = new HashSet<>();
+        final List<String> writes = new ArrayList<>();
+
+        Connection connect() {
+            return proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "createStatement":
+                            return statement();
+                        case "prepareStatement":
+                            return prepared((String) args[0]);
+                        case "getMetaData":
+                            return metaData();
+                        default:
+                            return defaultValue(method);
+                    }
+                }
+            });
+        }
+
+        private Statement statement() {
+            return proxy(Statement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "executeUpdate":
+                            String sql = (String) args[0];
+                            if (failing.contains(sql)) {
+                                throw new SQLException("Failed: " + sql);
+                            }
+                            if (sql.startsWith("CREATE TABLE IF NOT EXISTS `" + HISTORY + "`")) {
+                                hasHistory = true;
+                            }
+                            writes.add(sql);
+                            return 0;
+                        case "executeQuery":
+                            List<Object[]> rows = new ArrayList<>();
+                            for (Map.Entry<Integer, Long> entry : history.entrySet()) {
+                                rows.add(new Object[]{entry.getKey(), entry.getValue()});
+                            }
+                            return results(rows);
+                        default:
+                            return defaultValue(method);
+                    }
+                }
+            });
+        }
+
+        // Only the schema history is written through prepared statements
+        private PreparedStatement prepared(final String sql) {
+            final Map<Integer, Object> params = new HashMap<>();
+            return proxy(PreparedStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().startsWith("set")) {
+                        params.put((Integer) args[0], args[1]);
+                        return null;
+                    }
+                    if (method.getName().equals("executeUpdate")) {
+                        assertTrue(sql.startsWith("REPLACE INTO `" + HISTORY + "`"));
+                        if ((Boolean) params.get(6)) {
+                            history.put((Integer) params.get(1), (Long) params.get(3));
+                        }
+                        writes.add("record " + params.get(1) + " " + params.get(6));
+                        return 1;
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        private DatabaseMetaData metaData() {
+            return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getTables")) {
+                        List<Object[]> rows = new ArrayList<>();
+                        if (hasHistory && HISTORY.equals(args[2])) {
+                            rows.add(new Object[]{HISTORY});
+                        }
+                        return results(rows);
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        // Rows of version and checksum, or of the table name for getTables
+        private static ResultSet results(List<Object[]> rows) {
+            final Iterator<Object[]> it = rows.iterator();
+            return proxy(ResultSet.class, new InvocationHandler() {
+                Object[] row;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "next":
+                            row = it.hasNext() ? it.next() : null;
+                            return row != null;
+                        case "getInt":
+                            return row[0];
+                        case "getLong":
+                            return row[1];
+                        default:
+                            return defaultValue(method);
+                    }
+                }
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(MigrationRunnerTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+
+        private static Object defaultValue(Method method) {
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+
+    private static MigrationRunner runner() {
+        Logger log = Logger.getLogger(MigrationRunnerTest.class.getName());
+        log.setUseParentHandlers(false);
+        return new MigrationRunner(null, HISTORY, log);
+    }
+
+    private static Migration migration(int version) {
+        return new Migration(version, "Migration " + version).addStatement("STEP " + version);
+    }
+
+    @Test
+    public void appliesMigrationsInVersionOrder() throws SQLException {
+        FakeDatabase database = new FakeDatabase();
+
+        assertTrue(runner().migrate(database.connect(), Arrays.asList(migration(3), migration(1), migration(2)), false));
+        assertEquals(Arrays.asList("STEP 1", "record 1 true", "STEP 2", "record 2 true", "STEP 3", "record 3 true"), database.writes.subList(1, database.writes.size()));
+        assertEquals(3, database.history.size());
+    }
+
+    @Test
+    public void skipsAppliedMigrations() throws SQLException {
+        FakeDatabase database = new FakeDatabase();
+        database.hasHistory = true;
+        database.history.put(1, migration(1).getChecksum());
+
+        assertTrue(runner().migrate(database.connect(), Arrays.asList(migration(1), migration(2)), false));
+        assertFalse(database.writes.contains("STEP 1"));
+        assertEquals(Arrays.asList("STEP 2", "record 2 true"), database.writes.subList(1, database.writes.size()));
+
+        // Nothing is left to do on the next start
+        database.writes.clear();
+        assertTrue(runner().migrate(database.connect(), Arrays.asList(migration(1), migration(2)), false));
+        assertEquals(1, database.writes.size());
+    }
+
+    @Test
+    public void stopsAtTheFirstFailure() throws SQLException {
+        FakeDatabase database = new FakeDatabase();
+        database.failing.add("STEP 2");
+
+        assertFalse(runner().migrate(database.connect(), Arrays.asList(migration(1), migration(2), migration(3)), false));
+        assertEquals(Arrays.asList("STEP 1", "record 1 true", "record 2 false"), database.writes.subList(1, database.writes.size()));
+        assertFalse(database.history.containsKey(2));
+    }
+
+    @Test
+    public void dryRunWritesNothing() throws SQLException {
+        FakeDatabase database = new FakeDatabase();
+
+        assertTrue(runner().migrate(database.connect(), Arrays.asList(migration(1), migration(2)), true));
+        assertTrue(database.writes.isEmpty());
+        assertFalse(database.hasHistory);
+
+        database.hasHistory = true;
+        database.history.put(1, migration(1).getChecksum());
+        assertTrue(runner().migrate(database.connect(), Arrays.asList(migration(1), migration(2)), true));
+        assertTrue(database.writes.isEmpty());
+        assertEquals(1, database.history.size());
+    }
+}
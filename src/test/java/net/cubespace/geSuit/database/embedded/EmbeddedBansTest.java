@@ -0,0 +1,76 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.BanIndex;
+import net.cubespace.geSuit.objects.Ban;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddedBansTest {
+    private static final String UUID = "069a79f444e94726a5befca90e38aaf5";
+    private static final String OTHER = "ec561538f3fd461daff5086b22154bce";
+
+    @Test
+    public void bansAreFoundByNameUUIDAndIP() {
+        BanIndex index = new BanIndex();
+        EmbeddedBans bans = new EmbeddedBans(index);
+        int id = bans.banPlayer("Notch", UUID, null, "CONSOLE", "Testing", "ban");
+        bans.banPlayer(null, null, "10.0.0.1", "CONSOLE", "Proxy", "ipban");
+
+        assertTrue(bans.isPlayerBanned("notch"));
+        assertTrue(bans.isPlayerBanned("Someone", UUID, null));
+        assertTrue(bans.isPlayerBanned("Someone", OTHER, "10.0.0.1"));
+        assertFalse(bans.isPlayerBanned("Someone", OTHER, "10.0.0.2"));
+
+        Ban ban = bans.getBanInfo("NOTCH", null, null);
+        assertNotNull(ban);
+        assertEquals(id, ban.getId());
+        assertEquals("Testing", ban.getReason());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void banWinsOverIPBanAndTempBan() {
+        EmbeddedBans bans = new EmbeddedBans(new BanIndex());
+        bans.tempBanPlayer("Notch", UUID, "CONSOLE", "Short", "2999-01-01 00:00:00");
+        bans.banPlayer(null, null, "10.0.0.1", "CONSOLE", "Proxy", "ipban");
+        bans.banPlayer("Notch", UUID, null, "CONSOLE", "Forever", "ban");
+
+        assertEquals("ban", bans.getBanInfo("Notch", UUID, "10.0.0.1").getType());
+    }
+
+    @Test
+    public void warningsAndKicksAreNotBans() {
+        EmbeddedBans bans = new EmbeddedBans(new BanIndex());
+        bans.warnPlayer("Notch", UUID, "CONSOLE", "Careful");
+        bans.kickPlayer("Notch", UUID, "CONSOLE", "Out");
+
+        assertFalse(bans.isPlayerBanned("Notch", UUID, null));
+        assertNull(bans.getBanInfo("Notch", UUID, null));
+        assertEquals(1, bans.getWarnHistory("Notch", UUID).size());
+        assertEquals(2, bans.getKickWarnHistory("Notch", UUID).size());
+    }
+
+    @Test
+    public void unbanKeepsTheHistory() {
+        BanIndex index = new BanIndex();
+        EmbeddedBans bans = new EmbeddedBans(index);
+        int id = bans.banPlayer("Notch", UUID, null, "CONSOLE", "Testing", "ban");
+
+        bans.unbanPlayer(id);
+        assertFalse(bans.isPlayerBanned("Notch", UUID, null));
+        assertNull(bans.getBanInfo("Notch", UUID, null));
+        assertEquals(0, index.size());
+        assertTrue(bans.getActiveBans(0).isEmpty());
+
+        List<Ban> history = bans.getBanHistory("Notch", UUID);
+        assertEquals(1, history.size());
+        assertEquals(0, history.get(0).getActive());
+    }
+}
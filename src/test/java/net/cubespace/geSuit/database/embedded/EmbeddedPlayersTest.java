@@ -0,0 +1,73 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.BanIndex;
+import net.cubespace.geSuit.database.PlayerStore;
+import net.cubespace.geSuit.objects.GSPlayer;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddedPlayersTest {
+    private static final String STEVE = "8667ba71b85a4004af54457a9734eed7";
+    private static final String ALEX = "ec561538f3fd461daff5086b22154bce";
+
+    private static PlayerStore players() {
+        EmbeddedBans bans = new EmbeddedBans(new BanIndex());
+        return new EmbeddedPlayers(new EmbeddedTracking(bans));
+    }
+
+    private static GSPlayer player(String name, String uuid, boolean tps, String ip, long lastOnline) {
+        return new GSPlayer(name, uuid, tps, false, ip, new Timestamp(lastOnline), new Timestamp(1000L));
+    }
+
+    @Test
+    public void insertPlayersKeepsKnownPlayers() {
+        PlayerStore players = players();
+        assertTrue(players.insertPlayers(Arrays.asList(player("Steve", STEVE, true, "10.0.0.1", 1000L), player("Alex", ALEX, true, "10.0.0.2", 1000L))));
+        assertTrue(players.playerExists("steve"));
+        assertTrue(players.playerExists(ALEX));
+
+        // A second insert of the same UUID does not replace the first one
+        players.insertPlayers(Collections.singletonList(player("Herobrine", STEVE, true, "10.0.0.3", 2000L)));
+        assertEquals("Steve", players.loadPlayer(STEVE).getName());
+        assertFalse(players.playerExists("herobrine"));
+        assertEquals("10.0.0.1", players.getPlayerIP(STEVE));
+    }
+
+    @Test
+    public void updatePlayersStoresTheQueuedSettings() {
+        PlayerStore players = players();
+        players.insertPlayers(Collections.singletonList(player("Steve", STEVE, true, "10.0.0.1", 1000L)));
+
+        GSPlayer update = player("Steve2", STEVE, false, "10.0.0.9", 5000L);
+        update.setNewSpawn(true);
+        assertTrue(players.updatePlayers(Collections.singletonList(update)));
+
+        GSPlayer stored = players.loadPlayer(STEVE);
+        assertEquals("Steve2", stored.getName());
+        assertEquals("10.0.0.9", stored.getIp());
+        assertFalse(stored.acceptingTeleports());
+        assertTrue(stored.isNewSpawn());
+        assertEquals(5000L, stored.getLastOnline().getTime());
+        assertEquals(1000L, stored.getFirstOnline().getTime());
+
+        // The old name and IP no longer lead to the player
+        assertNull(players.loadPlayer("steve"));
+        assertNull(players.getAltPlayer(ALEX, "10.0.0.1", false));
+        assertEquals(STEVE, players.getAltPlayer(ALEX, "10.0.0.9", false)[1]);
+    }
+
+    @Test
+    public void updatePlayersIgnoresUnknownPlayers() {
+        PlayerStore players = players();
+        assertTrue(players.updatePlayers(Collections.singletonList(player("Alex", ALEX, true, "10.0.0.2", 5000L))));
+        assertFalse(players.playerExists(ALEX));
+    }
+}
@@ -0,0 +1,79 @@
+package net.cubespace.geSuit.database.embedded;
+
+import net.cubespace.geSuit.database.BanIndex;
+import net.cubespace.geSuit.objects.Ban;
+import net.cubespace.geSuit.objects.GSPlayer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddedStorageTest {
+    private static final String UUID = "069a79f444e94726a5befca90e38aaf5";
+
+    private File folder;
+
+    @Before
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("gesuit-storage").toFile();
+    }
+
+    @After
+    public void deleteFolder() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void savedStoresAreLoadedAgain() {
+        EmbeddedStorage storage = new EmbeddedStorage(folder, new BanIndex());
+        storage.getPlayers().insertPlayerConvert("Notch", UUID, new Timestamp(1400000000000L), "127.0.0.1", false);
+        int id = storage.getBans().banPlayer("Notch", UUID, null, "CONSOLE", "Testing", "ban");
+        assertTrue(storage.save());
+
+        EmbeddedStorage loaded = new EmbeddedStorage(folder, new BanIndex());
+        GSPlayer player = loaded.getPlayers().loadPlayer("notch");
+        assertNotNull(player);
+        assertEquals(UUID, player.getUuid());
+        assertEquals("127.0.0.1", player.getIp());
+        assertFalse(player.acceptingTeleports());
+        assertEquals(1400000000000L, player.getFirstOnline().getTime());
+
+        Ban ban = loaded.getBans().getBanInfo("Notch", UUID, null);
+        assertNotNull(ban);
+        assertEquals(id, ban.getId());
+        assertEquals("Testing", ban.getReason());
+
+        // Ids carry on from the saved ones
+        assertEquals(id + 1, loaded.getBans().warnPlayer("Notch", UUID, "CONSOLE", "Again"));
+    }
+
+    @Test
+    public void unchangedStoresAreNotWritten() {
+        EmbeddedStorage storage = new EmbeddedStorage(folder, new BanIndex());
+        storage.getPlayers().insertPlayerConvert("Notch", UUID, new Timestamp(1400000000000L), "127.0.0.1", true);
+        assertTrue(storage.save());
+
+        File players = new File(folder, "players.json");
+        assertTrue(players.isFile());
+        assertFalse(new File(folder, "bans.json").exists());
+
+        assertTrue(players.delete());
+        assertTrue(storage.save());
+        assertFalse(players.exists());
+    }
+}
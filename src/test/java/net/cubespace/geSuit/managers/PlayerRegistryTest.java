@@ -0,0 +1,215 @@
+package net.cubespace.geSuit.managers;
+
+import net.cubespace.geSuit.objects.GSPlayer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerRegistryTest {
+    private static final int JOINING_THREADS = 8;
+    private static final int READING_THREADS = 4;
+    private static final int PLAYERS_PER_THREAD = 25;
+    private static final int SESSIONS_PER_PLAYER = 200;
+
+    private static GSPlayer session(String name, UUID id) {
+        return new GSPlayer(name, id.toString().replace("-", ""), true);
+    }
+
+    @Test
+    public void joinAndLeave() {
+        PlayerRegistry registry = new PlayerRegistry();
+        UUID id = UUID.randomUUID();
+        GSPlayer player = session("Steve", id);
+
+        registry.login(id, player);
+        assertSame(player, registry.getCached(id));
+        assertNull(registry.getOnline("steve"));
+
+        assertTrue(registry.confirm(id, player, "Steve"));
+        assertSame(player, registry.getOnline("STEVE"));
+        assertSame(player, registry.matchOnline("ste"));
+
+        assertSame(player, registry.logout(id));
+        assertNull(registry.getCached(id));
+        assertSame(player, registry.getOnline("steve"));
+
+        assertTrue(registry.unload(id, player));
+        assertNull(registry.getOnline("steve"));
+        assertNull(registry.matchOnline("ste"));
+    }
+
+    @Test
+    public void renameAndDisplayNameKeepTheIndexCurrent() {
+        PlayerRegistry registry = new PlayerRegistry();
+        UUID id = UUID.randomUUID();
+        GSPlayer player = session("Steve", id);
+
+        registry.login(id, player);
+        assertTrue(registry.confirm(id, player, "Steve"));
+
+        registry.updateDisplayName(player, "Captain");
+        assertSame(player, registry.matchOnline("capt"));
+
+        registry.rename(player, "Alex");
+        assertEquals("Alex", player.getName());
+        assertNull(registry.getOnline("steve"));
+        assertSame(player, registry.getOnline("alex"));
+        assertSame(player, registry.matchOnline("ale"));
+        assertNull(registry.matchOnline("ste"));
+        assertSame(player, registry.matchOnline("capt"));
+
+        assertSame(player, registry.logout(id));
+        assertTrue(registry.unload(id, player));
+        assertNull(registry.matchOnline("ale"));
+        assertNull(registry.matchOnline("capt"));
+    }
+
+    @Test
+    public void reconnectKeepsTheNewSession() {
+        PlayerRegistry registry = new PlayerRegistry();
+        UUID id = UUID.randomUUID();
+        GSPlayer first = session("Alex", id);
+        GSPlayer second = session("Alex", id);
+
+        registry.login(id, first);
+        registry.confirm(id, first, "Alex");
+        registry.logout(id);
+
+        // The old session is unloaded after the player has joined again
+        registry.login(id, second);
+        assertTrue(registry.confirm(id, second, "Alex"));
+        assertFalse(registry.unload(id, first));
+
+        assertSame(second, registry.getCached(id));
+        assertSame(second, registry.getOnline("alex"));
+        assertSame(second, registry.matchOnline("ale"));
+    }
+
+    @Test
+    public void confirmAfterLogoutIsRefused() {
+        PlayerRegistry registry = new PlayerRegistry();
+        UUID id = UUID.randomUUID();
+        GSPlayer player = session("Notch", id);
+
+        registry.login(id, player);
+        registry.logout(id);
+
+        assertFalse(registry.confirm(id, player, "Notch"));
+        assertNull(registry.getOnline("notch"));
+        assertFalse(registry.unload(id, player));
+    }
+
+    /**
+     * Players join, reconnect and leave on several threads while others iterate and search the registry. Every
+     * player is handled by one thread, like the events of one connection, and nothing may be left behind.
+     */
+    @Test
+    public void concurrentJoinsAndLeaves() throws Exception {
+        final PlayerRegistry registry = new PlayerRegistry();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean joining = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(JOINING_THREADS + READING_THREADS);
+
+        List<Future<?>> joiners = new ArrayList<>();
+        for (int t = 0; t < JOINING_THREADS; t++) {
+            final int thread = t;
+            joiners.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    Random random = new Random(thread);
+
+                    for (int p = 0; p < PLAYERS_PER_THREAD; p++) {
+                        String name = "Player" + thread + "x" + p;
+                        UUID id = UUID.randomUUID();
+                        GSPlayer current = session(name, id);
+                        registry.login(id, current);
+                        assertTrue(registry.confirm(id, current, name));
+
+                        for (int s = 0; s < SESSIONS_PER_PLAYER; s++) {
+                            assertSame(current, registry.logout(id));
+                            if (random.nextBoolean()) {
+                                assertTrue(registry.unload(id, current));
+                                current = session(name, id);
+                                registry.login(id, current);
+                                assertTrue(registry.confirm(id, current, name));
+                            } else {
+                                // Reconnects before the old session is unloaded
+                                GSPlayer next = session(name, id);
+                                registry.login(id, next);
+                                assertTrue(registry.confirm(id, next, name));
+                                assertFalse(registry.unload(id, current));
+                                current = next;
+                            }
+                            assertSame(current, registry.getOnline(name));
+                        }
+
+                        assertSame(current, registry.logout(id));
+                        assertTrue(registry.unload(id, current));
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < READING_THREADS; t++) {
+            final int thread = t;
+            readers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    while (joining.get()) {
+                        for (GSPlayer player : registry.getOnlinePlayers()) {
+                            assertTrue(player.getName().startsWith("Player"));
+                        }
+                        for (GSPlayer player : registry.getCachedPlayers()) {
+                            assertTrue(player.getName().startsWith("Player"));
+                        }
+                        GSPlayer match = registry.matchOnline("player" + thread);
+                        if (match != null) {
+                            assertTrue(match.getName().startsWith("Player" + thread));
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        start.countDown();
+        try {
+            for (Future<?> joiner : joiners) {
+                joiner.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            joining.set(false);
+        }
+        for (Future<?> reader : readers) {
+            reader.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(0, registry.getCachedIds().size());
+        assertEquals(0, registry.getOnlineNames().size());
+        assertEquals(0, registry.getOnlinePlayers().size());
+        for (int t = 0; t < JOINING_THREADS; t++) {
+            assertNull(registry.matchOnline("player" + t));
+        }
+    }
+}